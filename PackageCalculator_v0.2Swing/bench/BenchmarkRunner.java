@@ -0,0 +1,239 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal benchmark harness measuring throughput and allocation.
+ *
+ * <p>
+ * Each benchmark is run for a number of warmup iterations, whose results are discarded, followed by a number of
+ * measurement iterations of fixed duration. For every benchmark the harness reports the mean throughput in operations
+ * per second with its 99.9% confidence interval and the number of bytes allocated per operation, similar to the
+ * {@code thrpt} mode and the {@code gc.alloc.rate.norm} metric of JMH.
+ * </p>
+ *
+ * <p>
+ * The harness understands the following command line options:
+ * </p>
+ * <ul>
+ * <li>{@code -wi <count>}: number of warmup iterations (default 3)</li>
+ * <li>{@code -i <count>}: number of measurement iterations (default 5)</li>
+ * <li>{@code -r <millis>}: duration of one iteration in milliseconds (default 1000)</li>
+ * <li>any other argument: regular expression selecting the benchmarks to run</li>
+ * </ul>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Code measured by a benchmark.
+     */
+    public interface Workload {
+        /**
+         * Runs the measured code once.
+         *
+         * @return a value depending on the work done, consumed so the work cannot be optimized away
+         * @throws Exception
+         *             if the workload fails
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Result of a single benchmark.
+     */
+    public static class Result {
+
+        /** The name of the benchmark. */
+        public final String name;
+
+        /** Mean throughput in operations per second. */
+        public final double opsPerSecond;
+
+        /** Half width of the 99.9% confidence interval of the throughput. */
+        public final double error;
+
+        /** Number of bytes allocated per operation. */
+        public final double bytesPerOp;
+
+        /**
+         * Constructs a new Result.
+         *
+         * @param name
+         *            the name of the benchmark
+         * @param opsPerSecond
+         *            the mean throughput in operations per second
+         * @param error
+         *            the half width of the confidence interval of the throughput
+         * @param bytesPerOp
+         *            the number of bytes allocated per operation
+         */
+        Result(String name, double opsPerSecond, double error, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %16.1f ± %12.1f ops/s %12.1f B/op", name, opsPerSecond, error,
+                    bytesPerOp);
+        }
+    }
+
+    /** Student's t quantiles for a two-sided 99.9% interval, indexed by degrees of freedom. */
+    private static final double[] T_QUANTILES = { Double.NaN, 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04,
+            4.78, 4.59 };
+
+    /** Bean reporting the bytes allocated by a thread. */
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    /** Sink for the workload results, preventing dead code elimination. */
+    private static volatile long sink;
+
+    /** Number of warmup iterations. */
+    private int warmupIterations = 3;
+
+    /** Number of measurement iterations. */
+    private int measurementIterations = 5;
+
+    /** Duration of one iteration in milliseconds. */
+    private long iterationMillis = 1000;
+
+    /** Pattern selecting the benchmarks to run. */
+    private Pattern filter = Pattern.compile(".*");
+
+    /** Results of all benchmarks run so far. */
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Constructs a new BenchmarkRunner configured from command line arguments.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IllegalArgumentException
+     *             if an option is missing its value
+     */
+    public BenchmarkRunner(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-wi".equals(arg) || "-i".equals(arg) || "-r".equals(arg)) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                long value = Long.parseLong(args[++i]);
+                if ("-wi".equals(arg)) {
+                    warmupIterations = (int) value;
+                } else if ("-i".equals(arg)) {
+                    measurementIterations = (int) value;
+                } else {
+                    iterationMillis = value;
+                }
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+    }
+
+    /**
+     * Runs a benchmark if it is selected by the filter and prints its result.
+     *
+     * @param name
+     *            the name of the benchmark
+     * @param opsPerRun
+     *            the number of operations performed by one run of the workload
+     * @param workload
+     *            the measured code
+     * @throws Exception
+     *             if the workload fails
+     */
+    public void run(String name, long opsPerRun, Workload workload) throws Exception {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(opsPerRun, workload);
+        }
+
+        double[] throughput = new double[measurementIterations];
+        double bytes = 0;
+        long ops = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            double[] measured = iteration(opsPerRun, workload);
+            throughput[i] = measured[0];
+            bytes += measured[1];
+            ops += (long) measured[2];
+        }
+
+        double mean = 0;
+        for (double value : throughput) {
+            mean += value;
+        }
+        mean /= throughput.length;
+        double error = Double.NaN;
+        if (throughput.length > 1) {
+            double variance = 0;
+            for (double value : throughput) {
+                variance += (value - mean) * (value - mean);
+            }
+            variance /= throughput.length - 1;
+            int degrees = Math.min(throughput.length - 1, T_QUANTILES.length - 1);
+            error = T_QUANTILES[degrees] * Math.sqrt(variance / throughput.length);
+        }
+
+        Result result = new Result(name, mean, error, ops > 0 ? bytes / ops : 0);
+        results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Runs the workload for one iteration.
+     *
+     * @param opsPerRun
+     *            the number of operations performed by one run of the workload
+     * @param workload
+     *            the measured code
+     * @return the throughput in operations per second, the allocated bytes and the number of operations
+     * @throws Exception
+     *             if the workload fails
+     */
+    private double[] iteration(long opsPerRun, Workload workload) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long runs = 0;
+        long result = 0;
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long now;
+        do {
+            result += workload.run();
+            runs++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        sink = result;
+
+        long ops = runs * opsPerRun;
+        return new double[] { ops * 1e9 / (now - start), allocated, ops };
+    }
+
+    /**
+     * Returns the results of all benchmarks run so far.
+     *
+     * @return the results
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+}
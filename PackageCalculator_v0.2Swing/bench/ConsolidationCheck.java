@@ -0,0 +1,200 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import control.Calculator;
+import control.Consolidator;
+import data.Money;
+import data.Packet;
+
+/**
+ * Checks the plans of the {@link Consolidator} and the time it takes to make them.
+ *
+ * <p>
+ * Random orders of {@value #SMALL_ORDER} and {@value #LARGE_ORDER} items are consolidated with the default tariff. Every
+ * plan is checked: each item is placed exactly once, in one of its orientations, inside the box of its packet and
+ * without overlapping another item; the box and weight of each packet match its items, and its price matches
+ * {@link Calculator#calcShippingCostsCents(Packet)}. The costs and the time used are printed per order; a search
+ * taking more than {@value #SLACK_MILLIS} ms longer than its budget counts as a failure. Run with
+ * {@code java bench.ConsolidationCheck [budget in ms]}; the budget defaults to {@value #DEFAULT_BUDGET_MILLIS} ms. The
+ * exit code is 1 if any check fails.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ConsolidationCheck {
+
+    /** Number of items of the small order. */
+    private static final int SMALL_ORDER = 500;
+
+    /** Number of items of the large order, the most the consolidator accepts. */
+    private static final int LARGE_ORDER = Consolidator.MAX_ITEMS;
+
+    /** Default time budget per order in milliseconds. */
+    private static final long DEFAULT_BUDGET_MILLIS = 500;
+
+    /** Time a search may take beyond its budget, for finishing the current move and building the plan. */
+    private static final long SLACK_MILLIS = 100;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args
+     *            optionally the time budget per order in milliseconds
+     */
+    public static void main(String[] args) {
+        long budgetMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_BUDGET_MILLIS;
+        Calculator calculator = new Calculator();
+        Consolidator consolidator = new Consolidator(calculator);
+        Random random = new Random(42);
+        boolean passed = true;
+        for (int size : new int[] { SMALL_ORDER, LARGE_ORDER }) {
+            List<Packet> items = randomOrder(random, size);
+            Consolidator.Plan plan = consolidator.consolidate(items, budgetMillis);
+            List<String> errors = check(calculator, items, plan);
+            long millis = plan.getElapsedNanos() / 1_000_000;
+            if (millis > budgetMillis + SLACK_MILLIS) {
+                errors.add("took " + millis + " ms with a budget of " + budgetMillis + " ms");
+            }
+            System.out.printf("%,d items: %s instead of %s in %d packets, %d ms: %s%n", size,
+                    Money.format(plan.getTotalCents()), Money.format(plan.getSeparateCents()), plan.getGroups().size(),
+                    millis, errors.isEmpty() ? "ok" : errors.size() + " errors");
+            for (String error : errors.subList(0, Math.min(errors.size(), 10))) {
+                System.out.println("  " + error);
+            }
+            passed &= errors.isEmpty();
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates an order of random items, mostly small and light, some large or heavy.
+     *
+     * @param random
+     *            the source of random numbers
+     * @param size
+     *            the number of items
+     * @return the items
+     */
+    private static List<Packet> randomOrder(Random random, int size) {
+        List<Packet> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int scale = random.nextInt(10) == 0 ? 800 : 250;
+            items.add(new Packet(10 + random.nextInt(scale), 10 + random.nextInt(scale), 10 + random.nextInt(scale),
+                    random.nextInt(10) == 0 ? random.nextInt(12_000) : random.nextInt(1_500)));
+        }
+        return items;
+    }
+
+    /**
+     * Checks a plan against its order.
+     *
+     * @param calculator
+     *            the calculator pricing the packets
+     * @param items
+     *            the items of the order
+     * @param plan
+     *            the plan
+     * @return the problems found, empty if the plan is valid
+     */
+    private static List<String> check(Calculator calculator, List<Packet> items, Consolidator.Plan plan) {
+        List<String> errors = new ArrayList<>();
+        int[] placed = new int[items.size()];
+        long total = 0;
+        for (int g = 0; g < plan.getGroups().size(); g++) {
+            Consolidator.Group group = plan.getGroups().get(g);
+            Packet box = group.packet;
+            int[] groupItems = group.getItems();
+            int[][] placements = new int[groupItems.length][];
+            long weight = 0;
+            int sizeX = 0;
+            int sizeY = 0;
+            int sizeZ = 0;
+            for (int i = 0; i < groupItems.length; i++) {
+                Packet item = items.get(groupItems[i]);
+                int[] at = group.getPlacement(i);
+                placements[i] = at;
+                placed[groupItems[i]]++;
+                weight += item.weight;
+                sizeX = Math.max(sizeX, at[0] + at[3]);
+                sizeY = Math.max(sizeY, at[1] + at[4]);
+                sizeZ = Math.max(sizeZ, at[2] + at[5]);
+                if (!sameSides(item, at[3], at[4], at[5])) {
+                    errors.add("packet " + g + ": item " + groupItems[i] + " is not one of its orientations");
+                }
+                if (at[0] < 0 || at[1] < 0 || at[2] < 0) {
+                    errors.add("packet " + g + ": item " + groupItems[i] + " lies outside the box");
+                }
+                for (int j = 0; j < i; j++) {
+                    if (overlap(placements[j], at)) {
+                        errors.add("packet " + g + ": items " + groupItems[j] + " and " + groupItems[i] + " overlap");
+                    }
+                }
+            }
+            if (box.length != sizeX || box.width != sizeY || box.height != sizeZ || box.weight != weight) {
+                errors.add("packet " + g + ": box " + box.length + "x" + box.width + "x" + box.height + " "
+                        + box.weight + " g does not match its items");
+            }
+            if (group.cents != calculator.calcShippingCostsCents(box)) {
+                errors.add("packet " + g + ": price " + group.cents + " does not match the calculator");
+            }
+            total += group.cents;
+        }
+        for (int i = 0; i < placed.length; i++) {
+            if (placed[i] != 1) {
+                errors.add("item " + i + " is placed " + placed[i] + " times");
+            }
+        }
+        if (total != plan.getTotalCents()) {
+            errors.add("total " + plan.getTotalCents() + " does not match the packets");
+        }
+        return errors;
+    }
+
+    /**
+     * Tells whether a box has the sides of an item in some order.
+     *
+     * @param item
+     *            the item
+     * @param dx
+     *            the first side of the box
+     * @param dy
+     *            the second side of the box
+     * @param dz
+     *            the third side of the box
+     * @return whether the sides match
+     */
+    private static boolean sameSides(Packet item, int dx, int dy, int dz) {
+        int[] expected = { item.length, item.width, item.height };
+        int[] actual = { dx, dy, dz };
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        return Arrays.equals(expected, actual);
+    }
+
+    /**
+     * Tells whether two placed items overlap.
+     *
+     * @param a
+     *            the position and size of the first item
+     * @param b
+     *            the position and size of the second item
+     * @return whether the items share some volume
+     */
+    private static boolean overlap(int[] a, int[] b) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (a[axis] + a[axis + 3] <= b[axis] || b[axis] + b[axis + 3] <= a[axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,266 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import control.BatchClassifier;
+import control.Calculator;
+import control.ManifestReader;
+import control.ParallelManifestReader;
+import data.Money;
+import data.Packet;
+import data.PacketBatch;
+
+/**
+ * Benchmarks for the pricing and parsing hot paths.
+ *
+ * <p>
+ * The benchmarks cover single-packet pricing, batch pricing, the text input handling of the calculator area and
+ * manifest parsing. Pricing is measured for three package distributions: only small packages, a realistic mix and only
+ * heavy packages. One operation is one priced package. Run with {@code java bench.PricingBenchmark [options]}, see
+ * {@link BenchmarkRunner} for the options.
+ * </p>
+ *
+ * <p>
+ * The scalar and the vector {@link BatchClassifier} are compared directly. The vector classifier is only measured if
+ * it was compiled from the {@code vector} source root, the benchmark is started with
+ * {@code --add-modules jdk.incubator.vector} and the CPU supports it.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PricingBenchmark {
+
+    /** Number of packages priced per run of a pricing workload. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** Number of lines of the generated manifest. */
+    private static final int MANIFEST_LINES = 1_000_000;
+
+    /**
+     * Distribution of the generated packages.
+     */
+    enum Distribution {
+        /** Only packages of the smallest tier. */
+        ALL_SMALL,
+        /** Packages of all tiers. */
+        MIXED,
+        /** Only packages heavier than 10 kg. */
+        ALL_HEAVY;
+
+        /**
+         * Generates a batch of packages following this distribution.
+         *
+         * @param random
+         *            the random number generator
+         * @param size
+         *            the number of packages to generate
+         * @return the generated packages
+         */
+        PacketBatch generate(Random random, int size) {
+            PacketBatch batch = new PacketBatch(size);
+            for (int i = 0; i < size; i++) {
+                switch (this) {
+                case ALL_SMALL:
+                    batch.add(1 + random.nextInt(300), 1 + random.nextInt(300), 1 + random.nextInt(150),
+                            1 + random.nextInt(5000));
+                    break;
+                case MIXED:
+                    batch.add(1 + random.nextInt(1400), 1 + random.nextInt(700), 1 + random.nextInt(700),
+                            1 + random.nextInt(12000));
+                    break;
+                default:
+                    batch.add(1 + random.nextInt(2000), 1 + random.nextInt(1000), 1 + random.nextInt(1000),
+                            10001 + random.nextInt(20000));
+                    break;
+                }
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Runs all benchmarks.
+     *
+     * @param args
+     *            the benchmark options, see {@link BenchmarkRunner}
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner(args);
+        Calculator calculator = new Calculator();
+
+        for (Distribution distribution : Distribution.values()) {
+            String suffix = distribution.name().toLowerCase();
+            PacketBatch batch = distribution.generate(new Random(42), BATCH_SIZE);
+            Packet[] packets = new Packet[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                packets[i] = new Packet(batch.length[i], batch.width[i], batch.height[i], batch.weight[i]);
+            }
+            double[] costs = new double[BATCH_SIZE];
+            int[] cents = new int[BATCH_SIZE];
+
+            runner.run("single/" + suffix, BATCH_SIZE, () -> {
+                double total = 0;
+                for (Packet packet : packets) {
+                    total += calculator.calcShippingCosts(packet);
+                }
+                return (long) total;
+            });
+
+            runner.run("batch/" + suffix, BATCH_SIZE, () -> {
+                calculator.calcShippingCosts(batch, costs);
+                return (long) costs[BATCH_SIZE - 1];
+            });
+
+            runner.run("batchCents/" + suffix, BATCH_SIZE, () -> {
+                calculator.calcShippingCostsCents(batch, cents);
+                return cents[BATCH_SIZE - 1];
+            });
+
+            runner.run("sumCents/" + suffix, BATCH_SIZE, () -> calculator.sumShippingCostsCents(batch));
+        }
+
+        benchmarkClassifiers(runner, calculator);
+        benchmarkTextInput(runner, calculator);
+        benchmarkManifest(runner, calculator);
+    }
+
+    /**
+     * Benchmarks the scalar and the vector batch classifier for all distributions, after checking that both return the
+     * same prices.
+     *
+     * @param runner
+     *            the benchmark runner
+     * @param calculator
+     *            the calculator whose tariff is used
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    private static void benchmarkClassifiers(BenchmarkRunner runner, Calculator calculator) throws Exception {
+        BatchClassifier scalar = BatchClassifier.scalar(calculator.getTariff());
+        BatchClassifier vector = BatchClassifier.forTariff(calculator.getTariff());
+        BatchClassifier[] classifiers = vector.getClass() == scalar.getClass() ? new BatchClassifier[] { scalar }
+                : new BatchClassifier[] { scalar, vector };
+        System.out.println("Batch classifiers: " + Arrays.toString(classifiers));
+
+        for (Distribution distribution : Distribution.values()) {
+            String suffix = distribution.name().toLowerCase();
+            PacketBatch batch = distribution.generate(new Random(42), BATCH_SIZE);
+            int[] expected = new int[BATCH_SIZE];
+            int[] cents = new int[BATCH_SIZE];
+            scalar.priceCents(batch, expected);
+
+            for (BatchClassifier classifier : classifiers) {
+                String name = classifier == scalar ? "scalar" : "vector";
+                classifier.priceCents(batch, cents);
+                if (!Arrays.equals(expected, cents) || classifier.sumCents(batch) != scalar.sumCents(batch)) {
+                    throw new IllegalStateException("The " + classifier + " classifier differs from the scalar one");
+                }
+
+                runner.run("classifier/" + name + "/" + suffix, BATCH_SIZE, () -> {
+                    classifier.priceCents(batch, cents);
+                    return cents[BATCH_SIZE - 1];
+                });
+                runner.run("classifierSum/" + name + "/" + suffix, BATCH_SIZE, () -> classifier.sumCents(batch));
+            }
+        }
+    }
+
+    /**
+     * Benchmarks the input handling of the calculator area: parsing the four text fields, pricing the package and
+     * formatting the result, once with a boxed {@code double} as in earlier versions and once with cents formatted into
+     * a reusable buffer.
+     *
+     * @param runner
+     *            the benchmark runner
+     * @param calculator
+     *            the calculator
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    private static void benchmarkTextInput(BenchmarkRunner runner, Calculator calculator) throws Exception {
+        PacketBatch batch = Distribution.MIXED.generate(new Random(42), BATCH_SIZE);
+        String[][] input = new String[BATCH_SIZE][];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            input[i] = new String[] { Integer.toString(batch.length[i]), Integer.toString(batch.width[i]),
+                    Integer.toString(batch.height[i]), Integer.toString(batch.weight[i]) };
+        }
+
+        runner.run("input/parseInt", BATCH_SIZE, () -> {
+            long length = 0;
+            for (String[] fields : input) {
+                Packet packet = new Packet(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                Double costs = calculator.calcShippingCosts(packet);
+                length += costs.toString().length();
+            }
+            return length;
+        });
+
+        StringBuilder text = new StringBuilder();
+        runner.run("input/cents", BATCH_SIZE, () -> {
+            long length = 0;
+            for (String[] fields : input) {
+                Packet packet = new Packet(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                text.setLength(0);
+                length += Money.append(calculator.calcShippingCostsCents(packet), text).length();
+            }
+            return length;
+        });
+    }
+
+    /**
+     * Benchmarks reading and pricing a generated manifest file, sequentially and in parallel.
+     *
+     * @param runner
+     *            the benchmark runner
+     * @param calculator
+     *            the calculator
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    private static void benchmarkManifest(BenchmarkRunner runner, Calculator calculator) throws Exception {
+        Path manifest = Files.createTempFile("manifest", ".txt");
+        try {
+            writeManifest(manifest, Distribution.MIXED.generate(new Random(42), MANIFEST_LINES));
+            ManifestReader reader = new ManifestReader(calculator);
+            ParallelManifestReader parallelReader = new ParallelManifestReader(calculator);
+
+            runner.run("manifest/sequential", MANIFEST_LINES, () -> reader.price(manifest, null).getPacketCount());
+            runner.run("manifest/parallel", MANIFEST_LINES,
+                    () -> parallelReader.price(manifest, null).getPacketCount());
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    /**
+     * Writes packages to a manifest file.
+     *
+     * @param file
+     *            the file to write
+     * @param batch
+     *            the packages to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void writeManifest(Path file, PacketBatch batch) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < batch.size(); i++) {
+                writer.write("P-" + i + " " + batch.length[i] + " " + batch.width[i] + " " + batch.height[i] + " "
+                        + batch.weight[i] + "\n");
+            }
+        }
+    }
+}
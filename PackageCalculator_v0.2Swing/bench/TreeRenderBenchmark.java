@@ -0,0 +1,197 @@
+package bench;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JSeparator;
+import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreeCellRenderer;
+
+import gui.ExplorerArea;
+
+/**
+ * Benchmark for painting the explorer tree.
+ *
+ * <p>
+ * A temporary project with {@value #FILES} manifests and {@value #FOLDERS} folders is loaded into an
+ * {@link ExplorerArea} and its tree is painted into an off-screen image, once with the renderer of the explorer and once
+ * with a renderer doing the per-cell work of earlier versions: asking the file system whether the file is a directory,
+ * comparing its absolute path and building a context menu. One operation is one painted row. Since the explorer
+ * renderer only uses attributes cached when the tree was loaded, its cost does not depend on the latency of the file
+ * system. Run with {@code java bench.TreeRenderBenchmark [options]}, see {@link BenchmarkRunner} for the options.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class TreeRenderBenchmark {
+
+    /** Number of manifests in the temporary project. */
+    private static final int FILES = 2000;
+
+    /** Number of folders in the temporary project. */
+    private static final int FOLDERS = 100;
+
+    /**
+     * Renderer doing the per-cell work of earlier versions of the explorer.
+     */
+    private static class LegacyRenderer extends DefaultTreeCellRenderer {
+        /** The file of every tree node. */
+        private final Map<Object, File> files;
+
+        /** The absolute path of the project root. */
+        private final String rootPath;
+
+        /**
+         * Constructs a LegacyRenderer.
+         *
+         * @param files
+         *            the file of every tree node
+         * @param rootPath
+         *            the absolute path of the project root
+         */
+        LegacyRenderer(Map<Object, File> files, String rootPath) {
+            this.files = files;
+            this.rootPath = rootPath;
+        }
+
+        @Override
+        public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded,
+                boolean leaf, int row, boolean hasFocus) {
+            super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+            File file = files.get(value);
+            if (file == null) {
+                return this;
+            }
+            setText(file.getAbsolutePath().equals(rootPath) ? "..." + File.separator + file.getName()
+                    : file.getName());
+
+            JPopupMenu contextMenu = new JPopupMenu();
+            if (file.isDirectory()) {
+                contextMenu.add(new JMenuItem("New File"));
+                contextMenu.add(new JMenuItem("New Subfolder"));
+            } else {
+                contextMenu.add(new JMenuItem("Open"));
+                contextMenu.add(new JMenuItem("Close"));
+                if (file.getName().toLowerCase().endsWith(".txt")) {
+                    contextMenu.add(new JMenuItem("Price manifest"));
+                }
+            }
+            contextMenu.add(new JSeparator());
+            contextMenu.add(new JMenuItem("Copy"));
+            contextMenu.add(new JMenuItem("Paste"));
+            contextMenu.add(new JMenuItem("Delete"));
+            setComponentPopupMenu(contextMenu);
+            return this;
+        }
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args
+     *            benchmark options, see {@link BenchmarkRunner}
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        BenchmarkRunner runner = new BenchmarkRunner(args);
+
+        Path project = Files.createTempDirectory("project");
+        try {
+            for (int i = 0; i < FILES; i++) {
+                Files.createFile(project.resolve("manifest-" + i + ".txt"));
+            }
+            for (int i = 0; i < FOLDERS; i++) {
+                Files.createDirectory(project.resolve("folder-" + i));
+            }
+
+            JTree tree = loadTree(project);
+            int rows = tree.getRowCount();
+            tree.setSize(tree.getPreferredSize());
+            BufferedImage image = new BufferedImage(tree.getWidth(), tree.getHeight(), BufferedImage.TYPE_INT_RGB);
+            TreeCellRenderer renderer = tree.getCellRenderer();
+
+            runner.run("tree/paint", rows, () -> paint(tree, image));
+
+            Map<Object, File> files = new IdentityHashMap<>();
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode) tree.getModel().getRoot();
+            files.put(root, project.toFile());
+            for (int i = 0; i < root.getChildCount(); i++) {
+                DefaultMutableTreeNode child = (DefaultMutableTreeNode) root.getChildAt(i);
+                files.put(child, new File(project.toFile(), child.toString()));
+            }
+            tree.setCellRenderer(new LegacyRenderer(files, project.toFile().getAbsolutePath()));
+            runner.run("tree/paintLegacy", rows, () -> paint(tree, image));
+            tree.setCellRenderer(renderer);
+        } finally {
+            try (Stream<Path> paths = Files.walk(project)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Loads a project into an explorer area and waits until the children of the root are loaded.
+     *
+     * @param project
+     *            the project directory
+     * @return the tree view of the explorer area
+     * @throws Exception
+     *             if the tree cannot be loaded
+     */
+    private static JTree loadTree(Path project) throws Exception {
+        JTree[] tree = new JTree[1];
+        SwingUtilities.invokeAndWait(() -> {
+            ExplorerArea explorerArea = new ExplorerArea();
+            explorerArea.loadNewTree(project.toString());
+            tree[0] = (JTree) ((JScrollPane) explorerArea.getComponentAt(0)).getViewport().getView();
+        });
+        int[] rows = new int[1];
+        while (rows[0] <= FILES + FOLDERS) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(() -> rows[0] = tree[0].getRowCount());
+        }
+        if (rows[0] != FILES + FOLDERS + 1) {
+            throw new IOException("Unexpected number of rows: " + rows[0]);
+        }
+        return tree[0];
+    }
+
+    /**
+     * Paints the whole tree into an image.
+     *
+     * @param tree
+     *            the tree view
+     * @param image
+     *            the image to paint into
+     * @return the number of rows
+     */
+    private static long paint(JTree tree, BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            tree.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return tree.getRowCount();
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * Micro benchmarks for the Package Calculator application.
+ *
+ * <p>
+ * This package contains a small benchmark harness and benchmarks for the pricing and parsing hot paths and for painting
+ * the explorer tree, and a check of the plans and time budget of the consolidator. Benchmarks are started from the
+ * command line and do not need a display.
+ * </p>
+ *
+ * @since 0.3
+ * @version 0.3
+ */
+package bench;
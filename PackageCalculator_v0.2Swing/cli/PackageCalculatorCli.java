@@ -0,0 +1,411 @@
+package cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import control.BinaryManifest;
+import control.Calculator;
+import control.Consolidator;
+import control.ManifestReader;
+import control.ManifestSummary;
+import control.ParallelManifestReader;
+import control.RateShop;
+import control.Tariff;
+import data.Packet;
+import data.PacketStore;
+
+/**
+ * Headless command line entry point for pricing manifests.
+ *
+ * <p>
+ * This class prices manifest files, or the standard input, directly through the {@link Calculator} and prints one
+ * summary line per manifest. Unlike {@code gui.PackageCalculator}, it never loads AWT or Swing classes, so it starts
+ * quickly and runs on servers without a display.
+ * </p>
+ *
+ * <pre>
+ * Usage: java cli.PackageCalculatorCli [options] [file|-]...
+ *   -p, --parallel &lt;n&gt;   price each file on n threads (default 1)
+ *   -t, --tariff &lt;file&gt;  use the given tariff instead of the default tariff
+ *   -c, --carrier &lt;file&gt; rate-shop with the given carrier tariff; repeat for several carriers
+ *   --consolidate &lt;ms&gt;  pack the items of each file into the cheapest packets within ms milliseconds
+ *   --convert &lt;file&gt;    convert the manifest to the given file instead of pricing it
+ *   --timing             print startup and pricing times to standard error
+ *   -h, --help           print this help
+ * </pre>
+ *
+ * <p>
+ * Without file arguments, or with {@code -}, the manifest is read from the standard input. Files ending with
+ * {@value control.BinaryManifest#EXTENSION} are read as {@link BinaryManifest binary manifests}, whose block checksums
+ * are verified if they were written with them; a manifest failing the check is reported like an unreadable one. With
+ * {@code --convert}, a single manifest file is converted between the text and the binary format, chosen by the file
+ * names. With {@code --carrier}, every package of the manifest files is priced with all given carriers in one pass
+ * and the totals per carrier are printed, cheapest first (see {@link RateShop}). With {@code --consolidate}, the
+ * packages of every manifest file are taken as the items of one order and grouped into the packets with the lowest
+ * total costs (see {@link Consolidator}); a budget of about {@value control.Consolidator#DEFAULT_BUDGET_MILLIS} ms is
+ * enough for orders of several hundred items. The exit code is 0 on success, 1 if a manifest could not be read and 2
+ * for invalid arguments.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PackageCalculatorCli {
+
+    /** Usage description printed for {@code --help} and invalid arguments. */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java cli.PackageCalculatorCli [options] [file|-]...",
+            "  -p, --parallel <n>   price each file on n threads (default 1)",
+            "  -t, --tariff <file>  use the given tariff instead of the default tariff",
+            "  -c, --carrier <file> rate-shop with the given carrier tariff; repeat for several carriers",
+            "  --consolidate <ms>   pack the items of each file into the cheapest packets within ms milliseconds",
+            "  --convert <file>     convert the manifest to the given file instead of pricing it",
+            "  --timing             print startup and pricing times to standard error",
+            "  -h, --help           print this help");
+
+    /** Time at which {@link #main(String[])} was entered, in nanoseconds. */
+    private static long mainEntered;
+
+    /** Output for summaries. */
+    private final PrintStream out;
+
+    /** Output for errors and timing information. */
+    private final PrintStream err;
+
+    /** The manifests to price, {@code -} standing for the standard input. */
+    private final List<String> manifests = new ArrayList<>();
+
+    /** Number of threads per file, 1 for sequential pricing. */
+    private int parallelism = 1;
+
+    /** Tariff file, or {@code null} for the default tariff. */
+    private String tariffFile;
+
+    /** Whether to print timing information. */
+    private boolean timing;
+
+    /** File to convert the manifest to, or {@code null} to price the manifests. */
+    private String convertFile;
+
+    /** Tariff files of the carriers to rate-shop with, empty to price with a single tariff. */
+    private final List<String> carrierFiles = new ArrayList<>();
+
+    /** Time budget per manifest for consolidating its items in milliseconds, or 0 to price the manifests. */
+    private long consolidateMillis;
+
+    /**
+     * Constructs a new PackageCalculatorCli.
+     *
+     * @param out
+     *            output for summaries
+     * @param err
+     *            output for errors and timing information
+     */
+    public PackageCalculatorCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args
+     *            the command line arguments
+     * @return {@code true} if pricing should start, {@code false} if help was requested
+     * @throws IllegalArgumentException
+     *             if the arguments are invalid
+     */
+    boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+            case "-h":
+            case "--help":
+                out.println(USAGE);
+                return false;
+            case "-p":
+            case "--parallel":
+                parallelism = Integer.parseInt(value(args, ++i, arg));
+                if (parallelism < 1) {
+                    throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+                }
+                break;
+            case "-t":
+            case "--tariff":
+                tariffFile = value(args, ++i, arg);
+                break;
+            case "--timing":
+                timing = true;
+                break;
+            case "-c":
+            case "--carrier":
+                carrierFiles.add(value(args, ++i, arg));
+                break;
+            case "--convert":
+                convertFile = value(args, ++i, arg);
+                break;
+            case "--consolidate":
+                consolidateMillis = Long.parseLong(value(args, ++i, arg));
+                if (consolidateMillis < 1) {
+                    throw new IllegalArgumentException("Invalid time budget: " + consolidateMillis);
+                }
+                break;
+            default:
+                if (arg.startsWith("-") && !"-".equals(arg)) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+                manifests.add(arg);
+                break;
+            }
+        }
+        if (convertFile != null && (manifests.size() != 1 || "-".equals(manifests.get(0)))) {
+            throw new IllegalArgumentException("--convert needs exactly one manifest file");
+        }
+        if (!carrierFiles.isEmpty() && tariffFile != null) {
+            throw new IllegalArgumentException("--tariff cannot be combined with --carrier; add it as a carrier");
+        }
+        if (!carrierFiles.isEmpty() && (manifests.isEmpty() || manifests.contains("-"))) {
+            throw new IllegalArgumentException("--carrier needs manifest files");
+        }
+        if (consolidateMillis > 0 && (manifests.isEmpty() || manifests.contains("-"))) {
+            throw new IllegalArgumentException("--consolidate needs manifest files");
+        }
+        if (manifests.isEmpty()) {
+            manifests.add("-");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args
+     *            the command line arguments
+     * @param index
+     *            the index of the value
+     * @param option
+     *            the option the value belongs to
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the value is missing
+     */
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Prices all manifests and prints their summaries.
+     *
+     * @return the exit code
+     */
+    int run() {
+        if (convertFile != null) {
+            try {
+                BinaryManifest.convert(Paths.get(manifests.get(0)), Paths.get(convertFile));
+                return 0;
+            } catch (NoSuchFileException e) {
+                // The message of the exception is just the file name, and the target is written to a temporary file
+                boolean source = Paths.get(manifests.get(0)).toString().equals(e.getFile());
+                err.println(source ? manifests.get(0) + ": No such file" : convertFile + ": No such directory");
+                return 1;
+            } catch (IOException e) {
+                err.println(manifests.get(0) + ": " + e.getMessage());
+                return 1;
+            }
+        }
+
+        if (!carrierFiles.isEmpty()) {
+            return shop();
+        }
+
+        Calculator calculator;
+        try {
+            calculator = tariffFile != null ? new Calculator(Tariff.load(Paths.get(tariffFile))) : new Calculator();
+        } catch (IOException e) {
+            err.println("Cannot load tariff " + tariffFile + ": " + e.getMessage());
+            return 1;
+        }
+
+        if (consolidateMillis > 0) {
+            return consolidate(calculator);
+        }
+
+        ManifestReader reader = new ManifestReader(calculator);
+        ParallelManifestReader parallelReader = parallelism > 1
+                ? new ParallelManifestReader(calculator, parallelism, ParallelManifestReader.DEFAULT_CHUNK_SIZE)
+                : null;
+        ManifestSummary total = new ManifestSummary(calculator.getTariff());
+        int exitCode = 0;
+        boolean firstPriced = false;
+        long start = System.nanoTime();
+
+        for (String manifest : manifests) {
+            long manifestStart = System.nanoTime();
+            try {
+                ManifestSummary summary;
+                if ("-".equals(manifest)) {
+                    summary = reader.price(System.in, null);
+                } else {
+                    Path file = Paths.get(manifest);
+                    if (!Files.isRegularFile(file)) {
+                        throw new IOException("No such file");
+                    }
+                    if (BinaryManifest.isBinary(file)) {
+                        summary = calculator.summarize(BinaryManifest.read(file, true));
+                    } else if (parallelReader != null) {
+                        summary = parallelReader.price(file, null);
+                    } else {
+                        summary = reader.price(file, null);
+                    }
+                }
+                if (timing && !firstPriced) {
+                    reportTimeToFirstPrice();
+                }
+                firstPriced = true;
+                out.println(manifest + ": " + summary);
+                total.merge(summary);
+            } catch (IOException e) {
+                err.println(manifest + ": " + e.getMessage());
+                exitCode = 1;
+            }
+            if (timing) {
+                err.printf("%s: priced in %.1f ms%n", manifest, (System.nanoTime() - manifestStart) / 1e6);
+            }
+        }
+
+        if (manifests.size() > 1) {
+            out.println("total: " + total);
+        }
+        if (timing) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            err.printf("total: %.1f ms, %.0f packets/s, %.1f MB/s%n", seconds * 1e3, total.getPacketCount() / seconds,
+                    total.getBytes() / seconds / 1e6);
+        }
+        return exitCode;
+    }
+
+    /**
+     * Rate-shops all manifests with the given carriers and prints the totals per carrier.
+     *
+     * @return the exit code
+     */
+    private int shop() {
+        List<Tariff> carriers = new ArrayList<>();
+        for (String carrierFile : carrierFiles) {
+            try {
+                carriers.add(Tariff.load(Paths.get(carrierFile)));
+            } catch (IOException e) {
+                err.println("Cannot load carrier " + carrierFile + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        RateShop rateShop = new RateShop(carriers);
+
+        int exitCode = 0;
+        for (String manifest : manifests) {
+            long manifestStart = System.nanoTime();
+            try {
+                Path file = Paths.get(manifest);
+                if (!Files.isRegularFile(file)) {
+                    throw new IOException("No such file");
+                }
+                out.println(manifest + ": " + rateShop.shop(file, null));
+            } catch (IOException e) {
+                err.println(manifest + ": " + e.getMessage());
+                exitCode = 1;
+            }
+            if (timing) {
+                err.printf("%s: rate-shopped in %.1f ms%n", manifest, (System.nanoTime() - manifestStart) / 1e6);
+            }
+        }
+        return exitCode;
+    }
+
+    /**
+     * Consolidates the packages of every manifest into packets and prints the plans.
+     *
+     * @param calculator
+     *            the calculator pricing the packets
+     * @return the exit code
+     */
+    private int consolidate(Calculator calculator) {
+        Consolidator consolidator = new Consolidator(calculator);
+        int exitCode = 0;
+        for (String manifest : manifests) {
+            try {
+                Path file = Paths.get(manifest);
+                if (!Files.isRegularFile(file)) {
+                    throw new IOException("No such file");
+                }
+                PacketStore store;
+                if (BinaryManifest.isBinary(file)) {
+                    store = BinaryManifest.read(file, true);
+                } else {
+                    store = new PacketStore();
+                    new ManifestReader(calculator).read(file, store, null);
+                }
+                if (store.size() > Consolidator.MAX_ITEMS) {
+                    throw new IOException("More than " + Consolidator.MAX_ITEMS + " items");
+                }
+                List<Packet> items = new ArrayList<>();
+                PacketStore.Cursor cursor = store.cursor();
+                while (cursor.next()) {
+                    items.add(new Packet(cursor.getLength(), cursor.getWidth(), cursor.getHeight(),
+                            cursor.getWeight()));
+                }
+                out.println(manifest + ": " + consolidator.consolidate(items, consolidateMillis));
+            } catch (IOException | IllegalArgumentException e) {
+                err.println(manifest + ": " + e.getMessage());
+                exitCode = 1;
+            }
+        }
+        return exitCode;
+    }
+
+    /**
+     * Prints the time from JVM start and from entering {@link #main(String[])} to the first priced manifest.
+     *
+     * <p>
+     * The management classes needed for the JVM start time are only loaded here, so they do not slow down runs without
+     * timing.
+     * </p>
+     */
+    private void reportTimeToFirstPrice() {
+        long sinceMain = System.nanoTime() - mainEntered;
+        long sinceJvmStart = ManagementFactory.getRuntimeMXBean().getUptime();
+        err.printf("time to first price: %d ms since JVM start, %.1f ms since main%n", sinceJvmStart, sinceMain / 1e6);
+    }
+
+    /**
+     * Main entry point for headless pricing.
+     *
+     * @param args
+     *            command line arguments, see the class description
+     */
+    public static void main(String[] args) {
+        mainEntered = System.nanoTime();
+        PackageCalculatorCli cli = new PackageCalculatorCli(System.out, System.err);
+        int exitCode;
+        try {
+            exitCode = cli.parseArguments(args) ? cli.run() : 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            exitCode = 2;
+        }
+        System.out.flush();
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Command line interface for the Package Calculator application.
+ *
+ * <p>
+ * This package contains the headless entry point for pricing manifests in batch jobs. It only uses the control and data
+ * packages and never loads AWT or Swing classes.
+ * </p>
+ *
+ * @since 0.3
+ * @version 0.3
+ */
+package cli;
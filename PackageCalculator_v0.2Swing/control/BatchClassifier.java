@@ -0,0 +1,308 @@
+package control;
+
+import java.util.Arrays;
+
+import data.PacketBatch;
+
+/**
+ * Classifies and prices whole batches of packages for one {@link Tariff}.
+ *
+ * <p>
+ * {@link #forTariff(Tariff)} returns the fastest implementation available for a tariff. If the incubating Vector API
+ * ({@code jdk.incubator.vector}) is part of the running JVM, the vector classifier was compiled, the tariff has at most
+ * {@value #MAX_VECTOR_TIERS} tiers and the CPU offers vectors of at least {@value #MIN_VECTOR_LANES} integers (AVX2 or
+ * better), a classifier comparing a whole vector of packages against the tier limits at once is used. Otherwise, or if
+ * the system property {@value #VECTOR_PROPERTY} is {@code false}, the packages are classified one by one with
+ * {@link Tariff#classify(int, int, int, int)}.
+ * </p>
+ *
+ * <p>
+ * The vector classifier is kept in the separate source root {@code vector}, so the application compiles without the
+ * module; see {@code vector/control/VectorBatchClassifier.java} for how to compile it. The module also has to be added
+ * when the application is started, for example with {@code java --add-modules jdk.incubator.vector ...}. The vector
+ * classifier is loaded by name only after the module was found and the width of its vectors was checked, so the
+ * application runs unchanged without either. Before a vector classifier is returned, it is checked against the scalar
+ * classifier with packages at, just below and just above every limit of the tariff; if any result differs, the scalar
+ * classifier is used.
+ * </p>
+ *
+ * <p>
+ * All implementations return exactly the same tiers and prices as {@link Tariff#classify(int, int, int, int)}, do not
+ * allocate and are safe to use from several threads.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public abstract class BatchClassifier {
+
+    /** System property switching the vector classifier on or off. */
+    public static final String VECTOR_PROPERTY = "packagecalculator.vector";
+
+    /** Name of the module providing the Vector API. */
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** Maximum number of tiers classified with vectors. */
+    static final int MAX_VECTOR_TIERS = 16;
+
+    /** Minimum number of integer lanes for vectors to be faster than the lookup tables. */
+    static final int MIN_VECTOR_LANES = 8;
+
+    /** Whether the vector classifier may be used; read once. */
+    private static final boolean VECTOR_ENABLED = Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"));
+
+    /** Number of packages compared at once when checking a classifier. */
+    private static final int PROBE_BATCH_SIZE = 1024;
+
+    /** Number of other values every value is combined with when checking a classifier. */
+    private static final int PROBE_NEIGHBORS = 8;
+
+    /** The tariff packages are classified with. */
+    final Tariff tariff;
+
+    /**
+     * Constructs a new BatchClassifier.
+     *
+     * @param tariff
+     *            the tariff packages are classified with
+     */
+    BatchClassifier(Tariff tariff) {
+        this.tariff = tariff;
+    }
+
+    /**
+     * Returns the fastest classifier available for a tariff.
+     *
+     * @param tariff
+     *            the tariff packages are classified with
+     * @return a vector classifier if possible, a scalar classifier otherwise
+     */
+    public static BatchClassifier forTariff(Tariff tariff) {
+        BatchClassifier scalar = new Scalar(tariff);
+        if (!VECTOR_ENABLED || tariff.getTierCount() > MAX_VECTOR_TIERS || getVectorLanes() < MIN_VECTOR_LANES) {
+            return scalar;
+        }
+        BatchClassifier vector;
+        try {
+            // Loaded by name so this class does not link against the module, and may be missing
+            vector = (BatchClassifier) Class.forName(BatchClassifier.class.getPackageName() + ".VectorBatchClassifier")
+                    .getDeclaredConstructor(Tariff.class).newInstance(tariff);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar;
+        }
+        return vector.matches(scalar) ? vector : scalar;
+    }
+
+    /**
+     * Returns the number of integers in the widest vectors the CPU supports, asking the Vector API by reflection.
+     *
+     * @return the number of lanes of {@code IntVector.SPECIES_PREFERRED}, or 0 if the module is not present
+     */
+    private static int getVectorLanes() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return 0;
+        }
+        try {
+            Object species = Class.forName(VECTOR_MODULE + ".IntVector").getField("SPECIES_PREFERRED").get(null);
+            return (Integer) Class.forName(VECTOR_MODULE + ".VectorSpecies").getMethod("length").invoke(species);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a classifier classifying one package after the other, for example to compare it with a faster one.
+     *
+     * @param tariff
+     *            the tariff packages are classified with
+     * @return the scalar classifier
+     */
+    public static BatchClassifier scalar(Tariff tariff) {
+        return new Scalar(tariff);
+    }
+
+    /**
+     * Returns the tariff packages are classified with.
+     *
+     * @return the tariff
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Returns a short description of this classifier.
+     *
+     * @return the name of the implementation
+     */
+    public abstract String getName();
+
+    /**
+     * Determines the tariff tiers for all packages of a batch.
+     *
+     * @param batch
+     *            the packages to classify
+     * @param tiers
+     *            the array receiving the tier indices, at least {@code batch.size()} long
+     */
+    public abstract void classify(PacketBatch batch, int[] tiers);
+
+    /**
+     * Calculates the shipping costs in cents for all packages of a batch.
+     *
+     * @param batch
+     *            the packages to price
+     * @param cents
+     *            the array receiving the shipping costs in cents, at least {@code batch.size()} long
+     */
+    public abstract void priceCents(PacketBatch batch, int[] cents);
+
+    /**
+     * Adds up the shipping costs of all packages of a batch.
+     *
+     * @param batch
+     *            the packages to price
+     * @return the total shipping costs in cents
+     */
+    public abstract long sumCents(PacketBatch batch);
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Checks that this classifier returns the same tiers and prices as another one.
+     *
+     * <p>
+     * The packages checked combine, for every dimension and the weight, values at, one below and one above each limit
+     * of the tariff, plus zero, negative and very large values. Every value is checked in every position, next to
+     * {@value #PROBE_NEIGHBORS} different combinations of the other values.
+     * </p>
+     *
+     * @param other
+     *            the classifier to compare with
+     * @return whether both classifiers agree on all checked packages
+     */
+    boolean matches(BatchClassifier other) {
+        // Collect the interesting values of every limit
+        int tierCount = tariff.getTierCount();
+        int[] values = new int[tierCount * 12 + 4];
+        int count = 0;
+        values[count++] = -1;
+        values[count++] = 0;
+        values[count++] = 1;
+        values[count++] = Integer.MAX_VALUE;
+        for (int t = 0; t < tierCount; t++) {
+            for (int limit : tariff.getLimits(t)) {
+                if (limit != Tariff.UNLIMITED) {
+                    values[count++] = limit - 1;
+                    values[count++] = limit;
+                    values[count++] = limit + 1;
+                }
+            }
+        }
+
+        // Put every value into every position, next to a few other values, checking one batch at a time
+        PacketBatch batch = new PacketBatch(PROBE_BATCH_SIZE);
+        for (int a = 0; a < count; a++) {
+            for (int b = 1; b <= PROBE_NEIGHBORS; b++) {
+                int x = values[(a + b) % count];
+                int y = values[(a + 3 * b) % count];
+                int z = values[(a + 7 * b) % count];
+                batch.add(values[a], x, y, z);
+                batch.add(x, values[a], y, z);
+                batch.add(x, y, values[a], z);
+                batch.add(x, y, z, values[a]);
+                if (batch.size() > PROBE_BATCH_SIZE - 4) {
+                    if (!matchesBatch(other, batch)) {
+                        return false;
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        return matchesBatch(other, batch);
+    }
+
+    /**
+     * Checks that this classifier returns the same tiers and prices as another one for a batch.
+     *
+     * @param other
+     *            the classifier to compare with
+     * @param batch
+     *            the packages to compare
+     * @return whether both classifiers agree on all packages of the batch
+     */
+    private boolean matchesBatch(BatchClassifier other, PacketBatch batch) {
+        int n = batch.size();
+        int[] expected = new int[n];
+        int[] actual = new int[n];
+        other.classify(batch, expected);
+        classify(batch, actual);
+        if (!Arrays.equals(expected, actual)) {
+            return false;
+        }
+        other.priceCents(batch, expected);
+        priceCents(batch, actual);
+        return Arrays.equals(expected, actual) && other.sumCents(batch) == sumCents(batch);
+    }
+
+    /**
+     * Classifier classifying one package after the other.
+     */
+    static final class Scalar extends BatchClassifier {
+
+        /**
+         * Constructs a new scalar classifier.
+         *
+         * @param tariff
+         *            the tariff packages are classified with
+         */
+        Scalar(Tariff tariff) {
+            super(tariff);
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void classify(PacketBatch batch, int[] tiers) {
+            int[] length = batch.length;
+            int[] width = batch.width;
+            int[] height = batch.height;
+            int[] weight = batch.weight;
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                tiers[i] = tariff.classify(length[i], width[i], height[i], weight[i]);
+            }
+        }
+
+        @Override
+        public void priceCents(PacketBatch batch, int[] cents) {
+            int[] length = batch.length;
+            int[] width = batch.width;
+            int[] height = batch.height;
+            int[] weight = batch.weight;
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                cents[i] = tariff.getPriceCents(tariff.classify(length[i], width[i], height[i], weight[i]));
+            }
+        }
+
+        @Override
+        public long sumCents(PacketBatch batch) {
+            int[] length = batch.length;
+            int[] width = batch.width;
+            int[] height = batch.height;
+            int[] weight = batch.weight;
+            long total = 0;
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                total += tariff.getPriceCents(tariff.classify(length[i], width[i], height[i], weight[i]));
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package control;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+import data.PacketBatch;
+import data.PacketStore;
+
+/**
+ * Compact binary manifest format.
+ *
+ * <p>
+ * A binary manifest stores the packages of a manifest as fixed-width records, so it can be opened by memory-mapping the
+ * file instead of parsing text. All numbers are little-endian. The file consists of
+ * </p>
+ * <ul>
+ * <li>a header of {@value #HEADER_SIZE} bytes: magic number, version, flags, record size, records per block, number of
+ * records, position and number of entries of the block index, and a CRC-32C of the header,</li>
+ * <li>the records of {@value data.PacketStore#RECORD_SIZE} bytes each, with length, width, height and weight as
+ * {@code int}s in the layout of {@link PacketStore},</li>
+ * <li>the block index with one entry of {@value #INDEX_ENTRY_SIZE} bytes per block of {@value #BLOCK_RECORDS} records:
+ * the position of the block, its number of records and, if the file was written with checksums, the CRC-32C of its
+ * records.</li>
+ * </ul>
+ *
+ * <p>
+ * {@link #read(Path, boolean)} maps the records as the segments of a read-only {@link PacketStore}, so opening a
+ * manifest of 50 million packages only takes the time to map 800 MB. The packages are read from the page cache when
+ * they are priced.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class BinaryManifest {
+
+    /** File name extension of binary manifests. */
+    public static final String EXTENSION = ".pcm";
+
+    /** File name extension of text manifests. */
+    public static final String TEXT_EXTENSION = ".txt";
+
+    /** Magic number at the start of a binary manifest, "PCMB" in ASCII. */
+    static final int MAGIC = 0x424D4350;
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Flag set if the block index contains checksums. */
+    static final int FLAG_CHECKSUM = 1;
+
+    /** Size of the header in bytes. */
+    public static final int HEADER_SIZE = 64;
+
+    /** Number of records per block. */
+    public static final int BLOCK_RECORDS = 1 << 16;
+
+    /** Size of a block index entry in bytes. */
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    /** Number of header bytes covered by the header checksum. */
+    private static final int HEADER_CHECKSUM_OFFSET = 40;
+
+    /**
+     * Prevents instantiation.
+     */
+    private BinaryManifest() {
+    }
+
+    /**
+     * Returns whether a file is a binary manifest, judged by its name.
+     *
+     * @param file
+     *            the file
+     * @return {@code true} if the name ends with {@value #EXTENSION}
+     */
+    public static boolean isBinary(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION);
+    }
+
+    /**
+     * Writes all packages of a store as a binary manifest.
+     *
+     * <p>
+     * The file is written to a temporary file next to it first and then moved into place, so an existing manifest is
+     * never left half-written.
+     * </p>
+     *
+     * @param store
+     *            the packages to write
+     * @param file
+     *            the binary manifest to write
+     * @param checksum
+     *            whether to store a checksum per block
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(PacketStore store, Path file, boolean checksum) throws IOException {
+        try (BlockWriter writer = new BlockWriter(file, checksum)) {
+            PacketStore.Cursor cursor = store.cursor();
+            while (cursor.next()) {
+                writer.add(cursor.getLength(), cursor.getWidth(), cursor.getHeight(), cursor.getWeight());
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Opens a binary manifest as a read-only store.
+     *
+     * <p>
+     * The records are memory-mapped, not copied. Verifying the checksums reads the whole file; without verification
+     * only the header and the block index are checked.
+     * </p>
+     *
+     * @param file
+     *            the binary manifest
+     * @param verify
+     *            whether to verify the block checksums, if the file has any
+     * @return the store of the packages
+     * @throws IOException
+     *             if the file cannot be read, is not a binary manifest or is corrupt
+     */
+    public static PacketStore read(Path file, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a binary manifest: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary manifest: " + file);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("Unsupported binary manifest version " + header.getShort(4) + ": " + file);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(header.duplicate().limit(HEADER_CHECKSUM_OFFSET));
+            if ((int) crc.getValue() != header.getInt(HEADER_CHECKSUM_OFFSET)) {
+                throw new IOException("Corrupt binary manifest header: " + file);
+            }
+            boolean hasChecksums = (header.getShort(6) & FLAG_CHECKSUM) != 0;
+            int recordSize = header.getInt(8);
+            int blockRecords = header.getInt(12);
+            long records = header.getLong(16);
+            long indexPosition = header.getLong(24);
+            int blocks = header.getInt(32);
+            if (recordSize != PacketStore.RECORD_SIZE || blockRecords <= 0 || records < 0
+                    || blocks != (records + blockRecords - 1) / blockRecords
+                    || indexPosition != HEADER_SIZE + records * recordSize
+                    || fileSize != indexPosition + (long) blocks * INDEX_ENTRY_SIZE) {
+                throw new IOException("Corrupt binary manifest: " + file);
+            }
+
+            // Check the block index
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition,
+                    (long) blocks * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < blocks; b++) {
+                long position = index.getLong(b * INDEX_ENTRY_SIZE);
+                int count = index.getInt(b * INDEX_ENTRY_SIZE + 8);
+                if (position != HEADER_SIZE + (long) b * blockRecords * recordSize
+                        || count != Math.min(blockRecords, records - (long) b * blockRecords)) {
+                    throw new IOException("Corrupt block index entry " + b + ": " + file);
+                }
+            }
+
+            // Map the records as segments of the store
+            List<ByteBuffer> segments = new ArrayList<>();
+            for (long first = 0; first < records; first += PacketStore.SEGMENT_RECORDS) {
+                long count = Math.min(PacketStore.SEGMENT_RECORDS, records - first);
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize,
+                        count * recordSize).order(ByteOrder.LITTLE_ENDIAN));
+            }
+
+            if (verify && hasChecksums) {
+                for (int b = 0; b < blocks; b++) {
+                    long first = (long) b * blockRecords;
+                    int count = index.getInt(b * INDEX_ENTRY_SIZE + 8);
+                    ByteBuffer segment = segments.get((int) (first / PacketStore.SEGMENT_RECORDS));
+                    int offset = (int) (first % PacketStore.SEGMENT_RECORDS) * recordSize;
+                    crc.reset();
+                    crc.update(segment.duplicate().position(offset).limit(offset + count * recordSize));
+                    if ((int) crc.getValue() != index.getInt(b * INDEX_ENTRY_SIZE + 12)) {
+                        throw new IOException("Checksum mismatch in block " + b + ": " + file);
+                    }
+                }
+            }
+            return PacketStore.wrap(segments, records);
+        }
+    }
+
+    /**
+     * Converts a text manifest into a binary manifest.
+     *
+     * <p>
+     * Malformed lines, comments and fields other than the dimensions and the weight are not kept. The packages are
+     * written while the text is parsed, so the conversion needs little memory however large the manifest is.
+     * </p>
+     *
+     * @param text
+     *            the text manifest
+     * @param binary
+     *            the binary manifest to write
+     * @param checksum
+     *            whether to store a checksum per block
+     * @return the summary of the packages, priced with the default tariff
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    public static ManifestSummary toBinary(Path text, Path binary, boolean checksum) throws IOException {
+        try (BlockWriter writer = new BlockWriter(binary, checksum)) {
+            // Write the packages while parsing, so only one block is held in memory
+            ManifestSummary summary = new ManifestReader(new Calculator()).forEachBatch(text,
+                    (batch, tiers) -> writer.add(batch), null);
+            writer.finish();
+            return summary;
+        }
+    }
+
+    /**
+     * Converts a binary manifest into a text manifest with one package per line.
+     *
+     * @param binary
+     *            the binary manifest
+     * @param text
+     *            the text manifest to write
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    public static void toText(Path binary, Path text) throws IOException {
+        writeText(read(binary, true), text);
+    }
+
+    /**
+     * Converts a manifest into another manifest, choosing the formats by the file names.
+     *
+     * <p>
+     * Binary manifests are written with checksums. If both files have the same format, the manifest is copied.
+     * </p>
+     *
+     * @param source
+     *            the manifest to convert
+     * @param target
+     *            the manifest to write
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    public static void convert(Path source, Path target) throws IOException {
+        boolean binarySource = isBinary(source);
+        boolean binaryTarget = isBinary(target);
+        if (binarySource == binaryTarget) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } else if (binaryTarget) {
+            toBinary(source, target, true);
+        } else {
+            toText(source, target);
+        }
+    }
+
+    /**
+     * Writes all packages of a store as a text manifest with one package per line.
+     *
+     * <p>
+     * The file starts with a comment naming the fields, followed by length, width, height and weight separated by
+     * spaces. It can be read by {@link ManifestReader}.
+     * </p>
+     *
+     * @param store
+     *            the packages to write
+     * @param text
+     *            the text manifest to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void writeText(PacketStore store, Path text) throws IOException {
+        Path temporary = text.resolveSibling(text.getFileName() + ".tmp");
+        byte[] buffer = new byte[1 << 16];
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            out.write("# length width height weight\n".getBytes(StandardCharsets.US_ASCII));
+            int used = 0;
+            PacketStore.Cursor cursor = store.cursor();
+            while (cursor.next()) {
+                // A line has at most 4 * 11 bytes
+                if (used > buffer.length - 48) {
+                    out.write(buffer, 0, used);
+                    used = 0;
+                }
+                used = appendInt(buffer, used, cursor.getLength());
+                buffer[used++] = ' ';
+                used = appendInt(buffer, used, cursor.getWidth());
+                buffer[used++] = ' ';
+                used = appendInt(buffer, used, cursor.getHeight());
+                buffer[used++] = ' ';
+                used = appendInt(buffer, used, cursor.getWeight());
+                buffer[used++] = '\n';
+            }
+            out.write(buffer, 0, used);
+        }
+        Files.move(temporary, text, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the decimal digits of a number into a buffer.
+     *
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position of the first digit
+     * @param value
+     *            the number
+     * @return the position after the last digit
+     */
+    private static int appendInt(byte[] buffer, int position, int value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            if (value == Integer.MIN_VALUE) {
+                // Cannot be negated; the digits of 2147483648
+                byte[] digits = "2147483648".getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(digits, 0, buffer, position, digits.length);
+                return position + digits.length;
+            }
+            value = -value;
+        }
+        int end = position;
+        int rest = value;
+        do {
+            end++;
+            rest /= 10;
+        } while (rest != 0);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Writer of a binary manifest, block by block.
+     *
+     * <p>
+     * The records are written to a temporary file next to the manifest as soon as a block is full. The block index and
+     * the header are written by {@link #finish()}, which then moves the file into place, so an existing manifest is
+     * never left half-written. Closing the writer without finishing it deletes the temporary file.
+     * </p>
+     */
+    private static final class BlockWriter implements Closeable {
+
+        /** The binary manifest to write. */
+        private final Path file;
+
+        /** The temporary file written first. */
+        private final Path temporary;
+
+        /** Whether to store a checksum per block. */
+        private final boolean checksum;
+
+        /** The channel of the temporary file. */
+        private final FileChannel channel;
+
+        /** Records of the current block. */
+        private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_RECORDS * PacketStore.RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        /** Computes the checksums. */
+        private final CRC32C crc = new CRC32C();
+
+        /** Checksums of the written blocks. */
+        private int[] checksums = new int[16];
+
+        /** Number of written blocks. */
+        private int blocks;
+
+        /** Number of records, including those of the current block. */
+        private long records;
+
+        /** Whether the manifest was moved into place. */
+        private boolean finished;
+
+        /**
+         * Constructs a new BlockWriter, creating the temporary file.
+         *
+         * @param file
+         *            the binary manifest to write
+         * @param checksum
+         *            whether to store a checksum per block
+         * @throws IOException
+         *             if the temporary file cannot be created
+         */
+        BlockWriter(Path file, boolean checksum) throws IOException {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.checksum = checksum;
+            channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Adds a package.
+         *
+         * @param length
+         *            the length in millimeters
+         * @param width
+         *            the width in millimeters
+         * @param height
+         *            the height in millimeters
+         * @param weight
+         *            the weight in grams
+         * @throws IOException
+         *             if a full block cannot be written
+         */
+        void add(int length, int width, int height, int weight) throws IOException {
+            block.putInt(length).putInt(width).putInt(height).putInt(weight);
+            records++;
+            if (!block.hasRemaining()) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * Adds all packages of a batch.
+         *
+         * @param batch
+         *            the packages
+         * @throws IOException
+         *             if a full block cannot be written
+         */
+        void add(PacketBatch batch) throws IOException {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                add(batch.length[i], batch.width[i], batch.height[i], batch.weight[i]);
+            }
+        }
+
+        /**
+         * Writes the current block, if it holds any records, and remembers its checksum.
+         *
+         * @throws IOException
+         *             if the block cannot be written
+         */
+        private void writeBlock() throws IOException {
+            block.flip();
+            if (block.hasRemaining()) {
+                if (blocks == checksums.length) {
+                    checksums = Arrays.copyOf(checksums, blocks * 2);
+                }
+                if (checksum) {
+                    crc.reset();
+                    crc.update(block.duplicate());
+                    checksums[blocks] = (int) crc.getValue();
+                }
+                blocks++;
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+            block.clear();
+        }
+
+        /**
+         * Writes the last block, the block index and the header and moves the manifest into place.
+         *
+         * @throws IOException
+         *             if the manifest cannot be written
+         */
+        void finish() throws IOException {
+            writeBlock();
+
+            // Write the block index and finally the header
+            long indexPosition = HEADER_SIZE + records * PacketStore.RECORD_SIZE;
+            ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < blocks; b++) {
+                int count = (int) Math.min(BLOCK_RECORDS, records - (long) b * BLOCK_RECORDS);
+                index.putLong(HEADER_SIZE + (long) b * BLOCK_RECORDS * PacketStore.RECORD_SIZE).putInt(count)
+                        .putInt(checksums[b]);
+            }
+            index.flip();
+            while (index.hasRemaining()) {
+                channel.write(index, indexPosition + index.position());
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort((short) VERSION).putShort((short) (checksum ? FLAG_CHECKSUM : 0))
+                    .putInt(PacketStore.RECORD_SIZE).putInt(BLOCK_RECORDS).putLong(records).putLong(indexPosition)
+                    .putInt(blocks);
+            crc.reset();
+            crc.update(header.array(), 0, HEADER_CHECKSUM_OFFSET);
+            header.putInt(HEADER_CHECKSUM_OFFSET, (int) crc.getValue());
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (!finished) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
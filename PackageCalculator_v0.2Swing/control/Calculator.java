@@ -1,13 +1,35 @@
 package control;
 
+import java.nio.ByteBuffer;
+
+import data.Money;
 import data.Packet;
+import data.PacketBatch;
+import data.PacketStore;
 
 /**
  * Calculator for computing shipping costs based on package dimensions and weight.
  *
  * <p>
- * This class provides methods to calculate shipping costs according to predefined pricing rules based on package size
- * and weight.
+ * This class provides methods to calculate shipping costs according to the pricing rules of a {@link Tariff}. Besides
+ * pricing a single {@link Packet}, it can price whole batches of packages given as separate columns or kept in an
+ * off-heap {@link PacketStore}, which avoids creating one object per package.
+ * </p>
+ *
+ * <p>
+ * All pricing methods report the number of priced packages and their latency to {@link PricingMetrics#getGlobal()}.
+ * Batches are timed as a whole and single packages are sampled. Classifying a batch without pricing it is not
+ * reported. The batch methods also emit a {@link PricingBatchEvent} for the flight recorder.
+ * </p>
+ *
+ * <p>
+ * Batches given as a {@link PacketBatch} are classified by a {@link BatchClassifier}, which compares several packages
+ * at once with the Vector API where the JVM and CPU support it.
+ * </p>
+ *
+ * <p>
+ * Prices are calculated as whole cents, so sums are exact. The methods returning {@code double} euros are kept for
+ * compatibility.
  * </p>
  *
  * @author I. Bogicevic
@@ -17,11 +39,62 @@ import data.Packet;
  */
 public class Calculator {
 
+    /** The tariff used to price packages. */
+    private final Tariff tariff;
+
+    /** The classifier used for batches, or {@code null} until it is first needed. */
+    private volatile BatchClassifier batchClassifier;
+
+    /**
+     * Constructs a new Calculator using the default tariff.
+     *
+     * @see Tariff#getDefault()
+     */
+    public Calculator() {
+        this(Tariff.getDefault());
+    }
+
+    /**
+     * Constructs a new Calculator using the given tariff.
+     *
+     * @param tariff
+     *            the tariff used to price packages
+     */
+    public Calculator(Tariff tariff) {
+        this.tariff = tariff;
+    }
+
+    /**
+     * Returns the tariff used by this calculator.
+     *
+     * @return the tariff
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Returns the classifier used for batches, choosing it on first use.
+     *
+     * @return the batch classifier for the tariff
+     * @see BatchClassifier#forTariff(Tariff)
+     */
+    public BatchClassifier getBatchClassifier() {
+        BatchClassifier classifier = batchClassifier;
+        if (classifier == null) {
+            // Racing threads may both choose one; they are interchangeable
+            classifier = BatchClassifier.forTariff(tariff);
+            batchClassifier = classifier;
+        }
+        return classifier;
+    }
+
     /**
      * Calculates the shipping cost for a given package.
      *
      * <p>
-     * The shipping cost is determined by the package dimensions and weight according to the following pricing table:
+     * The shipping cost is determined by the package dimensions and weight according to the tariff. The built-in
+     * tariff uses the following pricing table, where the dimensions may be given in any order:
      * </p>
      * <ul>
      * <li>Up to 300×300×150 mm: €3.89</li>
@@ -33,28 +106,236 @@ public class Calculator {
      *
      * @param pack
      *            the package for which to calculate shipping costs
+     * @return the shipping cost in cents
+     */
+    public int calcShippingCostsCents(Packet pack) {
+        long start = PricingMetrics.startSingle();
+        int cents = tariff.getPriceCents(tariff.classify(pack.length, pack.width, pack.height, pack.weight));
+        PricingMetrics.stopSingle(start);
+        return cents;
+    }
+
+    /**
+     * Calculates the shipping cost for a given package in euros.
+     *
+     * @param pack
+     *            the package for which to calculate shipping costs
      * @return the shipping cost in euros
+     * @see #calcShippingCostsCents(Packet)
      */
     public double calcShippingCosts(Packet pack) {
-        double shippingCosts;
-        // Check for small package: up to 300×300×150 mm
-        if ((pack.height <= 300) && (pack.width <= 300) && (pack.height <= 150)) {
-            shippingCosts = 3.89;
+        return Money.toEuros(calcShippingCostsCents(pack));
+    }
+
+    /**
+     * Calculates the shipping costs in cents for all packages of a batch.
+     *
+     * <p>
+     * The cost of the package at index {@code i} is written to {@code cents[i]}. The result is exactly the same as
+     * calling {@link #calcShippingCostsCents(Packet)} for every package. The loop does not allocate.
+     * </p>
+     *
+     * @param batch
+     *            the packages for which to calculate shipping costs
+     * @param cents
+     *            the array receiving the shipping costs in cents, at least {@code batch.size()} long
+     */
+    public void calcShippingCostsCents(PacketBatch batch, int[] cents) {
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        long start = PricingMetrics.start();
+        int n = batch.size();
+        getBatchClassifier().priceCents(batch, cents);
+        PricingMetrics.stop(n, start);
+        FlightEvents.reportBatch(event, "calcShippingCostsCents", n);
+    }
+
+    /**
+     * Adds up the shipping costs of all packages of a batch.
+     *
+     * <p>
+     * The sum is exact and calculated without allocating.
+     * </p>
+     *
+     * @param batch
+     *            the packages for which to calculate shipping costs
+     * @return the total shipping costs in cents
+     */
+    public long sumShippingCostsCents(PacketBatch batch) {
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        long start = PricingMetrics.start();
+        int n = batch.size();
+        long total = getBatchClassifier().sumCents(batch);
+        PricingMetrics.stop(n, start);
+        FlightEvents.reportBatch(event, "sumShippingCostsCents", n);
+        return total;
+    }
+
+    /**
+     * Calculates the shipping costs for all packages of a batch.
+     *
+     * <p>
+     * The cost of the package at index {@code i} is written to {@code costs[i]}. The result is exactly the same as
+     * calling {@link #calcShippingCosts(Packet)} for every package.
+     * </p>
+     *
+     * @param batch
+     *            the packages for which to calculate shipping costs
+     * @param costs
+     *            the array receiving the shipping costs in euros, at least {@code batch.size()} long
+     */
+    public void calcShippingCosts(PacketBatch batch, double[] costs) {
+        calcShippingCosts(batch.length, batch.width, batch.height, batch.weight, costs, 0, batch.size());
+    }
+
+    /**
+     * Calculates the shipping costs for a range of packages given as separate columns.
+     *
+     * <p>
+     * For every index {@code i} with {@code from <= i < to}, the cost of the package described by {@code length[i]},
+     * {@code width[i]}, {@code height[i]} and {@code weight[i]} is written to {@code costs[i]}. The result is exactly
+     * the same as calling {@link #calcShippingCosts(Packet)} for every package. The loop does not allocate.
+     * </p>
+     *
+     * @param length
+     *            the lengths of the packages in millimeters
+     * @param width
+     *            the widths of the packages in millimeters
+     * @param height
+     *            the heights of the packages in millimeters
+     * @param weight
+     *            the weights of the packages in grams
+     * @param costs
+     *            the array receiving the shipping costs in euros
+     * @param from
+     *            the index of the first package to price (inclusive)
+     * @param to
+     *            the index of the last package to price (exclusive)
+     */
+    public void calcShippingCosts(int[] length, int[] width, int[] height, int[] weight, double[] costs, int from,
+            int to) {
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        long start = PricingMetrics.start();
+        for (int i = from; i < to; i++) {
+            costs[i] = tariff.getPrice(tariff.classify(length[i], width[i], height[i], weight[i]));
         }
-        // Check for medium package: up to 600×300×150 mm
-        if ((pack.height <= 600) && (pack.width <= 300) && (pack.height <= 150)) {
-            shippingCosts = 4.39;
+        PricingMetrics.stop(to - from, start);
+        FlightEvents.reportBatch(event, "calcShippingCosts", to - from);
+    }
+
+    /**
+     * Determines the tariff tier of a package.
+     *
+     * <p>
+     * Unlike the classification of batches, which is reported by the callers that price the tiers afterwards, this
+     * counts the package as priced, just like {@link #calcShippingCostsCents(Packet)}.
+     * </p>
+     *
+     * @param pack
+     *            the package to classify
+     * @return the index of the tier in the tariff
+     */
+    public int classify(Packet pack) {
+        long start = PricingMetrics.startSingle();
+        int tier = tariff.classify(pack.length, pack.width, pack.height, pack.weight);
+        PricingMetrics.stopSingle(start);
+        return tier;
+    }
+
+    /**
+     * Determines the tariff tiers for all packages of a batch.
+     *
+     * <p>
+     * The tier index of the package at index {@code i} is written to {@code tiers[i]}.
+     * </p>
+     *
+     * @param batch
+     *            the packages to classify
+     * @param tiers
+     *            the array receiving the tier indices, at least {@code batch.size()} long
+     */
+    public void classify(PacketBatch batch, int[] tiers) {
+        getBatchClassifier().classify(batch, tiers);
+    }
+
+    /**
+     * Calculates the shipping costs for a range of packages of a store.
+     *
+     * <p>
+     * The cost of the package at index {@code first + i} is written to {@code costs[i]}. The packages are read directly
+     * from the off-heap records without creating {@link Packet} objects.
+     * </p>
+     *
+     * @param store
+     *            the store containing the packages
+     * @param first
+     *            the index of the first package to price
+     * @param costs
+     *            the array receiving the shipping costs in euros
+     * @param count
+     *            the number of packages to price
+     * @throws IndexOutOfBoundsException
+     *             if the range exceeds the store or the array
+     */
+    public void calcShippingCosts(PacketStore store, long first, double[] costs, int count) {
+        if (first < 0 || count < 0 || first + count > store.size() || count > costs.length) {
+            throw new IndexOutOfBoundsException("Invalid range " + first + " + " + count);
         }
-        // Check for large package: up to 1200×600×600 mm and weight ≤ 5000g
-        if ((pack.height <= 1200) && (pack.width <= 600) && (pack.height <= 600) && pack.weight <= 5000) {
-            shippingCosts = 5.99;
-        } else if (pack.weight <= 10000) {
-            // Extra large package with weight ≤ 10000g
-            shippingCosts = 7.99;
-        } else {
-            // Extra large package with weight > 10000g
-            shippingCosts = 14.99;
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        long start = PricingMetrics.start();
+        int i = 0;
+        while (i < count) {
+            long index = first + i;
+            int segmentIndex = (int) (index / PacketStore.SEGMENT_RECORDS);
+            int record = (int) (index % PacketStore.SEGMENT_RECORDS);
+            ByteBuffer segment = store.getSegment(segmentIndex);
+            int end = Math.min(store.getSegmentSize(segmentIndex), record + count - i);
+            for (; record < end; record++, i++) {
+                costs[i] = tariff.getPrice(classify(segment, record * PacketStore.RECORD_SIZE));
+            }
         }
-        return shippingCosts;
+        PricingMetrics.stop(count, start);
+        FlightEvents.reportBatch(event, "calcShippingCosts(PacketStore)", count);
+    }
+
+    /**
+     * Prices all packages of a store.
+     *
+     * <p>
+     * The packages are read directly from the off-heap records without creating {@link Packet} objects.
+     * </p>
+     *
+     * @param store
+     *            the store containing the packages
+     * @return the summary of the priced packages
+     */
+    public ManifestSummary summarize(PacketStore store) {
+        ManifestParseEvent event = FlightEvents.beginParse();
+        ManifestSummary summary = new ManifestSummary(tariff);
+        for (int s = 0; s < store.getSegmentCount(); s++) {
+            long start = PricingMetrics.start();
+            ByteBuffer segment = store.getSegment(s);
+            int end = store.getSegmentSize(s) * PacketStore.RECORD_SIZE;
+            for (int offset = 0; offset < end; offset += PacketStore.RECORD_SIZE) {
+                summary.count(classify(segment, offset));
+            }
+            PricingMetrics.stop(store.getSegmentSize(s), start);
+        }
+        FlightEvents.reportParse(event, "PacketStore", 1, summary);
+        return summary;
+    }
+
+    /**
+     * Determines the tariff tier of a package record.
+     *
+     * @param segment
+     *            the segment containing the record
+     * @param offset
+     *            the offset of the record within the segment
+     * @return the index of the tier
+     */
+    private int classify(ByteBuffer segment, int offset) {
+        return tariff.classify(segment.getInt(offset + PacketStore.LENGTH_OFFSET),
+                segment.getInt(offset + PacketStore.WIDTH_OFFSET), segment.getInt(offset + PacketStore.HEIGHT_OFFSET),
+                segment.getInt(offset + PacketStore.WEIGHT_OFFSET));
     }
 }
@@ -0,0 +1,1356 @@
+package control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import data.Money;
+import data.Packet;
+
+/**
+ * Proposes how to consolidate items going to the same destination into packets with the lowest total shipping costs.
+ *
+ * <p>
+ * The items are packed into boxes no larger than a container, which defaults to the largest limits the tiers of the
+ * tariff set for each dimension and the weight (see {@link #getDefaultContainer(Tariff)}). A packet is priced by the
+ * bounding box of its items and their total weight, exactly like {@link Calculator#calcShippingCostsCents(Packet)}
+ * prices it. Items larger or heavier than the container are shipped on their own.
+ * </p>
+ *
+ * <p>
+ * Items are placed into a packet with the extreme point heuristic for three-dimensional bin packing: a packet keeps a
+ * list of corners where the next item may go, created by projecting the corners of every placed item onto the items
+ * and walls behind it. An item is tried at every extreme point in all six orientations, and the placement leading to
+ * the cheapest tier, then to the smallest bounding box, is taken. Items are inserted one after the other into the
+ * packet whose price rises least, or into a new packet if that is cheaper.
+ * </p>
+ *
+ * <p>
+ * The search runs on several threads until the time budget is used up. Every thread starts from a different item order
+ * and then repeatedly removes a few packets from its current solution and inserts their items again in a random order,
+ * keeping the result according to late acceptance hill climbing. Packets not touched by a move are shared with the
+ * previous solution instead of being copied, so a move costs about as much as inserting the removed items. The best
+ * solution of all threads is kept, so the answer improves the longer the search runs, and the search stops early when
+ * it reaches a lower bound. Building the first solution also stops at the end of the budget: the items not inserted by
+ * then are shipped on their own, so even a very large order is answered in time. The number of threads is taken from
+ * the system property {@value ParallelManifestReader#PARALLELISM_PROPERTY} and defaults to the number of processors.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class Consolidator {
+
+    /** Default time budget of a search in milliseconds; orders of several hundred items are packed well within it. */
+    public static final long DEFAULT_BUDGET_MILLIS = 500;
+
+    /** Maximum number of items consolidated at once. */
+    public static final int MAX_ITEMS = 10_000;
+
+    /** Container size used for dimensions and weights no tier limits; small enough that sums do not overflow. */
+    static final int UNBOUNDED = 1 << 28;
+
+    /** Largest volume in cubic millimeters that is told apart; {@value #MAX_ITEMS} of them do not overflow. */
+    static final long MAX_VOLUME = 1L << 48;
+
+    /** Number of earlier costs late acceptance compares a candidate with. */
+    private static final int HISTORY_LENGTH = 64;
+
+    /** Maximum number of packets removed by one move. */
+    private static final int MAX_REMOVED_PACKETS = 3;
+
+    /** Number of moves without reaching the best solution after which a thread continues from the best solution. */
+    private static final int RESTART_MOVES = 2_000;
+
+    /**
+     * A packet of a {@link Plan}: a group of items with the box they are packed into.
+     */
+    public static class Group {
+
+        /** The bounding box of the items in millimeters and their total weight in grams. */
+        public final Packet packet;
+
+        /** The tier of the packet. */
+        public final int tier;
+
+        /** The price of the packet in cents. */
+        public final int cents;
+
+        /** Indices of the items in the list passed to {@link Consolidator#consolidate(List, long)}. */
+        private final int[] items;
+
+        /** Position and oriented size of every item: x, y, z, length, width, height. */
+        private final int[] placements;
+
+        /**
+         * Constructs a Group.
+         *
+         * @param packet
+         *            the bounding box and total weight of the items
+         * @param tier
+         *            the tier of the packet
+         * @param cents
+         *            the price of the packet in cents
+         * @param items
+         *            the indices of the items
+         * @param placements
+         *            six values per item: its position and its oriented size
+         */
+        Group(Packet packet, int tier, int cents, int[] items, int[] placements) {
+            this.packet = packet;
+            this.tier = tier;
+            this.cents = cents;
+            this.items = items;
+            this.placements = placements;
+        }
+
+        /**
+         * Returns the items packed into this packet.
+         *
+         * @return the indices of the items in the list passed to {@link Consolidator#consolidate(List, long)}
+         */
+        public int[] getItems() {
+            return items.clone();
+        }
+
+        /**
+         * Returns where an item lies in the packet.
+         *
+         * @param index
+         *            the index of the item within this group, not within the order
+         * @return the position of the item's corner closest to the packet's origin, followed by its size along the
+         *         three axes of the packet, all in millimeters
+         */
+        public int[] getPlacement(int index) {
+            return Arrays.copyOfRange(placements, index * 6, index * 6 + 6);
+        }
+    }
+
+    /**
+     * The proposed consolidation of an order.
+     */
+    public static class Plan {
+
+        /** The tariff the packets are priced with. */
+        private final Tariff tariff;
+
+        /** The packets. */
+        private final List<Group> groups;
+
+        /** The number of items. */
+        private final int itemCount;
+
+        /** The costs of shipping every item on its own in cents. */
+        private final long separateCents;
+
+        /** The number of evaluated candidate solutions. */
+        private final long candidates;
+
+        /** The duration of the search in nanoseconds. */
+        private final long elapsedNanos;
+
+        /**
+         * Constructs a Plan.
+         *
+         * @param tariff
+         *            the tariff the packets are priced with
+         * @param groups
+         *            the packets
+         * @param itemCount
+         *            the number of items
+         * @param separateCents
+         *            the costs of shipping every item on its own in cents
+         * @param candidates
+         *            the number of evaluated candidate solutions
+         * @param elapsedNanos
+         *            the duration of the search in nanoseconds
+         */
+        Plan(Tariff tariff, List<Group> groups, int itemCount, long separateCents, long candidates,
+                long elapsedNanos) {
+            this.tariff = tariff;
+            this.groups = Collections.unmodifiableList(groups);
+            this.itemCount = itemCount;
+            this.separateCents = separateCents;
+            this.candidates = candidates;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the packets, the most expensive first.
+         *
+         * @return the packets
+         */
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        /**
+         * Returns the total shipping costs of all packets.
+         *
+         * @return the total costs in cents
+         */
+        public long getTotalCents() {
+            long total = 0;
+            for (Group group : groups) {
+                total += group.cents;
+            }
+            return total;
+        }
+
+        /**
+         * Returns the costs of shipping every item on its own.
+         *
+         * @return the costs in cents
+         */
+        public long getSeparateCents() {
+            return separateCents;
+        }
+
+        /**
+         * Returns the number of consolidated items.
+         *
+         * @return the number of items
+         */
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        /**
+         * Returns the number of candidate solutions evaluated by the search.
+         *
+         * @return the number of candidates
+         */
+        public long getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * Returns the duration of the search.
+         *
+         * @return the duration in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns a description of this plan with one line per packet.
+         *
+         * @return the totals followed by the size, weight, tier, price and items of every packet
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(itemCount).append(" items in ").append(groups.size()).append(" packets, total ");
+            Money.append(getTotalCents(), text).append(" instead of ");
+            Money.append(separateCents, text).append(String.format(" (%,d candidates in %.0f ms)", candidates,
+                    elapsedNanos / 1e6));
+            for (Group group : groups) {
+                text.append(System.lineSeparator()).append("  ").append(tariff.getTierName(group.tier)).append(' ');
+                text.append(group.packet.length).append('x').append(group.packet.width).append('x')
+                        .append(group.packet.height).append(" mm, ").append(group.packet.weight).append(" g, ");
+                Money.append(group.cents, text).append(":");
+                for (int item : group.items) {
+                    text.append(' ').append(item + 1);
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    /** The tariff packets are priced with. */
+    private final Tariff tariff;
+
+    /** Maximum size of a packet: largest, middle and smallest dimension, then weight. */
+    private final int[] container;
+
+    /** Number of threads searching. */
+    private final int parallelism;
+
+    /**
+     * Constructs a new Consolidator for the tariff of a calculator, using the default container.
+     *
+     * <p>
+     * The number of threads is taken from the system property {@value ParallelManifestReader#PARALLELISM_PROPERTY} and
+     * defaults to the number of processors.
+     * </p>
+     *
+     * @param calculator
+     *            the calculator whose tariff prices the packets
+     */
+    public Consolidator(Calculator calculator) {
+        this(calculator.getTariff(), getDefaultContainer(calculator.getTariff()), Integer.getInteger(
+                ParallelManifestReader.PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructs a new Consolidator.
+     *
+     * @param tariff
+     *            the tariff packets are priced with
+     * @param container
+     *            the maximum size of a packet: three dimensions in millimeters in any order, then the weight in grams;
+     *            {@link Tariff#UNLIMITED} for no limit
+     * @param parallelism
+     *            the number of threads searching
+     * @throws IllegalArgumentException
+     *             if the container does not have four positive values or the parallelism is not positive
+     */
+    public Consolidator(Tariff tariff, int[] container, int parallelism) {
+        if (container.length != 4) {
+            throw new IllegalArgumentException("Expected 4 container limits, got " + container.length);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        int[] limits = new int[4];
+        for (int d = 0; d < 4; d++) {
+            if (container[d] <= 0) {
+                throw new IllegalArgumentException("Invalid container limit: " + container[d]);
+            }
+            limits[d] = Math.min(container[d], UNBOUNDED);
+        }
+        // Sort dimensions descending like the tier limits
+        Arrays.sort(limits, 0, 3);
+        int smallest = limits[0];
+        limits[0] = limits[2];
+        limits[2] = smallest;
+        this.tariff = tariff;
+        this.container = limits;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the default container of a tariff.
+     *
+     * <p>
+     * For each dimension and the weight, the container takes the largest limit any tier sets. A tariff whose last tier
+     * has no limits would otherwise always put all items into a single packet of that tier. Dimensions no tier limits
+     * are not limited.
+     * </p>
+     *
+     * @param tariff
+     *            the tariff
+     * @return the largest, middle and smallest dimension in millimeters, then the weight in grams
+     */
+    public static int[] getDefaultContainer(Tariff tariff) {
+        int[] container = new int[4];
+        for (int t = 0; t < tariff.getTierCount(); t++) {
+            int[] limits = tariff.getLimits(t);
+            for (int d = 0; d < 4; d++) {
+                if (limits[d] != Tariff.UNLIMITED) {
+                    container[d] = Math.max(container[d], limits[d]);
+                }
+            }
+        }
+        for (int d = 0; d < 4; d++) {
+            if (container[d] == 0) {
+                container[d] = Tariff.UNLIMITED;
+            }
+        }
+        return container;
+    }
+
+    /**
+     * Returns the maximum size of a packet.
+     *
+     * @return the largest, middle and smallest dimension in millimeters, then the weight in grams
+     */
+    public int[] getContainer() {
+        return container.clone();
+    }
+
+    /**
+     * Searches for the cheapest consolidation of items within a time budget.
+     *
+     * <p>
+     * If the calling thread is interrupted, the search stops and the best plan found so far is returned with the
+     * interrupt status set.
+     * </p>
+     *
+     * @param items
+     *            the items, each with positive dimensions and a weight that is not negative
+     * @param budgetMillis
+     *            the time budget in milliseconds
+     * @return the best plan found
+     * @throws IllegalArgumentException
+     *             if there are more than {@value #MAX_ITEMS} items or an item has an invalid size or weight
+     */
+    public Plan consolidate(List<Packet> items, long budgetMillis) {
+        if (items.size() > MAX_ITEMS) {
+            throw new IllegalArgumentException("Cannot consolidate more than " + MAX_ITEMS + " items");
+        }
+        long start = System.nanoTime();
+        Search search = new Search(items, start + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+
+        if (search.movable.length > 0) {
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                List<Future<?>> workers = new ArrayList<>();
+                for (int w = 0; w < parallelism; w++) {
+                    workers.add(executor.submit(new Worker(search, w)));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                        : new IllegalStateException(e.getCause());
+            } finally {
+                search.stopped = true;
+                executor.shutdownNow();
+            }
+        }
+        return search.toPlan(System.nanoTime() - start);
+    }
+
+    /**
+     * Tells whether a box fits into the container in some orientation.
+     *
+     * @param a
+     *            the first dimension
+     * @param b
+     *            the second dimension
+     * @param c
+     *            the third dimension
+     * @return whether the box fits
+     */
+    private boolean fitsContainer(int a, int b, int c) {
+        int largest = Math.max(Math.max(a, b), c);
+        int smallest = Math.min(Math.min(a, b), c);
+        int middle = a + b + c - largest - smallest;
+        return largest <= container[0] && middle <= container[1] && smallest <= container[2];
+    }
+
+    /**
+     * Position and price of an item placed into a bin.
+     */
+    private static final class Placement {
+        /** Position of the item. */
+        int x, y, z;
+
+        /** Size of the item in its orientation. */
+        int dx, dy, dz;
+
+        /** Bounding box of the bin with the item. */
+        int sizeX, sizeY, sizeZ;
+
+        /** Volume of the bounding box. */
+        long boxVolume;
+
+        /** Tier of the bin with the item. */
+        int tier;
+
+        /** Price of the bin with the item in cents. */
+        int price;
+
+        /**
+         * Copies another placement.
+         *
+         * @param other
+         *            the placement to copy
+         */
+        void set(Placement other) {
+            x = other.x;
+            y = other.y;
+            z = other.z;
+            dx = other.dx;
+            dy = other.dy;
+            dz = other.dz;
+            sizeX = other.sizeX;
+            sizeY = other.sizeY;
+            sizeZ = other.sizeZ;
+            boxVolume = other.boxVolume;
+            tier = other.tier;
+            price = other.price;
+        }
+    }
+
+    /**
+     * A packet being packed.
+     *
+     * <p>
+     * A bin belongs to the solution that created or copied it and is only changed by that solution. Solutions derived
+     * from it share the bin until they change it.
+     * </p>
+     */
+    private static final class Bin {
+        /** Identifier of the solution allowed to change this bin. */
+        final int owner;
+
+        /** Number of items in this bin. */
+        int count;
+
+        /** Indices of the items. */
+        int[] items;
+
+        /** Position and oriented size of the items, six values per item. */
+        int[] boxes;
+
+        /** Number of extreme points. */
+        int pointCount;
+
+        /** Coordinates of the extreme points, three values per point. */
+        int[] points;
+
+        /** Bounding box of the items. */
+        int sizeX, sizeY, sizeZ;
+
+        /** Total weight of the items. */
+        int weight;
+
+        /** Total volume of the items. */
+        long volume;
+
+        /** Tier of the bin. */
+        int tier;
+
+        /** Price of the bin in cents. */
+        int price;
+
+        /**
+         * Constructs an empty bin with a single extreme point at the origin.
+         *
+         * @param owner
+         *            the identifier of the solution creating the bin
+         */
+        Bin(int owner) {
+            this.owner = owner;
+            items = new int[4];
+            boxes = new int[24];
+            points = new int[24];
+            pointCount = 1;
+        }
+
+        /**
+         * Constructs a copy of a bin.
+         *
+         * @param other
+         *            the bin to copy
+         * @param owner
+         *            the identifier of the solution copying the bin
+         */
+        Bin(Bin other, int owner) {
+            this.owner = owner;
+            count = other.count;
+            items = other.items.clone();
+            boxes = other.boxes.clone();
+            pointCount = other.pointCount;
+            points = other.points.clone();
+            sizeX = other.sizeX;
+            sizeY = other.sizeY;
+            sizeZ = other.sizeZ;
+            weight = other.weight;
+            volume = other.volume;
+            tier = other.tier;
+            price = other.price;
+        }
+
+        /**
+         * Tells whether a box overlaps any item of this bin.
+         *
+         * @param x
+         *            the x coordinate of the box
+         * @param y
+         *            the y coordinate of the box
+         * @param z
+         *            the z coordinate of the box
+         * @param dx
+         *            the size of the box along x
+         * @param dy
+         *            the size of the box along y
+         * @param dz
+         *            the size of the box along z
+         * @return whether the box overlaps an item
+         */
+        boolean overlaps(int x, int y, int z, int dx, int dy, int dz) {
+            int[] b = boxes;
+            for (int i = 0, o = 0; i < count; i++, o += 6) {
+                if (x < b[o] + b[o + 3] && b[o] < x + dx && y < b[o + 1] + b[o + 4] && b[o + 1] < y + dy
+                        && z < b[o + 2] + b[o + 5] && b[o + 2] < z + dz) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tells whether a point lies inside an item of this bin.
+         *
+         * @param x
+         *            the x coordinate of the point
+         * @param y
+         *            the y coordinate of the point
+         * @param z
+         *            the z coordinate of the point
+         * @return whether the point lies inside an item
+         */
+        boolean covers(int x, int y, int z) {
+            return overlaps(x, y, z, 1, 1, 1);
+        }
+
+        /**
+         * Moves a point along an axis towards the origin until it touches an item or the wall.
+         *
+         * @param axis
+         *            the axis to move along: 0 for x, 1 for y, 2 for z
+         * @param x
+         *            the x coordinate of the point
+         * @param y
+         *            the y coordinate of the point
+         * @param z
+         *            the z coordinate of the point
+         * @return the new coordinate on the axis
+         */
+        int project(int axis, int x, int y, int z) {
+            int[] p = { x, y, z };
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            int reached = 0;
+            int[] b = boxes;
+            for (int i = 0, o = 0; i < count; i++, o += 6) {
+                int end = b[o + axis] + b[o + 3 + axis];
+                if (end <= p[axis] && end > reached && b[o + u] <= p[u] && p[u] < b[o + u] + b[o + 3 + u]
+                        && b[o + v] <= p[v] && p[v] < b[o + v] + b[o + 3 + v]) {
+                    reached = end;
+                }
+            }
+            return reached;
+        }
+
+        /**
+         * Adds an extreme point unless it is known already, lies inside an item or is outside the container.
+         *
+         * @param x
+         *            the x coordinate of the point
+         * @param y
+         *            the y coordinate of the point
+         * @param z
+         *            the z coordinate of the point
+         * @param limit
+         *            the largest dimension of the container
+         */
+        void addPoint(int x, int y, int z, int limit) {
+            if (x >= limit || y >= limit || z >= limit || covers(x, y, z)) {
+                return;
+            }
+            for (int i = 0; i < pointCount * 3; i += 3) {
+                if (points[i] == x && points[i + 1] == y && points[i + 2] == z) {
+                    return;
+                }
+            }
+            if (pointCount * 3 == points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[pointCount * 3] = x;
+            points[pointCount * 3 + 1] = y;
+            points[pointCount * 3 + 2] = z;
+            pointCount++;
+        }
+    }
+
+    /**
+     * A set of bins holding all items.
+     */
+    private static final class Solution {
+        /** Identifier of this solution, owning the bins it created or copied. */
+        final int id;
+
+        /** The bins; bins owned by other solutions must not be changed. */
+        final ArrayList<Bin> bins;
+
+        /** Total price of the bins in cents. */
+        long cost;
+
+        /**
+         * Constructs a solution.
+         *
+         * @param id
+         *            the identifier of the solution
+         * @param bins
+         *            the bins
+         * @param cost
+         *            the total price of the bins in cents
+         */
+        Solution(int id, ArrayList<Bin> bins, long cost) {
+            this.id = id;
+            this.bins = bins;
+            this.cost = cost;
+        }
+
+        /**
+         * Tells whether this solution is better than another one: cheaper, or as cheap with fewer packets.
+         *
+         * @param other
+         *            the solution to compare with, or {@code null}
+         * @return whether this solution is better
+         */
+        boolean isBetterThan(Solution other) {
+            return other == null || cost < other.cost || cost == other.cost && bins.size() < other.bins.size();
+        }
+    }
+
+    /**
+     * State of one search shared by all workers.
+     */
+    private final class Search {
+        /** Dimensions and weight of the items, four values per item. */
+        final int[] sizes;
+
+        /** Volume of the items. */
+        final long[] volumes;
+
+        /** Distinct orientations of the items, up to six per item with three values each. */
+        final int[] orientations;
+
+        /** Number of distinct orientations per item. */
+        final int[] orientationCounts;
+
+        /** Price of every item shipped on its own in cents. */
+        final int[] singlePrices;
+
+        /** Items fitting the container, which the search distributes. */
+        final int[] movable;
+
+        /** Bins of the items too large for the container. */
+        final ArrayList<Bin> fixedBins = new ArrayList<>();
+
+        /** Volume of the container. */
+        final long containerVolume;
+
+        /** Costs no solution can go below. */
+        final long lowerBound;
+
+        /** End of the time budget, from {@link System#nanoTime()}. */
+        final long deadline;
+
+        /** Source of solution identifiers. */
+        final AtomicInteger ids = new AtomicInteger();
+
+        /** Number of evaluated candidates. */
+        final LongAdder candidates = new LongAdder();
+
+        /** Whether the search has to stop. */
+        volatile boolean stopped;
+
+        /** The best solution found so far. */
+        private Solution best;
+
+        /**
+         * Prepares the search.
+         *
+         * @param items
+         *            the items to consolidate
+         * @param deadline
+         *            the end of the time budget, from {@link System#nanoTime()}
+         * @throws IllegalArgumentException
+         *             if an item has an invalid size or weight
+         */
+        Search(List<Packet> items, long deadline) {
+            this.deadline = deadline;
+            int n = items.size();
+            sizes = new int[n * 4];
+            volumes = new long[n];
+            orientations = new int[n * 18];
+            orientationCounts = new int[n];
+            singlePrices = new int[n];
+            containerVolume = volume(container[0], container[1], container[2]);
+
+            int[] fitting = new int[n];
+            int fittingCount = 0;
+            long fittingWeight = 0;
+            long fittingVolume = 0;
+            long fixedCost = 0;
+            for (int i = 0; i < n; i++) {
+                Packet item = items.get(i);
+                if (item.length <= 0 || item.width <= 0 || item.height <= 0 || item.weight < 0) {
+                    throw new IllegalArgumentException("Item " + (i + 1) + " has an invalid size or weight");
+                }
+                sizes[i * 4] = item.length;
+                sizes[i * 4 + 1] = item.width;
+                sizes[i * 4 + 2] = item.height;
+                sizes[i * 4 + 3] = item.weight;
+                volumes[i] = volume(item.length, item.width, item.height);
+                singlePrices[i] = tariff.getPriceCents(tariff.classify(item.length, item.width, item.height,
+                        item.weight));
+                addOrientations(i, item.length, item.width, item.height);
+
+                if (item.weight <= container[3] && fitsContainer(item.length, item.width, item.height)) {
+                    fitting[fittingCount++] = i;
+                    fittingWeight += item.weight;
+                    fittingVolume += volumes[i];
+                } else {
+                    // Too large for the container, shipped alone as it is
+                    Bin bin = loneBin(i);
+                    fixedBins.add(bin);
+                    fixedCost += bin.price;
+                }
+            }
+            movable = Arrays.copyOf(fitting, fittingCount);
+
+            // At least as many packets as weight or volume need, each at least as expensive as the cheapest tier
+            long packets = Math.max(ceilDiv(fittingWeight, container[3]), ceilDiv(fittingVolume, containerVolume));
+            int cheapest = Integer.MAX_VALUE;
+            for (int t = 0; t < tariff.getTierCount(); t++) {
+                cheapest = Math.min(cheapest, tariff.getPriceCents(t));
+            }
+            lowerBound = fixedCost + Math.max(packets, fittingCount > 0 ? 1 : 0) * cheapest;
+        }
+
+        /**
+         * Stores the distinct orientations of an item.
+         *
+         * @param item
+         *            the index of the item
+         * @param a
+         *            the first dimension
+         * @param b
+         *            the second dimension
+         * @param c
+         *            the third dimension
+         */
+        private void addOrientations(int item, int a, int b, int c) {
+            int[][] all = { { a, b, c }, { a, c, b }, { b, a, c }, { b, c, a }, { c, a, b }, { c, b, a } };
+            int base = item * 18;
+            int count = 0;
+            for (int[] orientation : all) {
+                boolean known = false;
+                for (int k = 0; k < count && !known; k++) {
+                    int o = base + k * 3;
+                    known = orientations[o] == orientation[0] && orientations[o + 1] == orientation[1]
+                            && orientations[o + 2] == orientation[2];
+                }
+                if (!known) {
+                    System.arraycopy(orientation, 0, orientations, base + count * 3, 3);
+                    count++;
+                }
+            }
+            orientationCounts[item] = count;
+        }
+
+        /**
+         * Offers a solution as the new best solution.
+         *
+         * @param solution
+         *            the solution, which must not be changed afterwards
+         */
+        synchronized void offer(Solution solution) {
+            if (solution.isBetterThan(best)) {
+                best = solution;
+                if (best.cost <= lowerBound) {
+                    stopped = true;
+                }
+            }
+        }
+
+        /**
+         * Creates a bin holding only one item, as it is and without a container.
+         *
+         * @param item
+         *            the index of the item
+         * @return the bin, priced like the item alone
+         */
+        private Bin loneBin(int item) {
+            int length = sizes[item * 4];
+            int width = sizes[item * 4 + 1];
+            int height = sizes[item * 4 + 2];
+            int weight = sizes[item * 4 + 3];
+            Bin bin = new Bin(-1);
+            bin.count = 1;
+            bin.items[0] = item;
+            bin.boxes[3] = length;
+            bin.boxes[4] = width;
+            bin.boxes[5] = height;
+            bin.sizeX = length;
+            bin.sizeY = width;
+            bin.sizeZ = height;
+            bin.weight = weight;
+            bin.volume = volumes[item];
+            bin.tier = tariff.classify(length, width, height, weight);
+            bin.price = singlePrices[item];
+            return bin;
+        }
+
+        /**
+         * Returns the best solution found so far.
+         *
+         * @return the best solution, or {@code null} if no worker has finished its first solution
+         */
+        synchronized Solution getBest() {
+            return best;
+        }
+
+        /**
+         * Tells whether the search has to stop.
+         *
+         * @return whether the search was stopped or the time budget is used up
+         */
+        boolean isOver() {
+            return stopped || System.nanoTime() - deadline >= 0;
+        }
+
+        /**
+         * Converts the best solution into a plan.
+         *
+         * <p>
+         * If the search was stopped before any worker finished a solution, each movable item is shipped alone, so the
+         * plan still covers the whole order.
+         * </p>
+         *
+         * @param elapsedNanos
+         *            the duration of the search
+         * @return the plan
+         */
+        Plan toPlan(long elapsedNanos) {
+            List<Bin> bins = new ArrayList<>(fixedBins);
+            Solution solution = getBest();
+            if (solution != null) {
+                bins.addAll(solution.bins);
+            } else {
+                for (int item : movable) {
+                    bins.add(loneBin(item));
+                }
+            }
+            bins.sort((a, b) -> Integer.compare(b.price, a.price));
+
+            List<Group> groups = new ArrayList<>();
+            for (Bin bin : bins) {
+                groups.add(new Group(new Packet(bin.sizeX, bin.sizeY, bin.sizeZ, bin.weight), bin.tier, bin.price,
+                        Arrays.copyOf(bin.items, bin.count), Arrays.copyOf(bin.boxes, bin.count * 6)));
+            }
+            long separate = 0;
+            for (int price : singlePrices) {
+                separate += price;
+            }
+            return new Plan(tariff, groups, singlePrices.length, separate, candidates.sum(), elapsedNanos);
+        }
+    }
+
+    /**
+     * Divides and rounds up.
+     *
+     * @param dividend
+     *            the dividend, not negative
+     * @param divisor
+     *            the divisor, positive
+     * @return the rounded up quotient
+     */
+    private static long ceilDiv(long dividend, long divisor) {
+        return dividend == 0 ? 0 : (dividend - 1) / divisor + 1;
+    }
+
+    /**
+     * Returns the volume of a box, capped at {@value #MAX_VOLUME} so that the volumes of all items can be added up.
+     *
+     * @param a
+     *            the first dimension, positive
+     * @param b
+     *            the second dimension, positive
+     * @param c
+     *            the third dimension, positive
+     * @return the volume in cubic millimeters
+     */
+    private static long volume(int a, int b, int c) {
+        long area = (long) a * b;
+        return area > MAX_VOLUME / c ? MAX_VOLUME : area * c;
+    }
+
+    /**
+     * Searches on one thread.
+     */
+    private final class Worker implements Runnable {
+        /** The shared search state. */
+        private final Search search;
+
+        /** The index of this worker, choosing its first item order. */
+        private final int index;
+
+        /** Random numbers of this worker. */
+        private final SplittableRandom random;
+
+        /** The best placement into a bin. */
+        private final Placement placement = new Placement();
+
+        /** The best placement into any bin. */
+        private final Placement chosen = new Placement();
+
+        /**
+         * Constructs a worker.
+         *
+         * @param search
+         *            the shared search state
+         * @param index
+         *            the index of the worker
+         */
+        Worker(Search search, int index) {
+            this.search = search;
+            this.index = index;
+            this.random = new SplittableRandom(System.nanoTime() + index * 0x9E3779B97F4A7C15L);
+        }
+
+        @Override
+        public void run() {
+            Solution current = new Solution(search.ids.incrementAndGet(), new ArrayList<>(), 0);
+            int[] order = initialOrder();
+            int inserted = 0;
+            for (; inserted < order.length && !search.isOver(); inserted++) {
+                insert(current, order[inserted]);
+            }
+            // Out of time: ship the remaining items on their own, so the first solution is complete
+            for (; inserted < order.length; inserted++) {
+                insertAlone(current, order[inserted]);
+            }
+            search.candidates.increment();
+            search.offer(current);
+
+            // Late acceptance hill climbing: accept a candidate no worse than the current or an earlier solution
+            long[] history = new long[HISTORY_LENGTH];
+            Arrays.fill(history, current.cost);
+            int sinceBest = 0;
+            for (long move = 0; !search.isOver(); move++) {
+                Solution candidate = move(current);
+                search.candidates.increment();
+                int slot = (int) (move % HISTORY_LENGTH);
+                if (candidate.cost <= current.cost || candidate.cost <= history[slot]) {
+                    current = candidate;
+                }
+                history[slot] = current.cost;
+
+                Solution best = search.getBest();
+                if (current.isBetterThan(best)) {
+                    search.offer(current);
+                    sinceBest = 0;
+                } else if (++sinceBest >= RESTART_MOVES) {
+                    current = best;
+                    sinceBest = 0;
+                }
+            }
+        }
+
+        /**
+         * Returns the item order of the first solution: by volume, by weight, by longest side or random.
+         *
+         * @return the movable items in insertion order
+         */
+        private int[] initialOrder() {
+            if (index % 4 == 3) {
+                int[] order = search.movable.clone();
+                shuffle(order);
+                return order;
+            }
+            int[] sizes = search.sizes;
+            Integer[] order = new Integer[search.movable.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = search.movable[i];
+            }
+            switch (index % 4) {
+            case 0:
+                Arrays.sort(order, (a, b) -> Long.compare(search.volumes[b], search.volumes[a]));
+                break;
+            case 1:
+                Arrays.sort(order, (a, b) -> Integer.compare(sizes[b * 4 + 3], sizes[a * 4 + 3]));
+                break;
+            default:
+                Arrays.sort(order, (a, b) -> Integer.compare(longestSide(b), longestSide(a)));
+                break;
+            }
+            int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+
+        /**
+         * Returns the longest side of an item.
+         *
+         * @param item
+         *            the index of the item
+         * @return the longest side in millimeters
+         */
+        private int longestSide(int item) {
+            int[] sizes = search.sizes;
+            return Math.max(Math.max(sizes[item * 4], sizes[item * 4 + 1]), sizes[item * 4 + 2]);
+        }
+
+        /**
+         * Creates a neighbor of a solution by removing a few bins and inserting their items again.
+         *
+         * @param current
+         *            the solution, which is not changed
+         * @return the new solution
+         */
+        private Solution move(Solution current) {
+            Solution candidate = new Solution(search.ids.incrementAndGet(), new ArrayList<>(current.bins),
+                    current.cost);
+            ArrayList<Bin> bins = candidate.bins;
+            int removeCount = 1 + random.nextInt(Math.min(MAX_REMOVED_PACKETS, bins.size()));
+            int[] removed = new int[0];
+            for (int r = 0; r < removeCount; r++) {
+                // Prefer the emptier of two random bins
+                int a = random.nextInt(bins.size());
+                int b = random.nextInt(bins.size());
+                int victim = fill(bins.get(a)) <= fill(bins.get(b)) ? a : b;
+                Bin bin = bins.get(victim);
+                bins.set(victim, bins.get(bins.size() - 1));
+                bins.remove(bins.size() - 1);
+                candidate.cost -= bin.price;
+                removed = Arrays.copyOf(removed, removed.length + bin.count);
+                System.arraycopy(bin.items, 0, removed, removed.length - bin.count, bin.count);
+            }
+
+            if (random.nextBoolean()) {
+                shuffle(removed);
+            } else {
+                sortByVolume(removed);
+            }
+            for (int item : removed) {
+                insert(candidate, item);
+            }
+            return candidate;
+        }
+
+        /**
+         * Returns how full a bin is, by weight or volume, whichever is fuller.
+         *
+         * @param bin
+         *            the bin
+         * @return the fill ratio between 0 and 1
+         */
+        private double fill(Bin bin) {
+            return Math.max((double) bin.weight / container[3], (double) bin.volume / search.containerVolume);
+        }
+
+        /**
+         * Shuffles items.
+         *
+         * @param items
+         *            the items to shuffle
+         */
+        private void shuffle(int[] items) {
+            for (int i = items.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int item = items[i];
+                items[i] = items[j];
+                items[j] = item;
+            }
+        }
+
+        /**
+         * Sorts items by volume, largest first.
+         *
+         * @param items
+         *            the items to sort
+         */
+        private void sortByVolume(int[] items) {
+            long[] volumes = search.volumes;
+            for (int i = 1; i < items.length; i++) {
+                int item = items[i];
+                int j = i - 1;
+                while (j >= 0 && volumes[items[j]] < volumes[item]) {
+                    items[j + 1] = items[j];
+                    j--;
+                }
+                items[j + 1] = item;
+            }
+        }
+
+        /**
+         * Inserts an item into the bin of a solution whose price rises least, or into a new bin if that is cheaper.
+         *
+         * @param solution
+         *            the solution to change
+         * @param item
+         *            the index of the item
+         */
+        private void insert(Solution solution, int item) {
+            ArrayList<Bin> bins = solution.bins;
+            int chosenBin = -1;
+            long chosenDelta = search.singlePrices[item];
+            long chosenGrowth = Long.MAX_VALUE;
+            for (int i = 0; i < bins.size(); i++) {
+                Bin bin = bins.get(i);
+                if (!findPlacement(bin, item)) {
+                    continue;
+                }
+                long delta = placement.price - bin.price;
+                long growth = placement.boxVolume - volume(bin.sizeX, bin.sizeY, bin.sizeZ);
+                // At the same price, joining a bin beats opening one and a snug fit beats a loose one
+                if (delta < chosenDelta || delta == chosenDelta && growth < chosenGrowth) {
+                    chosenBin = i;
+                    chosenDelta = delta;
+                    chosenGrowth = growth;
+                    chosen.set(placement);
+                }
+            }
+
+            Bin bin;
+            if (chosenBin < 0) {
+                bin = new Bin(solution.id);
+                findPlacement(bin, item);
+                chosen.set(placement);
+                bins.add(bin);
+            } else {
+                bin = bins.get(chosenBin);
+                if (bin.owner != solution.id) {
+                    bin = new Bin(bin, solution.id);
+                    bins.set(chosenBin, bin);
+                }
+            }
+            solution.cost += chosen.price - bin.price;
+            place(bin, item, chosen);
+        }
+
+        /**
+         * Inserts an item into a new bin of its own, without looking at the other bins.
+         *
+         * @param solution
+         *            the solution to change
+         * @param item
+         *            the index of the item
+         */
+        private void insertAlone(Solution solution, int item) {
+            Bin bin = new Bin(solution.id);
+            findPlacement(bin, item);
+            solution.bins.add(bin);
+            solution.cost += placement.price;
+            place(bin, item, placement);
+        }
+
+        /**
+         * Finds the cheapest placement of an item in a bin and stores it in {@link #placement}.
+         *
+         * @param bin
+         *            the bin
+         * @param item
+         *            the index of the item
+         * @return whether the item fits into the bin
+         */
+        private boolean findPlacement(Bin bin, int item) {
+            int weight = bin.weight + search.sizes[item * 4 + 3];
+            if (weight > container[3] || bin.volume + search.volumes[item] > search.containerVolume) {
+                return false;
+            }
+            boolean found = false;
+            int[] orientations = search.orientations;
+            int[] points = bin.points;
+            for (int p = 0; p < bin.pointCount * 3; p += 3) {
+                int x = points[p];
+                int y = points[p + 1];
+                int z = points[p + 2];
+                for (int o = item * 18, end = o + search.orientationCounts[item] * 3; o < end; o += 3) {
+                    int dx = orientations[o];
+                    int dy = orientations[o + 1];
+                    int dz = orientations[o + 2];
+                    int sizeX = Math.max(bin.sizeX, x + dx);
+                    int sizeY = Math.max(bin.sizeY, y + dy);
+                    int sizeZ = Math.max(bin.sizeZ, z + dz);
+                    if (!fitsContainer(sizeX, sizeY, sizeZ)) {
+                        continue;
+                    }
+                    int tier = tariff.classify(sizeX, sizeY, sizeZ, weight);
+                    int price = tariff.getPriceCents(tier);
+                    long boxVolume = volume(sizeX, sizeY, sizeZ);
+                    // Check for overlaps last, only for placements better than the best so far
+                    if (found && (price > placement.price || price == placement.price
+                            && boxVolume >= placement.boxVolume)) {
+                        continue;
+                    }
+                    if (bin.overlaps(x, y, z, dx, dy, dz)) {
+                        continue;
+                    }
+                    placement.x = x;
+                    placement.y = y;
+                    placement.z = z;
+                    placement.dx = dx;
+                    placement.dy = dy;
+                    placement.dz = dz;
+                    placement.sizeX = sizeX;
+                    placement.sizeY = sizeY;
+                    placement.sizeZ = sizeZ;
+                    placement.boxVolume = boxVolume;
+                    placement.tier = tier;
+                    placement.price = price;
+                    found = true;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Places an item into a bin and updates its extreme points.
+         *
+         * @param bin
+         *            the bin, owned by the solution being changed
+         * @param item
+         *            the index of the item
+         * @param at
+         *            the placement of the item
+         */
+        private void place(Bin bin, int item, Placement at) {
+            if (bin.count == bin.items.length) {
+                bin.items = Arrays.copyOf(bin.items, bin.count * 2);
+                bin.boxes = Arrays.copyOf(bin.boxes, bin.count * 12);
+            }
+            int o = bin.count * 6;
+            bin.items[bin.count] = item;
+            bin.boxes[o] = at.x;
+            bin.boxes[o + 1] = at.y;
+            bin.boxes[o + 2] = at.z;
+            bin.boxes[o + 3] = at.dx;
+            bin.boxes[o + 4] = at.dy;
+            bin.boxes[o + 5] = at.dz;
+            bin.count++;
+            bin.sizeX = at.sizeX;
+            bin.sizeY = at.sizeY;
+            bin.sizeZ = at.sizeZ;
+            bin.weight += search.sizes[item * 4 + 3];
+            bin.volume += search.volumes[item];
+            bin.tier = at.tier;
+            bin.price = at.price;
+
+            // Drop the extreme points the item now covers
+            int[] points = bin.points;
+            int kept = 0;
+            for (int p = 0; p < bin.pointCount * 3; p += 3) {
+                int x = points[p];
+                int y = points[p + 1];
+                int z = points[p + 2];
+                if (x >= at.x && x < at.x + at.dx && y >= at.y && y < at.y + at.dy && z >= at.z
+                        && z < at.z + at.dz) {
+                    continue;
+                }
+                points[kept * 3] = x;
+                points[kept * 3 + 1] = y;
+                points[kept * 3 + 2] = z;
+                kept++;
+            }
+            bin.pointCount = kept;
+
+            // Project the three outer corners of the item back onto the items and walls behind them
+            int limit = container[0];
+            int x = at.x + at.dx;
+            int y = at.y + at.dy;
+            int z = at.z + at.dz;
+            bin.addPoint(x, bin.project(1, x, at.y, at.z), at.z, limit);
+            bin.addPoint(x, at.y, bin.project(2, x, at.y, at.z), limit);
+            bin.addPoint(bin.project(0, at.x, y, at.z), y, at.z, limit);
+            bin.addPoint(at.x, y, bin.project(2, at.x, y, at.z), limit);
+            bin.addPoint(bin.project(0, at.x, at.y, z), at.y, z, limit);
+            bin.addPoint(at.x, bin.project(1, at.x, at.y, z), z, limit);
+        }
+    }
+}
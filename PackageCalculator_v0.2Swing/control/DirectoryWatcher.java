@@ -0,0 +1,280 @@
+package control;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directories for created, deleted and modified entries.
+ *
+ * <p>
+ * The watcher runs a daemon thread that collects the events of all registered directories and reports them in
+ * batches. A batch is reported once no new event arrived for {@value #QUIET_PERIOD_MILLIS} ms, but at the latest
+ * {@value #MAX_DELAY_MILLIS} ms after its first event, so a burst of thousands of events results in a few batches.
+ * Several events for the same entry within a batch are merged into one change. The type of created entries is read on
+ * the watcher thread, so listeners do not need to access the file system.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class DirectoryWatcher implements Closeable {
+
+    /** Time without new events after which a batch is reported, in milliseconds. */
+    public static final long QUIET_PERIOD_MILLIS = 50;
+
+    /** Maximum time between the first event of a batch and its report, in milliseconds. */
+    public static final long MAX_DELAY_MILLIS = 250;
+
+    /**
+     * Kind of a change.
+     */
+    public enum Kind {
+        /** The entry was created. */
+        CREATED,
+        /** The entry was deleted. */
+        DELETED,
+        /** The entry was modified. */
+        MODIFIED,
+        /** Events of the directory were lost, its entries have to be read again. */
+        OVERFLOW
+    }
+
+    /**
+     * A change of a directory entry.
+     */
+    public static class Change {
+        /** The changed entry, or the directory itself for {@link Kind#OVERFLOW}. */
+        public final Path path;
+
+        /** The kind of change. */
+        public final Kind kind;
+
+        /** Whether the entry is a directory; only known for created and modified entries. */
+        public final boolean directory;
+
+        /**
+         * Constructs a Change.
+         *
+         * @param path
+         *            the changed entry, or the directory itself for {@link Kind#OVERFLOW}
+         * @param kind
+         *            the kind of change
+         * @param directory
+         *            whether the entry is a directory
+         */
+        public Change(Path path, Kind kind, boolean directory) {
+            this.path = path;
+            this.kind = kind;
+            this.directory = directory;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + path;
+        }
+    }
+
+    /**
+     * Listener receiving batches of changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the watcher thread with a batch of changes.
+         *
+         * @param source
+         *            the watcher reporting the changes
+         * @param changes
+         *            the changes in the order of their first event
+         */
+        void changed(DirectoryWatcher source, List<Change> changes);
+    }
+
+    /** The underlying watch service. */
+    private final WatchService service;
+
+    /** The listener receiving the changes. */
+    private final Listener listener;
+
+    /** The watched directories by their watch key. */
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    /** The watch keys by their directory. */
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+    /** Pending changes of the current batch, only accessed by the watcher thread. */
+    private final Map<Path, Kind> pending = new LinkedHashMap<>();
+
+    /** The thread collecting and reporting the events. */
+    private final Thread thread;
+
+    /**
+     * Constructs a new DirectoryWatcher and starts its thread.
+     *
+     * @param listener
+     *            the listener receiving the changes
+     * @throws IOException
+     *             if the watch service cannot be created
+     */
+    public DirectoryWatcher(Listener listener) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        this.thread = new Thread(this::run, "Directory watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching a directory. Entries of subdirectories are not watched.
+     *
+     * @param directory
+     *            the directory to watch
+     * @throws IOException
+     *             if the directory cannot be watched
+     */
+    public void register(Path directory) throws IOException {
+        if (keys.containsKey(directory)) {
+            return;
+        }
+        WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, directory);
+        keys.put(directory, key);
+    }
+
+    /**
+     * Stops watching a directory.
+     *
+     * @param directory
+     *            the directory to stop watching
+     */
+    public void unregister(Path directory) {
+        WatchKey key = keys.remove(directory);
+        if (key != null) {
+            directories.remove(key);
+            key.cancel();
+        }
+    }
+
+    /**
+     * Stops watching all directories and ends the watcher thread. Pending changes are discarded.
+     *
+     * @throws IOException
+     *             if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+        keys.clear();
+        directories.clear();
+    }
+
+    /**
+     * Main loop of the watcher thread.
+     */
+    private void run() {
+        long firstEvent = 0;
+        long lastEvent = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long now = System.nanoTime();
+                    long wait = Math.min(lastEvent + TimeUnit.MILLISECONDS.toNanos(QUIET_PERIOD_MILLIS),
+                            firstEvent + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS)) - now;
+                    key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+
+                if (key != null) {
+                    if (pending.isEmpty()) {
+                        firstEvent = System.nanoTime();
+                    }
+                    lastEvent = System.nanoTime();
+                    collect(key);
+                } else {
+                    listener.changed(this, flush());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * Adds the events of a watch key to the pending changes.
+     *
+     * @param key
+     *            the signalled watch key
+     */
+    private void collect(WatchKey key) {
+        Path directory = directories.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+        if (!key.reset()) {
+            // The directory was deleted or unregistered
+            directories.remove(key);
+            keys.remove(directory, key);
+        }
+        if (directory == null) {
+            return;
+        }
+
+        for (WatchEvent<?> event : events) {
+            WatchEvent.Kind<?> eventKind = event.kind();
+            if (eventKind == StandardWatchEventKinds.OVERFLOW) {
+                pending.put(directory, Kind.OVERFLOW);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            Kind kind = eventKind == StandardWatchEventKinds.ENTRY_CREATE ? Kind.CREATED
+                    : eventKind == StandardWatchEventKinds.ENTRY_DELETE ? Kind.DELETED : Kind.MODIFIED;
+            Kind previous = pending.get(path);
+            if (previous == Kind.OVERFLOW || (previous == Kind.CREATED && kind == Kind.MODIFIED)) {
+                continue;
+            }
+            pending.put(path, kind);
+        }
+    }
+
+    /**
+     * Turns the pending changes into a batch and clears them.
+     *
+     * @return the batch of changes
+     */
+    private List<Change> flush() {
+        List<Change> changes = new ArrayList<>(pending.size());
+        for (Map.Entry<Path, Kind> entry : pending.entrySet()) {
+            Path path = entry.getKey();
+            Kind kind = entry.getValue();
+            boolean directory = false;
+            if (kind == Kind.CREATED || kind == Kind.MODIFIED) {
+                try {
+                    directory = Files.readAttributes(path, BasicFileAttributes.class).isDirectory();
+                } catch (IOException e) {
+                    // Deleted again before the batch was reported
+                    kind = Kind.DELETED;
+                }
+            }
+            changes.add(new Change(path, kind, directory));
+        }
+        pending.clear();
+        return changes;
+    }
+}
@@ -0,0 +1,100 @@
+package control;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Creates and reports the flight recorder events of the pricing code, but only once the flight recorder is running.
+ *
+ * <p>
+ * Loading the first event class starts the event support of the flight recorder, which loads its internal classes and
+ * a bytecode library and made the first price of the command line tool take several hundred milliseconds instead of
+ * a few dozen. The events are therefore not created, and their classes not even loaded, before a recording has
+ * initialized the flight recorder, whether at JVM start, through {@code jcmd} or from the toolbar. Until then the
+ * {@code begin} methods return {@code null}, which the {@code report} methods ignore. Checking the recorder only
+ * reads a flag, so the events of a recording started later are emitted from the next batch or manifest on.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+final class FlightEvents {
+
+    /**
+     * Not instantiable.
+     */
+    private FlightEvents() {
+    }
+
+    /**
+     * Tells whether the flight recorder is running, so events may be recorded.
+     *
+     * @return {@code true} once a recording has initialized the flight recorder
+     */
+    static boolean isRecorderInitialized() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Starts the event for pricing a batch.
+     *
+     * @return the started event, or {@code null} if the flight recorder is not running
+     */
+    static PricingBatchEvent beginBatch() {
+        if (!isRecorderInitialized()) {
+            return null;
+        }
+        PricingBatchEvent event = new PricingBatchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Reports the event for pricing a batch.
+     *
+     * @param event
+     *            the event returned by {@link #beginBatch()}, may be {@code null}
+     * @param method
+     *            the method that priced the batch
+     * @param count
+     *            the number of priced packages
+     */
+    static void reportBatch(PricingBatchEvent event, String method, int count) {
+        if (event != null) {
+            event.report(method, count);
+        }
+    }
+
+    /**
+     * Starts the event for reading and pricing a manifest.
+     *
+     * @return the started event, or {@code null} if the flight recorder is not running
+     */
+    static ManifestParseEvent beginParse() {
+        if (!isRecorderInitialized()) {
+            return null;
+        }
+        ManifestParseEvent event = new ManifestParseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Reports the event for reading and pricing a manifest.
+     *
+     * @param event
+     *            the event returned by {@link #beginParse()}, may be {@code null}
+     * @param manifest
+     *            the manifest file, or a description of the stream it was read from
+     * @param threads
+     *            the number of threads pricing the manifest
+     * @param summary
+     *            the summary of the priced packages
+     */
+    static void reportParse(ManifestParseEvent event, String manifest, int threads, ManifestSummary summary) {
+        if (event != null) {
+            event.report(manifest, threads, summary);
+        }
+    }
+}
@@ -0,0 +1,716 @@
+package control;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import control.ManifestReader.ProgressListener;
+
+/**
+ * Prices text manifests incrementally, repricing only the parts that changed since the last pricing.
+ *
+ * <p>
+ * A manifest is cut into blocks of whole lines. The cut points are chosen by the content: a block ends at a line break
+ * if a hash of the eight bytes up to the line break has its top {@value #CUT_BITS} bits clear, which is true for about
+ * one line in 65536. Blocks are at least {@value #MIN_BLOCK_SIZE} and, unless a line is longer, at most
+ * {@value #MAX_BLOCK_SIZE} bytes long. Because the cut points only depend on the lines around them, inserting or
+ * deleting lines only changes the blocks around the edit; all other blocks keep their contents even though they move
+ * within the file.
+ * </p>
+ *
+ * <p>
+ * For every manifest a sidecar file records the length, a 64-bit content hash and the {@link ManifestSummary} of each
+ * block. When the manifest is priced again, the blocks are cut and hashed in one pass over the file, which is many
+ * times faster than parsing, and only blocks whose hash is not in the sidecar are parsed and priced through the
+ * {@link Calculator}. The totals are the sum of the block summaries. If the size, the modification time, the file key
+ * and, on Unix file systems, the status change time of the manifest did not change, the totals are taken from the
+ * sidecar without reading the manifest at all. The status change time cannot be set back like the modification time,
+ * and the file key changes when the manifest is replaced by another file, so tools restoring modification times are
+ * noticed. On file systems offering neither, an edit keeping the size and the modification time goes unnoticed until
+ * either changes.
+ * </p>
+ *
+ * <p>
+ * The sidecars are stored in {@code ~/.packagecalculator/sidecars} or the directory given by the system property
+ * {@value #DIRECTORY_PROPERTY}. They only store tier counts, so changing the prices of a tariff does not invalidate
+ * them; changing its tiers does.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class IncrementalPricer {
+
+    /** System property setting the directory of the sidecar files. */
+    public static final String DIRECTORY_PROPERTY = "packagecalculator.sidecarDirectory";
+
+    /** Minimum size of a block in bytes. */
+    public static final int MIN_BLOCK_SIZE = 256 << 10;
+
+    /** Number of hash bits that must be zero at a cut point; one line end in 65536 is a cut point. */
+    public static final int CUT_BITS = 16;
+
+    /** Maximum size of a block in bytes, unless a single line is longer. */
+    public static final int MAX_BLOCK_SIZE = 8 << 20;
+
+    /** Magic number at the start of a sidecar file, "PCSC" in ASCII. */
+    static final int MAGIC = 0x43534350;
+
+    /** Version of the sidecar format. */
+    static final int VERSION = 2;
+
+    /** File name extension of sidecar files. */
+    private static final String EXTENSION = ".sidecar";
+
+    /** Size of the sidecar header in bytes. */
+    private static final int HEADER_SIZE = 48;
+
+    /** Number of bytes copied out of the mapped file at once while cutting blocks; a multiple of eight. */
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    /** Odd multiplier mixing the last bytes of a line into a hash; fixed, since the cut points decide the blocks. */
+    private static final long MIX = 0x9E37_79B9_7F4A_7C15L;
+
+    /** A line break in every byte of a word. */
+    private static final long NEWLINES = 0x0A0A_0A0A_0A0A_0A0AL;
+
+    /** A one in every byte of a word. */
+    private static final long ONES = 0x0101_0101_0101_0101L;
+
+    /** The highest bit of every byte of a word. */
+    private static final long HIGH_BITS = 0x8080_8080_8080_8080L;
+
+    /** View of a byte array as little-endian longs at any offset. */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Result of an incremental pricing.
+     */
+    public static class Result {
+        /** The summary of all packages of the manifest. */
+        public final ManifestSummary summary;
+
+        /** The number of blocks of the manifest. */
+        public final int blocks;
+
+        /** The number of blocks that were priced, because they were not in the sidecar. */
+        public final int repricedBlocks;
+
+        /** The number of bytes that were priced. */
+        public final long repricedBytes;
+
+        /** Why the sidecar could not be written, or {@code null} if it was written or did not need to be. */
+        public final IOException sidecarError;
+
+        /**
+         * Constructs a Result.
+         *
+         * @param summary
+         *            the summary of all packages of the manifest
+         * @param blocks
+         *            the number of blocks of the manifest
+         * @param repricedBlocks
+         *            the number of blocks that were priced
+         * @param repricedBytes
+         *            the number of bytes that were priced
+         * @param sidecarError
+         *            why the sidecar could not be written, or {@code null}
+         */
+        Result(ManifestSummary summary, int blocks, int repricedBlocks, long repricedBytes, IOException sidecarError) {
+            this.summary = summary;
+            this.blocks = blocks;
+            this.repricedBlocks = repricedBlocks;
+            this.repricedBytes = repricedBytes;
+            this.sidecarError = sidecarError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (repriced %d of %d blocks, %,d bytes)", summary, repricedBlocks, blocks,
+                    repricedBytes);
+        }
+    }
+
+    /**
+     * A block of a manifest with its content hash and summary.
+     */
+    private static class Block {
+        /** The length of the block in bytes. */
+        final long length;
+
+        /** The content hash of the block. */
+        final long hash;
+
+        /** The summary of the packages in the block. */
+        final ManifestSummary summary;
+
+        /**
+         * Constructs a Block.
+         *
+         * @param length
+         *            the length of the block in bytes
+         * @param hash
+         *            the content hash of the block
+         * @param summary
+         *            the summary of the packages in the block
+         */
+        Block(long length, long hash, ManifestSummary summary) {
+            this.length = length;
+            this.hash = hash;
+            this.summary = summary;
+        }
+    }
+
+    /**
+     * The blocks of a manifest as stored in its sidecar.
+     */
+    private static class Sidecar {
+        /** The size of the manifest when it was priced. */
+        final long fileSize;
+
+        /** The modification time of the manifest when it was priced, in milliseconds. */
+        final long lastModified;
+
+        /** The file key and status change time of the manifest when it was priced, see {@link #changeStamp}. */
+        final long changeStamp;
+
+        /** The blocks in file order. */
+        final List<Block> blocks;
+
+        /**
+         * Constructs a Sidecar.
+         *
+         * @param fileSize
+         *            the size of the manifest when it was priced
+         * @param lastModified
+         *            the modification time of the manifest when it was priced
+         * @param changeStamp
+         *            the file key and status change time of the manifest when it was priced
+         * @param blocks
+         *            the blocks in file order
+         */
+        Sidecar(long fileSize, long lastModified, long changeStamp, List<Block> blocks) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.changeStamp = changeStamp;
+            this.blocks = blocks;
+        }
+    }
+
+    /** The calculator used to price the packages. */
+    private final Calculator calculator;
+
+    /** The directory holding the sidecar files. */
+    private final Path directory;
+
+    /** The number of threads used for pricing changed blocks. */
+    private final int parallelism;
+
+    /**
+     * Constructs a new IncrementalPricer storing the sidecars in the default directory.
+     *
+     * <p>
+     * The number of threads is taken from the system property {@value ParallelManifestReader#PARALLELISM_PROPERTY} and
+     * defaults to the number of available processors.
+     * </p>
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     */
+    public IncrementalPricer(Calculator calculator) {
+        this(calculator, getDefaultDirectory(), Integer.getInteger(ParallelManifestReader.PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructs a new IncrementalPricer.
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     * @param directory
+     *            the directory holding the sidecar files
+     * @param parallelism
+     *            the number of threads used for pricing changed blocks
+     * @throws IllegalArgumentException
+     *             if the parallelism is smaller than 1
+     */
+    public IncrementalPricer(Calculator calculator, Path directory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.calculator = calculator;
+        this.directory = directory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the directory in which sidecars are stored by default.
+     *
+     * @return {@code ~/.packagecalculator/sidecars} or the directory given by {@value #DIRECTORY_PROPERTY}
+     */
+    public static Path getDefaultDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory != null ? Paths.get(directory)
+                : Paths.get(System.getProperty("user.home"), ".packagecalculator", "sidecars");
+    }
+
+    /**
+     * Returns the sidecar file of a manifest.
+     *
+     * @param file
+     *            the manifest file
+     * @return the sidecar file in the sidecar directory
+     */
+    public Path getSidecar(Path file) {
+        Path normalized = file.toAbsolutePath().normalize();
+        String name = normalized.getFileName().toString().replaceAll("[^A-Za-z0-9._-]", "_");
+        return directory.resolve(name + "-" + Integer.toHexString(normalized.toString().hashCode()) + EXTENSION);
+    }
+
+    /**
+     * Prices all packages of a text manifest, repricing only the blocks that changed since the last pricing.
+     *
+     * <p>
+     * The sidecar of the manifest is updated afterwards. A missing or unreadable sidecar only means that all blocks are
+     * priced. Since the sidecar is only a cache, failing to write it does not fail the pricing; the error is returned
+     * in {@link Result#sidecarError} instead.
+     * </p>
+     *
+     * @param file
+     *            the manifest file
+     * @param listener
+     *            the listener notified about the progress of reading the manifest, or {@code null}
+     * @return the summary of all packages and the number of repriced blocks
+     * @throws IOException
+     *             if the manifest cannot be read
+     */
+    public Result price(Path file, ProgressListener listener) throws IOException {
+        Tariff tariff = calculator.getTariff();
+        Path sidecarFile = getSidecar(file);
+        Sidecar sidecar = readSidecar(sidecarFile, tariff);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long changeStamp = changeStamp(file, attributes);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // An untouched manifest does not need to be read
+            if (sidecar != null && sidecar.fileSize == size && sidecar.lastModified == lastModified
+                    && sidecar.changeStamp == changeStamp) {
+                if (listener != null) {
+                    listener.progress(size, size);
+                }
+                return new Result(sum(tariff, sidecar.blocks), sidecar.blocks.size(), 0, 0, null);
+            }
+
+            Map<Long, Block> known = new HashMap<>();
+            if (sidecar != null) {
+                for (Block block : sidecar.blocks) {
+                    known.put(block.hash, block);
+                }
+            }
+
+            // Cut the manifest into blocks and price the unknown ones while cutting goes on
+            List<Block> blocks = new ArrayList<>();
+            List<Future<ManifestSummary>> pending = new ArrayList<>();
+            List<Integer> pendingIndexes = new ArrayList<>();
+            long repricedBytes = 0;
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                BlockSink sink = (from, to, hash) -> {
+                    Block block = known.get(hash);
+                    if (block == null || block.length != to - from) {
+                        pendingIndexes.add(blocks.size());
+                        pending.add(executor.submit(() -> {
+                            ManifestSummary summary = new ManifestSummary(tariff);
+                            new ManifestReader(calculator).price(channel, from, to, summary, null);
+                            return summary;
+                        }));
+                        block = new Block(to - from, hash, null);
+                    }
+                    blocks.add(block);
+                };
+                cut(channel, sink, listener);
+
+                for (int i = 0; i < pending.size(); i++) {
+                    int index = pendingIndexes.get(i);
+                    Block block = blocks.get(index);
+                    blocks.set(index, new Block(block.length, block.hash, pending.get(i).get()));
+                    repricedBytes += block.length;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Pricing of " + file + " was interrupted", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // Keep the result even if the sidecar cannot be written, for example in a read-only directory
+            IOException sidecarError = null;
+            try {
+                writeSidecar(sidecarFile, tariff, new Sidecar(size, lastModified, changeStamp, blocks));
+            } catch (IOException e) {
+                sidecarError = e;
+            }
+            return new Result(sum(tariff, blocks), blocks.size(), pending.size(), repricedBytes, sidecarError);
+        }
+    }
+
+    /**
+     * Receives the blocks of a manifest while it is cut.
+     */
+    private interface BlockSink {
+        /**
+         * Called for every block in file order.
+         *
+         * @param from
+         *            the position of the first byte of the block (inclusive)
+         * @param to
+         *            the position of the last byte of the block (exclusive)
+         * @param hash
+         *            the content hash of the block
+         */
+        void block(long from, long to, long hash);
+    }
+
+    /**
+     * Cuts a manifest into blocks of whole lines at content-defined cut points and hashes them.
+     *
+     * <p>
+     * Line breaks are searched eight bytes at a time, and only at line breaks the last eight bytes are hashed to decide
+     * whether the block ends there.
+     * </p>
+     *
+     * @param channel
+     *            the channel of the manifest file
+     * @param sink
+     *            the sink receiving the blocks
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static void cut(FileChannel channel, BlockSink sink, ProgressListener listener) throws IOException {
+        long size = channel.size();
+        // The buffer starts with the last bytes of the previous part, so every line end has eight bytes before it
+        byte[] buffer = new byte[Long.BYTES + SCAN_BUFFER_SIZE];
+        Cutter cutter = new Cutter(buffer, sink);
+
+        for (long windowStart = 0; windowStart < size; windowStart += ManifestReader.WINDOW_SIZE) {
+            int windowSize = (int) Math.min(ManifestReader.WINDOW_SIZE, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            for (int offset = 0; offset < windowSize; offset += SCAN_BUFFER_SIZE) {
+                int length = Math.min(SCAN_BUFFER_SIZE, windowSize - offset);
+                window.get(offset, buffer, Long.BYTES, length);
+                cutter.scan(windowStart + offset - Long.BYTES, Long.BYTES + length);
+                System.arraycopy(buffer, length, buffer, 0, Long.BYTES);
+                if (listener != null) {
+                    listener.progress(windowStart + offset + length, size);
+                }
+            }
+        }
+        cutter.finish(size);
+    }
+
+    /**
+     * State of cutting a manifest into blocks, kept across the parts of the file copied into the buffer.
+     */
+    private static class Cutter {
+
+        /** The buffer holding the part of the file being scanned. */
+        private final byte[] buffer;
+
+        /** The sink receiving the blocks. */
+        private final BlockSink sink;
+
+        /** Checksum of the current block; together with {@link #crc32} it gives a 64-bit hash. */
+        private final CRC32C crc32c = new CRC32C();
+
+        /** Second checksum of the current block, computed with another polynomial. */
+        private final CRC32 crc32 = new CRC32();
+
+        /** The file position of the first byte of the current block. */
+        private long blockStart;
+
+        /** The file position of the first byte in the buffer. */
+        private long bufferStart;
+
+        /** The index of the first byte in the buffer not yet added to the checksums. */
+        private int hashedFrom;
+
+        /**
+         * Constructs a new Cutter.
+         *
+         * @param buffer
+         *            the buffer holding the part of the file being scanned
+         * @param sink
+         *            the sink receiving the blocks
+         */
+        Cutter(byte[] buffer, BlockSink sink) {
+            this.buffer = buffer;
+            this.sink = sink;
+        }
+
+        /**
+         * Scans the buffer for cut points.
+         *
+         * @param start
+         *            the file position of the first byte in the buffer
+         * @param end
+         *            the index after the last byte in the buffer; the first eight bytes were scanned before
+         */
+        void scan(long start, int end) {
+            bufferStart = start;
+            hashedFrom = Long.BYTES;
+            int i = Long.BYTES;
+            for (; i + Long.BYTES <= end; i += Long.BYTES) {
+                long word = (long) LONGS.get(buffer, i) ^ NEWLINES;
+                // Marks the line breaks in the word, and possibly some bytes after the first one
+                long found = (word - ONES) & ~word & HIGH_BITS;
+                while (found != 0) {
+                    int index = i + (Long.numberOfTrailingZeros(found) >>> 3);
+                    if (buffer[index] == '\n') {
+                        lineEnd(index);
+                    }
+                    found &= found - 1;
+                }
+            }
+            for (; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    lineEnd(i);
+                }
+            }
+            crc32c.update(buffer, hashedFrom, end - hashedFrom);
+            crc32.update(buffer, hashedFrom, end - hashedFrom);
+        }
+
+        /**
+         * Ends the current block at a line break if it is a cut point or the block reached its maximum size.
+         *
+         * @param index
+         *            the index of the line break in the buffer
+         */
+        private void lineEnd(int index) {
+            long end = bufferStart + index + 1;
+            long length = end - blockStart;
+            if (length < MIN_BLOCK_SIZE) {
+                return;
+            }
+            long tail = (long) LONGS.get(buffer, index + 1 - Long.BYTES);
+            if (length >= MAX_BLOCK_SIZE || (tail * MIX) >>> (Long.SIZE - CUT_BITS) == 0) {
+                crc32c.update(buffer, hashedFrom, index + 1 - hashedFrom);
+                crc32.update(buffer, hashedFrom, index + 1 - hashedFrom);
+                emit(end);
+                hashedFrom = index + 1;
+            }
+        }
+
+        /**
+         * Passes the current block to the sink and starts the next one.
+         *
+         * @param end
+         *            the file position after the last byte of the block
+         */
+        private void emit(long end) {
+            sink.block(blockStart, end, crc32c.getValue() << 32 | crc32.getValue());
+            crc32c.reset();
+            crc32.reset();
+            blockStart = end;
+        }
+
+        /**
+         * Passes the last block to the sink, if the file does not end at a cut point.
+         *
+         * @param size
+         *            the size of the file
+         */
+        void finish(long size) {
+            if (blockStart < size) {
+                emit(size);
+            }
+        }
+    }
+
+    /**
+     * Adds up the summaries of blocks.
+     *
+     * @param tariff
+     *            the tariff of the summaries
+     * @param blocks
+     *            the blocks
+     * @return the summary of all blocks
+     */
+    private static ManifestSummary sum(Tariff tariff, List<Block> blocks) {
+        ManifestSummary summary = new ManifestSummary(tariff);
+        for (Block block : blocks) {
+            summary.merge(block.summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Returns a hash of the tiers of a tariff, which decide what the tier counts in a sidecar mean.
+     *
+     * @param tariff
+     *            the tariff
+     * @return the CRC-32C of the tier limits
+     */
+    private static int fingerprint(Tariff tariff) {
+        ByteBuffer limits = ByteBuffer.allocate(Integer.BYTES * (1 + 4 * tariff.getTierCount()));
+        limits.putInt(tariff.getTierCount());
+        for (int t = 0; t < tariff.getTierCount(); t++) {
+            for (int limit : tariff.getLimits(t)) {
+                limits.putInt(limit);
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(limits.array(), 0, limits.position());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns a value identifying the file and its last status change, beyond its size and modification time.
+     *
+     * <p>
+     * The value combines the file key, which tells files apart on most file systems, and the status change time of
+     * Unix file systems, which every write or restore of the modification time sets to the current time. Parts the
+     * file system does not offer are left out, so the value may be 0.
+     * </p>
+     *
+     * @param file
+     *            the manifest file
+     * @param attributes
+     *            the attributes of the file
+     * @return the value to compare with the one stored in the sidecar
+     * @throws IOException
+     *             if the attributes cannot be read
+     */
+    private static long changeStamp(Path file, BasicFileAttributes attributes) throws IOException {
+        Object fileKey = attributes.fileKey();
+        long stamp = fileKey != null ? fileKey.hashCode() : 0;
+        try {
+            FileTime changeTime = (FileTime) Files.getAttribute(file, "unix:ctime");
+            stamp = stamp * MIX + changeTime.to(TimeUnit.NANOSECONDS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Not a Unix file system, the other attributes have to do
+        }
+        return stamp;
+    }
+
+    /**
+     * Reads the sidecar of a manifest.
+     *
+     * <p>
+     * The sidecar is only a cache, so a sidecar that is missing, corrupt or written for other tiers is ignored.
+     * </p>
+     *
+     * @param sidecarFile
+     *            the sidecar file
+     * @param tariff
+     *            the tariff the manifest is priced with
+     * @return the stored blocks, or {@code null} if there is no usable sidecar
+     */
+    private static Sidecar readSidecar(Path sidecarFile, Tariff tariff) {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(sidecarFile)).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            return null;
+        }
+        int tiers = tariff.getTierCount();
+        int blockSize = Long.BYTES * (3 + tiers);
+        if (bytes.remaining() < HEADER_SIZE || bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION
+                || bytes.getInt(8) != fingerprint(tariff) || bytes.getInt(12) != tiers) {
+            return null;
+        }
+        long fileSize = bytes.getLong(16);
+        long lastModified = bytes.getLong(24);
+        int count = bytes.getInt(32);
+        long changeStamp = bytes.getLong(40);
+        if (count < 0 || bytes.remaining() != HEADER_SIZE + (long) count * blockSize) {
+            return null;
+        }
+
+        List<Block> blocks = new ArrayList<>(count);
+        bytes.position(HEADER_SIZE);
+        long[] tierCounts = new long[tiers];
+        for (int b = 0; b < count; b++) {
+            long length = bytes.getLong();
+            long hash = bytes.getLong();
+            long malformedLines = bytes.getLong();
+            for (int t = 0; t < tiers; t++) {
+                tierCounts[t] = bytes.getLong();
+            }
+            blocks.add(new Block(length, hash, new ManifestSummary(tariff, tierCounts, malformedLines, length)));
+        }
+        return new Sidecar(fileSize, lastModified, changeStamp, blocks);
+    }
+
+    /**
+     * Writes the sidecar of a manifest.
+     *
+     * <p>
+     * The file is written to a temporary file next to it first and then moved into place.
+     * </p>
+     *
+     * @param sidecarFile
+     *            the sidecar file
+     * @param tariff
+     *            the tariff the manifest was priced with
+     * @param sidecar
+     *            the blocks to store
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void writeSidecar(Path sidecarFile, Tariff tariff, Sidecar sidecar) throws IOException {
+        int tiers = tariff.getTierCount();
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + sidecar.blocks.size() * Long.BYTES * (3 + tiers))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(fingerprint(tariff)).putInt(tiers).putLong(sidecar.fileSize)
+                .putLong(sidecar.lastModified).putInt(sidecar.blocks.size()).putInt(0).putLong(sidecar.changeStamp);
+        for (Block block : sidecar.blocks) {
+            bytes.putLong(block.length).putLong(block.hash).putLong(block.summary.getMalformedLines());
+            for (int t = 0; t < tiers; t++) {
+                bytes.putLong(block.summary.getTierCount(t));
+            }
+        }
+        bytes.flip();
+
+        Files.createDirectories(sidecarFile.getParent());
+        Path temporary = sidecarFile.resolveSibling(sidecarFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        Files.move(temporary, sidecarFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
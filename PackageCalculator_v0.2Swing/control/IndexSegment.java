@@ -0,0 +1,738 @@
+package control;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable segment of a {@link ManifestIndex} stored in a file.
+ *
+ * <p>
+ * A segment holds a table of documents and a sorted dictionary of terms, each followed by its postings: the documents
+ * and lines the term occurs in. The file is memory-mapped; only the document table and every
+ * {@value #INDEX_INTERVAL}th term are kept on the heap, so looking up a term takes a binary search and a scan of at
+ * most {@value #INDEX_INTERVAL} terms. The file layout is:
+ * </p>
+ *
+ * <pre>
+ * header      magic, version, document count
+ * documents   per document: path (UTF), size, last modified; a size of -1 marks a deleted document
+ * terms       per term: shared prefix length, suffix length, suffix, postings length, postings
+ * term index  count, then per indexed term: length, bytes, position of its entry
+ * footer      position of the term index, term count, position of the terms, magic
+ * </pre>
+ *
+ * <p>
+ * Terms share their prefix with the previous term, except for indexed terms which are stored in full. Postings list
+ * the number of documents, then per document the difference to the previous document, the number of lines and the
+ * differences between the line numbers. All numbers in the terms section are variable-length encoded, so a typical
+ * posting takes one or two bytes.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+class IndexSegment {
+
+    /** Magic number at the start and end of a segment file, "PCIX". */
+    static final int MAGIC = 0x50434958;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Every this many terms one is kept in the in-memory term index. */
+    static final int INDEX_INTERVAL = 32;
+
+    /** Size of the footer in bytes. */
+    private static final int FOOTER_SIZE = 8 + 4 + 8 + 4;
+
+    /** Size marking a deleted document. */
+    static final long DELETED = -1;
+
+    /** The segment file. */
+    private final Path file;
+
+    /** Paths of the documents, relative to the project root with '/' as separator. */
+    private final String[] paths;
+
+    /** Sizes of the documents in bytes, {@link #DELETED} for deleted documents. */
+    private final long[] sizes;
+
+    /** Last modification times of the documents in milliseconds. */
+    private final long[] modified;
+
+    /** The mapped segment file. */
+    private final ByteBuffer buffer;
+
+    /** Number of terms. */
+    private final int termCount;
+
+    /** Every {@value #INDEX_INTERVAL}th term. */
+    private final byte[][] indexTerms;
+
+    /** Positions of the entries of the indexed terms. */
+    private final int[] indexPositions;
+
+    /**
+     * Opens a segment file.
+     *
+     * @param file
+     *            the segment file
+     * @throws IOException
+     *             if the file cannot be read or is not a valid segment
+     */
+    IndexSegment(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < 12 + FOOTER_SIZE) {
+                throw new IOException("Invalid segment size: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            this.buffer = mapped;
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(buffer.limit() - 4) != MAGIC) {
+            throw new IOException("Not a segment file: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getInt(4) + ": " + file);
+        }
+
+        int docCount = buffer.getInt(8);
+        paths = new String[docCount];
+        sizes = new long[docCount];
+        modified = new long[docCount];
+        ByteBuffer input = buffer.duplicate();
+        input.position(12);
+        for (int doc = 0; doc < docCount; doc++) {
+            byte[] path = new byte[Short.toUnsignedInt(input.getShort())];
+            input.get(path);
+            paths[doc] = new String(path, StandardCharsets.UTF_8);
+            sizes[doc] = input.getLong();
+            modified[doc] = input.getLong();
+        }
+
+        int footer = buffer.limit() - FOOTER_SIZE;
+        int indexPosition = (int) buffer.getLong(footer);
+        termCount = buffer.getInt(footer + 8);
+        input.position(indexPosition);
+        int indexCount = input.getInt();
+        indexTerms = new byte[indexCount][];
+        indexPositions = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            indexTerms[i] = new byte[input.get() & 0xFF];
+            input.get(indexTerms[i]);
+            indexPositions[i] = (int) input.getLong();
+        }
+    }
+
+    /**
+     * Returns the segment file.
+     *
+     * @return the file
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the segment file.
+     *
+     * @return the size in bytes
+     */
+    long getFileSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns the number of documents, including deleted documents.
+     *
+     * @return the number of documents
+     */
+    int getDocumentCount() {
+        return paths.length;
+    }
+
+    /**
+     * Returns the path of a document.
+     *
+     * @param doc
+     *            the document number
+     * @return the path relative to the project root with '/' as separator
+     */
+    String getPath(int doc) {
+        return paths[doc];
+    }
+
+    /**
+     * Returns the size of a document when it was indexed.
+     *
+     * @param doc
+     *            the document number
+     * @return the size in bytes, or {@link #DELETED} if the document marks a deleted file
+     */
+    long getSize(int doc) {
+        return sizes[doc];
+    }
+
+    /**
+     * Returns the last modification time of a document when it was indexed.
+     *
+     * @param doc
+     *            the document number
+     * @return the time in milliseconds
+     */
+    long getModified(int doc) {
+        return modified[doc];
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Returns the postings of a term.
+     *
+     * @param term
+     *            the term
+     * @return the sorted postings, each holding the document number in the upper and the line number in the lower 32
+     *         bits; empty if the term does not occur
+     */
+    long[] postings(byte[] term) {
+        TermCursor cursor = cursor();
+        if (cursor.seek(term) && cursor.compareTo(term) == 0) {
+            return cursor.postings();
+        }
+        return new long[0];
+    }
+
+    /**
+     * Returns the postings of all terms starting with a prefix.
+     *
+     * @param prefix
+     *            the prefix
+     * @param maxTerms
+     *            the maximum number of terms to combine
+     * @return the sorted postings without duplicates, each holding the document number in the upper and the line number
+     *         in the lower 32 bits
+     */
+    long[] postingsWithPrefix(byte[] prefix, int maxTerms) {
+        TermCursor cursor = cursor();
+        if (!cursor.seek(prefix)) {
+            return new long[0];
+        }
+        List<long[]> parts = new ArrayList<>();
+        int total = 0;
+        while (parts.size() < maxTerms && cursor.startsWith(prefix)) {
+            long[] part = cursor.postings();
+            parts.add(part);
+            total += part.length;
+            if (!cursor.next()) {
+                break;
+            }
+        }
+
+        long[] postings = new long[total];
+        int length = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, postings, length, part.length);
+            length += part.length;
+        }
+        Arrays.sort(postings);
+        int unique = 0;
+        for (int i = 0; i < postings.length; i++) {
+            if (i == 0 || postings[i] != postings[i - 1]) {
+                postings[unique++] = postings[i];
+            }
+        }
+        return Arrays.copyOf(postings, unique);
+    }
+
+    /**
+     * Returns a cursor positioned before the first term.
+     *
+     * @return a new cursor
+     */
+    TermCursor cursor() {
+        return new TermCursor();
+    }
+
+    /**
+     * Cursor iterating over the terms of this segment in sorted order.
+     */
+    class TermCursor {
+        /** The bytes of the current term. */
+        private byte[] term = new byte[ManifestIndex.MAX_TERM_LENGTH];
+
+        /** Length of the current term, -1 before the first term. */
+        private int length = -1;
+
+        /** Number of the current term. */
+        private int number = -1;
+
+        /** Position of the postings of the current term. */
+        private int postingsPosition;
+
+        /** Length of the postings of the current term. */
+        private int postingsLength;
+
+        /** Position of the next entry. */
+        private int position = indexPositions.length > 0 ? indexPositions[0] : 0;
+
+        /**
+         * Moves to the next term.
+         *
+         * @return {@code false} if there are no more terms
+         */
+        boolean next() {
+            if (number + 1 >= termCount) {
+                return false;
+            }
+            number++;
+            int[] cursor = { position };
+            int shared = readVarInt(cursor);
+            int suffix = readVarInt(cursor);
+            length = shared + suffix;
+            buffer.get(cursor[0], term, shared, suffix);
+            cursor[0] += suffix;
+            postingsLength = readVarInt(cursor);
+            postingsPosition = cursor[0];
+            position = postingsPosition + postingsLength;
+            return true;
+        }
+
+        /**
+         * Moves to the first term that is greater than or equal to the given term.
+         *
+         * @param target
+         *            the term to seek
+         * @return {@code false} if all terms are smaller
+         */
+        boolean seek(byte[] target) {
+            int low = 0;
+            int high = indexTerms.length - 1;
+            int block = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (Arrays.compareUnsigned(indexTerms[middle], target) <= 0) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (indexTerms.length == 0) {
+                return false;
+            }
+            number = block * INDEX_INTERVAL - 1;
+            position = indexPositions[block];
+            while (next()) {
+                if (compareTo(target) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Compares the current term with another term.
+         *
+         * @param other
+         *            the other term
+         * @return a negative number, zero or a positive number if the current term is smaller, equal or greater
+         */
+        int compareTo(byte[] other) {
+            return Arrays.compareUnsigned(term, 0, length, other, 0, other.length);
+        }
+
+        /**
+         * Checks whether the current term starts with a prefix.
+         *
+         * @param prefix
+         *            the prefix
+         * @return {@code true} if the term starts with the prefix
+         */
+        boolean startsWith(byte[] prefix) {
+            return length >= prefix.length && Arrays.equals(term, 0, prefix.length, prefix, 0, prefix.length);
+        }
+
+        /**
+         * Returns a copy of the current term.
+         *
+         * @return the term bytes
+         */
+        byte[] term() {
+            return Arrays.copyOf(term, length);
+        }
+
+        /**
+         * Decodes the postings of the current term.
+         *
+         * @return the sorted postings, each holding the document number in the upper and the line number in the lower
+         *         32 bits
+         */
+        long[] postings() {
+            int[] cursor = { postingsPosition };
+            int docCount = readVarInt(cursor);
+            long[] postings = new long[Math.max(docCount, 8)];
+            int size = 0;
+            int doc = 0;
+            for (int d = 0; d < docCount; d++) {
+                doc += readVarInt(cursor);
+                int lineCount = readVarInt(cursor);
+                int line = 0;
+                for (int l = 0; l < lineCount; l++) {
+                    line += readVarInt(cursor);
+                    if (size == postings.length) {
+                        postings = Arrays.copyOf(postings, size * 2);
+                    }
+                    postings[size++] = (long) doc << 32 | line;
+                }
+            }
+            return Arrays.copyOf(postings, size);
+        }
+    }
+
+    /**
+     * Reads a variable-length encoded number.
+     *
+     * @param cursor
+     *            one-element array holding the position, advanced past the number
+     * @return the number
+     */
+    private int readVarInt(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Writes a segment file.
+     *
+     * <p>
+     * All documents have to be added before the first term, and terms have to be added in ascending unsigned byte
+     * order.
+     * </p>
+     */
+    static class Writer implements AutoCloseable {
+        /** The output stream. */
+        private final DataOutputStream out;
+
+        /** Buffer for the encoded postings of a term. */
+        private final VarIntBuffer postings = new VarIntBuffer();
+
+        /** Buffer for the encoded entry of a term. */
+        private final VarIntBuffer entry = new VarIntBuffer();
+
+        /** Buffer for the terms of the in-memory term index. */
+        private final List<byte[]> indexTerms = new ArrayList<>();
+
+        /** Buffer for the positions of the indexed terms. */
+        private final List<Long> indexPositions = new ArrayList<>();
+
+        /** Number of documents announced in the header. */
+        private final int docCount;
+
+        /** Number of documents written. */
+        private int docsWritten;
+
+        /** Number of terms written. */
+        private int termCount;
+
+        /** The previous term. */
+        private final byte[] previous = new byte[ManifestIndex.MAX_TERM_LENGTH];
+
+        /** Length of the previous term. */
+        private int previousLength;
+
+        /** Position of the first term. */
+        private long termsPosition = -1;
+
+        /**
+         * Starts writing a segment file.
+         *
+         * @param file
+         *            the file to write
+         * @param docCount
+         *            the number of documents that will be added
+         * @throws IOException
+         *             if the file cannot be created
+         */
+        Writer(Path file, int docCount) throws IOException {
+            OutputStream stream = Files.newOutputStream(file);
+            this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            this.docCount = docCount;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docCount);
+        }
+
+        /**
+         * Adds a document.
+         *
+         * @param path
+         *            the path relative to the project root with '/' as separator
+         * @param size
+         *            the size in bytes, or {@link IndexSegment#DELETED}
+         * @param lastModified
+         *            the last modification time in milliseconds
+         * @throws IOException
+         *             if the document cannot be written
+         */
+        void addDocument(String path, long size, long lastModified) throws IOException {
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("Path too long: " + path);
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            docsWritten++;
+        }
+
+        /**
+         * Adds a term with its postings.
+         *
+         * @param term
+         *            the term, greater than the previously added term
+         * @param postings
+         *            the sorted postings, each holding the document number in the upper and the line number in the
+         *            lower 32 bits
+         * @param count
+         *            the number of postings
+         * @throws IOException
+         *             if the term cannot be written
+         */
+        void addTerm(byte[] term, long[] postings, int count) throws IOException {
+            addTerm(term, 0, term.length, postings, count);
+        }
+
+        /**
+         * Adds a term with its postings.
+         *
+         * @param bytes
+         *            buffer holding the term, greater than the previously added term
+         * @param offset
+         *            the start of the term in the buffer
+         * @param length
+         *            the length of the term
+         * @param postings
+         *            the sorted postings, each holding the document number in the upper and the line number in the
+         *            lower 32 bits
+         * @param count
+         *            the number of postings
+         * @throws IOException
+         *             if the term cannot be written
+         */
+        void addTerm(byte[] bytes, int offset, int length, long[] postings, int count) throws IOException {
+            if (docsWritten != docCount) {
+                throw new IllegalStateException(docsWritten + " of " + docCount + " documents added");
+            }
+            if (termsPosition < 0) {
+                termsPosition = out.size();
+            }
+            checkSize();
+
+            int shared = 0;
+            if (termCount % INDEX_INTERVAL == 0) {
+                indexTerms.add(Arrays.copyOfRange(bytes, offset, offset + length));
+                indexPositions.add((long) out.size());
+            } else {
+                int max = Math.min(length, previousLength);
+                while (shared < max && bytes[offset + shared] == previous[shared]) {
+                    shared++;
+                }
+            }
+            encode(postings, count);
+            entry.clear();
+            entry.add(shared);
+            entry.add(length - shared);
+            entry.add(bytes, offset + shared, length - shared);
+            entry.add(this.postings.size());
+            entry.writeTo(out);
+            this.postings.writeTo(out);
+
+            System.arraycopy(bytes, offset, previous, 0, length);
+            previousLength = length;
+            termCount++;
+        }
+
+        /**
+         * Encodes postings into {@link #postings}.
+         *
+         * @param sorted
+         *            the sorted postings
+         * @param count
+         *            the number of postings
+         */
+        private void encode(long[] sorted, int count) {
+            VarIntBuffer encoded = postings;
+            encoded.clear();
+            int docCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || (int) (sorted[i] >>> 32) != (int) (sorted[i - 1] >>> 32)) {
+                    docCount++;
+                }
+            }
+            encoded.add(docCount);
+            int previousDoc = 0;
+            int i = 0;
+            while (i < count) {
+                int doc = (int) (sorted[i] >>> 32);
+                int end = i;
+                while (end < count && (int) (sorted[end] >>> 32) == doc) {
+                    end++;
+                }
+                encoded.add(doc - previousDoc);
+                encoded.add(end - i);
+                int previousLine = 0;
+                for (; i < end; i++) {
+                    int line = (int) sorted[i];
+                    encoded.add(line - previousLine);
+                    previousLine = line;
+                }
+                previousDoc = doc;
+            }
+        }
+
+        /**
+         * Checks that the segment stays below the size that can be mapped at once.
+         *
+         * @throws IOException
+         *             if the segment is too large
+         */
+        private void checkSize() throws IOException {
+            if (out.size() >= Integer.MAX_VALUE - (1 << 20)) {
+                throw new IOException("Segment too large");
+            }
+        }
+
+        /**
+         * Writes the term index and the footer and closes the file.
+         *
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (termsPosition < 0) {
+                    termsPosition = out.size();
+                }
+                long indexPosition = out.size();
+                out.writeInt(indexTerms.size());
+                for (int i = 0; i < indexTerms.size(); i++) {
+                    out.writeByte(indexTerms.get(i).length);
+                    out.write(indexTerms.get(i));
+                    out.writeLong(indexPositions.get(i));
+                }
+                out.writeLong(indexPosition);
+                out.writeInt(termCount);
+                out.writeLong(termsPosition);
+                out.writeInt(MAGIC);
+                checkSize();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Growable buffer of variable-length encoded numbers.
+     */
+    private static class VarIntBuffer {
+        /** The encoded bytes. */
+        private byte[] bytes = new byte[256];
+
+        /** Number of used bytes. */
+        private int size;
+
+        /**
+         * Appends a number.
+         *
+         * @param value
+         *            the non-negative number
+         */
+        void add(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Appends bytes.
+         *
+         * @param source
+         *            buffer holding the bytes
+         * @param offset
+         *            the start of the bytes
+         * @param length
+         *            the number of bytes
+         */
+        void add(byte[] source, int offset, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        /**
+         * Returns the number of used bytes.
+         *
+         * @return the size in bytes
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Removes all numbers.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Writes the encoded bytes.
+         *
+         * @param out
+         *            the output
+         * @throws IOException
+         *             if the bytes cannot be written
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
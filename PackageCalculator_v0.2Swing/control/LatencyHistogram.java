@@ -0,0 +1,204 @@
+package control;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies.
+ *
+ * <p>
+ * The histogram uses log-linear buckets in the style of HdrHistogram: values below {@value #SUB_BUCKETS} are counted
+ * exactly, larger values are grouped into buckets whose width doubles with every power of two, with
+ * {@value #SUB_BUCKETS}/2 buckets per power of two. Every value is therefore recorded with a relative error below 1.6%
+ * in a fixed array of counters, no matter how large it is. Recording only increments atomic counters, so any number of
+ * threads can record at the same time without locking.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class LatencyHistogram {
+
+    /** Number of bits of the exactly counted values. */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /** Number of exactly counted values. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Number of buckets per power of two above the exactly counted values. */
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    /** Total number of buckets, enough for every non-negative {@code long}. */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS + SUB_BUCKETS;
+
+    /** Number of recorded values per bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of recorded values. */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Sum of all recorded values. */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** Largest recorded value. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *            the value, usually a latency in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Records a value several times, for example the mean latency of a batch once per element.
+     *
+     * @param value
+     *            the value, usually a latency in nanoseconds; negative values are recorded as 0
+     * @param times
+     *            how many times the value is recorded; nothing is recorded if not positive
+     */
+    public void record(long value, long times) {
+        if (times <= 0) {
+            return;
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        counts.addAndGet(bucketOf(value), times);
+        count.addAndGet(times);
+        sum.addAndGet(value * times);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest value, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values lies.
+     *
+     * <p>
+     * The result is the upper bound of the bucket containing the percentile, but never more than the largest recorded
+     * value.
+     * </p>
+     *
+     * @param percentile
+     *            the percentile between 0 and 100
+     * @return the value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this histogram.
+     *
+     * @param other
+     *            the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount != 0) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Removes all recorded values.
+     *
+     * <p>
+     * Values recorded concurrently with a reset may be partly lost.
+     * </p>
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value
+     *            the non-negative value
+     * @return the index of the bucket
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket
+     *            the index of the bucket
+     * @return the upper bound of the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        long subBucket = bucket - shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,1066 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import control.ManifestReader.ProgressListener;
+
+/**
+ * Full-text index over all manifests of a project.
+ *
+ * <p>
+ * The index maps every term of every .txt file below the project root to the files and lines it occurs in. Terms are
+ * the lower-cased runs of characters between whitespace and the separators {@code , ; # " ' ( ) [ ] { } | = :}, so
+ * parcel IDs such as {@code P-1234} and customer references stay single terms. A query matches all lines that contain
+ * each of its terms; a term ending in {@code *} matches all terms starting with the rest of it.
+ * </p>
+ *
+ * <p>
+ * The index is stored as a list of immutable {@link IndexSegment} files in a directory below
+ * {@code ~/.packagecalculator/index}, which can be changed with the system property {@value #DIRECTORY_PROPERTY}. When
+ * the index is opened, new and changed files are indexed in parallel batches into new segments and deleted files are
+ * recorded as deleted documents, so reopening a project only reads what changed since. The same happens for single
+ * files with {@link #update(Collection)}. Once there are more than {@value #MAX_SEGMENTS} segments, the newest ones are
+ * merged. Queries are answered from the memory-mapped segments and are safe to run while the index is updated.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ManifestIndex {
+
+    /** System property overriding the directory below which indexes are stored. */
+    public static final String DIRECTORY_PROPERTY = "packagecalculator.indexDirectory";
+
+    /** Maximum length of a term in bytes; longer terms are not indexed. */
+    public static final int MAX_TERM_LENGTH = 64;
+
+    /** Maximum number of bytes of manifests indexed into one new segment. */
+    static final long BATCH_BYTES = 8 << 20;
+
+    /** Number of segments above which segments are merged. */
+    static final int MAX_SEGMENTS = 16;
+
+    /** Maximum size of a merged segment in bytes. */
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    /** Maximum number of terms a prefix query expands to. */
+    private static final int MAX_PREFIX_TERMS = 1024;
+
+    /** Order of search hits: by file, then by line number. */
+    private static final Comparator<Hit> HIT_ORDER = Comparator.<Hit, Path>comparing(hit -> hit.file)
+            .thenComparingInt(hit -> hit.line);
+
+    /** Name of the file listing the segments of the index. */
+    private static final String SEGMENTS_FILE = "segments";
+
+    /** File name extension of segment files. */
+    private static final String SEGMENT_EXTENSION = ".seg";
+
+    /** Bytes that separate terms. */
+    private static final boolean[] SEPARATORS = new boolean[256];
+
+    static {
+        for (int b = 0; b <= ' '; b++) {
+            SEPARATORS[b] = true;
+        }
+        for (char c : ",;#\"'()[]{}|=:".toCharArray()) {
+            SEPARATORS[c] = true;
+        }
+        SEPARATORS[0x7F] = true;
+    }
+
+    /**
+     * A line matching a query.
+     */
+    public static class Hit {
+        /** The manifest file. */
+        public final Path file;
+
+        /** The line number, starting at 1. */
+        public final int line;
+
+        /**
+         * Constructs a Hit.
+         *
+         * @param file
+         *            the manifest file
+         * @param line
+         *            the line number, starting at 1
+         */
+        public Hit(Path file, int line) {
+            this.file = file;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + line;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the segments and the live documents.
+     */
+    private static class State {
+        /** The segments, oldest first. */
+        final List<IndexSegment> segments;
+
+        /** Per segment, which documents are live. */
+        final List<boolean[]> live;
+
+        /** Segment and document number of the live document of each path. */
+        final Map<String, int[]> documents;
+
+        /**
+         * Constructs the state of a list of segments. Later segments replace documents of earlier ones.
+         *
+         * @param segments
+         *            the segments, oldest first
+         */
+        State(List<IndexSegment> segments) {
+            this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+            this.documents = new HashMap<>();
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                for (int doc = 0; doc < segment.getDocumentCount(); doc++) {
+                    if (segment.getSize(doc) == IndexSegment.DELETED) {
+                        documents.remove(segment.getPath(doc));
+                    } else {
+                        documents.put(segment.getPath(doc), new int[] { s, doc });
+                    }
+                }
+            }
+            List<boolean[]> masks = new ArrayList<>(segments.size());
+            for (IndexSegment segment : segments) {
+                masks.add(new boolean[segment.getDocumentCount()]);
+            }
+            for (int[] document : documents.values()) {
+                masks.get(document[0])[document[1]] = true;
+            }
+            this.live = masks;
+        }
+    }
+
+    /**
+     * A manifest file to be indexed.
+     */
+    private static class Entry {
+        /** Path relative to the project root with '/' as separator. */
+        final String path;
+
+        /** The file. */
+        final Path file;
+
+        /** Size in bytes. */
+        final long size;
+
+        /** Last modification time in milliseconds. */
+        final long modified;
+
+        /**
+         * Constructs an Entry.
+         *
+         * @param path
+         *            the path relative to the project root
+         * @param file
+         *            the file
+         * @param attributes
+         *            the attributes of the file
+         */
+        Entry(String path, Path file, BasicFileAttributes attributes) {
+            this.path = path;
+            this.file = file;
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    /** The project root. */
+    private final Path root;
+
+    /** The directory holding the segment files. */
+    private final Path directory;
+
+    /** Number of threads used for indexing. */
+    private final int parallelism;
+
+    /** The current segments and live documents. */
+    private volatile State state = new State(Collections.emptyList());
+
+    /** Number of the next segment file. */
+    private long nextSegment;
+
+    /**
+     * Constructs an index for a project, stored in the default directory.
+     *
+     * <p>
+     * The number of threads is taken from the system property {@value ParallelManifestReader#PARALLELISM_PROPERTY} and
+     * defaults to the number of available processors.
+     * </p>
+     *
+     * @param root
+     *            the project root
+     */
+    public ManifestIndex(Path root) {
+        this(root, getDefaultDirectory(root), Integer.getInteger(ParallelManifestReader.PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructs an index for a project.
+     *
+     * @param root
+     *            the project root
+     * @param directory
+     *            the directory holding the segment files
+     * @param parallelism
+     *            the number of threads used for indexing
+     * @throws IllegalArgumentException
+     *             if the parallelism is smaller than 1
+     */
+    public ManifestIndex(Path root, Path directory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.directory = directory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the directory in which the index of a project is stored by default.
+     *
+     * @param root
+     *            the project root
+     * @return a directory below {@code ~/.packagecalculator/index} or the directory given by
+     *         {@value #DIRECTORY_PROPERTY}
+     */
+    public static Path getDefaultDirectory(Path root) {
+        String base = System.getProperty(DIRECTORY_PROPERTY);
+        Path baseDirectory = base != null ? Paths.get(base)
+                : Paths.get(System.getProperty("user.home"), ".packagecalculator", "index");
+        Path normalized = root.toAbsolutePath().normalize();
+        String name = normalized.getFileName() != null ? normalized.getFileName().toString() : "root";
+        return baseDirectory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + "-"
+                + Integer.toHexString(normalized.toString().hashCode()));
+    }
+
+    /**
+     * Returns the project root.
+     *
+     * @return the absolute project root
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of indexed manifests.
+     *
+     * @return the number of manifests
+     */
+    public int getDocumentCount() {
+        return state.documents.size();
+    }
+
+    /**
+     * Returns the number of segments.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * Opens the stored index and brings it up to date with the manifests below the project root.
+     *
+     * <p>
+     * A missing or damaged index is rebuilt from scratch.
+     * </p>
+     *
+     * @param listener
+     *            receives the number of bytes indexed so far, may be {@code null}
+     * @throws IOException
+     *             if the project cannot be read or the index cannot be written
+     */
+    public synchronized void open(ProgressListener listener) throws IOException {
+        Files.createDirectories(directory);
+        List<IndexSegment> segments = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        Path segmentsFile = directory.resolve(SEGMENTS_FILE);
+        if (Files.exists(segmentsFile)) {
+            try {
+                for (String name : Files.readAllLines(segmentsFile, StandardCharsets.UTF_8)) {
+                    if (!name.isEmpty()) {
+                        segments.add(new IndexSegment(directory.resolve(name)));
+                        listed.add(name);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Damaged index, rebuild it
+                segments.clear();
+                listed.clear();
+            }
+        }
+
+        // Remove segments of interrupted updates and merges
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!listed.contains(name)) {
+                    Files.deleteIfExists(file);
+                } else {
+                    nextSegment = Math.max(nextSegment, segmentNumber(name) + 1);
+                }
+            }
+        }
+        state = new State(segments);
+        refresh(listener);
+    }
+
+    /**
+     * Indexes all new and changed manifests below the project root and removes deleted manifests from the index.
+     *
+     * @param listener
+     *            receives the number of bytes indexed so far, may be {@code null}
+     * @throws IOException
+     *             if the project cannot be read or the index cannot be written
+     */
+    public synchronized void refresh(ProgressListener listener) throws IOException {
+        refresh(root, listener);
+    }
+
+    /**
+     * Indexes all new and changed manifests below a directory of the project and removes the manifests deleted from
+     * it from the index.
+     *
+     * <p>
+     * This is used when the changes of a directory are not known, for example because file system events were lost.
+     * Directories outside the project root are ignored.
+     * </p>
+     *
+     * @param directory
+     *            the directory
+     * @param listener
+     *            receives the number of bytes indexed so far, may be {@code null}
+     * @throws IOException
+     *             if the directory cannot be read or the index cannot be written
+     */
+    public synchronized void refresh(Path directory, ProgressListener listener) throws IOException {
+        Path absolute = directory.toAbsolutePath().normalize();
+        if (!absolute.startsWith(root)) {
+            return;
+        }
+        // Documents below the directory start with this prefix, all documents are below the root
+        String prefix = absolute.equals(root) ? "" : relativize(absolute) + "/";
+        Map<String, int[]> documents = state.documents;
+        List<Entry> changed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        if (Files.isDirectory(absolute)) {
+            Files.walkFileTree(absolute, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && isManifest(file)) {
+                        Entry entry = new Entry(relativize(file), file, attributes);
+                        seen.add(entry.path);
+                        if (!isCurrent(documents.get(entry.path), entry)) {
+                            changed.add(entry);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Unreadable folders and files deleted while walking are skipped
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        List<String> deleted = new ArrayList<>();
+        for (String path : documents.keySet()) {
+            if (path.startsWith(prefix) && !seen.contains(path)) {
+                deleted.add(path);
+            }
+        }
+        index(changed, deleted, listener);
+    }
+
+    /**
+     * Updates the index for files that were created, changed or deleted.
+     *
+     * <p>
+     * Files outside the project root and files that are not manifests are ignored.
+     * </p>
+     *
+     * @param files
+     *            the files
+     * @throws IOException
+     *             if the index cannot be written
+     */
+    public synchronized void update(Collection<Path> files) throws IOException {
+        Map<String, int[]> documents = state.documents;
+        List<Entry> changed = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Path file : files) {
+            Path absolute = file.toAbsolutePath().normalize();
+            if (!absolute.startsWith(root) || !isManifest(absolute)) {
+                continue;
+            }
+            String path = relativize(absolute);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+                Entry entry = new Entry(path, absolute, attributes);
+                if (attributes.isRegularFile() && !isCurrent(documents.get(path), entry)) {
+                    changed.add(entry);
+                }
+            } catch (NoSuchFileException e) {
+                if (documents.containsKey(path)) {
+                    deleted.add(path);
+                }
+            }
+        }
+        index(changed, deleted, null);
+    }
+
+    /**
+     * Searches the index.
+     *
+     * @param query
+     *            the terms to search for, separated like terms in manifests
+     * @param limit
+     *            the maximum number of hits
+     * @return the first matching lines by file and line number, in that order
+     */
+    public List<Hit> search(String query, int limit) {
+        List<byte[]> terms = new ArrayList<>();
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        tokenize(bytes, bytes.length, (term, length, line) -> terms.add(Arrays.copyOf(term, length)));
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Keep the first hits by file and line of all segments; the head of the queue is the last of them
+        PriorityQueue<Hit> hits = new PriorityQueue<>(HIT_ORDER.reversed());
+        State current = state;
+        for (int s = 0; s < current.segments.size(); s++) {
+            IndexSegment segment = current.segments.get(s);
+            boolean[] live = current.live.get(s);
+            long[] matches = null;
+            for (byte[] term : terms) {
+                long[] postings = term.length > 1 && term[term.length - 1] == '*'
+                        ? segment.postingsWithPrefix(Arrays.copyOf(term, term.length - 1), MAX_PREFIX_TERMS)
+                        : segment.postings(term);
+                matches = matches == null ? postings : intersect(matches, postings);
+                if (matches.length == 0) {
+                    break;
+                }
+            }
+            for (int i = 0; i < matches.length;) {
+                int doc = (int) (matches[i] >>> 32);
+                int end = i + 1;
+                while (end < matches.length && (int) (matches[end] >>> 32) == doc) {
+                    end++;
+                }
+                if (live[doc]) {
+                    collect(hits, limit, root.resolve(segment.getPath(doc)), matches, i, end);
+                }
+                i = end;
+            }
+        }
+
+        List<Hit> sorted = new ArrayList<>(hits);
+        sorted.sort(HIT_ORDER);
+        return sorted;
+    }
+
+    /**
+     * Adds the matching lines of one document to the first hits, as long as they come before the last of them.
+     *
+     * @param hits
+     *            the first hits found so far, the last of them at the head
+     * @param limit
+     *            the maximum number of hits
+     * @param file
+     *            the file of the document
+     * @param matches
+     *            the postings of the query
+     * @param from
+     *            the index of the first posting of the document (inclusive)
+     * @param to
+     *            the index of the last posting of the document (exclusive)
+     */
+    private static void collect(PriorityQueue<Hit> hits, int limit, Path file, long[] matches, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int line = (int) matches[i];
+            if (hits.size() == limit) {
+                Hit last = hits.peek();
+                int order = file.compareTo(last.file);
+                // The postings of a document are sorted by line, so the rest of them come later as well
+                if (order > 0 || order == 0 && line >= last.line) {
+                    return;
+                }
+                hits.poll();
+            }
+            hits.add(new Hit(file, line));
+        }
+    }
+
+    /**
+     * Reads lines of a file.
+     *
+     * @param file
+     *            the file
+     * @param lines
+     *            the line numbers, starting at 1, in ascending order
+     * @return the lines; lines beyond the end of the file or of an unreadable file are empty
+     */
+    public static String[] readLines(Path file, int[] lines) {
+        String[] text = new String[lines.length];
+        Arrays.fill(text, "");
+        // Read bytes as ISO-8859-1 so malformed UTF-8 cannot fail the read, then decode each line as UTF-8
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            int number = 0;
+            int next = 0;
+            String line;
+            while (next < lines.length && (line = reader.readLine()) != null) {
+                number++;
+                while (next < lines.length && lines[next] == number) {
+                    text[next++] = new String(line.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            // Show the hits without their text
+        }
+        return text;
+    }
+
+    /**
+     * Indexes changed manifests into new segments and records deleted manifests.
+     *
+     * @param changed
+     *            the new and changed manifests
+     * @param deleted
+     *            the paths of deleted manifests
+     * @param listener
+     *            receives the number of bytes indexed so far, may be {@code null}
+     * @throws IOException
+     *             if the index cannot be written
+     */
+    private void index(List<Entry> changed, List<String> deleted, ProgressListener listener) throws IOException {
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        // Group the manifests into batches of about BATCH_BYTES, each written to its own segment
+        List<List<Entry>> batches = new ArrayList<>();
+        List<Entry> batch = new ArrayList<>();
+        long batchBytes = 0;
+        long totalBytes = 0;
+        for (Entry entry : changed) {
+            if (!batch.isEmpty() && batchBytes + entry.size > BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(entry);
+            batchBytes += entry.size;
+            totalBytes += entry.size;
+        }
+        batches.add(batch);
+
+        AtomicLong bytesIndexed = new AtomicLong();
+        long total = totalBytes;
+        ProgressListener progress = listener == null ? null
+                : (bytes, ignored) -> listener.progress(bytesIndexed.addAndGet(bytes), total);
+        List<Callable<IndexSegment>> tasks = new ArrayList<>();
+        for (int b = 0; b < batches.size(); b++) {
+            List<Entry> entries = batches.get(b);
+            List<String> tombstones = b == 0 ? deleted : Collections.emptyList();
+            Path file = newSegmentFile();
+            tasks.add(() -> writeSegment(file, entries, tombstones, progress));
+        }
+
+        List<IndexSegment> segments = new ArrayList<>(state.segments);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<IndexSegment> future : pool.invokeAll(tasks)) {
+                segments.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        commit(segments);
+        merge();
+    }
+
+    /**
+     * Indexes a batch of manifests into a new segment file.
+     *
+     * @param file
+     *            the segment file to write
+     * @param entries
+     *            the manifests
+     * @param deleted
+     *            the paths of deleted manifests
+     * @param progress
+     *            receives the number of bytes of each indexed manifest, with the total as -1; may be {@code null}
+     * @return the written segment
+     * @throws IOException
+     *             if the segment cannot be written
+     */
+    private IndexSegment writeSegment(Path file, List<Entry> entries, List<String> deleted,
+            ProgressListener progress) throws IOException {
+        TermTable terms = new TermTable();
+        long[] sizes = new long[entries.size()];
+        for (int doc = 0; doc < entries.size(); doc++) {
+            Entry entry = entries.get(doc);
+            long docBits = (long) doc << 32;
+            try (InputStream in = Files.newInputStream(entry.file)) {
+                tokenize(in, (term, length, line) -> terms.add(term, length, docBits | line));
+                sizes[doc] = entry.size;
+            } catch (NoSuchFileException e) {
+                // Deleted since it was found
+                sizes[doc] = IndexSegment.DELETED;
+            }
+            if (progress != null) {
+                progress.progress(entry.size, -1);
+            }
+        }
+
+        try (IndexSegment.Writer writer = new IndexSegment.Writer(file, entries.size() + deleted.size())) {
+            for (int doc = 0; doc < entries.size(); doc++) {
+                writer.addDocument(entries.get(doc).path, sizes[doc], entries.get(doc).modified);
+            }
+            for (String path : deleted) {
+                writer.addDocument(path, IndexSegment.DELETED, 0);
+            }
+            byte[] bytes = terms.bytes();
+            for (int id : terms.sortedIds()) {
+                writer.addTerm(bytes, terms.start(id), terms.length(id), terms.postings(id), terms.count(id));
+            }
+        }
+        return new IndexSegment(file);
+    }
+
+    /**
+     * Merges the newest segments if there are more than {@value #MAX_SEGMENTS}.
+     *
+     * <p>
+     * As many of the newest segments are merged as fit into {@value #MAX_SEGMENT_BYTES} bytes. Documents that were
+     * replaced or deleted are dropped. Deleted documents are kept as long as older segments remain that may contain the
+     * deleted manifests.
+     * </p>
+     *
+     * @throws IOException
+     *             if the merged segment cannot be written
+     */
+    private void merge() throws IOException {
+        State current = state;
+        List<IndexSegment> segments = current.segments;
+        if (segments.size() <= MAX_SEGMENTS) {
+            return;
+        }
+        int first = segments.size();
+        long bytes = 0;
+        while (first > 0 && bytes + segments.get(first - 1).getFileSize() <= MAX_SEGMENT_BYTES) {
+            first--;
+            bytes += segments.get(first).getFileSize();
+        }
+        if (segments.size() - first < 2) {
+            return;
+        }
+        boolean keepDeleted = first > 0;
+
+        // Number the documents that survive the merge
+        int[][] numbers = new int[segments.size()][];
+        List<String> paths = new ArrayList<>();
+        List<long[]> attributes = new ArrayList<>();
+        Set<String> kept = new HashSet<>();
+        for (int s = first; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            numbers[s] = new int[segment.getDocumentCount()];
+            Arrays.fill(numbers[s], -1);
+            for (int doc = 0; doc < segment.getDocumentCount(); doc++) {
+                if (current.live.get(s)[doc]) {
+                    numbers[s][doc] = paths.size();
+                    paths.add(segment.getPath(doc));
+                    attributes.add(new long[] { segment.getSize(doc), segment.getModified(doc) });
+                    kept.add(segment.getPath(doc));
+                }
+            }
+        }
+        List<String> deleted = new ArrayList<>();
+        if (keepDeleted) {
+            for (int s = first; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                for (int doc = 0; doc < segment.getDocumentCount(); doc++) {
+                    String path = segment.getPath(doc);
+                    if (segment.getSize(doc) == IndexSegment.DELETED && !kept.contains(path)
+                            && !current.documents.containsKey(path)) {
+                        deleted.add(path);
+                        kept.add(path);
+                    }
+                }
+            }
+        }
+
+        Path file = newSegmentFile();
+        try (IndexSegment.Writer writer = new IndexSegment.Writer(file, paths.size() + deleted.size())) {
+            for (int i = 0; i < paths.size(); i++) {
+                writer.addDocument(paths.get(i), attributes.get(i)[0], attributes.get(i)[1]);
+            }
+            for (String path : deleted) {
+                writer.addDocument(path, IndexSegment.DELETED, 0);
+            }
+            mergeTerms(segments, first, numbers, writer);
+        }
+
+        List<IndexSegment> merged = new ArrayList<>(segments.subList(0, first));
+        merged.add(new IndexSegment(file));
+        commit(merged);
+    }
+
+    /**
+     * Writes the terms of several segments in sorted order, combining the postings of equal terms.
+     *
+     * @param segments
+     *            all segments
+     * @param first
+     *            the index of the first segment to merge
+     * @param numbers
+     *            per segment and document, the new document number or -1 if the document is dropped
+     * @param writer
+     *            the writer of the merged segment
+     * @throws IOException
+     *             if the terms cannot be written
+     */
+    private static void mergeTerms(List<IndexSegment> segments, int first, int[][] numbers,
+            IndexSegment.Writer writer) throws IOException {
+        // Cursors ordered by their current term, then by segment, so postings are combined in document order
+        PriorityQueue<Object[]> queue = new PriorityQueue<>((a, b) -> {
+            int order = Arrays.compareUnsigned((byte[]) a[1], (byte[]) b[1]);
+            return order != 0 ? order : Integer.compare((Integer) a[2], (Integer) b[2]);
+        });
+        for (int s = first; s < segments.size(); s++) {
+            IndexSegment.TermCursor cursor = segments.get(s).cursor();
+            if (cursor.next()) {
+                queue.add(new Object[] { cursor, cursor.term(), s });
+            }
+        }
+
+        long[] postings = new long[256];
+        while (!queue.isEmpty()) {
+            byte[] term = (byte[]) queue.peek()[1];
+            int count = 0;
+            while (!queue.isEmpty() && Arrays.equals((byte[]) queue.peek()[1], term)) {
+                Object[] head = queue.poll();
+                IndexSegment.TermCursor cursor = (IndexSegment.TermCursor) head[0];
+                int[] segmentNumbers = numbers[(Integer) head[2]];
+                for (long posting : cursor.postings()) {
+                    int doc = segmentNumbers[(int) (posting >>> 32)];
+                    if (doc >= 0) {
+                        if (count == postings.length) {
+                            postings = Arrays.copyOf(postings, count * 2);
+                        }
+                        postings[count++] = (long) doc << 32 | (int) posting;
+                    }
+                }
+                if (cursor.next()) {
+                    head[1] = cursor.term();
+                    queue.add(head);
+                }
+            }
+            if (count > 0) {
+                writer.addTerm(term, postings, count);
+            }
+        }
+    }
+
+    /**
+     * Makes a list of segments the current state of the index and deletes the files of segments no longer used.
+     *
+     * @param segments
+     *            the new segments, oldest first
+     * @throws IOException
+     *             if the list of segments cannot be written
+     */
+    private void commit(List<IndexSegment> segments) throws IOException {
+        StringBuilder names = new StringBuilder();
+        for (IndexSegment segment : segments) {
+            names.append(segment.getFile().getFileName()).append('\n');
+        }
+        Path temporary = directory.resolve(SEGMENTS_FILE + ".tmp");
+        Files.write(temporary, names.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temporary, directory.resolve(SEGMENTS_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, directory.resolve(SEGMENTS_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<IndexSegment> obsolete = new ArrayList<>(state.segments);
+        obsolete.removeAll(segments);
+        state = new State(segments);
+        for (IndexSegment segment : obsolete) {
+            try {
+                Files.deleteIfExists(segment.getFile());
+            } catch (IOException e) {
+                // Still mapped on some platforms; removed when the index is opened again
+            }
+        }
+    }
+
+    /**
+     * Returns the file for a new segment.
+     *
+     * @return a file in the index directory
+     */
+    private Path newSegmentFile() {
+        return directory.resolve(String.format("segment-%08d%s", nextSegment++, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Returns the number of a segment file.
+     *
+     * @param name
+     *            the file name
+     * @return the number, or -1 if the name does not belong to a segment
+     */
+    private static long segmentNumber(String name) {
+        try {
+            return Long.parseLong(name.substring("segment-".length(), name.length() - SEGMENT_EXTENSION.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks whether an indexed document matches the current state of a file.
+     *
+     * @param document
+     *            segment and document number of the indexed document, or {@code null}
+     * @param entry
+     *            the file
+     * @return {@code true} if the file has not changed since it was indexed
+     */
+    private boolean isCurrent(int[] document, Entry entry) {
+        if (document == null) {
+            return false;
+        }
+        IndexSegment segment = state.segments.get(document[0]);
+        return segment.getSize(document[1]) == entry.size && segment.getModified(document[1]) == entry.modified;
+    }
+
+    /**
+     * Checks whether a file is a manifest.
+     *
+     * @param file
+     *            the file
+     * @return {@code true} for .txt files, regardless of the case of the extension
+     */
+    public static boolean isManifest(Path file) {
+        return file.getFileName() != null
+                && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(BinaryManifest.TEXT_EXTENSION);
+    }
+
+    /**
+     * Returns the path of a file relative to the project root.
+     *
+     * @param file
+     *            the absolute file
+     * @return the relative path with '/' as separator
+     */
+    private String relativize(Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Intersects two sorted arrays.
+     *
+     * @param a
+     *            the first array
+     * @param b
+     *            the second array
+     * @return the values contained in both arrays
+     */
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Receives the terms found by the tokenizer.
+     */
+    private interface TermSink {
+        /**
+         * Called for every term.
+         *
+         * @param term
+         *            buffer holding the lower-cased term, only valid during the call
+         * @param length
+         *            the length of the term
+         * @param line
+         *            the line number, starting at 1
+         */
+        void term(byte[] term, int length, int line);
+    }
+
+    /**
+     * Splits a stream into terms.
+     *
+     * @param in
+     *            the stream
+     * @param sink
+     *            receives the terms
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    private static void tokenize(InputStream in, TermSink sink) throws IOException {
+        Tokenizer tokenizer = new Tokenizer(sink);
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            tokenizer.feed(buffer, read);
+        }
+        tokenizer.finish();
+    }
+
+    /**
+     * Splits bytes into terms.
+     *
+     * @param bytes
+     *            the bytes
+     * @param length
+     *            the number of bytes
+     * @param sink
+     *            receives the terms
+     */
+    private static void tokenize(byte[] bytes, int length, TermSink sink) {
+        Tokenizer tokenizer = new Tokenizer(sink);
+        tokenizer.feed(bytes, length);
+        tokenizer.finish();
+    }
+
+    /**
+     * Incremental tokenizer, so terms may span the buffers it is fed with.
+     */
+    private static class Tokenizer {
+        /** Receives the terms. */
+        private final TermSink sink;
+
+        /** The current term. */
+        private final byte[] term = new byte[MAX_TERM_LENGTH];
+
+        /** Length of the current term. */
+        private int length;
+
+        /** Whether the current term is longer than {@link #MAX_TERM_LENGTH}. */
+        private boolean tooLong;
+
+        /** The current line number. */
+        private int line = 1;
+
+        /**
+         * Constructs a Tokenizer.
+         *
+         * @param sink
+         *            receives the terms
+         */
+        Tokenizer(TermSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Splits the next bytes into terms.
+         *
+         * @param bytes
+         *            the bytes
+         * @param count
+         *            the number of bytes
+         */
+        void feed(byte[] bytes, int count) {
+            for (int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                if (SEPARATORS[b & 0xFF]) {
+                    finish();
+                    if (b == '\n') {
+                        line++;
+                    }
+                } else if (length < MAX_TERM_LENGTH) {
+                    term[length++] = b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+                } else {
+                    tooLong = true;
+                }
+            }
+        }
+
+        /**
+         * Ends the current term.
+         */
+        void finish() {
+            if (length > 0 && !tooLong) {
+                sink.term(term, length, line);
+            }
+            length = 0;
+            tooLong = false;
+        }
+    }
+}
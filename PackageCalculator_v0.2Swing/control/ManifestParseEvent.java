@@ -0,0 +1,91 @@
+package control;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for reading and pricing a whole manifest.
+ *
+ * <p>
+ * The event is emitted by {@link ManifestReader}, {@link ParallelManifestReader} and
+ * {@link Calculator#summarize(data.PacketStore)} and carries the counts of the
+ * resulting {@link ManifestSummary}, including the number of packages per tariff tier. Like the other pricing events
+ * it is only created once the flight recorder is running.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+@Name("packagecalculator.ManifestParse")
+@Label("Manifest Parse")
+@Category({ "Package Calculator", "Manifests" })
+@Description("Reading and pricing of a manifest")
+public class ManifestParseEvent extends jdk.jfr.Event {
+
+    /** The manifest file, or a description of the stream it was read from. */
+    @Label("Source")
+    String source;
+
+    /** Number of threads pricing the manifest. */
+    @Label("Parallelism")
+    int parallelism;
+
+    /** Number of read bytes. */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /** Number of priced packages. */
+    @Label("Packets")
+    long packets;
+
+    /** Number of malformed lines. */
+    @Label("Malformed Lines")
+    long malformedLines;
+
+    /** Total price in cents. */
+    @Label("Total Cents")
+    long totalCents;
+
+    /** Number of packages per tariff tier, as "tier: count" pairs. */
+    @Label("Tiers")
+    String tiers;
+
+    /**
+     * Commits the event if it is enabled and lasted at least its threshold.
+     *
+     * @param manifest
+     *            the manifest file, or a description of the stream it was read from
+     * @param threads
+     *            the number of threads pricing the manifest
+     * @param summary
+     *            the summary of the priced packages
+     */
+    void report(String manifest, int threads, ManifestSummary summary) {
+        if (!shouldCommit()) {
+            return;
+        }
+        source = manifest;
+        parallelism = threads;
+        bytes = summary.getBytes();
+        packets = summary.getPacketCount();
+        malformedLines = summary.getMalformedLines();
+        totalCents = summary.getTotalCents();
+
+        Tariff tariff = summary.getTariff();
+        StringBuilder text = new StringBuilder();
+        for (int t = 0; t < tariff.getTierCount(); t++) {
+            if (t > 0) {
+                text.append(", ");
+            }
+            text.append(tariff.getTierName(t)).append(": ").append(summary.getTierCount(t));
+        }
+        tiers = text.toString();
+        commit();
+    }
+}
@@ -0,0 +1,440 @@
+package control;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import data.PacketBatch;
+import data.PacketStore;
+
+/**
+ * Reads manifest files and prices the packages they describe.
+ *
+ * <p>
+ * A manifest is a text file with one package per line. The first four whole numbers on a line are taken as length,
+ * width and height in millimeters and weight in grams. Fields may be separated by spaces, tabs, commas or semicolons.
+ * Other fields, such as parcel IDs or customer references, are skipped as long as they are not plain numbers.
+ * Everything after a {@code #} is a comment. Non-empty lines with fewer than four numbers are counted as malformed.
+ * </p>
+ *
+ * <p>
+ * The file is memory-mapped window by window and parsed directly from the mapped bytes, without creating a
+ * {@code String} per line. Packages are collected in a reusable {@link PacketBatch} and priced in batches, so memory use
+ * does not depend on the size of the file. Manifests that are not files, such as the standard input, are read through a
+ * small reusable buffer instead. The priced packages and the read bytes are reported to
+ * {@link PricingMetrics#getGlobal()}, and every manifest
+ * emits a {@link ManifestParseEvent} for the flight recorder.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ManifestReader {
+
+    /**
+     * Listener notified while a manifest is being read.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after a part of the manifest has been processed.
+         *
+         * @param bytesRead
+         *            the number of bytes processed so far
+         * @param bytesTotal
+         *            the total number of bytes to process
+         */
+        void progress(long bytesRead, long bytesTotal);
+    }
+
+    /**
+     * Receiver of the priced packages of a manifest, one batch at a time.
+     */
+    public interface BatchConsumer {
+        /**
+         * Called for every batch of priced packages, in the order of the manifest.
+         *
+         * <p>
+         * The batch and the tiers are reused once this method returns.
+         * </p>
+         *
+         * @param batch
+         *            the packages
+         * @param tiers
+         *            the tier indices of the packages in the tariff of the reader
+         * @throws IOException
+         *             if the packages cannot be processed
+         */
+        void accept(PacketBatch batch, int[] tiers) throws IOException;
+    }
+
+    /** Number of bytes mapped at once. */
+    static final long WINDOW_SIZE = 64L << 20;
+
+    /** Number of bytes parsed between two progress notifications. */
+    private static final int SLICE_SIZE = 4 << 20;
+
+    /** Number of packages priced together. */
+    static final int BATCH_SIZE = 4096;
+
+    /** Largest accepted value of a single field. */
+    private static final int MAX_VALUE = 100_000_000;
+
+    /** The calculator used to price the packages. */
+    private final Calculator calculator;
+
+    /**
+     * Constructs a new ManifestReader.
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     */
+    public ManifestReader(Calculator calculator) {
+        this.calculator = calculator;
+    }
+
+    /**
+     * Prices all packages of a manifest file.
+     *
+     * @param file
+     *            the manifest file
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @return the summary of the priced packages
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public ManifestSummary price(Path file, ProgressListener listener) throws IOException {
+        return read(file, null, listener);
+    }
+
+    /**
+     * Prices all packages of a manifest file and appends them to a store.
+     *
+     * <p>
+     * Malformed lines are counted in the summary but not stored.
+     * </p>
+     *
+     * @param file
+     *            the manifest file
+     * @param store
+     *            the store receiving the packages in the order of the manifest, or {@code null}
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @return the summary of the priced packages
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public ManifestSummary read(Path file, PacketStore store, ProgressListener listener) throws IOException {
+        return forEachBatch(file, store == null ? null : (batch, tiers) -> store.append(batch), listener);
+    }
+
+    /**
+     * Prices all packages of a manifest file and passes them on batch by batch.
+     *
+     * <p>
+     * Malformed lines are counted in the summary but not passed on. Only one batch is held in memory, so a manifest can
+     * be converted or priced again without storing all of its packages.
+     * </p>
+     *
+     * @param file
+     *            the manifest file
+     * @param consumer
+     *            the consumer receiving the packages in the order of the manifest, or {@code null}
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @return the summary of the priced packages
+     * @throws IOException
+     *             if the file cannot be read or the consumer fails
+     */
+    public ManifestSummary forEachBatch(Path file, BatchConsumer consumer, ProgressListener listener)
+            throws IOException {
+        ManifestParseEvent event = FlightEvents.beginParse();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ManifestSummary summary = new ManifestSummary(calculator.getTariff());
+            LineParser parser = new LineParser(summary, consumer);
+            price(channel, 0, channel.size(), parser, listener);
+            FlightEvents.reportParse(event, file.toString(), 1, summary);
+            return summary;
+        }
+    }
+
+    /**
+     * Prices all packages of a manifest read from a stream.
+     *
+     * <p>
+     * The stream is read through a reusable buffer and is not closed.
+     * </p>
+     *
+     * @param in
+     *            the stream providing the manifest
+     * @param listener
+     *            the listener notified about the progress, or {@code null}; the total is reported as -1
+     * @return the summary of the priced packages
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    public ManifestSummary price(InputStream in, ProgressListener listener) throws IOException {
+        ManifestParseEvent event = FlightEvents.beginParse();
+        ManifestSummary summary = new ManifestSummary(calculator.getTariff());
+        LineParser parser = new LineParser(summary, null);
+        byte[] bytes = new byte[1 << 16];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long bytesRead = 0;
+        int count;
+        while ((count = in.read(bytes)) >= 0) {
+            parser.feed(buffer, 0, count);
+            summary.addBytes(count);
+            if (PricingMetrics.ENABLED) {
+                PricingMetrics.getGlobal().recordBytes(count);
+            }
+            bytesRead += count;
+            if (listener != null) {
+                listener.progress(bytesRead, -1);
+            }
+        }
+        parser.finish();
+        FlightEvents.reportParse(event, "stream", 1, summary);
+        return summary;
+    }
+
+    /**
+     * Prices the packages in a byte range of a manifest file.
+     *
+     * <p>
+     * The range is expected to start at the beginning of a line and to end after a line break or at the end of the
+     * file.
+     * </p>
+     *
+     * @param channel
+     *            the channel of the manifest file
+     * @param from
+     *            the position of the first byte (inclusive)
+     * @param to
+     *            the position of the last byte (exclusive)
+     * @param summary
+     *            the summary receiving the counts
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    void price(FileChannel channel, long from, long to, ManifestSummary summary, ProgressListener listener)
+            throws IOException {
+        price(channel, from, to, new LineParser(summary, null), listener);
+    }
+
+    /**
+     * Feeds a byte range of a manifest file to a parser.
+     *
+     * @param channel
+     *            the channel of the manifest file
+     * @param from
+     *            the position of the first byte (inclusive)
+     * @param to
+     *            the position of the last byte (exclusive)
+     * @param parser
+     *            the parser, whose summary receives the byte counts
+     * @param listener
+     *            the listener notified about the progress, or {@code null}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private void price(FileChannel channel, long from, long to, LineParser parser, ProgressListener listener)
+            throws IOException {
+        ManifestSummary summary = parser.summary;
+        for (long position = from; position < to; position += WINDOW_SIZE) {
+            int windowSize = (int) Math.min(WINDOW_SIZE, to - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            for (int offset = 0; offset < windowSize; offset += SLICE_SIZE) {
+                int end = Math.min(offset + SLICE_SIZE, windowSize);
+                parser.feed(window, offset, end);
+                summary.addBytes(end - offset);
+                if (PricingMetrics.ENABLED) {
+                    PricingMetrics.getGlobal().recordBytes(end - offset);
+                }
+                if (listener != null) {
+                    listener.progress(position - from + end, to - from);
+                }
+            }
+        }
+        parser.finish();
+    }
+
+    /**
+     * Incremental parser turning manifest bytes into priced packages.
+     *
+     * <p>
+     * The parser keeps its state between calls to {@link #feed(ByteBuffer, int, int)}, so lines may span several
+     * buffers.
+     * </p>
+     */
+    private final class LineParser {
+
+        /** The summary receiving the counts. */
+        private final ManifestSummary summary;
+
+        /** The consumer receiving the packages, or {@code null}. */
+        private final BatchConsumer consumer;
+
+        /** Packages waiting to be priced. */
+        private final PacketBatch batch = new PacketBatch(BATCH_SIZE);
+
+        /** Tier indices of the priced batch. */
+        private final int[] tiers = new int[BATCH_SIZE];
+
+        /** Numeric fields of the current line. */
+        private final int[] fields = new int[4];
+
+        /** Number of numeric fields found on the current line. */
+        private int fieldCount;
+
+        /** Value of the current numeric token. */
+        private int value;
+
+        /** Whether the parser is inside a token. */
+        private boolean inToken;
+
+        /** Whether the current token consists of digits only. */
+        private boolean numericToken;
+
+        /** Whether the current line contains any token. */
+        private boolean lineHasContent;
+
+        /** Whether the rest of the current line is a comment. */
+        private boolean inComment;
+
+        /** Whether the current line contains a number that is too large. */
+        private boolean invalidLine;
+
+        /**
+         * Constructs a new LineParser.
+         *
+         * @param summary
+         *            the summary receiving the counts
+         * @param consumer
+         *            the consumer receiving the packages, or {@code null}
+         */
+        LineParser(ManifestSummary summary, BatchConsumer consumer) {
+            this.summary = summary;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Parses a range of bytes.
+         *
+         * @param buffer
+         *            the buffer containing the bytes
+         * @param from
+         *            the index of the first byte (inclusive)
+         * @param to
+         *            the index of the last byte (exclusive)
+         * @throws IOException
+         *             if the consumer fails
+         */
+        void feed(ByteBuffer buffer, int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    endToken();
+                    endLine();
+                } else if (inComment) {
+                    continue;
+                } else if (b >= '0' && b <= '9') {
+                    if (!inToken) {
+                        inToken = true;
+                        numericToken = true;
+                        value = 0;
+                    }
+                    if (numericToken) {
+                        value = Math.min(value * 10 + (b - '0'), MAX_VALUE + 1);
+                    }
+                } else if (b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r') {
+                    endToken();
+                } else if (b == '#') {
+                    endToken();
+                    inComment = true;
+                } else {
+                    inToken = true;
+                    numericToken = false;
+                }
+            }
+        }
+
+        /**
+         * Processes the last line and prices all remaining packages.
+         *
+         * @throws IOException
+         *             if the consumer fails
+         */
+        void finish() throws IOException {
+            endToken();
+            endLine();
+            flush();
+        }
+
+        /**
+         * Completes the current token.
+         */
+        private void endToken() {
+            if (!inToken) {
+                return;
+            }
+            inToken = false;
+            lineHasContent = true;
+            if (numericToken) {
+                if (value > MAX_VALUE) {
+                    invalidLine = true;
+                } else if (fieldCount < fields.length) {
+                    fields[fieldCount++] = value;
+                }
+            }
+        }
+
+        /**
+         * Completes the current line, adding its package to the batch.
+         *
+         * @throws IOException
+         *             if the consumer fails
+         */
+        private void endLine() throws IOException {
+            if (fieldCount == fields.length && !invalidLine) {
+                batch.add(fields[0], fields[1], fields[2], fields[3]);
+                if (batch.isFull()) {
+                    flush();
+                }
+            } else if (lineHasContent) {
+                summary.addMalformedLine();
+            }
+            fieldCount = 0;
+            lineHasContent = false;
+            inComment = false;
+            invalidLine = false;
+        }
+
+        /**
+         * Prices the packages in the batch, passes them to the consumer and empties the batch.
+         *
+         * @throws IOException
+         *             if the consumer fails
+         */
+        private void flush() throws IOException {
+            long start = PricingMetrics.start();
+            calculator.classify(batch, tiers);
+            int n = batch.size();
+            for (int i = 0; i < n; i++) {
+                summary.count(tiers[i]);
+            }
+            PricingMetrics.stop(n, start);
+            if (consumer != null) {
+                consumer.accept(batch, tiers);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package control;
+
+import data.Money;
+
+/**
+ * Result of pricing a manifest.
+ *
+ * <p>
+ * A summary counts how many packages fell into each tier of a {@link Tariff}, how many lines could not be read and how
+ * many bytes were processed. The total shipping costs are derived from the tier counts, so they do not depend on the
+ * order in which packages were priced.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ManifestSummary {
+
+    /** The tariff the packages were priced with. */
+    private final Tariff tariff;
+
+    /** Number of packages per tier. */
+    private final long[] tierCounts;
+
+    /** Number of non-empty lines that did not describe a package. */
+    private long malformedLines;
+
+    /** Number of bytes processed. */
+    private long bytes;
+
+    /**
+     * Constructs an empty summary for the given tariff.
+     *
+     * @param tariff
+     *            the tariff the packages are priced with
+     */
+    public ManifestSummary(Tariff tariff) {
+        this.tariff = tariff;
+        this.tierCounts = new long[tariff.getTierCount()];
+    }
+
+    /**
+     * Constructs a summary with known counts, for example read back from a file.
+     *
+     * @param tariff
+     *            the tariff the packages were priced with
+     * @param tierCounts
+     *            the number of packages per tier, one entry per tier of the tariff
+     * @param malformedLines
+     *            the number of lines that did not describe a package
+     * @param bytes
+     *            the number of processed bytes
+     * @throws IllegalArgumentException
+     *             if the number of tier counts does not match the tariff
+     */
+    ManifestSummary(Tariff tariff, long[] tierCounts, long malformedLines, long bytes) {
+        if (tierCounts.length != tariff.getTierCount()) {
+            throw new IllegalArgumentException("Expected " + tariff.getTierCount() + " tier counts, got "
+                    + tierCounts.length);
+        }
+        this.tariff = tariff;
+        this.tierCounts = tierCounts.clone();
+        this.malformedLines = malformedLines;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Counts a package belonging to the given tier.
+     *
+     * @param tier
+     *            the index of the tier
+     */
+    public void count(int tier) {
+        tierCounts[tier]++;
+    }
+
+    /**
+     * Counts a line that did not describe a package.
+     */
+    public void addMalformedLine() {
+        malformedLines++;
+    }
+
+    /**
+     * Adds to the number of processed bytes.
+     *
+     * @param count
+     *            the number of bytes processed
+     */
+    public void addBytes(long count) {
+        bytes += count;
+    }
+
+    /**
+     * Adds all counts of another summary to this summary.
+     *
+     * @param other
+     *            the summary to merge, priced with the same tariff
+     * @throws IllegalArgumentException
+     *             if the other summary uses a different tariff
+     */
+    public void merge(ManifestSummary other) {
+        if (other.tariff != tariff) {
+            throw new IllegalArgumentException("Cannot merge summaries of different tariffs");
+        }
+        for (int t = 0; t < tierCounts.length; t++) {
+            tierCounts[t] += other.tierCounts[t];
+        }
+        malformedLines += other.malformedLines;
+        bytes += other.bytes;
+    }
+
+    /**
+     * Returns the tariff the packages were priced with.
+     *
+     * @return the tariff
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Returns the number of packages in a tier.
+     *
+     * @param tier
+     *            the index of the tier
+     * @return the number of packages
+     */
+    public long getTierCount(int tier) {
+        return tierCounts[tier];
+    }
+
+    /**
+     * Returns the total number of packages.
+     *
+     * @return the number of packages
+     */
+    public long getPacketCount() {
+        long count = 0;
+        for (long tierCount : tierCounts) {
+            count += tierCount;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of non-empty lines that did not describe a package.
+     *
+     * @return the number of malformed lines
+     */
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    /**
+     * Returns the number of processed bytes.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the total shipping costs of all packages.
+     *
+     * @return the total costs in cents
+     */
+    public long getTotalCents() {
+        long total = 0;
+        for (int t = 0; t < tierCounts.length; t++) {
+            total += tierCounts[t] * tariff.getPriceCents(t);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the total shipping costs of all packages in euros.
+     *
+     * @return the total costs in euros
+     * @see #getTotalCents()
+     */
+    public double getTotalCosts() {
+        return Money.toEuros(getTotalCents());
+    }
+
+    /**
+     * Returns a one-line description of this summary.
+     *
+     * @return the packet count, total costs, tier breakdown and number of malformed lines
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(getPacketCount()).append(" packets, total ");
+        Money.append(getTotalCents(), text).append(" (");
+        for (int t = 0; t < tierCounts.length; t++) {
+            if (t > 0) {
+                text.append(", ");
+            }
+            text.append(tariff.getTierName(t)).append(": ").append(tierCounts[t]);
+        }
+        text.append(')');
+        if (malformedLines > 0) {
+            text.append(", ").append(malformedLines).append(" malformed lines");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,295 @@
+package control;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import control.ManifestReader.ProgressListener;
+
+/**
+ * Prices manifest files on several threads.
+ *
+ * <p>
+ * The manifest is split into chunks whose boundaries are moved forward to the next line break, so every line belongs to
+ * exactly one chunk. The chunks are priced by a {@link ManifestReader} each on a work-stealing {@link ForkJoinPool}.
+ * Because summaries only count packages per tier, merging the chunk results gives the same totals and tier counts no
+ * matter how the work was scheduled.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ParallelManifestReader {
+
+    /** System property setting the number of threads used for pricing. */
+    public static final String PARALLELISM_PROPERTY = "packagecalculator.parallelism";
+
+    /** Default size of a chunk in bytes. */
+    public static final long DEFAULT_CHUNK_SIZE = 16L << 20;
+
+    /** The calculator used to price the packages. */
+    private final Calculator calculator;
+
+    /** The number of threads used for pricing. */
+    private final int parallelism;
+
+    /** The target size of a chunk in bytes. */
+    private final long chunkSize;
+
+    /**
+     * Constructs a new ParallelManifestReader.
+     *
+     * <p>
+     * The number of threads is taken from the system property {@value #PARALLELISM_PROPERTY} and defaults to the number
+     * of available processors.
+     * </p>
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     */
+    public ParallelManifestReader(Calculator calculator) {
+        this(calculator, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a new ParallelManifestReader.
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     * @param parallelism
+     *            the number of threads used for pricing
+     * @param chunkSize
+     *            the target size of a chunk in bytes
+     * @throws IllegalArgumentException
+     *             if the parallelism or chunk size is not positive
+     */
+    public ParallelManifestReader(Calculator calculator, int parallelism, long chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.calculator = calculator;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the number of threads used for pricing.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Prices all packages of a manifest file.
+     *
+     * @param file
+     *            the manifest file
+     * @param listener
+     *            the listener notified about the progress, or {@code null}; it may be called from several threads
+     * @return the summary of the priced packages
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public ManifestSummary price(Path file, ProgressListener listener) throws IOException {
+        ManifestParseEvent event = FlightEvents.beginParse();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = split(channel);
+            Progress progress = listener != null ? new Progress(listener, channel.size()) : null;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ManifestSummary summary = pool
+                        .invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1, progress));
+                FlightEvents.reportParse(event, file.toString(), parallelism, summary);
+                return summary;
+            } catch (UncheckedIOException e) {
+                // The pool may rethrow a copy of the exception, so look for the original cause
+                Throwable cause = e;
+                while (cause.getCause() != null && !(cause instanceof IOException)) {
+                    cause = cause.getCause();
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(e);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Splits a file into chunks that start at the beginning of a line.
+     *
+     * @param channel
+     *            the channel of the manifest file
+     * @return the chunk boundaries, starting with 0 and ending with the file size
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long position = chunkSize;
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, probe);
+            if (lineStart >= size) {
+                break;
+            }
+            boundaries.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Finds the first line start at or after a position.
+     *
+     * @param channel
+     *            the channel of the manifest file
+     * @param position
+     *            the position to start searching from
+     * @param probe
+     *            a buffer for reading
+     * @return the position following the next line break, or the file size
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        // A chunk boundary directly after a line break already starts a line
+        long searchFrom = position - 1;
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, searchFrom);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return searchFrom + i + 1;
+                }
+            }
+            searchFrom += read;
+        }
+    }
+
+    /**
+     * Progress of all chunks of a file, added up from the progress reported by each chunk.
+     */
+    private static class Progress {
+
+        /** The listener notified about the total progress. */
+        private final ProgressListener listener;
+
+        /** The size of the file. */
+        private final long size;
+
+        /** The number of bytes read by all chunks. */
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        /**
+         * Constructs a new Progress.
+         *
+         * @param listener
+         *            the listener notified about the total progress
+         * @param size
+         *            the size of the file
+         */
+        Progress(ProgressListener listener, long size) {
+            this.listener = listener;
+            this.size = size;
+        }
+
+        /**
+         * Creates a listener for a single chunk.
+         *
+         * @return the listener forwarding the progress of the chunk
+         */
+        ProgressListener forChunk() {
+            long[] previous = new long[1];
+            return (chunkRead, chunkTotal) -> {
+                listener.progress(bytesRead.addAndGet(chunkRead - previous[0]), size);
+                previous[0] = chunkRead;
+            };
+        }
+    }
+
+    /**
+     * Task pricing a range of chunks, splitting it in halves while there is more than one chunk.
+     */
+    private class ChunkTask extends RecursiveTask<ManifestSummary> {
+
+        /** The channel of the manifest file. */
+        private final FileChannel channel;
+
+        /** The chunk boundaries of the whole file. */
+        private final long[] boundaries;
+
+        /** The index of the first chunk (inclusive). */
+        private final int first;
+
+        /** The index of the last chunk (exclusive). */
+        private final int last;
+
+        /** The progress of the whole file, or {@code null}. */
+        private final Progress progress;
+
+        /**
+         * Constructs a new ChunkTask.
+         *
+         * @param channel
+         *            the channel of the manifest file
+         * @param boundaries
+         *            the chunk boundaries of the whole file
+         * @param first
+         *            the index of the first chunk (inclusive)
+         * @param last
+         *            the index of the last chunk (exclusive)
+         * @param progress
+         *            the progress of the whole file, or {@code null}
+         */
+        ChunkTask(FileChannel channel, long[] boundaries, int first, int last, Progress progress) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.first = first;
+            this.last = last;
+            this.progress = progress;
+        }
+
+        @Override
+        protected ManifestSummary compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                ChunkTask right = new ChunkTask(channel, boundaries, middle, last, progress);
+                right.fork();
+                ManifestSummary summary = new ChunkTask(channel, boundaries, first, middle, progress).compute();
+                summary.merge(right.join());
+                return summary;
+            }
+
+            ManifestSummary summary = new ManifestSummary(calculator.getTariff());
+            try {
+                new ManifestReader(calculator).price(channel, boundaries[first], boundaries[last], summary,
+                        progress != null ? progress.forChunk() : null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return summary;
+        }
+    }
+}
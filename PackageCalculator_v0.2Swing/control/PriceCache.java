@@ -0,0 +1,465 @@
+package control;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import data.Money;
+import data.Packet;
+
+/**
+ * Bounded cache of shipping costs keyed by package shape.
+ *
+ * <p>
+ * Most traffic consists of a few hundred standard box sizes, so the tier of a package is remembered for its exact
+ * length, width, height and weight. The four values are packed into one {@code long} key of 16 bits each and stored in
+ * an open-addressing hash table of primitive arrays, so lookups do not create any objects. Packages with a value
+ * outside the range 0 to 65535 are priced without the cache.
+ * </p>
+ *
+ * <p>
+ * When the cache is full, an entry is evicted according to its {@link EvictionPolicy}. The cache follows a tariff
+ * source and is cleared automatically as soon as the source returns a different tariff. All methods are thread-safe.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PriceCache {
+
+    /**
+     * Strategy for choosing the entry to evict from a full cache.
+     */
+    public enum EvictionPolicy {
+        /** Evicts the least recently used entry. */
+        LRU,
+        /** Evicts an entry not used since the clock hand last passed it (second chance). */
+        CLOCK
+    }
+
+    /** System property setting the capacity of the shared cache; 0 disables it. */
+    public static final String CAPACITY_PROPERTY = "packagecalculator.priceCache.capacity";
+
+    /** System property setting the eviction policy of the shared cache. */
+    public static final String POLICY_PROPERTY = "packagecalculator.priceCache.policy";
+
+    /** Default capacity of the shared cache. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Largest value of a package field that can be part of a key. */
+    private static final int MAX_KEY_VALUE = 0xFFFF;
+
+    /** Marker for "no entry" in the table and the LRU list. */
+    private static final int NONE = -1;
+
+    /** The source of the current tariff. */
+    private final Supplier<Tariff> tariffSource;
+
+    /** The maximum number of entries. */
+    private final int capacity;
+
+    /** The eviction policy. */
+    private final EvictionPolicy policy;
+
+    /** Hash table mapping slots to entry indices, {@link #NONE} for empty slots. */
+    private final int[] table;
+
+    /** Mask for turning hash codes into slot indices. */
+    private final int mask;
+
+    /** Keys of the entries. */
+    private final long[] keys;
+
+    /** Tiers of the entries. */
+    private final int[] tiers;
+
+    /** Table slots of the entries. */
+    private final int[] slots;
+
+    /** Previous (more recently used) entries in the LRU list. */
+    private final int[] previous;
+
+    /** Next (less recently used) entries in the LRU list. */
+    private final int[] next;
+
+    /** Reference bits of the entries for the CLOCK policy. */
+    private final boolean[] referenced;
+
+    /** The most recently used entry. */
+    private int head = NONE;
+
+    /** The least recently used entry. */
+    private int tail = NONE;
+
+    /** The position of the clock hand. */
+    private int hand;
+
+    /** Number of entries in the cache. */
+    private int size;
+
+    /** The tariff the cached tiers belong to. */
+    private Tariff tariff;
+
+    /** Number of lookups answered from the cache. */
+    private long hits;
+
+    /** Number of lookups that had to be calculated. */
+    private long misses;
+
+    /**
+     * Constructs a new PriceCache following the default tariff.
+     *
+     * @param capacity
+     *            the maximum number of entries
+     * @param policy
+     *            the eviction policy
+     * @see Tariff#getDefault()
+     */
+    public PriceCache(int capacity, EvictionPolicy policy) {
+        this(Tariff::getDefault, capacity, policy);
+    }
+
+    /**
+     * Constructs a new PriceCache.
+     *
+     * @param tariffSource
+     *            the source of the current tariff, queried on every lookup
+     * @param capacity
+     *            the maximum number of entries
+     * @param policy
+     *            the eviction policy
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive
+     */
+    public PriceCache(Supplier<Tariff> tariffSource, int capacity, EvictionPolicy policy) {
+        if (capacity < 1 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.tariffSource = tariffSource;
+        this.capacity = capacity;
+        this.policy = policy;
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        table = new int[tableSize];
+        Arrays.fill(table, NONE);
+        mask = tableSize - 1;
+        keys = new long[capacity];
+        tiers = new int[capacity];
+        slots = new int[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    /**
+     * Creates a cache configured by the system properties {@value #CAPACITY_PROPERTY} and {@value #POLICY_PROPERTY}.
+     *
+     * @return the cache, or {@code null} if the cache is disabled
+     */
+    public static PriceCache fromSystemProperties() {
+        int capacity = Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+        if (capacity <= 0) {
+            return null;
+        }
+        String policy = System.getProperty(POLICY_PROPERTY, EvictionPolicy.CLOCK.name());
+        return new PriceCache(capacity, EvictionPolicy.valueOf(policy.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Calculates the shipping cost for a given package, using the cache if possible.
+     *
+     * @param pack
+     *            the package for which to calculate shipping costs
+     * @return the shipping cost in cents
+     */
+    public int calcShippingCostsCents(Packet pack) {
+        return calcShippingCostsCents(pack.length, pack.width, pack.height, pack.weight);
+    }
+
+    /**
+     * Calculates the shipping cost for a given package in euros, using the cache if possible.
+     *
+     * @param pack
+     *            the package for which to calculate shipping costs
+     * @return the shipping cost in euros
+     * @see #calcShippingCostsCents(Packet)
+     */
+    public double calcShippingCosts(Packet pack) {
+        return Money.toEuros(calcShippingCostsCents(pack));
+    }
+
+    /**
+     * Calculates the shipping cost for a package, using the cache if possible.
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @return the shipping cost in cents
+     */
+    public synchronized int calcShippingCostsCents(int length, int width, int height, int weight) {
+        Tariff current = tariffSource.get();
+        if (current != tariff) {
+            invalidate();
+            tariff = current;
+        }
+
+        if ((length | width | height | weight) < 0 || length > MAX_KEY_VALUE || width > MAX_KEY_VALUE
+                || height > MAX_KEY_VALUE || weight > MAX_KEY_VALUE) {
+            misses++;
+            return tariff.getPriceCents(tariff.classify(length, width, height, weight));
+        }
+
+        long key = (long) length << 48 | (long) width << 32 | (long) height << 16 | weight;
+        int entry = find(key);
+        if (entry != NONE) {
+            hits++;
+            touch(entry);
+            return tariff.getPriceCents(tiers[entry]);
+        }
+
+        misses++;
+        int tier = tariff.classify(length, width, height, weight);
+        insert(key, tier);
+        return tariff.getPriceCents(tier);
+    }
+
+    /**
+     * Calculates the shipping cost for a package in euros, using the cache if possible.
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @return the shipping cost in euros
+     * @see #calcShippingCostsCents(int, int, int, int)
+     */
+    public double calcShippingCosts(int length, int width, int height, int weight) {
+        return Money.toEuros(calcShippingCostsCents(length, width, height, weight));
+    }
+
+    /**
+     * Removes all entries from the cache. The hit and miss counters are kept.
+     */
+    public synchronized void invalidate() {
+        Arrays.fill(table, NONE);
+        head = NONE;
+        tail = NONE;
+        hand = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to be calculated.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "%s cache: %d/%d entries, %d hits, %d misses, hit rate %.1f%%", policy, size,
+                capacity, hits, misses, 100 * getHitRate());
+    }
+
+    /**
+     * Spreads the bits of a key for the hash table.
+     *
+     * @param key
+     *            the key
+     * @return the hash code
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Looks up the entry for a key.
+     *
+     * @param key
+     *            the key
+     * @return the entry index, or {@link #NONE}
+     */
+    private int find(long key) {
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == NONE || keys[entry] == key) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry, evicting another one if the cache is full.
+     *
+     * @param key
+     *            the key
+     * @param tier
+     *            the tier of the package
+     */
+    private void insert(long key, int tier) {
+        int entry;
+        if (size < capacity) {
+            entry = size++;
+        } else {
+            entry = policy == EvictionPolicy.LRU ? tail : advanceClock();
+            remove(entry);
+        }
+
+        keys[entry] = key;
+        tiers[entry] = tier;
+        int slot = hash(key) & mask;
+        while (table[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+        slots[entry] = slot;
+
+        if (policy == EvictionPolicy.LRU) {
+            linkFirst(entry);
+        } else {
+            referenced[entry] = false;
+        }
+    }
+
+    /**
+     * Removes an entry from the hash table and the LRU list, keeping its index for reuse.
+     *
+     * @param entry
+     *            the entry index
+     */
+    private void remove(int entry) {
+        if (policy == EvictionPolicy.LRU) {
+            unlink(entry);
+        }
+
+        // Backward shift deletion keeps every probe sequence free of gaps
+        int free = slots[entry];
+        table[free] = NONE;
+        for (int slot = (free + 1) & mask; table[slot] != NONE; slot = (slot + 1) & mask) {
+            int moved = table[slot];
+            int home = hash(keys[moved]) & mask;
+            boolean staysInPlace = free <= slot ? free < home && home <= slot : free < home || home <= slot;
+            if (!staysInPlace) {
+                table[free] = moved;
+                slots[moved] = free;
+                table[slot] = NONE;
+                free = slot;
+            }
+        }
+    }
+
+    /**
+     * Records a use of an entry.
+     *
+     * @param entry
+     *            the entry index
+     */
+    private void touch(int entry) {
+        if (policy == EvictionPolicy.LRU) {
+            if (head != entry) {
+                unlink(entry);
+                linkFirst(entry);
+            }
+        } else {
+            referenced[entry] = true;
+        }
+    }
+
+    /**
+     * Moves the clock hand to the next entry that has not been used since the hand last passed it.
+     *
+     * @return the entry to evict
+     */
+    private int advanceClock() {
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int victim = hand;
+        hand = (hand + 1) % capacity;
+        return victim;
+    }
+
+    /**
+     * Inserts an entry at the front of the LRU list.
+     *
+     * @param entry
+     *            the entry index
+     */
+    private void linkFirst(int entry) {
+        previous[entry] = NONE;
+        next[entry] = head;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        head = entry;
+        if (tail == NONE) {
+            tail = entry;
+        }
+    }
+
+    /**
+     * Removes an entry from the LRU list.
+     *
+     * @param entry
+     *            the entry index
+     */
+    private void unlink(int entry) {
+        int before = previous[entry];
+        int after = next[entry];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package control;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for pricing a batch of packages with a {@link Calculator}.
+ *
+ * <p>
+ * The event is emitted by the batch methods of the calculator. Single packages are not recorded, since pricing them
+ * takes less time than creating an event. Events are only created once the flight recorder is running, so that
+ * pricing without a recording never loads the flight recorder.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+@Name("packagecalculator.PricingBatch")
+@Label("Pricing Batch")
+@Category({ "Package Calculator", "Pricing" })
+@Description("Pricing of a batch of packages")
+public class PricingBatchEvent extends jdk.jfr.Event {
+
+    /** The calculator method that priced the batch. */
+    @Label("Method")
+    String method;
+
+    /** Number of priced packages. */
+    @Label("Packets")
+    int packets;
+
+    /**
+     * Commits the event if it is enabled and lasted at least its threshold.
+     *
+     * @param batchMethod
+     *            the calculator method that priced the batch
+     * @param count
+     *            the number of priced packages
+     */
+    void report(String batchMethod, int count) {
+        if (shouldCommit()) {
+            method = batchMethod;
+            packets = count;
+            commit();
+        }
+    }
+}
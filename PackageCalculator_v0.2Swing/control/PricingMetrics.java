@@ -0,0 +1,344 @@
+package control;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of all pricing done by the application.
+ *
+ * <p>
+ * The {@link Calculator} and the manifest readers report every priced package to the global instance returned by
+ * {@link #getGlobal()}. Counting uses {@link LongAdder}s and latencies are recorded in a lock-free
+ * {@link LatencyHistogram}, so reporting from many threads does not contend. Batches are timed as a whole and their
+ * mean latency per package is recorded once for every package, so pricing a batch costs two clock reads no matter how
+ * large it is, and a large batch weighs as much in the percentiles as the same number of single packages.
+ * </p>
+ *
+ * <p>
+ * Latencies are recorded twice: in a histogram covering all pricing since the start or the last {@link #reset()},
+ * returned by {@link #getLatencies()}, and in an interval histogram which every {@link #snapshot()} swaps for an empty
+ * one. The percentiles of a snapshot therefore describe the pricing since the previous snapshot, not since the start.
+ * </p>
+ *
+ * <p>
+ * Single packages are priced in a few nanoseconds, which is less than reading the clock or updating a shared counter.
+ * They are therefore counted in plain fields, and only every {@value #SAMPLE_INTERVAL}th of them is timed, into a small
+ * ring of plain fields as well. Both are added to the counters and the histograms whenever the metrics are read, each
+ * timed package standing for the {@value #SAMPLE_INTERVAL} packages it was picked from. The
+ * fields are updated without synchronization, so a package priced on several threads at once may be missed; the
+ * counts of single packages are therefore a close estimate, those of batches are exact.
+ * </p>
+ *
+ * <p>
+ * Recording can be switched off with the system property {@value #ENABLED_PROPERTY}, for example to benchmark the
+ * calculator without it.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PricingMetrics {
+
+    /** System property switching the recording of metrics on or off. */
+    public static final String ENABLED_PROPERTY = "packagecalculator.metrics";
+
+    /** Whether metrics are recorded; read once, so the check costs nothing when switched off. */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+
+    /** Every how many single packages one is timed; a power of two. */
+    public static final int SAMPLE_INTERVAL = 1024;
+
+    /** Number of timed single packages kept until the metrics are read; a power of two. */
+    private static final int SAMPLE_BUFFER_SIZE = 256;
+
+    /** Number of priced single packages; racy on purpose, see the class description. */
+    private static long singlePackets;
+
+    /** Latencies of the timed single packages in nanoseconds, as a ring; racy on purpose. */
+    private static final long[] singleSamples = new long[SAMPLE_BUFFER_SIZE];
+
+    /** Number of timed single packages, wrapping around; racy on purpose. */
+    private static int singleSampleCount;
+
+    /** Value of {@link #singlePackets} when the single packages were last added to the counters. */
+    private static long flushedSinglePackets;
+
+    /** Value of {@link #singleSampleCount} when the timed single packages were last added to the histogram. */
+    private static int flushedSampleCount;
+
+    /** The instance receiving the metrics of the application. */
+    private static final PricingMetrics GLOBAL = new PricingMetrics();
+
+    /**
+     * Metrics at one point in time.
+     */
+    public static class Snapshot {
+        /** Time the snapshot was taken, from {@link System#nanoTime()}. */
+        public final long nanoTime;
+
+        /** Number of priced packages. */
+        public final long packets;
+
+        /** Number of read manifest bytes. */
+        public final long bytes;
+
+        /** Median latency per package in nanoseconds since the previous snapshot. */
+        public final long p50;
+
+        /** 99th percentile of the latency per package in nanoseconds since the previous snapshot. */
+        public final long p99;
+
+        /** Used heap memory in bytes. */
+        public final long usedHeap;
+
+        /** Maximum heap memory in bytes. */
+        public final long maxHeap;
+
+        /**
+         * Constructs a Snapshot.
+         *
+         * @param nanoTime
+         *            time the snapshot was taken
+         * @param packets
+         *            number of priced packages
+         * @param bytes
+         *            number of read manifest bytes
+         * @param p50
+         *            median latency per package in nanoseconds since the previous snapshot
+         * @param p99
+         *            99th percentile of the latency per package in nanoseconds since the previous snapshot
+         * @param usedHeap
+         *            used heap memory in bytes
+         * @param maxHeap
+         *            maximum heap memory in bytes
+         */
+        public Snapshot(long nanoTime, long packets, long bytes, long p50, long p99, long usedHeap, long maxHeap) {
+            this.nanoTime = nanoTime;
+            this.packets = packets;
+            this.bytes = bytes;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.usedHeap = usedHeap;
+            this.maxHeap = maxHeap;
+        }
+
+        /**
+         * Returns the number of packages priced per second since an earlier snapshot.
+         *
+         * @param previous
+         *            the earlier snapshot
+         * @return the packages per second, or 0 if no time passed
+         */
+        public double getPacketsPerSecond(Snapshot previous) {
+            long nanos = nanoTime - previous.nanoTime;
+            return nanos <= 0 ? 0 : (packets - previous.packets) * 1e9 / nanos;
+        }
+
+        /**
+         * Returns the number of manifest bytes read per second since an earlier snapshot.
+         *
+         * @param previous
+         *            the earlier snapshot
+         * @return the bytes per second, or 0 if no time passed
+         */
+        public double getBytesPerSecond(Snapshot previous) {
+            long nanos = nanoTime - previous.nanoTime;
+            return nanos <= 0 ? 0 : (bytes - previous.bytes) * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("packets=%d, bytes=%d, p50=%.2f us, p99=%.2f us, heap=%d/%d MB", packets, bytes,
+                    p50 / 1e3, p99 / 1e3, usedHeap >> 20, maxHeap >> 20);
+        }
+    }
+
+    /** Number of priced packages. */
+    private final LongAdder packets = new LongAdder();
+
+    /** Number of read manifest bytes. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** Latencies per package in nanoseconds. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /** Latencies per package in nanoseconds since the last snapshot; replaced by every snapshot. */
+    private volatile LatencyHistogram intervalLatencies = new LatencyHistogram();
+
+    /**
+     * Returns the instance receiving the metrics of the application.
+     *
+     * @return the global metrics
+     */
+    public static PricingMetrics getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the start time of a pricing to be recorded with {@link #stop(int, long)}.
+     *
+     * @return the current time from {@link System#nanoTime()}, or 0 if metrics are switched off
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts the pricing of a single package and returns its start time to be recorded with {@link #stopSingle(long)},
+     * if the package is timed.
+     *
+     * @return the current time from {@link System#nanoTime()}, or 0 if the package is not timed
+     */
+    static long startSingle() {
+        return ENABLED && (++singlePackets & (SAMPLE_INTERVAL - 1)) == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a single package, if it is timed.
+     *
+     * <p>
+     * Only plain fields are written here: a call or an atomic update in the pricing loop of a caller, even if rarely
+     * taken, made single pricing about a third slower in {@code bench.PricingBenchmark}.
+     * </p>
+     *
+     * @param startNanos
+     *            the start time returned by {@link #startSingle()}
+     */
+    static void stopSingle(long startNanos) {
+        if (ENABLED && startNanos != 0) {
+            singleSamples[singleSampleCount++ & (SAMPLE_BUFFER_SIZE - 1)] = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Adds the single packages priced since the last call to the counters and the histogram of the global metrics.
+     * Timed packages which were overwritten in the ring in the meantime are skipped.
+     */
+    private static synchronized void flushSingles() {
+        long packetCount = singlePackets;
+        int sampleCount = singleSampleCount;
+        GLOBAL.packets.add(packetCount - flushedSinglePackets);
+        flushedSinglePackets = packetCount;
+        // Compared by difference, as the count may wrap around
+        int first = sampleCount - flushedSampleCount > SAMPLE_BUFFER_SIZE ? sampleCount - SAMPLE_BUFFER_SIZE
+                : flushedSampleCount;
+        for (int i = first; i != sampleCount; i++) {
+            GLOBAL.recordLatency(singleSamples[i & (SAMPLE_BUFFER_SIZE - 1)], SAMPLE_INTERVAL);
+        }
+        flushedSampleCount = sampleCount;
+    }
+
+    /**
+     * Records the pricing of packages in the global metrics, if metrics are switched on.
+     *
+     * @param count
+     *            the number of priced packages
+     * @param startNanos
+     *            the start time returned by {@link #start()}
+     */
+    static void stop(int count, long startNanos) {
+        if (ENABLED) {
+            GLOBAL.recordPackets(count, startNanos);
+        }
+    }
+
+    /**
+     * Records the pricing of packages.
+     *
+     * @param count
+     *            the number of priced packages
+     * @param startNanos
+     *            the time the pricing started, from {@link System#nanoTime()}
+     */
+    public void recordPackets(int count, long startNanos) {
+        if (count <= 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        packets.add(count);
+        recordLatency(nanos / count, count);
+    }
+
+    /**
+     * Records a latency per package in both histograms.
+     *
+     * @param nanos
+     *            the latency per package in nanoseconds
+     * @param count
+     *            the number of packages priced with this latency
+     */
+    private void recordLatency(long nanos, long count) {
+        latencies.record(nanos, count);
+        intervalLatencies.record(nanos, count);
+    }
+
+    /**
+     * Records read manifest bytes.
+     *
+     * @param count
+     *            the number of bytes
+     */
+    public void recordBytes(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Returns the number of priced packages.
+     *
+     * @return the number of packages
+     */
+    public long getPackets() {
+        flushSingles();
+        return packets.sum();
+    }
+
+    /**
+     * Returns the number of read manifest bytes.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Returns the latencies per package.
+     *
+     * @return the latency histogram in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        flushSingles();
+        return latencies;
+    }
+
+    /**
+     * Takes a snapshot of the metrics and the heap usage and starts a new interval for the latency percentiles.
+     *
+     * <p>
+     * Latencies recorded by other threads while the interval histogram is swapped may be left out of both intervals.
+     * </p>
+     *
+     * @return the snapshot
+     */
+    public synchronized Snapshot snapshot() {
+        flushSingles();
+        LatencyHistogram interval = intervalLatencies;
+        intervalLatencies = new LatencyHistogram();
+        Runtime runtime = Runtime.getRuntime();
+        return new Snapshot(System.nanoTime(), packets.sum(), bytes.sum(), interval.getValueAtPercentile(50),
+                interval.getValueAtPercentile(99), runtime.totalMemory() - runtime.freeMemory(),
+                runtime.maxMemory());
+    }
+
+    /**
+     * Resets all counters and latencies.
+     */
+    public void reset() {
+        flushSingles();
+        packets.reset();
+        bytes.reset();
+        latencies.reset();
+        intervalLatencies.reset();
+    }
+}
@@ -1,17 +1,29 @@
 package control;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
+import data.PacketStore;
+import gui.MessageListModel.Severity;
+import gui.MessagesArea;
 import gui.PackageCalculator;
 
 /**
  * Handles project and file management operations.
  *
  * <p>
- * This class provides static methods for opening projects, creating new files, and managing the workspace in the
- * Package Calculator application.
+ * This class provides static methods for opening projects, creating new files, saving manifests, and managing the
+ * workspace in the Package Calculator application. Manifests can be saved as text or in the compact
+ * {@link BinaryManifest} format.
  * </p>
  *
  * @author I. Bogicevic
@@ -25,28 +37,34 @@ public class ProjectHandling {
      * Opens a project from the specified directory path.
      *
      * <p>
-     * This method updates the application window title, loads the directory tree in the explorer area, and remembers
-     * the project root path.
+     * This method updates the application window title, loads the directory tree in the explorer area, starts the scan
+     * of the project shown in the inspector area, and remembers the project root path. It emits a
+     * {@link ProjectOpenEvent} for the flight recorder.
      * </p>
      *
      * @param rootPath
      *            the absolute path to the project directory
      */
     public static void openProject(String rootPath) {
+        ProjectOpenEvent event = new ProjectOpenEvent();
+        event.begin();
         // Update window title to show current project path
         PackageCalculator.getInstance().setTitle(PackageCalculator.APPNAME + " – " + rootPath);
         // Load directory tree in explorer area
-        PackageCalculator.getInstance().explorerArea.loadNewTree(rootPath);
+        PackageCalculator.getInstance().getExplorerArea().loadNewTree(rootPath);
+        // Collect the project statistics in the background
+        PackageCalculator.getInstance().getInspectorArea().scanProject(Paths.get(rootPath));
         // Remember the currently open project path
         PackageCalculator.getInstance().rootPath = rootPath;
+        event.path = rootPath;
+        event.commit();
     }
 
     /**
      * Opens a project by showing a directory chooser dialog.
      *
      * <p>
-     * This method displays a directory selection dialog to the user. Note: The actual project opening functionality is
-     * currently commented out.
+     * This method displays a directory selection dialog to the user and opens the selected directory as project.
      * </p>
      */
     public static void openProject() {
@@ -61,20 +79,157 @@ public class ProjectHandling {
         }
 
         if (projectDirectory != null) {
-            projectDirectory.getAbsolutePath();
+            openProject(projectDirectory.getAbsolutePath());
         }
-        // TODO: Enable project opening functionality
-        // openProject(projectDirectory.getAbsolutePath());
     }
 
     /**
-     * Creates a new file in the current project.
+     * Creates a new, empty manifest in the root directory of the current project.
      *
      * <p>
-     * Note: This method is currently not implemented.
+     * This method asks for the name of the manifest. Names without extension get {@value BinaryManifest#TEXT_EXTENSION};
+     * names ending with {@value BinaryManifest#EXTENSION} create an empty binary manifest.
      * </p>
      */
     public static void newFile() {
-        // TODO: Implement new file creation functionality
+        PackageCalculator window = PackageCalculator.getInstance();
+        MessagesArea messagesArea = window.getMessagesArea();
+        if (window.rootPath == null) {
+            messagesArea.addMessage(Severity.WARNING, "Open a project before creating a file");
+            return;
+        }
+        String name = JOptionPane.showInputDialog(window, "Name of the new manifest:", "New File",
+                JOptionPane.PLAIN_MESSAGE);
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        name = name.trim();
+        if (!name.contains(".")) {
+            name += BinaryManifest.TEXT_EXTENSION;
+        }
+
+        Path file = Path.of(window.rootPath).resolve(name);
+        try {
+            if (BinaryManifest.isBinary(file)) {
+                if (Files.exists(file)) {
+                    throw new IOException("File already exists");
+                }
+                BinaryManifest.write(new PacketStore(), file, true);
+            } else {
+                Files.createFile(file);
+            }
+            messagesArea.addMessage("Created " + file);
+        } catch (IOException e) {
+            messagesArea.addMessage(Severity.ERROR, "Cannot create " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the manifest selected in the explorer in the other format, next to the original.
+     *
+     * <p>
+     * A text manifest is saved as a binary manifest with the same name and the other way round, so a large manifest can
+     * be reopened without parsing it again. Converting may lose comments and formatting, so an existing file is only
+     * replaced after asking.
+     * </p>
+     */
+    public static void saveFile() {
+        File selected = getSelectedManifest();
+        if (selected == null) {
+            return;
+        }
+        Path source = selected.toPath();
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        String extension = BinaryManifest.isBinary(source) ? BinaryManifest.TEXT_EXTENSION : BinaryManifest.EXTENSION;
+        Path target = source.resolveSibling(baseName + extension);
+        if (Files.exists(target) && JOptionPane.showConfirmDialog(PackageCalculator.getInstance(),
+                target.getFileName() + " already exists. Replace it?", "Save File",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        convert(source, target);
+    }
+
+    /**
+     * Saves the manifest selected in the explorer under a name chosen in a file dialog.
+     *
+     * <p>
+     * The format is chosen by the extension of the new name, or by the selected file filter if the name has no
+     * extension.
+     * </p>
+     */
+    public static void saveFileAs() {
+        File selected = getSelectedManifest();
+        if (selected == null) {
+            return;
+        }
+        FileNameExtensionFilter textFilter = new FileNameExtensionFilter("Text manifest (*.txt)", "txt");
+        FileNameExtensionFilter binaryFilter = new FileNameExtensionFilter("Binary manifest (*.pcm)", "pcm");
+        JFileChooser fileChooser = new JFileChooser(selected.getParentFile());
+        fileChooser.addChoosableFileFilter(textFilter);
+        fileChooser.addChoosableFileFilter(binaryFilter);
+        fileChooser.setFileFilter(BinaryManifest.isBinary(selected.toPath()) ? textFilter : binaryFilter);
+
+        // Show save dialog
+        PackageCalculator window = PackageCalculator.getInstance();
+        if (fileChooser.showSaveDialog(window) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = fileChooser.getSelectedFile();
+        if (!target.getName().contains(".")) {
+            target = new File(target.getPath() + (fileChooser.getFileFilter() == textFilter
+                    ? BinaryManifest.TEXT_EXTENSION : BinaryManifest.EXTENSION));
+        }
+        if (target.exists() && JOptionPane.showConfirmDialog(window, target.getName() + " already exists. Replace it?",
+                "Save File as", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        convert(selected.toPath(), target.toPath());
+    }
+
+    /**
+     * Returns the manifest selected in the explorer, reporting a message if there is none.
+     *
+     * @return the selected manifest, or {@code null}
+     */
+    private static File getSelectedManifest() {
+        File selected = PackageCalculator.getInstance().getExplorerArea().getSelectedFile();
+        if (selected == null) {
+            PackageCalculator.getInstance().getMessagesArea().addMessage(Severity.WARNING,
+                    "Select a manifest in the explorer to save it");
+        }
+        return selected;
+    }
+
+    /**
+     * Converts a manifest in the background and reports the result in the messages area.
+     *
+     * @param source
+     *            the manifest to convert
+     * @param target
+     *            the manifest to write
+     */
+    private static void convert(Path source, Path target) {
+        MessagesArea messagesArea = PackageCalculator.getInstance().getMessagesArea();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                BinaryManifest.convert(source, target);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    messagesArea.addMessage("Saved " + source.getFileName() + " as " + target);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    messagesArea.addMessage(Severity.ERROR, "Cannot save " + target + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
 }
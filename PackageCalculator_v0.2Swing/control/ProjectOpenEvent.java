@@ -0,0 +1,30 @@
+package control;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for opening a project with {@link ProjectHandling#openProject(String)}.
+ *
+ * <p>
+ * The event covers the work done on the Event Dispatch Thread. Directories and the search index are loaded in the
+ * background afterwards and have events of their own.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+@Name("packagecalculator.ProjectOpen")
+@Label("Project Open")
+@Category({ "Package Calculator", "Projects" })
+@Description("Opening of a project")
+public class ProjectOpenEvent extends jdk.jfr.Event {
+
+    /** The root path of the project. */
+    @Label("Path")
+    String path;
+}
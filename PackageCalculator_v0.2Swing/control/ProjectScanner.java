@@ -0,0 +1,441 @@
+package control;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import data.PacketStore;
+
+/**
+ * Scans a project when it is opened and collects statistics about its manifests.
+ *
+ * <p>
+ * The directory tree is walked on a {@link ForkJoinPool}: every directory is listed by its own task, which forks a task
+ * per subdirectory, and the attributes of every entry are read exactly once. Symbolic links are not followed. The
+ * counters are {@link LongAdder}s shared by all tasks, so {@link #getStatistics()} can be called from any thread while
+ * the scan is running, and nothing is kept per entry, so trees with millions of entries need no more memory than small
+ * ones.
+ * </p>
+ *
+ * <p>
+ * After the walk, the manifests found first are read once sequentially to warm the page cache of the operating system,
+ * up to the number of bytes set by the system property {@value #WARM_BYTES_PROPERTY}. While reading, the lines of the
+ * text manifests are counted; the packages of the other text manifests are estimated from the average line length of
+ * the read ones. The packages of binary manifests are derived from their size.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class ProjectScanner {
+
+    /** System property setting the maximum number of manifest bytes read to warm the page cache. */
+    public static final String WARM_BYTES_PROPERTY = "packagecalculator.warmBytes";
+
+    /** Default maximum number of manifest bytes read to warm the page cache. */
+    public static final long DEFAULT_WARM_BYTES = 1L << 30;
+
+    /** Average length of a manifest line assumed before any manifest was read. */
+    private static final int DEFAULT_LINE_LENGTH = 16;
+
+    /** Number of bytes read at once while warming the page cache. */
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Statistics of a project at one point of the scan.
+     */
+    public static class Statistics {
+        /** Number of directories listed. */
+        public final long directories;
+
+        /** Number of regular files. */
+        public final long files;
+
+        /** Size of all regular files in bytes. */
+        public final long totalBytes;
+
+        /** Number of text manifests. */
+        public final long textManifests;
+
+        /** Number of binary manifests. */
+        public final long binaryManifests;
+
+        /** Size of all manifests in bytes. */
+        public final long manifestBytes;
+
+        /** Estimated number of packages in all manifests. */
+        public final long estimatedPackets;
+
+        /** Number of manifest bytes read into the page cache. */
+        public final long warmedBytes;
+
+        /** Number of entries that could not be read. */
+        public final long unreadable;
+
+        /** Time since the scan started in nanoseconds. */
+        public final long elapsedNanos;
+
+        /** Whether the scan has finished. */
+        public final boolean done;
+
+        /**
+         * Constructs a Statistics.
+         *
+         * @param directories
+         *            number of directories listed
+         * @param files
+         *            number of regular files
+         * @param totalBytes
+         *            size of all regular files in bytes
+         * @param textManifests
+         *            number of text manifests
+         * @param binaryManifests
+         *            number of binary manifests
+         * @param manifestBytes
+         *            size of all manifests in bytes
+         * @param estimatedPackets
+         *            estimated number of packages in all manifests
+         * @param warmedBytes
+         *            number of manifest bytes read into the page cache
+         * @param unreadable
+         *            number of entries that could not be read
+         * @param elapsedNanos
+         *            time since the scan started in nanoseconds
+         * @param done
+         *            whether the scan has finished
+         */
+        public Statistics(long directories, long files, long totalBytes, long textManifests, long binaryManifests,
+                long manifestBytes, long estimatedPackets, long warmedBytes, long unreadable, long elapsedNanos,
+                boolean done) {
+            this.directories = directories;
+            this.files = files;
+            this.totalBytes = totalBytes;
+            this.textManifests = textManifests;
+            this.binaryManifests = binaryManifests;
+            this.manifestBytes = manifestBytes;
+            this.estimatedPackets = estimatedPackets;
+            this.warmedBytes = warmedBytes;
+            this.unreadable = unreadable;
+            this.elapsedNanos = elapsedNanos;
+            this.done = done;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d directories, %d files, %d text and %d binary manifests (%,d bytes), "
+                    + "about %,d packets, %,d bytes cached, %d unreadable, %.1f s", directories, files, textManifests,
+                    binaryManifests, manifestBytes, estimatedPackets, warmedBytes, unreadable, elapsedNanos / 1e9);
+        }
+    }
+
+    /** The project root. */
+    private final Path root;
+
+    /** The number of threads walking the tree. */
+    private final int parallelism;
+
+    /** The maximum number of manifest bytes read to warm the page cache. */
+    private final long warmBytes;
+
+    /** Number of directories listed. */
+    private final LongAdder directories = new LongAdder();
+
+    /** Number of regular files. */
+    private final LongAdder files = new LongAdder();
+
+    /** Size of all regular files in bytes. */
+    private final LongAdder totalBytes = new LongAdder();
+
+    /** Number of text manifests. */
+    private final LongAdder textManifests = new LongAdder();
+
+    /** Number of binary manifests. */
+    private final LongAdder binaryManifests = new LongAdder();
+
+    /** Size of all text manifests in bytes. */
+    private final LongAdder textBytes = new LongAdder();
+
+    /** Size of all binary manifests in bytes. */
+    private final LongAdder binaryBytes = new LongAdder();
+
+    /** Number of packages in the binary manifests. */
+    private final LongAdder binaryPackets = new LongAdder();
+
+    /** Number of entries that could not be read. */
+    private final LongAdder unreadable = new LongAdder();
+
+    /** Manifests chosen for warming the page cache, at most {@link #warmBytes} in total. */
+    private final Queue<Path> warmQueue = new ConcurrentLinkedQueue<>();
+
+    /** Size of the manifests in {@link #warmQueue}. */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    /** Number of manifest bytes read into the page cache, only written by the scanning thread. */
+    private volatile long warmedBytes;
+
+    /** Size of the text manifests whose lines were counted, only written by the scanning thread. */
+    private volatile long countedBytes;
+
+    /** Number of lines in the text manifests whose lines were counted, only written by the scanning thread. */
+    private volatile long countedLines;
+
+    /** Time the scan started, from {@link System#nanoTime()}. */
+    private volatile long startNanos;
+
+    /** Time the scan finished, or 0 while it is running. */
+    private volatile long endNanos;
+
+    /** Whether the scan was cancelled. */
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new ProjectScanner.
+     *
+     * <p>
+     * The number of threads is taken from the system property {@value ParallelManifestReader#PARALLELISM_PROPERTY}
+     * and the number of bytes read to warm the page cache from {@value #WARM_BYTES_PROPERTY}.
+     * </p>
+     *
+     * @param root
+     *            the project root
+     */
+    public ProjectScanner(Path root) {
+        this(root, Integer.getInteger(ParallelManifestReader.PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors()), Long.getLong(WARM_BYTES_PROPERTY, DEFAULT_WARM_BYTES));
+    }
+
+    /**
+     * Constructs a new ProjectScanner.
+     *
+     * @param root
+     *            the project root
+     * @param parallelism
+     *            the number of threads walking the tree
+     * @param warmBytes
+     *            the maximum number of manifest bytes read to warm the page cache, 0 to not read any
+     * @throws IllegalArgumentException
+     *             if the parallelism is smaller than 1 or the number of bytes is negative
+     */
+    public ProjectScanner(Path root, int parallelism, long warmBytes) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        if (warmBytes < 0) {
+            throw new IllegalArgumentException("Invalid number of bytes to warm: " + warmBytes);
+        }
+        this.root = root;
+        this.parallelism = parallelism;
+        this.warmBytes = warmBytes;
+    }
+
+    /**
+     * Returns the project root.
+     *
+     * @return the project root
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Scans the project, blocking until the tree was walked and the page cache was warmed.
+     *
+     * @return the final statistics
+     * @throws IOException
+     *             if the project root cannot be read
+     */
+    public Statistics scan() throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        startNanos = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new WalkTask(root));
+        } finally {
+            pool.shutdown();
+        }
+        warm();
+        endNanos = System.nanoTime();
+        return getStatistics();
+    }
+
+    /**
+     * Stops the scan as soon as possible. {@link #scan()} then returns the statistics collected so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the scan was cancelled.
+     *
+     * @return {@code true} if {@link #cancel()} was called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the statistics collected so far. This method can be called from any thread.
+     *
+     * @return the current statistics
+     */
+    public Statistics getStatistics() {
+        long end = endNanos;
+        long start = startNanos;
+        long elapsed = start == 0 ? 0 : (end != 0 ? end : System.nanoTime()) - start;
+
+        // Text manifests not read are estimated with the average line length of the read ones
+        long lines = countedLines;
+        long counted = countedBytes;
+        long uncounted = Math.max(0, textBytes.sum() - counted);
+        long estimatedLines = counted > 0 && lines > 0 ? (long) ((double) uncounted * lines / counted)
+                : uncounted / DEFAULT_LINE_LENGTH;
+
+        return new Statistics(directories.sum(), files.sum(), totalBytes.sum(), textManifests.sum(),
+                binaryManifests.sum(), textBytes.sum() + binaryBytes.sum(), binaryPackets.sum() + lines
+                        + estimatedLines, warmedBytes, unreadable.sum(), elapsed, end != 0);
+    }
+
+    /**
+     * Counts a regular file.
+     *
+     * @param file
+     *            the file
+     * @param size
+     *            the size of the file in bytes
+     */
+    private void count(Path file, long size) {
+        files.increment();
+        totalBytes.add(size);
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(BinaryManifest.TEXT_EXTENSION)) {
+            textManifests.increment();
+            textBytes.add(size);
+        } else if (name.endsWith(BinaryManifest.EXTENSION)) {
+            binaryManifests.increment();
+            binaryBytes.add(size);
+            binaryPackets.add(Math.max(0, size - BinaryManifest.HEADER_SIZE) / PacketStore.RECORD_SIZE);
+        } else {
+            return;
+        }
+        // Remember the manifest for warming while the budget lasts
+        if (size > 0 && queuedBytes.get() < warmBytes && queuedBytes.addAndGet(size) <= warmBytes) {
+            warmQueue.add(file);
+        }
+    }
+
+    /**
+     * Reads the manifests chosen during the walk once, so they are in the page cache when they are priced, and counts
+     * the lines of the text manifests.
+     */
+    private void warm() {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        Path file;
+        while (!cancelled && (file = warmQueue.poll()) != null) {
+            boolean text = !BinaryManifest.isBinary(file);
+            long lines = 0;
+            long read = 0;
+            byte last = '\n';
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                int count;
+                while (!cancelled && (count = channel.read(buffer.clear())) > 0) {
+                    if (text) {
+                        for (int i = 0; i < count; i++) {
+                            if (bytes[i] == '\n') {
+                                lines++;
+                            }
+                        }
+                        last = bytes[count - 1];
+                    }
+                    read += count;
+                    warmedBytes += count;
+                }
+            } catch (IOException e) {
+                unreadable.increment();
+                continue;
+            }
+            if (text && !cancelled) {
+                // A last line without line break is a line as well
+                countedLines += last != '\n' ? lines + 1 : lines;
+                countedBytes += read;
+            }
+        }
+    }
+
+    /**
+     * Task listing a directory and forking a task per subdirectory.
+     */
+    private class WalkTask extends RecursiveAction {
+
+        /** The directory to list. */
+        private final Path directory;
+
+        /**
+         * Constructs a new WalkTask.
+         *
+         * @param directory
+         *            the directory to list
+         */
+        WalkTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            directories.increment();
+            List<WalkTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (cancelled) {
+                        break;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // Entries deleted while walking are skipped as well
+                        unreadable.increment();
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        WalkTask task = new WalkTask(entry);
+                        task.fork();
+                        subdirectories.add(task);
+                    } else if (attributes.isRegularFile()) {
+                        count(entry, attributes.size());
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                unreadable.increment();
+            }
+            for (WalkTask task : subdirectories) {
+                task.join();
+            }
+        }
+    }
+}
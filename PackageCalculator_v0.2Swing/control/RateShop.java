@@ -0,0 +1,545 @@
+package control;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import control.ManifestReader.ProgressListener;
+import data.Money;
+import data.PacketStore;
+
+/**
+ * Prices packages with the tariffs of several carriers at once and finds the cheapest carrier.
+ *
+ * <p>
+ * The tier limits of all carriers are merged into one list of thresholds per dimension, like {@link Tariff} does for
+ * the tiers of a single tariff. For every merged threshold and every carrier, a bit mask holds the tiers of that
+ * carrier the value fits into. Rate shopping a package therefore sorts its dimensions and looks up its four threshold
+ * ranks once, and then only takes four masks, a bitwise AND and a price lookup per carrier. Manifests are priced in a
+ * single pass over the packages, which evaluates all carriers for a package before moving on to the next.
+ * </p>
+ *
+ * <p>
+ * The carriers are tariff files listed in the system property {@value #CARRIERS_PROPERTY}, separated by the path
+ * separator, or else all {@code *.tariff} files in {@code ~/.packagecalculator/carriers}. Without either, the default
+ * tariff is the only carrier.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class RateShop {
+
+    /** System property listing the tariff files of the carriers. */
+    public static final String CARRIERS_PROPERTY = "packagecalculator.carriers";
+
+    /** File name extension of tariff files in the carriers directory. */
+    public static final String TARIFF_EXTENSION = ".tariff";
+
+    /** Largest threshold for which a direct lookup table is built instead of searching the thresholds. */
+    private static final int MAX_DIRECT_LOOKUP = 1 << 20;
+
+    /**
+     * The price of a package at one carrier.
+     */
+    public static class Quote {
+        /** The tariff of the carrier. */
+        public final Tariff carrier;
+
+        /** The tier of the package in the tariff of the carrier. */
+        public final int tier;
+
+        /** The price in cents. */
+        public final int cents;
+
+        /**
+         * Constructs a Quote.
+         *
+         * @param carrier
+         *            the tariff of the carrier
+         * @param tier
+         *            the tier of the package
+         * @param cents
+         *            the price in cents
+         */
+        public Quote(Tariff carrier, int tier, int cents) {
+            this.carrier = carrier;
+            this.tier = tier;
+            this.cents = cents;
+        }
+
+        @Override
+        public String toString() {
+            return carrier.getName() + " " + Money.format(cents) + " (" + carrier.getTierName(tier) + ")";
+        }
+    }
+
+    /**
+     * Result of rate shopping many packages.
+     */
+    public static class Result {
+        /** The summaries of all packages per carrier, in the order of the carriers. */
+        private final ManifestSummary[] summaries;
+
+        /** Number of packages for which each carrier was the cheapest. */
+        private final long[] wins;
+
+        /** Total costs if every package is shipped with its cheapest carrier, in cents. */
+        private final long cheapestCents;
+
+        /**
+         * Constructs a Result.
+         *
+         * @param summaries
+         *            the summaries of all packages per carrier
+         * @param wins
+         *            the number of packages for which each carrier was the cheapest
+         * @param cheapestCents
+         *            the total costs with the cheapest carrier per package
+         */
+        Result(ManifestSummary[] summaries, long[] wins, long cheapestCents) {
+            this.summaries = summaries;
+            this.wins = wins;
+            this.cheapestCents = cheapestCents;
+        }
+
+        /**
+         * Returns the number of carriers.
+         *
+         * @return the number of carriers
+         */
+        public int getCarrierCount() {
+            return summaries.length;
+        }
+
+        /**
+         * Returns the summary of all packages priced with a carrier.
+         *
+         * @param carrier
+         *            the index of the carrier
+         * @return the summary with the tier counts and total costs of the carrier
+         */
+        public ManifestSummary getSummary(int carrier) {
+            return summaries[carrier];
+        }
+
+        /**
+         * Returns the number of packages for which a carrier was the cheapest.
+         *
+         * <p>
+         * A package with the same lowest price at several carriers counts for the first of them.
+         * </p>
+         *
+         * @param carrier
+         *            the index of the carrier
+         * @return the number of packages
+         */
+        public long getWins(int carrier) {
+            return wins[carrier];
+        }
+
+        /**
+         * Returns the total costs if every package is shipped with its cheapest carrier.
+         *
+         * @return the total costs in cents
+         */
+        public long getCheapestCents() {
+            return cheapestCents;
+        }
+
+        /**
+         * Returns the carriers ordered by their total costs for all packages.
+         *
+         * @return the indexes of the carriers, cheapest first
+         */
+        public int[] getRanking() {
+            Integer[] order = new Integer[summaries.length];
+            for (int c = 0; c < order.length; c++) {
+                order[c] = c;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(summaries[a].getTotalCents(), summaries[b].getTotalCents()));
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * Returns a one-line description of this result.
+         *
+         * @return the carriers by total costs and the costs with the cheapest carrier per package
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(summaries[0].getPacketCount()).append(" packets, cheapest per packet ");
+            Money.append(cheapestCents, text);
+            for (int c : getRanking()) {
+                text.append("; ").append(summaries[c].getTariff().getName()).append(' ');
+                Money.append(summaries[c].getTotalCents(), text).append(" (cheapest for ").append(wins[c])
+                        .append(')');
+            }
+            return text.toString();
+        }
+    }
+
+    /** The tariffs of the carriers. */
+    private final Tariff[] carriers;
+
+    /** Sorted distinct limits of all carriers per dimension (largest, middle, smallest, weight). */
+    private final int[][] thresholds = new int[4][];
+
+    /** Direct lookup from value to threshold rank per dimension, or {@code null} if the limits are too large. */
+    private final short[][] ranks = new short[4][];
+
+    /** Tier bit masks per dimension, the mask of carrier c for threshold rank r at index r * carriers + c. */
+    private final long[][] masks = new long[4][];
+
+    /** Prices in cents, the price of tier t of carrier c at index c * {@link Tariff#MAX_TIERS} + t. */
+    private final int[] prices;
+
+    /**
+     * Constructs a RateShop and compiles the tariffs of the carriers into merged lookup tables.
+     *
+     * @param carriers
+     *            the tariffs of the carriers
+     * @throws IllegalArgumentException
+     *             if no carrier is given
+     */
+    public RateShop(List<Tariff> carriers) {
+        if (carriers.isEmpty()) {
+            throw new IllegalArgumentException("At least one carrier is needed");
+        }
+        this.carriers = carriers.toArray(new Tariff[0]);
+        prices = new int[this.carriers.length * Tariff.MAX_TIERS];
+        for (int c = 0; c < this.carriers.length; c++) {
+            for (int t = 0; t < this.carriers[c].getTierCount(); t++) {
+                prices[c * Tariff.MAX_TIERS + t] = this.carriers[c].getPriceCents(t);
+            }
+        }
+        for (int d = 0; d < 4; d++) {
+            compileDimension(d);
+        }
+    }
+
+    /**
+     * Builds the merged threshold list, rank lookup table and tier masks for one dimension.
+     *
+     * @param d
+     *            the index of the dimension (0 to 2 for the sorted dimensions, 3 for the weight)
+     */
+    private void compileDimension(int d) {
+        TreeSet<Integer> distinct = new TreeSet<>();
+        for (Tariff carrier : carriers) {
+            for (int t = 0; t < carrier.getTierCount(); t++) {
+                int limit = carrier.getLimits(t)[d];
+                if (limit != Tariff.UNLIMITED) {
+                    distinct.add(limit);
+                }
+            }
+        }
+        int[] values = distinct.stream().mapToInt(Integer::intValue).toArray();
+        thresholds[d] = values;
+
+        // A value with rank r lies above values[r - 1] and at most values[r]
+        long[] dimensionMasks = new long[(values.length + 1) * carriers.length];
+        for (int c = 0; c < carriers.length; c++) {
+            for (int t = 0; t < carriers[c].getTierCount(); t++) {
+                int limit = carriers[c].getLimits(t)[d];
+                for (int r = 0; r <= values.length; r++) {
+                    if (r == values.length ? limit == Tariff.UNLIMITED : limit >= values[r]) {
+                        dimensionMasks[r * carriers.length + c] |= 1L << t;
+                    }
+                }
+            }
+        }
+        masks[d] = dimensionMasks;
+
+        if (values.length > 0 && values[values.length - 1] < MAX_DIRECT_LOOKUP && values.length <= Short.MAX_VALUE) {
+            short[] lookup = new short[values[values.length - 1] + 1];
+            int r = 0;
+            for (int v = 0; v < lookup.length; v++) {
+                if (v > values[r]) {
+                    r++;
+                }
+                lookup[v] = (short) r;
+            }
+            ranks[d] = lookup;
+        }
+    }
+
+    /**
+     * Returns the rank of a value among the merged thresholds of a dimension.
+     *
+     * @param d
+     *            the index of the dimension
+     * @param value
+     *            the value to look up
+     * @return the number of thresholds smaller than the value
+     */
+    private int rank(int d, int value) {
+        int[] values = thresholds[d];
+        short[] lookup = ranks[d];
+        if (lookup != null) {
+            return value < 0 ? 0 : value < lookup.length ? lookup[value] : values.length;
+        }
+        int index = Arrays.binarySearch(values, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns the carriers.
+     *
+     * @return a copy of the list of carrier tariffs
+     */
+    public List<Tariff> getCarriers() {
+        return List.of(carriers);
+    }
+
+    /**
+     * Prices a package with all carriers.
+     *
+     * <p>
+     * The dimensions may be given in any order.
+     * </p>
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @return the quotes of all carriers, cheapest first; carriers with the same price keep their order
+     */
+    public Quote[] quote(int length, int width, int height, int weight) {
+        int largest = Math.max(Math.max(length, width), height);
+        int smallest = Math.min(Math.min(length, width), height);
+        int middle = length + width + height - largest - smallest;
+        int n = carriers.length;
+        int base0 = rank(0, largest) * n;
+        int base1 = rank(1, middle) * n;
+        int base2 = rank(2, smallest) * n;
+        int base3 = rank(3, weight) * n;
+
+        Quote[] quotes = new Quote[n];
+        for (int c = 0; c < n; c++) {
+            int tier = Long.numberOfTrailingZeros(masks[0][base0 + c] & masks[1][base1 + c] & masks[2][base2 + c]
+                    & masks[3][base3 + c]);
+            quotes[c] = new Quote(carriers[c], tier, prices[c * Tariff.MAX_TIERS + tier]);
+        }
+        // The sort is stable, so ties keep the order of the carriers
+        Arrays.sort(quotes, (a, b) -> Integer.compare(a.cents, b.cents));
+        return quotes;
+    }
+
+    /**
+     * Prices all packages of a store with all carriers in one pass.
+     *
+     * <p>
+     * The packages are read directly from the off-heap records without creating {@code Packet} objects.
+     * </p>
+     *
+     * @param store
+     *            the store containing the packages
+     * @return the totals per carrier and with the cheapest carrier per package
+     */
+    public Result shop(PacketStore store) {
+        return shop(store, 0, store.size() * PacketStore.RECORD_SIZE);
+    }
+
+    /**
+     * Prices all packages of a manifest file with all carriers.
+     *
+     * <p>
+     * A binary manifest is mapped directly and checked against its block checksums, if it has any. A text manifest is
+     * priced batch by batch while it is parsed, so its packages are neither stored nor read twice.
+     * </p>
+     *
+     * @param file
+     *            the manifest file
+     * @param listener
+     *            the listener notified about the progress of reading a text manifest, or {@code null}
+     * @return the totals per carrier and with the cheapest carrier per package
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public Result shop(Path file, ProgressListener listener) throws IOException {
+        if (BinaryManifest.isBinary(file)) {
+            PacketStore store = BinaryManifest.read(file, true);
+            return shop(store, 0, Files.size(file));
+        }
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        Tally tally = new Tally();
+        // The reader already reports the parsed packages to the metrics
+        ManifestSummary read = new ManifestReader(new Calculator(carriers[0])).forEachBatch(file, (batch, tiers) -> {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                tally.add(batch.length[i], batch.width[i], batch.height[i], batch.weight[i]);
+            }
+        }, listener);
+        FlightEvents.reportBatch(event, "shop(Path)", (int) Math.min(Integer.MAX_VALUE, read.getPacketCount()));
+        return tally.toResult(read.getMalformedLines(), read.getBytes());
+    }
+
+    /**
+     * Prices all packages of a store with all carriers in one pass.
+     *
+     * @param store
+     *            the store containing the packages
+     * @param malformedLines
+     *            the number of malformed lines of the manifest, stored in the summaries
+     * @param bytes
+     *            the size of the manifest, stored in the summaries
+     * @return the totals per carrier and with the cheapest carrier per package
+     */
+    private Result shop(PacketStore store, long malformedLines, long bytes) {
+        PricingBatchEvent event = FlightEvents.beginBatch();
+        Tally tally = new Tally();
+        for (int s = 0; s < store.getSegmentCount(); s++) {
+            long start = PricingMetrics.start();
+            ByteBuffer segment = store.getSegment(s);
+            int end = store.getSegmentSize(s) * PacketStore.RECORD_SIZE;
+            for (int offset = 0; offset < end; offset += PacketStore.RECORD_SIZE) {
+                tally.add(segment.getInt(offset + PacketStore.LENGTH_OFFSET),
+                        segment.getInt(offset + PacketStore.WIDTH_OFFSET),
+                        segment.getInt(offset + PacketStore.HEIGHT_OFFSET),
+                        segment.getInt(offset + PacketStore.WEIGHT_OFFSET));
+            }
+            PricingMetrics.stop(store.getSegmentSize(s), start);
+        }
+        FlightEvents.reportBatch(event, "shop(PacketStore)", (int) Math.min(Integer.MAX_VALUE, store.size()));
+        return tally.toResult(malformedLines, bytes);
+    }
+
+    /**
+     * Running totals of rate shopping packages one after the other.
+     */
+    private final class Tally {
+
+        /** Number of packages per carrier and tier, {@link Tariff#MAX_TIERS} entries per carrier. */
+        private final long[] tierCounts = new long[carriers.length * Tariff.MAX_TIERS];
+
+        /** Number of packages for which each carrier was the cheapest. */
+        private final long[] wins = new long[carriers.length];
+
+        /** Masks of the largest dimension. */
+        private final long[] masks0 = masks[0];
+
+        /** Masks of the middle dimension. */
+        private final long[] masks1 = masks[1];
+
+        /** Masks of the smallest dimension. */
+        private final long[] masks2 = masks[2];
+
+        /** Masks of the weight. */
+        private final long[] masks3 = masks[3];
+
+        /** Total shipping costs in cents with the cheapest carrier per package. */
+        private long cheapestCents;
+
+        /**
+         * Prices a package with all carriers and adds it to the totals.
+         *
+         * @param length
+         *            the length in millimeters
+         * @param width
+         *            the width in millimeters
+         * @param height
+         *            the height in millimeters
+         * @param weight
+         *            the weight in grams
+         */
+        void add(int length, int width, int height, int weight) {
+            int n = carriers.length;
+            int largest = Math.max(Math.max(length, width), height);
+            int smallest = Math.min(Math.min(length, width), height);
+            int middle = length + width + height - largest - smallest;
+            int base0 = rank(0, largest) * n;
+            int base1 = rank(1, middle) * n;
+            int base2 = rank(2, smallest) * n;
+            int base3 = rank(3, weight) * n;
+
+            // Evaluate all carriers for this package while its ranks are at hand
+            int cheapest = Integer.MAX_VALUE;
+            int winner = 0;
+            for (int c = 0; c < n; c++) {
+                int tier = Long.numberOfTrailingZeros(masks0[base0 + c] & masks1[base1 + c] & masks2[base2 + c]
+                        & masks3[base3 + c]);
+                int index = c * Tariff.MAX_TIERS + tier;
+                tierCounts[index]++;
+                if (prices[index] < cheapest) {
+                    cheapest = prices[index];
+                    winner = c;
+                }
+            }
+            wins[winner]++;
+            cheapestCents += cheapest;
+        }
+
+        /**
+         * Returns the totals of the added packages.
+         *
+         * @param malformedLines
+         *            the number of malformed lines of the manifest, stored in the summaries
+         * @param bytes
+         *            the size of the manifest, stored in the summaries
+         * @return the totals per carrier and with the cheapest carrier per package
+         */
+        Result toResult(long malformedLines, long bytes) {
+            ManifestSummary[] summaries = new ManifestSummary[carriers.length];
+            for (int c = 0; c < carriers.length; c++) {
+                summaries[c] = new ManifestSummary(carriers[c], Arrays.copyOfRange(tierCounts, c * Tariff.MAX_TIERS,
+                        c * Tariff.MAX_TIERS + carriers[c].getTierCount()), malformedLines, bytes);
+            }
+            return new Result(summaries, wins.clone(), cheapestCents);
+        }
+    }
+
+    /**
+     * Loads the carriers configured by {@value #CARRIERS_PROPERTY} or found in the carriers directory.
+     *
+     * @return the rate shop of the configured carriers, or of the default tariff if none are configured
+     * @throws IOException
+     *             if a tariff file cannot be loaded
+     */
+    public static RateShop load() throws IOException {
+        List<Path> files = new ArrayList<>();
+        String property = System.getProperty(CARRIERS_PROPERTY);
+        if (property != null) {
+            for (String file : property.split(File.pathSeparator)) {
+                if (!file.isBlank()) {
+                    files.add(Paths.get(file.trim()));
+                }
+            }
+        } else {
+            Path directory = Paths.get(System.getProperty("user.home"), ".packagecalculator", "carriers");
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + TARIFF_EXTENSION)) {
+                    entries.forEach(files::add);
+                }
+                files.sort(null);
+            }
+        }
+
+        List<Tariff> carriers = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                carriers.add(Tariff.load(file));
+            } catch (IOException e) {
+                throw new IOException("Cannot load carrier " + file + ": " + e.getMessage(), e);
+            }
+        }
+        if (carriers.isEmpty()) {
+            carriers.add(Tariff.getDefault());
+        }
+        return new RateShop(carriers);
+    }
+}
@@ -0,0 +1,439 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import data.Money;
+
+/**
+ * Price table mapping package sizes and weights to shipping costs.
+ *
+ * <p>
+ * A tariff consists of an ordered list of tiers. Each tier has a maximum size for the three package dimensions, a
+ * maximum weight and a price. A package belongs to the first tier it fits into. The last tier must not have any limits,
+ * so every package belongs to exactly one tier.
+ * </p>
+ *
+ * <p>
+ * Tariffs are defined in a simple text format with one tier per line:
+ * </p>
+ *
+ * <pre>
+ * # name  dim1  dim2  dim3  weight  price
+ * S       300   300   150   *       3.89
+ * XL      *     *     *     10000   7.99
+ * XXL     *     *     *     *       14.99
+ * </pre>
+ *
+ * <p>
+ * Dimensions are given in millimeters, weights in grams and prices in euros. A {@code *} stands for "no limit", empty
+ * lines and everything after a {@code #} are ignored. The order of the three dimensions does not matter: both the tier
+ * limits and the package dimensions are sorted by size before they are compared, so a package fits a tier no matter
+ * how it is rotated.
+ * </p>
+ *
+ * <p>
+ * When a tariff is loaded, it is compiled into one lookup table per dimension. Each table maps a value to the set of
+ * tiers whose limit the value does not exceed, stored as a bit mask. Classifying a package therefore takes four table
+ * lookups and a bitwise AND, no matter how many tiers the tariff has.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class Tariff {
+
+    /** Limit value meaning that a dimension or weight is not limited. */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** Maximum number of tiers in one tariff (one bit per tier in a {@code long} mask). */
+    public static final int MAX_TIERS = Long.SIZE;
+
+    /** System property naming a tariff file to use instead of the built-in tariff. */
+    public static final String TARIFF_PROPERTY = "packagecalculator.tariff";
+
+    /** Largest limit for which a direct lookup table is built instead of searching the thresholds. */
+    private static final int MAX_DIRECT_LOOKUP = 1 << 20;
+
+    /** Definition of the built-in tariff. */
+    private static final String DEFAULT_DEFINITION = String.join("\n",
+            "# name  dim1  dim2  dim3  weight  price",
+            "S        300   300   150  *        3.89",
+            "M        600   300   150  *        4.39",
+            "L       1200   600   600  5000     5.99",
+            "XL         *     *     *  10000    7.99",
+            "XXL        *     *     *  *       14.99");
+
+    /** Lazily loaded default tariff. */
+    private static volatile Tariff defaultTariff;
+
+    /** Name of this tariff. */
+    private final String name;
+
+    /** Names of the tiers in matching order. */
+    private final String[] tierNames;
+
+    /** Tier limits in matching order: largest, middle and smallest dimension, then weight. */
+    private final int[][] limits;
+
+    /** Prices of the tiers in cents. */
+    private final int[] prices;
+
+    /** Sorted distinct limits per dimension (largest, middle, smallest, weight). */
+    private final int[][] thresholds;
+
+    /** Direct lookup from value to threshold rank per dimension, or {@code null} if the limits are too large. */
+    private final byte[][] ranks;
+
+    /** Tier bit masks per dimension, indexed by threshold rank. */
+    private final long[][] masks;
+
+    /**
+     * Constructs and compiles a tariff.
+     *
+     * @param name
+     *            the name of the tariff
+     * @param tierNames
+     *            the names of the tiers in matching order
+     * @param limits
+     *            the limits of each tier: three dimensions in any order, then the weight
+     * @param prices
+     *            the prices of the tiers in cents
+     */
+    private Tariff(String name, String[] tierNames, int[][] limits, int[] prices) {
+        this.name = name;
+        this.tierNames = tierNames;
+        this.prices = prices;
+        this.limits = new int[tierNames.length][];
+        for (int t = 0; t < tierNames.length; t++) {
+            int[] tierLimits = limits[t].clone();
+            // Sort dimensions descending so the tier matches rotated packages as well
+            Arrays.sort(tierLimits, 0, 3);
+            int smallest = tierLimits[0];
+            tierLimits[0] = tierLimits[2];
+            tierLimits[2] = smallest;
+            this.limits[t] = tierLimits;
+        }
+
+        thresholds = new int[4][];
+        ranks = new byte[4][];
+        masks = new long[4][];
+        for (int d = 0; d < 4; d++) {
+            compileDimension(d);
+        }
+    }
+
+    /**
+     * Builds the threshold list, rank lookup table and tier masks for one dimension.
+     *
+     * @param d
+     *            the index of the dimension (0 to 2 for the sorted dimensions, 3 for the weight)
+     */
+    private void compileDimension(int d) {
+        TreeSet<Integer> distinct = new TreeSet<>();
+        for (int[] tierLimits : limits) {
+            if (tierLimits[d] != UNLIMITED) {
+                distinct.add(tierLimits[d]);
+            }
+        }
+        int[] values = distinct.stream().mapToInt(Integer::intValue).toArray();
+        thresholds[d] = values;
+
+        // A value with rank r lies above values[r - 1] and at most values[r]
+        long[] dimensionMasks = new long[values.length + 1];
+        for (int r = 0; r <= values.length; r++) {
+            for (int t = 0; t < limits.length; t++) {
+                if (r == values.length ? limits[t][d] == UNLIMITED : limits[t][d] >= values[r]) {
+                    dimensionMasks[r] |= 1L << t;
+                }
+            }
+        }
+        masks[d] = dimensionMasks;
+
+        if (values.length > 0 && values[values.length - 1] < MAX_DIRECT_LOOKUP) {
+            byte[] lookup = new byte[values[values.length - 1] + 1];
+            int r = 0;
+            for (int v = 0; v < lookup.length; v++) {
+                if (v > values[r]) {
+                    r++;
+                }
+                lookup[v] = (byte) r;
+            }
+            ranks[d] = lookup;
+        }
+    }
+
+    /**
+     * Returns the rank of a value among the thresholds of a dimension.
+     *
+     * @param d
+     *            the index of the dimension
+     * @param value
+     *            the value to look up
+     * @return the number of thresholds smaller than the value
+     */
+    private int rank(int d, int value) {
+        int[] values = thresholds[d];
+        byte[] lookup = ranks[d];
+        if (lookup != null) {
+            return value < 0 ? 0 : value < lookup.length ? lookup[value] : values.length;
+        }
+        int index = Arrays.binarySearch(values, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Determines the tier a package belongs to.
+     *
+     * <p>
+     * The dimensions may be given in any order.
+     * </p>
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @return the index of the tier
+     */
+    public int classify(int length, int width, int height, int weight) {
+        // Sort dimensions descending; the sum trick stays correct even if it overflows
+        int largest = Math.max(Math.max(length, width), height);
+        int smallest = Math.min(Math.min(length, width), height);
+        int middle = length + width + height - largest - smallest;
+
+        long mask = masks[0][rank(0, largest)] & masks[1][rank(1, middle)] & masks[2][rank(2, smallest)]
+                & masks[3][rank(3, weight)];
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * Returns the name of this tariff.
+     *
+     * @return the tariff name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of tiers in this tariff.
+     *
+     * @return the number of tiers
+     */
+    public int getTierCount() {
+        return tierNames.length;
+    }
+
+    /**
+     * Returns the name of a tier.
+     *
+     * @param tier
+     *            the index of the tier
+     * @return the tier name
+     */
+    public String getTierName(int tier) {
+        return tierNames[tier];
+    }
+
+    /**
+     * Returns the price of a tier.
+     *
+     * @param tier
+     *            the index of the tier
+     * @return the price in cents
+     */
+    public int getPriceCents(int tier) {
+        return prices[tier];
+    }
+
+    /**
+     * Returns the price of a tier in euros.
+     *
+     * @param tier
+     *            the index of the tier
+     * @return the price in euros
+     * @see #getPriceCents(int)
+     */
+    public double getPrice(int tier) {
+        return Money.toEuros(prices[tier]);
+    }
+
+    /**
+     * Returns the limits of a tier.
+     *
+     * <p>
+     * The returned array contains the largest, middle and smallest dimension in millimeters followed by the weight in
+     * grams. Missing limits are {@link #UNLIMITED}.
+     * </p>
+     *
+     * @param tier
+     *            the index of the tier
+     * @return a copy of the tier limits
+     */
+    public int[] getLimits(int tier) {
+        return limits[tier].clone();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Returns the default tariff.
+     *
+     * <p>
+     * If the system property {@value #TARIFF_PROPERTY} names a file, the tariff is loaded from that file. Otherwise the
+     * built-in tariff is used.
+     * </p>
+     *
+     * @return the default tariff
+     * @throws UncheckedIOException
+     *             if the configured tariff file cannot be loaded
+     */
+    public static Tariff getDefault() {
+        Tariff tariff = defaultTariff;
+        if (tariff == null) {
+            synchronized (Tariff.class) {
+                tariff = defaultTariff;
+                if (tariff == null) {
+                    String file = System.getProperty(TARIFF_PROPERTY);
+                    try {
+                        if (file != null) {
+                            tariff = load(Paths.get(file));
+                        } else {
+                            tariff = parse("Standard", new BufferedReader(new StringReader(DEFAULT_DEFINITION)));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Cannot load tariff " + file, e);
+                    }
+                    defaultTariff = tariff;
+                }
+            }
+        }
+        return tariff;
+    }
+
+    /**
+     * Replaces the default tariff.
+     *
+     * <p>
+     * Calculators created afterwards use the new tariff, and caches following the default tariff drop their entries.
+     * </p>
+     *
+     * @param tariff
+     *            the new default tariff
+     */
+    public static void setDefault(Tariff tariff) {
+        synchronized (Tariff.class) {
+            defaultTariff = Objects.requireNonNull(tariff);
+        }
+    }
+
+    /**
+     * Loads a tariff from a file.
+     *
+     * <p>
+     * The file name without extension is used as the tariff name.
+     * </p>
+     *
+     * @param file
+     *            the tariff definition file
+     * @return the compiled tariff
+     * @throws IOException
+     *             if the file cannot be read or is not a valid tariff definition
+     */
+    public static Tariff load(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String tariffName = dot > 0 ? fileName.substring(0, dot) : fileName;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(tariffName, reader);
+        }
+    }
+
+    /**
+     * Parses and compiles a tariff definition.
+     *
+     * @param name
+     *            the name of the tariff
+     * @param reader
+     *            the reader providing the definition
+     * @return the compiled tariff
+     * @throws IOException
+     *             if the definition cannot be read or is invalid
+     */
+    public static Tariff parse(String name, BufferedReader reader) throws IOException {
+        List<String> tierNames = new ArrayList<>();
+        List<int[]> limits = new ArrayList<>();
+        List<Integer> prices = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            if (fields.length != 6) {
+                throw new IOException("Line " + lineNumber + ": expected 6 fields but found " + fields.length);
+            }
+            int[] tierLimits = new int[4];
+            try {
+                for (int i = 0; i < 4; i++) {
+                    tierLimits[i] = "*".equals(fields[i + 1]) ? UNLIMITED : Integer.parseInt(fields[i + 1]);
+                    if (tierLimits[i] < 0) {
+                        throw new IOException("Line " + lineNumber + ": negative limit " + fields[i + 1]);
+                    }
+                }
+                prices.add(Money.parseCents(fields[5]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            tierNames.add(fields[0]);
+            limits.add(tierLimits);
+        }
+
+        if (tierNames.isEmpty()) {
+            throw new IOException("Tariff " + name + " does not define any tiers");
+        }
+        if (tierNames.size() > MAX_TIERS) {
+            throw new IOException("Tariff " + name + " defines more than " + MAX_TIERS + " tiers");
+        }
+        for (int limit : limits.get(limits.size() - 1)) {
+            if (limit != UNLIMITED) {
+                throw new IOException("The last tier of tariff " + name + " must not have any limits");
+            }
+        }
+
+        int[] tierPrices = new int[prices.size()];
+        for (int i = 0; i < tierPrices.length; i++) {
+            tierPrices[i] = prices.get(i);
+        }
+        return new Tariff(name, tierNames.toArray(new String[0]), limits.toArray(new int[0][]), tierPrices);
+    }
+}
@@ -0,0 +1,260 @@
+package control;
+
+import java.util.Arrays;
+
+/**
+ * Hash table collecting the postings of terms while a {@link ManifestIndex} segment is built.
+ *
+ * <p>
+ * Terms are copied into one shared byte array and looked up with open addressing, so adding the term of a line does
+ * not allocate unless the term is new or its postings have to grow.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+class TermTable {
+
+    /** The bytes of all terms. */
+    private byte[] bytes = new byte[1 << 16];
+
+    /** Number of used bytes. */
+    private int used;
+
+    /** Start of each term in {@link #bytes}. */
+    private int[] starts = new int[1024];
+
+    /** Length of each term. */
+    private int[] lengths = new int[1024];
+
+    /** Hash code of each term. */
+    private int[] hashes = new int[1024];
+
+    /** Postings of each term, each holding the document number in the upper and the line number in the lower 32 bits. */
+    private long[][] postings = new long[1024][];
+
+    /** Number of postings of each term. */
+    private int[] counts = new int[1024];
+
+    /** Number of terms. */
+    private int size;
+
+    /** Hash slots holding term number + 1, or 0 if empty. */
+    private int[] slots = new int[2048];
+
+    /**
+     * Adds a posting to a term. A posting equal to the last posting of the term is ignored.
+     *
+     * @param term
+     *            buffer holding the term
+     * @param length
+     *            the length of the term
+     * @param posting
+     *            the posting, not smaller than the last posting of the term
+     */
+    void add(byte[] term, int length, long posting) {
+        int hash = hash(term, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        int id;
+        while ((id = slots[slot] - 1) >= 0) {
+            if (hashes[id] == hash && lengths[id] == length
+                    && Arrays.equals(bytes, starts[id], starts[id] + length, term, 0, length)) {
+                int count = counts[id];
+                long[] termPostings = postings[id];
+                if (termPostings[count - 1] != posting) {
+                    if (count == termPostings.length) {
+                        termPostings = Arrays.copyOf(termPostings, count * 2);
+                        postings[id] = termPostings;
+                    }
+                    termPostings[count] = posting;
+                    counts[id] = count + 1;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // New term
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            postings = Arrays.copyOf(postings, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        if (used + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + length));
+        }
+        System.arraycopy(term, 0, bytes, used, length);
+        starts[size] = used;
+        lengths[size] = length;
+        hashes[size] = hash;
+        postings[size] = new long[] { posting, 0 };
+        counts[size] = 1;
+        used += length;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Doubles the number of hash slots.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Computes the hash code of a term.
+     *
+     * @param term
+     *            buffer holding the term
+     * @param length
+     *            the length of the term
+     * @return the hash code
+     */
+    private static int hash(byte[] term, int length) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ term[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the term numbers ordered by the unsigned bytes of their terms.
+     *
+     * @return the sorted term numbers
+     */
+    int[] sortedIds() {
+        int[] ids = new int[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        sort(ids, new int[size], 0, size);
+        return ids;
+    }
+
+    /**
+     * Sorts a range of term numbers by merge sort.
+     *
+     * @param ids
+     *            the term numbers
+     * @param buffer
+     *            a buffer of the same size
+     * @param from
+     *            the start of the range, inclusive
+     * @param to
+     *            the end of the range, exclusive
+     */
+    private void sort(int[] ids, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(ids, buffer, from, middle);
+        sort(ids, buffer, middle, to);
+        if (compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+                ids[i] = buffer[left++];
+            } else {
+                ids[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Compares two terms by their unsigned bytes.
+     *
+     * @param a
+     *            the first term number
+     * @param b
+     *            the second term number
+     * @return a negative number, zero or a positive number if the first term is smaller, equal or greater
+     */
+    private int compare(int a, int b) {
+        return Arrays.compareUnsigned(bytes, starts[a], starts[a] + lengths[a], bytes, starts[b],
+                starts[b] + lengths[b]);
+    }
+
+    /**
+     * Returns the bytes of all terms.
+     *
+     * @return the shared byte array
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the start of a term in {@link #bytes()}.
+     *
+     * @param id
+     *            the term number
+     * @return the start
+     */
+    int start(int id) {
+        return starts[id];
+    }
+
+    /**
+     * Returns the length of a term.
+     *
+     * @param id
+     *            the term number
+     * @return the length in bytes
+     */
+    int length(int id) {
+        return lengths[id];
+    }
+
+    /**
+     * Returns the postings of a term.
+     *
+     * @param id
+     *            the term number
+     * @return the sorted postings, of which the first {@link #count(int)} are used
+     */
+    long[] postings(int id) {
+        return postings[id];
+    }
+
+    /**
+     * Returns the number of postings of a term.
+     *
+     * @param id
+     *            the term number
+     * @return the number of postings
+     */
+    int count(int id) {
+        return counts[id];
+    }
+}
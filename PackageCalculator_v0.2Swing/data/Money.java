@@ -0,0 +1,119 @@
+package data;
+
+/**
+ * Helper methods for amounts of money held as whole cents.
+ *
+ * <p>
+ * Prices are kept as {@code int} or {@code long} numbers of cents instead of {@code double} euros, so sums over
+ * millions of packages are exact and no boxing is needed. This class converts between cents and their decimal text
+ * form. Formatting appends to a caller-supplied buffer, so it does not allocate when the buffer is reused.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public final class Money {
+
+    /** Number of cents in one euro. */
+    public static final int CENTS_PER_EURO = 100;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private Money() {
+    }
+
+    /**
+     * Converts cents to euros.
+     *
+     * @param cents
+     *            the amount in cents
+     * @return the amount in euros
+     */
+    public static double toEuros(long cents) {
+        return cents / (double) CENTS_PER_EURO;
+    }
+
+    /**
+     * Appends an amount in the form {@code 1234.56} to a buffer.
+     *
+     * @param cents
+     *            the amount in cents
+     * @param buffer
+     *            the buffer to append to
+     * @return the buffer
+     */
+    public static StringBuilder append(long cents, StringBuilder buffer) {
+        if (cents < 0) {
+            buffer.append('-');
+            if (cents == Long.MIN_VALUE) {
+                // Cannot be negated; its last two digits are 08
+                return buffer.append(-(cents / CENTS_PER_EURO)).append(".08");
+            }
+            cents = -cents;
+        }
+        long fraction = cents % CENTS_PER_EURO;
+        buffer.append(cents / CENTS_PER_EURO).append('.');
+        if (fraction < 10) {
+            buffer.append('0');
+        }
+        return buffer.append(fraction);
+    }
+
+    /**
+     * Formats an amount in the form {@code 1234.56}.
+     *
+     * @param cents
+     *            the amount in cents
+     * @return the formatted amount
+     */
+    public static String format(long cents) {
+        return append(cents, new StringBuilder(24)).toString();
+    }
+
+    /**
+     * Parses a decimal amount with at most two fractional digits, such as {@code 14.99}, {@code 5} or {@code 4.5}.
+     *
+     * @param text
+     *            the text to parse
+     * @return the amount in cents
+     * @throws NumberFormatException
+     *             if the text is not a valid amount
+     */
+    public static int parseCents(String text) {
+        int dot = text.indexOf('.');
+        String euros = dot >= 0 ? text.substring(0, dot) : text;
+        String fraction = dot >= 0 ? text.substring(dot + 1) : "";
+        if (fraction.length() > 2 || euros.length() > 9 || (euros.isEmpty() && fraction.isEmpty())
+                || !isDigits(fraction) || !isDigits(euros)) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        long cents = euros.isEmpty() ? 0 : Long.parseLong(euros) * CENTS_PER_EURO;
+        if (!fraction.isEmpty()) {
+            cents += Integer.parseInt(fraction) * (fraction.length() == 1 ? 10 : 1);
+        }
+        if (cents > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+        return (int) cents;
+    }
+
+    /**
+     * Checks whether a string consists of ASCII digits only.
+     *
+     * @param text
+     *            the text to check
+     * @return {@code true} if every character is a digit
+     */
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,149 @@
+package data;
+
+/**
+ * Represents a batch of packages stored column by column.
+ *
+ * <p>
+ * Instead of one {@link Packet} object per package, this class keeps the lengths, widths, heights and weights of many
+ * packages in four parallel {@code int} arrays (structure of arrays). The entry at index {@code i} of every column
+ * belongs to the same package. A batch is meant to be filled, priced and cleared again, so the same arrays can be
+ * reused for any number of packages.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PacketBatch {
+
+    /** Lengths of the packages in millimeters. */
+    public final int[] length;
+
+    /** Widths of the packages in millimeters. */
+    public final int[] width;
+
+    /** Heights of the packages in millimeters. */
+    public final int[] height;
+
+    /** Weights of the packages in grams. */
+    public final int[] weight;
+
+    /** Number of packages currently stored in this batch. */
+    private int size;
+
+    /**
+     * Constructs a new, empty PacketBatch with the specified capacity.
+     *
+     * @param capacity
+     *            the maximum number of packages the batch can hold
+     */
+    public PacketBatch(int capacity) {
+        this(new int[capacity], new int[capacity], new int[capacity], new int[capacity], 0);
+    }
+
+    /**
+     * Constructs a PacketBatch viewing the given columns.
+     *
+     * <p>
+     * The arrays are used directly and not copied. All columns must have at least {@code size} entries.
+     * </p>
+     *
+     * @param length
+     *            the lengths of the packages in millimeters
+     * @param width
+     *            the widths of the packages in millimeters
+     * @param height
+     *            the heights of the packages in millimeters
+     * @param weight
+     *            the weights of the packages in grams
+     * @param size
+     *            the number of packages stored in the columns
+     * @throws IllegalArgumentException
+     *             if the columns differ in length or are shorter than {@code size}
+     */
+    public PacketBatch(int[] length, int[] width, int[] height, int[] weight, int size) {
+        if (width.length != length.length || height.length != length.length || weight.length != length.length) {
+            throw new IllegalArgumentException("All columns must have the same length");
+        }
+        if (size < 0 || size > length.length) {
+            throw new IllegalArgumentException("Invalid batch size: " + size);
+        }
+        this.length = length;
+        this.width = width;
+        this.height = height;
+        this.weight = weight;
+        this.size = size;
+    }
+
+    /**
+     * Appends a package to this batch.
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @throws IllegalStateException
+     *             if the batch is full
+     */
+    public void add(int length, int width, int height, int weight) {
+        if (size == this.length.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        this.length[size] = length;
+        this.width[size] = width;
+        this.height[size] = height;
+        this.weight[size] = weight;
+        size++;
+    }
+
+    /**
+     * Appends a package to this batch.
+     *
+     * @param pack
+     *            the package to append
+     * @throws IllegalStateException
+     *             if the batch is full
+     */
+    public void add(Packet pack) {
+        add(pack.length, pack.width, pack.height, pack.weight);
+    }
+
+    /**
+     * Returns the number of packages stored in this batch.
+     *
+     * @return the number of packages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of packages this batch can hold.
+     *
+     * @return the capacity of the batch
+     */
+    public int capacity() {
+        return length.length;
+    }
+
+    /**
+     * Returns whether this batch cannot take any more packages.
+     *
+     * @return {@code true} if the batch is full
+     */
+    public boolean isFull() {
+        return size == length.length;
+    }
+
+    /**
+     * Removes all packages from this batch. The columns are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,386 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap store for large numbers of packages.
+ *
+ * <p>
+ * The store packs the length, width, height and weight of every package into a record of {@value #RECORD_SIZE} bytes in
+ * direct memory outside the Java heap. Records are kept in segments of {@value #SEGMENT_RECORDS} records, so the store
+ * can grow to hundreds of millions of packages without putting pressure on the garbage collector. The last segment
+ * starts with room for {@value #INITIAL_SEGMENT_RECORDS} records and is copied into one twice as large when it is full,
+ * so small stores stay small; only this last, partial segment is ever copied, full segments are never moved. Packages
+ * are read through a reusable {@link Cursor} instead of {@link Packet} objects.
+ * </p>
+ *
+ * <p>
+ * The direct memory of a store is released when the store is no longer reachable. A store is not thread-safe while
+ * packages are appended.
+ * </p>
+ *
+ * <p>
+ * A store can also {@linkplain #wrap(List, long) wrap} existing buffers, such as the memory-mapped records of a binary
+ * manifest. Such a store is read-only.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PacketStore {
+
+    /** Size of one package record in bytes. */
+    public static final int RECORD_SIZE = 16;
+
+    /** Offset of the length within a record. */
+    public static final int LENGTH_OFFSET = 0;
+
+    /** Offset of the width within a record. */
+    public static final int WIDTH_OFFSET = 4;
+
+    /** Offset of the height within a record. */
+    public static final int HEIGHT_OFFSET = 8;
+
+    /** Offset of the weight within a record. */
+    public static final int WEIGHT_OFFSET = 12;
+
+    /** Number of bits of the number of records per segment. */
+    private static final int SEGMENT_SHIFT = 22;
+
+    /** Number of records per segment. */
+    public static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+
+    /** Number of records the last segment has room for when it is created. */
+    public static final int INITIAL_SEGMENT_RECORDS = 1024;
+
+    /** The segments holding the records. */
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    /** Number of packages in this store. */
+    private long size;
+
+    /** Whether the segments were wrapped and must not be changed. */
+    private final boolean readOnly;
+
+    /**
+     * Constructs a new, empty PacketStore.
+     */
+    public PacketStore() {
+        this.readOnly = false;
+    }
+
+    /**
+     * Constructs a read-only PacketStore on existing segments.
+     *
+     * @param segments
+     *            the segments
+     * @param size
+     *            the number of packages
+     */
+    private PacketStore(List<ByteBuffer> segments, long size) {
+        this.segments.addAll(segments);
+        this.size = size;
+        this.readOnly = true;
+    }
+
+    /**
+     * Returns a read-only store on existing segments.
+     *
+     * <p>
+     * Every segment but the last must hold {@value #SEGMENT_RECORDS} records of {@value #RECORD_SIZE} bytes, laid out as
+     * in the segments of this class, starting at index 0. The byte order of the buffers is respected.
+     * </p>
+     *
+     * @param segments
+     *            the segments
+     * @param size
+     *            the number of packages
+     * @return the store
+     * @throws IllegalArgumentException
+     *             if the segments do not hold the given number of packages
+     */
+    public static PacketStore wrap(List<ByteBuffer> segments, long size) {
+        long expectedSegments = (size + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT;
+        if (size < 0 || segments.size() != expectedSegments) {
+            throw new IllegalArgumentException(segments.size() + " segments cannot hold " + size + " packages");
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            long records = Math.min(SEGMENT_RECORDS, size - ((long) i << SEGMENT_SHIFT));
+            if (segments.get(i).capacity() < records * RECORD_SIZE) {
+                throw new IllegalArgumentException("Segment " + i + " is too small");
+            }
+        }
+        return new PacketStore(segments, size);
+    }
+
+    /**
+     * Returns whether this store wraps existing segments and cannot be changed.
+     *
+     * @return {@code true} if the store is read-only
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Appends a package to this store.
+     *
+     * @param length
+     *            the length of the package in millimeters
+     * @param width
+     *            the width of the package in millimeters
+     * @param height
+     *            the height of the package in millimeters
+     * @param weight
+     *            the weight of the package in grams
+     * @throws UnsupportedOperationException
+     *             if the store is read-only
+     */
+    public void append(int length, int width, int height, int weight) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The store is read-only");
+        }
+        int index = (int) (size & (SEGMENT_RECORDS - 1));
+        if (index == 0) {
+            segments.add(allocate(INITIAL_SEGMENT_RECORDS));
+        }
+        ByteBuffer segment = segments.get(segments.size() - 1);
+        if (index * RECORD_SIZE == segment.capacity()) {
+            // Double the last segment, up to the full segment size
+            ByteBuffer grown = allocate(Math.min(SEGMENT_RECORDS, index * 2));
+            grown.put(segment.duplicate().clear());
+            segments.set(segments.size() - 1, grown);
+            segment = grown;
+        }
+        int offset = index * RECORD_SIZE;
+        segment.putInt(offset + LENGTH_OFFSET, length);
+        segment.putInt(offset + WIDTH_OFFSET, width);
+        segment.putInt(offset + HEIGHT_OFFSET, height);
+        segment.putInt(offset + WEIGHT_OFFSET, weight);
+        size++;
+    }
+
+    /**
+     * Allocates a segment in direct memory.
+     *
+     * @param records
+     *            the number of records the segment has room for
+     * @return the segment in native byte order
+     */
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Appends a package to this store.
+     *
+     * @param pack
+     *            the package to append
+     */
+    public void append(Packet pack) {
+        append(pack.length, pack.width, pack.height, pack.weight);
+    }
+
+    /**
+     * Appends all packages of a batch to this store.
+     *
+     * @param batch
+     *            the packages to append
+     */
+    public void append(PacketBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            append(batch.length[i], batch.width[i], batch.height[i], batch.weight[i]);
+        }
+    }
+
+    /**
+     * Copies packages from this store into a batch.
+     *
+     * <p>
+     * The batch is cleared first and then filled with up to {@code batch.capacity()} packages starting at the given
+     * index.
+     * </p>
+     *
+     * @param first
+     *            the index of the first package to copy
+     * @param batch
+     *            the batch receiving the packages
+     * @return the number of packages copied
+     */
+    public int read(long first, PacketBatch batch) {
+        batch.clear();
+        Cursor cursor = new Cursor();
+        cursor.seek(first);
+        while (!batch.isFull() && cursor.next()) {
+            batch.add(cursor.getLength(), cursor.getWidth(), cursor.getHeight(), cursor.getWeight());
+        }
+        return batch.size();
+    }
+
+    /**
+     * Returns the number of packages in this store.
+     *
+     * @return the number of packages
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes all packages from this store and releases its segments.
+     *
+     * @throws UnsupportedOperationException
+     *             if the store is read-only
+     */
+    public void clear() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The store is read-only");
+        }
+        segments.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of segments of this store.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns a segment of this store for direct access.
+     *
+     * <p>
+     * The segment contains {@link #getSegmentSize(int)} records of {@value #RECORD_SIZE} bytes in the byte order of the
+     * buffer, which is the native byte order unless the store was wrapped. The returned buffer must not be modified.
+     * </p>
+     *
+     * @param index
+     *            the index of the segment
+     * @return the segment
+     */
+    public ByteBuffer getSegment(int index) {
+        return segments.get(index);
+    }
+
+    /**
+     * Returns the number of records in a segment.
+     *
+     * @param index
+     *            the index of the segment
+     * @return the number of records
+     */
+    public int getSegmentSize(int index) {
+        return (int) Math.min(SEGMENT_RECORDS, size - ((long) index << SEGMENT_SHIFT));
+    }
+
+    /**
+     * Returns a new cursor positioned before the first package.
+     *
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Flyweight giving access to one package of the store at a time.
+     *
+     * <p>
+     * A cursor starts before the first package. Each call to {@link #next()} moves it to the following package, whose
+     * values can then be read with the getters.
+     * </p>
+     */
+    public class Cursor {
+
+        /** Index of the current package, or -1 before the first package. */
+        private long index = -1;
+
+        /** Segment of the current package. */
+        private ByteBuffer segment;
+
+        /** Offset of the current record within its segment. */
+        private int offset;
+
+        /**
+         * Moves the cursor so that the next call to {@link #next()} moves to the given package.
+         *
+         * @param index
+         *            the index of the package
+         */
+        public void seek(long index) {
+            this.index = index - 1;
+            segment = null;
+        }
+
+        /**
+         * Moves the cursor to the next package.
+         *
+         * @return {@code true} if there is a next package
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            int record = (int) (index & (SEGMENT_RECORDS - 1));
+            if (record == 0 || segment == null) {
+                segment = segments.get((int) (index >>> SEGMENT_SHIFT));
+            }
+            offset = record * RECORD_SIZE;
+            return true;
+        }
+
+        /**
+         * Returns the index of the current package.
+         *
+         * @return the index
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the length of the current package.
+         *
+         * @return the length in millimeters
+         */
+        public int getLength() {
+            return segment.getInt(offset + LENGTH_OFFSET);
+        }
+
+        /**
+         * Returns the width of the current package.
+         *
+         * @return the width in millimeters
+         */
+        public int getWidth() {
+            return segment.getInt(offset + WIDTH_OFFSET);
+        }
+
+        /**
+         * Returns the height of the current package.
+         *
+         * @return the height in millimeters
+         */
+        public int getHeight() {
+            return segment.getInt(offset + HEIGHT_OFFSET);
+        }
+
+        /**
+         * Returns the weight of the current package.
+         *
+         * @return the weight in grams
+         */
+        public int getWeight() {
+            return segment.getInt(offset + WEIGHT_OFFSET);
+        }
+    }
+}
@@ -3,13 +3,24 @@ package gui;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import control.Calculator;
+import control.PriceCache;
+import control.RateShop;
+import data.Money;
 import data.Packet;
 
 /**
@@ -17,7 +28,15 @@ import data.Packet;
  *
  * <p>
  * This class extends Swing JPanel and provides a form for entering package dimensions (length, width, height) and
- * weight, with a button to calculate and display the shipping costs.
+ * weight, with a button to calculate and display the shipping costs. If several carriers are configured, the quotes of
+ * all carriers are listed below the shipping costs, cheapest first (see {@link RateShop}).
+ * </p>
+ *
+ * <p>
+ * The shipping costs are also updated while the user types. Once no key was pressed for {@value #DEBOUNCE_MILLIS} ms,
+ * the input is validated and priced on a background thread, so a slow tariff never blocks the user interface. If the
+ * input changes while a price is being calculated, only the newest input is priced next and results for outdated input
+ * are dropped.
  * </p>
  *
  * @author I. Bogicevic
@@ -27,6 +46,36 @@ import data.Packet;
  */
 public class CalculatorArea extends JPanel {
 
+    /** Time without input changes after which the shipping costs are updated, in milliseconds. */
+    public static final int DEBOUNCE_MILLIS = 150;
+
+    /** Names of the input fields, in the order of {@link Request#fields}. */
+    private static final String[] FIELD_NAMES = { "length", "width", "height", "weight" };
+
+    /**
+     * Input of one shipping cost request, read from the text fields on the Event Dispatch Thread.
+     */
+    private static class Request {
+        /** Number of the request; a later request has a higher number. */
+        final long number;
+
+        /** The texts of the length, width, height and weight fields. */
+        final String[] fields;
+
+        /**
+         * Constructs a Request.
+         *
+         * @param number
+         *            the number of the request
+         * @param fields
+         *            the texts of the length, width, height and weight fields
+         */
+        Request(long number, String[] fields) {
+            this.number = number;
+            this.fields = fields;
+        }
+    }
+
     /** Text field for entering the package length in millimeters. */
     JTextField lengthTextField = new JTextField(10);
 
@@ -42,37 +91,172 @@ public class CalculatorArea extends JPanel {
     /** Label displaying the calculated shipping cost. */
     JLabel shippingCostLabel = new JLabel("?");
 
+    /** Label displaying the quotes of all carriers, cheapest first. */
+    JLabel quotesLabel = new JLabel();
+
     /** Button to trigger the shipping cost calculation. */
     JButton calcButton = new JButton("Calculate");
 
+    /** Cache of recently calculated shipping costs, or {@code null} if caching is disabled. */
+    private final PriceCache priceCache = PriceCache.fromSystemProperties();
+
+    /** The calculator used if caching is disabled. */
+    private final Calculator calculator = new Calculator();
+
+    /** The carriers to compare, loaded on first use by the pricing thread, or {@code null}. */
+    private RateShop rateShop;
+
+    /** The reason the carriers could not be loaded, or {@code null}. */
+    private String rateShopError;
+
+    /** Timer starting the calculation once the input did not change for a while. */
+    private final Timer debounceTimer = new Timer(DEBOUNCE_MILLIS, e -> requestShippingCosts());
+
+    /** Thread calculating the shipping costs, one request at a time. */
+    private final ExecutorService pricingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Shipping cost calculation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The newest request not yet taken by the pricing thread, or {@code null}. */
+    private final AtomicReference<Request> pendingRequest = new AtomicReference<>();
+
+    /** Number of the newest request, only accessed on the Event Dispatch Thread. */
+    private long requestNumber;
+
     /**
-     * Calculates the shipping costs based on user input.
+     * Requests the shipping costs for the current input.
      *
      * <p>
-     * This method reads the values from the input text fields, creates a Packet object, calculates the shipping costs
-     * using the Calculator, and displays the result in the shipping cost label.
+     * This method reads the values from the input text fields on the Event Dispatch Thread and hands them to the
+     * pricing thread. A request that is still waiting for the pricing thread is replaced, so the pricing thread never
+     * works on outdated input.
      * </p>
-     *
-     * @return the calculated shipping cost in euros
      */
-    private double calcShippingCosts() {
-        // Initialize calculator
-        Calculator calc = new Calculator();
+    private void requestShippingCosts() {
+        debounceTimer.stop();
+        Request request = new Request(++requestNumber, new String[] { lengthTextField.getText(),
+                widthTextField.getText(), heightTextField.getText(), weightTextField.getText() });
+        if (pendingRequest.getAndSet(request) == null) {
+            // No calculation is scheduled yet
+            pricingExecutor.execute(this::calcShippingCosts);
+        }
+    }
 
-        // Get user input values from text fields
-        int length = Integer.parseInt(lengthTextField.getText());
-        int width = Integer.parseInt(widthTextField.getText());
-        int height = Integer.parseInt(heightTextField.getText());
-        int weight = Integer.parseInt(weightTextField.getText());
+    /**
+     * Calculates the shipping costs of the newest request on the pricing thread.
+     *
+     * <p>
+     * This method validates the input, creates a Packet object, calculates the shipping costs using the price cache or
+     * the Calculator, and displays the result in the shipping cost label unless newer input was entered meanwhile.
+     * </p>
+     */
+    private void calcShippingCosts() {
+        Request request = pendingRequest.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+
+        // Validate user input values
+        int[] values = new int[FIELD_NAMES.length];
+        String text = null;
+        for (int i = 0; i < values.length; i++) {
+            String field = request.fields[i].trim();
+            if (field.isEmpty()) {
+                text = "?";
+                break;
+            }
+            try {
+                values[i] = Integer.parseInt(field);
+            } catch (NumberFormatException e) {
+                values[i] = -1;
+            }
+            if (values[i] < 0) {
+                text = "Invalid " + FIELD_NAMES[i];
+                break;
+            }
+        }
 
         // Perform shipping cost calculation
-        Packet packet = new Packet(length, width, height, weight);
-        Double costs = calc.calcShippingCosts(packet);
+        String toolTip = null;
+        String quotes = "";
+        if (text == null) {
+            Packet packet = new Packet(values[0], values[1], values[2], values[3]);
+            try {
+                int costs;
+                if (priceCache != null) {
+                    costs = priceCache.calcShippingCostsCents(packet);
+                    toolTip = priceCache.toString();
+                } else {
+                    costs = calculator.calcShippingCostsCents(packet);
+                }
+                text = Money.format(costs);
+                quotes = quoteCarriers(values);
+            } catch (RuntimeException e) {
+                // Keep the pricing thread alive and show the problem instead of an outdated price
+                text = "Error: " + e.getMessage();
+            }
+        }
+
+        // Display the result to the user, unless the input changed meanwhile
+        String costsText = text;
+        String costsToolTip = toolTip;
+        String quotesText = quotes;
+        SwingUtilities.invokeLater(() -> {
+            if (request.number == requestNumber) {
+                shippingCostLabel.setText(costsText);
+                quotesLabel.setText(quotesText);
+                if (costsToolTip != null) {
+                    shippingCostLabel.setToolTipText(costsToolTip);
+                }
+            }
+        });
+    }
 
-        // Display the result to the user
-        shippingCostLabel.setText(costs.toString());
+    /**
+     * Prices the package with all carriers on the pricing thread.
+     *
+     * <p>
+     * The carriers are loaded when this method is called for the first time.
+     * </p>
+     *
+     * @param values
+     *            the length, width, height and weight of the package
+     * @return the ranked quotes as HTML, or an empty string if there is only one carrier
+     */
+    private String quoteCarriers(int[] values) {
+        if (rateShop == null && rateShopError == null) {
+            try {
+                rateShop = RateShop.load();
+            } catch (IOException e) {
+                rateShopError = e.getMessage();
+            }
+        }
+        if (rateShop == null) {
+            return rateShopError;
+        }
+        if (rateShop.getCarriers().size() < 2) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("<html>");
+        RateShop.Quote[] quotes = rateShop.quote(values[0], values[1], values[2], values[3]);
+        for (int i = 0; i < quotes.length; i++) {
+            // Tariff and tier names come from files and must not be taken as markup
+            text.append(i + 1).append(". ").append(escapeHtml(quotes[i].toString())).append("<br>");
+        }
+        return text.append("</html>").toString();
+    }
 
-        return costs;
+    /**
+     * Escapes the characters of a text that have a meaning in HTML.
+     *
+     * @param text
+     *            the text
+     * @return the text with {@code &}, {@code <} and {@code >} replaced by entities
+     */
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
     }
 
     /**
@@ -143,7 +327,40 @@ public class CalculatorArea extends JPanel {
         gbc.gridx = 2;
         add(calcButton, gbc);
 
+        // Add the quotes of all carriers
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.anchor = GridBagConstraints.NORTHWEST;
+        add(new JLabel("Carriers: "), gbc);
+
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        add(quotesLabel, gbc);
+
         // Configure action listener for calculate button
-        calcButton.addActionListener(e -> calcShippingCosts());
+        calcButton.addActionListener(e -> requestShippingCosts());
+
+        // Update the shipping costs while the user types
+        debounceTimer.setRepeats(false);
+        DocumentListener inputListener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                debounceTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                debounceTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes do not change the input
+            }
+        };
+        lengthTextField.getDocument().addDocumentListener(inputListener);
+        widthTextField.getDocument().addDocumentListener(inputListener);
+        heightTextField.getDocument().addDocumentListener(inputListener);
+        weightTextField.getDocument().addDocumentListener(inputListener);
     }
 }
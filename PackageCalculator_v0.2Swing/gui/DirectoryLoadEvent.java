@@ -0,0 +1,42 @@
+package gui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for reading the children of a directory in the {@link ExplorerArea}.
+ *
+ * <p>
+ * The event covers reading the directory in the background, from registering it with the directory watcher until the
+ * last entry was read.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+@Name("packagecalculator.DirectoryLoad")
+@Label("Directory Load")
+@Category({ "Package Calculator", "Explorer" })
+@Description("Reading of the entries of a directory shown in the explorer")
+class DirectoryLoadEvent extends jdk.jfr.Event {
+
+    /** The read directory. */
+    @Label("Directory")
+    String directory;
+
+    /** Number of read entries. */
+    @Label("Entries")
+    int entries;
+
+    /** Number of entries shown in the tree. */
+    @Label("Shown Entries")
+    int shownEntries;
+
+    /** Whether reading was cancelled before the end of the directory. */
+    @Label("Cancelled")
+    boolean cancelled;
+}
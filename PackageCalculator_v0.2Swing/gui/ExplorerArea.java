@@ -1,7 +1,25 @@
 package gui;
 
 import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
@@ -9,19 +27,42 @@ import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTabbedPane;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.ExpandVetoException;
+import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreePath;
+
+import control.BinaryManifest;
+import control.Calculator;
+import control.DirectoryWatcher;
+import control.IncrementalPricer;
+import control.ManifestIndex;
+import gui.MessageListModel.Severity;
 
 /**
  * Explorer area displaying a file system tree view.
  *
  * <p>
- * This class extends Swing JTabbedPane and provides a file system browser that displays directories and .txt files in a
- * tree structure. It includes context menus for file operations and filters to show only relevant file types.
+ * This class extends Swing JTabbedPane and provides a file system browser that displays directories, .txt files and
+ * binary manifests in a tree structure. It includes context menus for file operations and filters to show only
+ * relevant file types.
+ * </p>
+ *
+ * <p>
+ * Directories are read in the background when they are expanded and their children appear in chunks as they are found.
+ * Collapsing a directory that is still loading cancels the loading. Read directories are watched, so files that other
+ * programs create or delete in the project appear in or disappear from the tree without reloading it.
+ * </p>
+ *
+ * <p>
+ * The "Search" tab finds the lines of all manifests in the project that contain the entered terms. Its index is
+ * updated when the project is opened and when the watcher reports changed manifests.
  * </p>
  *
  * @author I. Bogicevic
@@ -37,6 +78,30 @@ public class ExplorerArea extends JTabbedPane {
     /** The tree model managing the file system data. */
     private DefaultTreeModel treeModel;
 
+    /** Context menu shared by all folders. */
+    private JPopupMenu folderMenu;
+
+    /** Context menu shared by all files. */
+    private JPopupMenu fileMenu;
+
+    /** The "Price manifest" item of the file context menu, only visible for manifests. */
+    private JMenuItem priceMenuItem;
+
+    /** The tree item the context menu was last opened for. */
+    private FileItem contextItem;
+
+    /** Directories whose children are currently being loaded, only accessed on the Event Dispatch Thread. */
+    private final Map<DefaultMutableTreeNode, DirectoryLoader> loaders = new HashMap<>();
+
+    /** Tree nodes of all files and directories in the tree by their path, only accessed on the Event Dispatch Thread. */
+    private final Map<Path, DefaultMutableTreeNode> nodesByPath = new HashMap<>();
+
+    /** Watcher of the read directories, or {@code null} if no project is open or watching is not supported. */
+    private DirectoryWatcher watcher;
+
+    /** The panel searching the manifests of the project. */
+    private final SearchPanel searchPanel = new SearchPanel();
+
     /**
      * Wrapper class for representing a file in the tree cell.
      *
@@ -49,6 +114,12 @@ public class ExplorerArea extends JTabbedPane {
         /** The file represented by this tree item. */
         public File file;
 
+        /** Whether the file is a directory, determined once so the Event Dispatch Thread does not need to ask. */
+        public boolean directory;
+
+        /** The name shown in the tree, determined once so painting a cell does not allocate. */
+        public String displayName;
+
         /**
          * Private default constructor.
          */
@@ -63,7 +134,21 @@ public class ExplorerArea extends JTabbedPane {
          *            the file to wrap
          */
         public FileItem(File file) {
+            this(file, file.isDirectory());
+        }
+
+        /**
+         * Constructs a FileItem from a File object whose type is already known.
+         *
+         * @param file
+         *            the file to wrap
+         * @param directory
+         *            whether the file is a directory
+         */
+        public FileItem(File file, boolean directory) {
             this.file = file;
+            this.directory = directory;
+            this.displayName = file.getName();
         }
 
         /**
@@ -73,7 +158,7 @@ public class ExplorerArea extends JTabbedPane {
          *            the file path string
          */
         public FileItem(String str) {
-            this.file = new File(str);
+            this(new File(str));
         }
 
         /**
@@ -87,12 +172,29 @@ public class ExplorerArea extends JTabbedPane {
          */
         @Override
         public String toString() {
-            // Hide root folder name (already shown in window title)
-            if (file.getAbsolutePath().equals(PackageCalculator.getInstance().rootPath)) {
-                return "..." + File.separator + file.getName();
-            }
-            // Return only the filename for other items
-            return file.getName();
+            return displayName;
+        }
+    }
+
+    /**
+     * Placeholder shown as the only child of a directory while its children are not loaded.
+     *
+     * <p>
+     * While the directory is being read, the placeholder shows how many entries have been found so far.
+     * </p>
+     */
+    private static class LoadingItem {
+        /** Number of entries found so far. */
+        private int found;
+
+        /**
+         * Returns the string representation of this placeholder.
+         *
+         * @return "Loading..." followed by the number of entries found so far, if any
+         */
+        @Override
+        public String toString() {
+            return found == 0 ? "Loading..." : "Loading... (" + found + ")";
         }
     }
 
@@ -109,18 +211,67 @@ public class ExplorerArea extends JTabbedPane {
      */
     private DefaultMutableTreeNode createNode(FileItem fileItem) {
         DefaultMutableTreeNode node = new DefaultMutableTreeNode(fileItem);
-        // Add dummy node if directory to enable expansion
-        if (fileItem.file.isDirectory()) {
-            node.add(new DefaultMutableTreeNode("Loading..."));
+        // Add placeholder node if directory to enable expansion
+        if (fileItem.directory) {
+            node.add(new DefaultMutableTreeNode(new LoadingItem()));
         }
         return node;
     }
 
     /**
-     * Builds the children for a tree node.
+     * Returns the placeholder of a tree node whose children have not been loaded yet.
+     *
+     * @param node
+     *            the tree node
+     * @return the placeholder node, or {@code null} if the children are loaded
+     */
+    private static DefaultMutableTreeNode getLoadingNode(DefaultMutableTreeNode node) {
+        if (node.getChildCount() > 0) {
+            DefaultMutableTreeNode last = (DefaultMutableTreeNode) node.getLastChild();
+            if (last.getUserObject() instanceof LoadingItem) {
+                return last;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a directory entry is shown in the tree.
+     *
+     * @param name
+     *            the name of the entry
+     * @param directory
+     *            whether the entry is a directory
+     * @return {@code true} for folders, .txt files and binary manifests
+     */
+    private static boolean isShown(String name, boolean directory) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return directory || lowerCaseName.endsWith(BinaryManifest.TEXT_EXTENSION)
+                || lowerCaseName.endsWith(BinaryManifest.EXTENSION);
+    }
+
+    /**
+     * Returns the file selected in the tree.
+     *
+     * @return the selected file, or {@code null} if no file or a folder is selected
+     */
+    public File getSelectedFile() {
+        TreePath path = treeView != null ? treeView.getSelectionPath() : null;
+        if (path == null) {
+            return null;
+        }
+        Object userObject = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+        return userObject instanceof FileItem && !((FileItem) userObject).directory ? ((FileItem) userObject).file
+                : null;
+    }
+
+    /**
+     * Starts building the children for a tree node in the background.
      *
      * <p>
-     * Only directories and .txt files are included in the tree.
+     * Only directories, .txt files and binary manifests are included in the tree. The children are inserted in chunks
+     * before the placeholder node as they are found, so large or slow directories never block the Event Dispatch
+     * Thread.
      * </p>
      *
      * @param node
@@ -128,38 +279,367 @@ public class ExplorerArea extends JTabbedPane {
      */
     private void buildChildren(DefaultMutableTreeNode node) {
         Object userObject = node.getUserObject();
-        if (!(userObject instanceof FileItem)) {
+        if (!(userObject instanceof FileItem) || !((FileItem) userObject).directory || loaders.containsKey(node)) {
             return;
         }
 
-        FileItem fileItem = (FileItem) userObject;
-        if (!fileItem.file.isDirectory()) {
-            return;
+        DirectoryLoader loader = new DirectoryLoader(node, ((FileItem) userObject).file);
+        loaders.put(node, loader);
+        loader.execute();
+    }
+
+    /**
+     * Cancels loading the children of a tree node.
+     *
+     * <p>
+     * Children that were already inserted are removed again, so the directory is read anew on the next expansion.
+     * </p>
+     *
+     * @param node
+     *            the tree node
+     */
+    private void cancelBuildChildren(DefaultMutableTreeNode node) {
+        if (loaders.containsKey(node)) {
+            resetChildren(node);
         }
+    }
 
-        // Remove dummy/loading node
+    /**
+     * Removes all children of a tree node and puts the placeholder back, so the directory is read anew on the next
+     * expansion. A running loader of the node is cancelled and the directory is no longer watched.
+     *
+     * @param node
+     *            the tree node
+     */
+    private void resetChildren(DefaultMutableTreeNode node) {
+        DirectoryLoader loader = loaders.remove(node);
+        if (loader != null) {
+            loader.cancel(true);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            forget((DefaultMutableTreeNode) node.getChildAt(i));
+        }
+        if (watcher != null) {
+            watcher.unregister(((FileItem) node.getUserObject()).file.toPath());
+        }
         node.removeAllChildren();
+        node.add(new DefaultMutableTreeNode(new LoadingItem()));
+        treeModel.nodeStructureChanged(node);
+    }
 
-        // Add actual children
-        File[] files = fileItem.file.listFiles();
-        if (files != null) {
-            for (File childFile : files) {
-                // Add only folders and txt-files
-                if (childFile.isDirectory() || childFile.getName().toLowerCase().endsWith(".txt")) {
-                    node.add(createNode(new FileItem(childFile)));
+    /**
+     * Forgets a tree node that is removed from the tree, together with all its descendants: they are removed from the
+     * path index, their loaders are cancelled and their directories are no longer watched.
+     *
+     * @param node
+     *            the tree node
+     */
+    private void forget(DefaultMutableTreeNode node) {
+        Enumeration<TreeNode> subtree = node.breadthFirstEnumeration();
+        while (subtree.hasMoreElements()) {
+            DefaultMutableTreeNode descendant = (DefaultMutableTreeNode) subtree.nextElement();
+            if (!(descendant.getUserObject() instanceof FileItem)) {
+                continue;
+            }
+            FileItem fileItem = (FileItem) descendant.getUserObject();
+            Path path = fileItem.file.toPath();
+            nodesByPath.remove(path);
+            if (fileItem.directory) {
+                DirectoryLoader loader = loaders.remove(descendant);
+                if (loader != null) {
+                    loader.cancel(true);
+                }
+                if (watcher != null) {
+                    watcher.unregister(path);
                 }
             }
         }
+    }
 
-        treeModel.nodeStructureChanged(node);
+    /**
+     * Checks whether the children of a tree node have been read or are being read.
+     *
+     * @param node
+     *            the tree node
+     * @return {@code true} if the node is loaded or loading
+     */
+    private boolean isListed(DefaultMutableTreeNode node) {
+        return loaders.containsKey(node) || getLoadingNode(node) == null;
     }
 
     /**
-     * Custom tree cell renderer with context menus.
+     * Applies a batch of changes reported by the directory watcher to the tree.
      *
      * <p>
-     * This class provides custom rendering for tree cells and creates context-sensitive menus based on whether the item
-     * is a file or directory.
+     * Changes of directories that have not been read are ignored. All insertions, removals and modifications of a
+     * directory are reported to the tree model as one event each, so large bursts of changes only cause a few updates
+     * of the tree view.
+     * </p>
+     *
+     * @param source
+     *            the watcher that reported the changes
+     * @param changes
+     *            the changes
+     */
+    private void applyChanges(DirectoryWatcher source, List<DirectoryWatcher.Change> changes) {
+        if (source != watcher) {
+            // Reported for a project that is no longer open
+            return;
+        }
+
+        Map<DefaultMutableTreeNode, List<DefaultMutableTreeNode>> inserted = new LinkedHashMap<>();
+        Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> removed = new LinkedHashMap<>();
+        Map<DefaultMutableTreeNode, List<DefaultMutableTreeNode>> modified = new LinkedHashMap<>();
+        List<Path> manifests = new ArrayList<>();
+        List<Path> lostDirectories = new ArrayList<>();
+
+        for (DirectoryWatcher.Change change : changes) {
+            DefaultMutableTreeNode node = nodesByPath.get(change.path);
+            if (change.kind != DirectoryWatcher.Kind.OVERFLOW && !change.directory
+                    && ManifestIndex.isManifest(change.path)) {
+                manifests.add(change.path);
+            }
+            switch (change.kind) {
+            case OVERFLOW:
+                // Events were lost, read the directory again
+                lostDirectories.add(change.path);
+                if (node != null && isListed(node)) {
+                    boolean expanded = treeView.isExpanded(new TreePath(node.getPath()));
+                    inserted.remove(node);
+                    removed.remove(node);
+                    resetChildren(node);
+                    if (expanded) {
+                        buildChildren(node);
+                    }
+                }
+                break;
+            case CREATED:
+            case MODIFIED:
+                if (node != null) {
+                    if (node.getParent() != null) {
+                        modified.computeIfAbsent((DefaultMutableTreeNode) node.getParent(), k -> new ArrayList<>())
+                                .add(node);
+                    }
+                    break;
+                }
+                DefaultMutableTreeNode parent = nodesByPath.get(change.path.getParent());
+                if (parent != null && isListed(parent)
+                        && isShown(change.path.getFileName().toString(), change.directory)) {
+                    DefaultMutableTreeNode child = createNode(new FileItem(change.path.toFile(), change.directory));
+                    nodesByPath.put(change.path, child);
+                    inserted.computeIfAbsent(parent, k -> new ArrayList<>()).add(child);
+                }
+                break;
+            default:
+                if (node != null && node.getParent() != null) {
+                    forget(node);
+                    DefaultMutableTreeNode removedParent = (DefaultMutableTreeNode) node.getParent();
+                    if (inserted.containsKey(removedParent) && inserted.get(removedParent).remove(node)) {
+                        // Created and deleted within the same batch
+                        break;
+                    }
+                    removed.computeIfAbsent(removedParent, k -> new HashSet<>()).add(node);
+                }
+                break;
+            }
+        }
+
+        removed.forEach(this::removeChildren);
+        inserted.forEach(this::insertChildren);
+        modified.forEach((parent, children) -> {
+            List<Integer> indices = new ArrayList<>(children.size());
+            for (DefaultMutableTreeNode child : children) {
+                if (child.getParent() == parent) {
+                    indices.add(parent.getIndex(child));
+                }
+            }
+            treeModel.nodesChanged(parent, indices.stream().mapToInt(Integer::intValue).sorted().toArray());
+        });
+        searchPanel.update(manifests, lostDirectories);
+    }
+
+    /**
+     * Inserts new children into a tree node, before the placeholder if the node is still loading.
+     *
+     * @param parent
+     *            the tree node
+     * @param children
+     *            the children to insert
+     */
+    private void insertChildren(DefaultMutableTreeNode parent, List<DefaultMutableTreeNode> children) {
+        if (children.isEmpty()) {
+            return;
+        }
+        int index = getLoadingNode(parent) != null ? parent.getChildCount() - 1 : parent.getChildCount();
+        int[] indices = new int[children.size()];
+        for (int i = 0; i < indices.length; i++) {
+            parent.insert(children.get(i), index);
+            indices[i] = index++;
+        }
+        treeModel.nodesWereInserted(parent, indices);
+    }
+
+    /**
+     * Removes children from a tree node.
+     *
+     * <p>
+     * The remaining children are collected in a single pass, so removing many children of a large directory takes
+     * linear time.
+     * </p>
+     *
+     * @param parent
+     *            the tree node
+     * @param children
+     *            the children to remove
+     */
+    private void removeChildren(DefaultMutableTreeNode parent, Set<DefaultMutableTreeNode> children) {
+        List<DefaultMutableTreeNode> remaining = new ArrayList<>(parent.getChildCount());
+        int[] indices = new int[children.size()];
+        Object[] removedChildren = new Object[children.size()];
+        int count = 0;
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(i);
+            if (children.contains(child)) {
+                indices[count] = i;
+                removedChildren[count++] = child;
+            } else {
+                remaining.add(child);
+            }
+        }
+        parent.removeAllChildren();
+        for (DefaultMutableTreeNode child : remaining) {
+            parent.add(child);
+        }
+        treeModel.nodesWereRemoved(parent, indices, removedChildren);
+    }
+
+    /**
+     * Background task reading the children of a directory.
+     *
+     * <p>
+     * The directory is read with a {@link DirectoryStream} and the type of every entry is taken from its attributes, so
+     * each entry needs a single file system call. Found entries are published and inserted into the tree model on the
+     * Event Dispatch Thread; Swing coalesces them into chunks.
+     * </p>
+     */
+    private class DirectoryLoader extends SwingWorker<Void, FileItem> {
+        /** The tree node to build children for. */
+        private final DefaultMutableTreeNode node;
+
+        /** The directory to read. */
+        private final File directory;
+
+        /** The tree model the node belongs to. */
+        private final DefaultTreeModel model = treeModel;
+
+        /** The watcher of the tree the node belongs to, or {@code null}. */
+        private final DirectoryWatcher directoryWatcher = watcher;
+
+        /**
+         * Constructs a DirectoryLoader.
+         *
+         * @param node
+         *            the tree node to build children for
+         * @param directory
+         *            the directory to read
+         */
+        DirectoryLoader(DefaultMutableTreeNode node, File directory) {
+            this.node = node;
+            this.directory = directory;
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            DirectoryLoadEvent event = new DirectoryLoadEvent();
+            event.begin();
+            if (directoryWatcher != null) {
+                // Watch before reading, so no entry created meanwhile is missed
+                try {
+                    directoryWatcher.register(directory.toPath());
+                } catch (IOException e) {
+                    // Directories that cannot be watched are still shown
+                }
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+                for (Path child : stream) {
+                    if (isCancelled()) {
+                        event.cancelled = true;
+                        break;
+                    }
+                    event.entries++;
+                    boolean isDirectory;
+                    try {
+                        isDirectory = Files.readAttributes(child, BasicFileAttributes.class).isDirectory();
+                    } catch (IOException e) {
+                        // Broken links and entries removed meanwhile are skipped
+                        continue;
+                    }
+                    // Add only folders and txt-files
+                    if (isShown(child.getFileName().toString(), isDirectory)) {
+                        event.shownEntries++;
+                        publish(new FileItem(child.toFile(), isDirectory));
+                    }
+                }
+            } finally {
+                event.directory = directory.getPath();
+                event.commit();
+            }
+            return null;
+        }
+
+        @Override
+        protected void process(List<FileItem> chunk) {
+            DefaultMutableTreeNode loadingNode = getLoadingNode(node);
+            if (isCancelled() || loadingNode == null) {
+                return;
+            }
+            int[] indices = new int[chunk.size()];
+            int count = 0;
+            int index = node.getChildCount() - 1;
+            for (FileItem fileItem : chunk) {
+                // Skip entries the directory watcher already inserted
+                Path path = fileItem.file.toPath();
+                if (!nodesByPath.containsKey(path)) {
+                    DefaultMutableTreeNode child = createNode(fileItem);
+                    nodesByPath.put(path, child);
+                    node.insert(child, index);
+                    indices[count++] = index++;
+                }
+            }
+            model.nodesWereInserted(node, Arrays.copyOf(indices, count));
+
+            ((LoadingItem) loadingNode.getUserObject()).found += count;
+            model.nodeChanged(loadingNode);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                // The node was already reset by cancelBuildChildren
+                return;
+            }
+            loaders.remove(node);
+
+            DefaultMutableTreeNode loadingNode = getLoadingNode(node);
+            if (loadingNode != null) {
+                model.removeNodeFromParent(loadingNode);
+            }
+            try {
+                get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                PackageCalculator.getInstance().getMessagesArea()
+                        .addMessage(Severity.ERROR, "Cannot read " + directory + ": " + cause.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Custom tree cell renderer for file items.
+     *
+     * <p>
+     * This class shows directories with folder icons even if they are empty. It only uses the attributes cached in the
+     * {@link FileItem}, so painting a cell neither allocates nor accesses the file system.
      * </p>
      */
     private class FileTreeCellRenderer extends DefaultTreeCellRenderer {
@@ -170,40 +650,9 @@ public class ExplorerArea extends JTabbedPane {
             super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
 
             if (value instanceof DefaultMutableTreeNode) {
-                DefaultMutableTreeNode node = (DefaultMutableTreeNode) value;
-                Object userObject = node.getUserObject();
-
-                if (userObject instanceof FileItem) {
-                    FileItem fileItem = (FileItem) userObject;
-                    setText(fileItem.toString());
-
-                    // Create context menu
-                    JPopupMenu contextMenu = new JPopupMenu();
-
-                    if (fileItem.file.isDirectory()) {
-                        // Context menu for folders
-                        JMenuItem newFileMenu = new JMenuItem("New File");
-                        JMenuItem newSubfolderMenu = new JMenuItem("New Subfolder");
-                        contextMenu.add(newFileMenu);
-                        contextMenu.add(newSubfolderMenu);
-                    } else {
-                        // Context menu for files
-                        JMenuItem openMenu = new JMenuItem("Open");
-                        JMenuItem closeMenu = new JMenuItem("Close");
-                        contextMenu.add(openMenu);
-                        contextMenu.add(closeMenu);
-                    }
-
-                    // Add common menu items
-                    JMenuItem copyMenu = new JMenuItem("Copy");
-                    JMenuItem pasteMenu = new JMenuItem("Paste");
-                    JMenuItem deleteMenu = new JMenuItem("Delete");
-                    contextMenu.add(new JSeparator());
-                    contextMenu.add(copyMenu);
-                    contextMenu.add(pasteMenu);
-                    contextMenu.add(deleteMenu);
-
-                    setComponentPopupMenu(contextMenu);
+                Object userObject = ((DefaultMutableTreeNode) value).getUserObject();
+                if (userObject instanceof FileItem && ((FileItem) userObject).directory && leaf) {
+                    setIcon(expanded ? getOpenIcon() : getClosedIcon());
                 }
             }
 
@@ -211,6 +660,131 @@ public class ExplorerArea extends JTabbedPane {
         }
     }
 
+    /**
+     * Creates the context menus for folders and files.
+     *
+     * <p>
+     * The menus are created once and shared by all tree items. The item they were opened for is remembered in
+     * {@link #contextItem}.
+     * </p>
+     */
+    private void createContextMenus() {
+        // Context menu for folders
+        folderMenu = new JPopupMenu();
+        folderMenu.add(new JMenuItem("New File"));
+        folderMenu.add(new JMenuItem("New Subfolder"));
+        addCommonMenuItems(folderMenu);
+
+        // Context menu for files
+        fileMenu = new JPopupMenu();
+        fileMenu.add(new JMenuItem("Open"));
+        fileMenu.add(new JMenuItem("Close"));
+        priceMenuItem = new JMenuItem("Price manifest");
+        priceMenuItem.addActionListener(e -> priceManifest(contextItem.file));
+        fileMenu.add(priceMenuItem);
+        addCommonMenuItems(fileMenu);
+    }
+
+    /**
+     * Adds the menu items shared by folders and files to a context menu.
+     *
+     * @param contextMenu
+     *            the context menu
+     */
+    private static void addCommonMenuItems(JPopupMenu contextMenu) {
+        contextMenu.add(new JSeparator());
+        contextMenu.add(new JMenuItem("Copy"));
+        contextMenu.add(new JMenuItem("Paste"));
+        contextMenu.add(new JMenuItem("Delete"));
+    }
+
+    /**
+     * Shows the context menu for a tree item.
+     *
+     * @param tree
+     *            the tree view
+     * @param x
+     *            the x coordinate of the click
+     * @param y
+     *            the y coordinate of the click
+     */
+    private void showContextMenu(JTree tree, int x, int y) {
+        TreePath path = tree.getPathForLocation(x, y);
+        if (path == null) {
+            return;
+        }
+        Object userObject = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+        if (!(userObject instanceof FileItem)) {
+            return;
+        }
+        tree.setSelectionPath(path);
+        contextItem = (FileItem) userObject;
+
+        if (contextItem.directory) {
+            folderMenu.show(tree, x, y);
+        } else {
+            priceMenuItem.setVisible(isShown(contextItem.displayName, false));
+            fileMenu.show(tree, x, y);
+        }
+    }
+
+    /**
+     * Prices all packages of a manifest file in the background.
+     *
+     * <p>
+     * A text manifest is priced by an {@link IncrementalPricer}, which only reprices the parts that changed since the
+     * manifest was priced last, a binary manifest is mapped, checked against its block checksums if it has any, and
+     * priced directly. The progress is shown in the status area and the result is added to the messages area.
+     * </p>
+     *
+     * @param file
+     *            the manifest file to price
+     */
+    private void priceManifest(File file) {
+        StatusArea statusArea = PackageCalculator.getInstance().getStatusArea();
+        MessagesArea messagesArea = PackageCalculator.getInstance().getMessagesArea();
+
+        new SwingWorker<String, Integer>() {
+            /** Why the sidecar of a text manifest could not be written, or {@code null}. */
+            private IOException sidecarError;
+
+            @Override
+            protected String doInBackground() throws Exception {
+                if (BinaryManifest.isBinary(file.toPath())) {
+                    return new Calculator().summarize(BinaryManifest.read(file.toPath(), true)).toString();
+                }
+                IncrementalPricer pricer = new IncrementalPricer(new Calculator());
+                IncrementalPricer.Result result = pricer.price(file.toPath(), (bytesRead, bytesTotal) -> publish(
+                        bytesTotal == 0 ? 100 : (int) (100 * bytesRead / bytesTotal)));
+                sidecarError = result.sidecarError;
+                return result.toString();
+            }
+
+            @Override
+            protected void process(List<Integer> chunks) {
+                statusArea.setMessage("Pricing " + file.getName() + ": " + chunks.get(chunks.size() - 1) + "%");
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String result = get();
+                    statusArea.setMessage("Priced " + file.getName());
+                    messagesArea.addMessage(file.getName() + ": " + result);
+                    if (sidecarError != null) {
+                        messagesArea.addMessage(Severity.WARNING, file.getName()
+                                + ": cannot save the sidecar, the next pricing reads the whole manifest: "
+                                + sidecarError);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    statusArea.setMessage("Pricing " + file.getName() + " failed");
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    messagesArea.addMessage(Severity.ERROR, file.getName() + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Builds a file system browser tree view for the given root path.
      *
@@ -223,13 +797,35 @@ public class ExplorerArea extends JTabbedPane {
      * @return the tree view displaying the file system
      */
     private JTree buildFileSystemBrowser(String rootPath) {
-        DefaultMutableTreeNode root = createNode(new FileItem(new File(rootPath)));
+        // The project root is always a directory
+        FileItem rootItem = new FileItem(new File(rootPath), true);
+        // Hide root folder name (already shown in window title)
+        rootItem.displayName = "..." + File.separator + rootItem.file.getName();
+        DefaultMutableTreeNode root = createNode(rootItem);
+        nodesByPath.put(rootItem.file.toPath(), root);
         treeModel = new DefaultTreeModel(root);
         JTree tree = new JTree(treeModel);
 
         // Set custom cell renderer
         tree.setCellRenderer(new FileTreeCellRenderer());
 
+        // Show the context menu of the clicked item on right-click
+        tree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    showContextMenu(tree, e.getX(), e.getY());
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    showContextMenu(tree, e.getX(), e.getY());
+                }
+            }
+        });
+
         // Add tree expansion listener for lazy loading
         tree.addTreeWillExpandListener(new TreeWillExpandListener() {
             @Override
@@ -238,18 +834,19 @@ public class ExplorerArea extends JTabbedPane {
                 if (lastPathComponent instanceof DefaultMutableTreeNode) {
                     DefaultMutableTreeNode node = (DefaultMutableTreeNode) lastPathComponent;
                     // Check if children need to be loaded
-                    if (node.getChildCount() == 1) {
-                        Object childObject = ((DefaultMutableTreeNode) node.getChildAt(0)).getUserObject();
-                        if (childObject instanceof String && "Loading...".equals(childObject)) {
-                            buildChildren(node);
-                        }
+                    if (getLoadingNode(node) != null) {
+                        buildChildren(node);
                     }
                 }
             }
 
             @Override
             public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {
-                // No action needed on collapse
+                // Collapsing a directory that is still loading cancels the loading
+                Object lastPathComponent = event.getPath().getLastPathComponent();
+                if (lastPathComponent instanceof DefaultMutableTreeNode) {
+                    cancelBuildChildren((DefaultMutableTreeNode) lastPathComponent);
+                }
             }
         });
 
@@ -268,27 +865,56 @@ public class ExplorerArea extends JTabbedPane {
      *            the root path of the project to explore
      */
     public void loadNewTree(String projectPath) {
+        // Stop loading and watching directories of the previous tree
+        for (DirectoryLoader loader : loaders.values()) {
+            loader.cancel(true);
+        }
+        loaders.clear();
+        nodesByPath.clear();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // The old watcher is discarded anyway
+            }
+            watcher = null;
+        }
+        try {
+            watcher = new DirectoryWatcher(
+                    (source, changes) -> SwingUtilities.invokeLater(() -> applyChanges(source, changes)));
+        } catch (IOException e) {
+            PackageCalculator.getInstance().getMessagesArea()
+                    .addMessage(Severity.WARNING, "Changes in " + projectPath + " are not shown: " + e.getMessage());
+        }
+
         // Build the file system tree
         treeView = buildFileSystemBrowser(projectPath);
 
-        // Expand the root node
+        // Expand the root node; JTree expands the root without notifying the listeners, so load its children here
         treeView.expandRow(0);
+        buildChildren((DefaultMutableTreeNode) treeModel.getRoot());
 
         // Add tree to the explorer tab in a scroll pane
         removeAll();
         JScrollPane scrollPane = new JScrollPane(treeView);
         addTab("Explorer", scrollPane);
+        addTab("Search", searchPanel);
+
+        // Index the manifests of the project for the search tab
+        searchPanel.openProject(Path.of(projectPath));
     }
 
     /**
      * Constructs a new ExplorerArea.
      *
      * <p>
-     * This constructor initializes the tabbed pane with a fixed, non-closable tab labeled "Explorer".
+     * This constructor initializes the tabbed pane with the fixed, non-closable tabs labeled "Explorer" and "Search".
      * </p>
      */
     public ExplorerArea() {
-        // Initialize with empty tab
+        // Initialize with empty tabs
         addTab("Explorer", new JScrollPane());
+        addTab("Search", searchPanel);
+        createContextMenus();
     }
 }
@@ -1,13 +1,29 @@
 package gui;
 
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import control.ProjectScanner;
+import control.ProjectScanner.Statistics;
+import gui.MessageListModel.Severity;
 
 /**
  * Inspector area for displaying detail information.
  *
  * <p>
- * This class extends Swing JPanel and is intended to provide a panel for displaying detailed information about selected
- * items. Currently, this class has no implementation and serves as a placeholder for future features.
+ * This class extends Swing JPanel and provides a panel for displaying detailed information. When a project is opened,
+ * it shows the statistics of the project collected by a {@link ProjectScanner} in the background: the number of
+ * directories, files and manifests, the size of the manifests, the estimated number of packages and how much of the
+ * manifests was read into the page cache. The values are refreshed every {@value #REFRESH_INTERVAL_MILLIS} ms while the
+ * scan is running.
  * </p>
  *
  * @author I. Bogicevic
@@ -16,15 +32,145 @@ import javax.swing.JPanel;
  * @since 0.2
  */
 public class InspectorArea extends JPanel {
+
+    /** Interval in which the statistics are refreshed during a scan, in milliseconds. */
+    public static final int REFRESH_INTERVAL_MILLIS = 250;
+
+    /** Shows the state of the scan. */
+    private final JLabel statusLabel = new JLabel("No project open");
+
+    /** Shows the number of directories. */
+    private final JLabel directoriesLabel = new JLabel();
+
+    /** Shows the number of files. */
+    private final JLabel filesLabel = new JLabel();
+
+    /** Shows the number of manifests. */
+    private final JLabel manifestsLabel = new JLabel();
+
+    /** Shows the size of the manifests. */
+    private final JLabel manifestBytesLabel = new JLabel();
+
+    /** Shows the estimated number of packages. */
+    private final JLabel packetsLabel = new JLabel();
+
+    /** Shows the number of manifest bytes read into the page cache. */
+    private final JLabel cachedLabel = new JLabel();
+
+    /** Refreshes the statistics during a scan. */
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MILLIS, e -> refresh());
+
+    /** The running or last scan, or {@code null}. */
+    private ProjectScanner scanner;
+
     /**
      * Constructs a new InspectorArea.
      *
      * <p>
-     * This constructor creates an empty inspector panel. Future implementations may add detail views and property
-     * displays here.
+     * This constructor creates the inspector panel with empty project statistics. The statistics are filled in by
+     * scanProject().
      * </p>
      */
     public InspectorArea() {
-        super();
+        super(new BorderLayout());
+
+        // Add project statistics
+        JPanel statisticsPanel = new JPanel(new GridLayout(0, 2, 5, 2));
+        statisticsPanel.setBorder(BorderFactory.createTitledBorder("Project"));
+        addRow(statisticsPanel, "Directories:", directoriesLabel);
+        addRow(statisticsPanel, "Files:", filesLabel);
+        addRow(statisticsPanel, "Manifests:", manifestsLabel);
+        addRow(statisticsPanel, "Manifest size:", manifestBytesLabel);
+        addRow(statisticsPanel, "Packets (est.):", packetsLabel);
+        addRow(statisticsPanel, "Cached:", cachedLabel);
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(statisticsPanel, BorderLayout.NORTH);
+        northPanel.add(statusLabel, BorderLayout.SOUTH);
+        add(northPanel, BorderLayout.NORTH);
+    }
+
+    /**
+     * Adds a labeled value to a panel.
+     *
+     * @param panel
+     *            the panel with two columns
+     * @param name
+     *            the label shown before the value
+     * @param value
+     *            the label showing the value
+     */
+    private static void addRow(JPanel panel, String name, JLabel value) {
+        panel.add(new JLabel(name));
+        panel.add(value);
+    }
+
+    /**
+     * Scans a project in the background and shows its statistics. A scan still running for the previous project is
+     * cancelled.
+     *
+     * @param root
+     *            the project root
+     */
+    public void scanProject(Path root) {
+        if (scanner != null) {
+            scanner.cancel();
+        }
+        ProjectScanner projectScanner = new ProjectScanner(root);
+        scanner = projectScanner;
+        refresh();
+        refreshTimer.start();
+
+        new SwingWorker<Statistics, Void>() {
+            @Override
+            protected Statistics doInBackground() throws Exception {
+                return projectScanner.scan();
+            }
+
+            @Override
+            protected void done() {
+                // Results of a scan replaced by a newer one are discarded
+                if (projectScanner != scanner) {
+                    return;
+                }
+                refreshTimer.stop();
+                try {
+                    Statistics statistics = get();
+                    showStatistics(statistics);
+                    PackageCalculator.getInstance().getMessagesArea().addMessage("Scanned " + root + ": " + statistics);
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("Scan failed");
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    PackageCalculator.getInstance().getMessagesArea().addMessage(Severity.ERROR,
+                            "Cannot scan " + root + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows the current statistics of the running scan.
+     */
+    private void refresh() {
+        if (scanner != null) {
+            showStatistics(scanner.getStatistics());
+        }
+    }
+
+    /**
+     * Shows statistics.
+     *
+     * @param statistics
+     *            the statistics to show
+     */
+    private void showStatistics(Statistics statistics) {
+        directoriesLabel.setText(String.format("%,d", statistics.directories));
+        filesLabel.setText(String.format("%,d", statistics.files));
+        manifestsLabel.setText(String.format("%,d text, %,d binary", statistics.textManifests,
+                statistics.binaryManifests));
+        manifestBytesLabel.setText(String.format("%,d MB", statistics.manifestBytes >> 20));
+        packetsLabel.setText(String.format("%,d", statistics.estimatedPackets));
+        cachedLabel.setText(String.format("%,d MB", statistics.warmedBytes >> 20));
+        statusLabel.setText(String.format("%s after %.1f s", statistics.done ? "Scanned" : "Scanning...",
+                statistics.elapsedNanos / 1e9));
     }
 }
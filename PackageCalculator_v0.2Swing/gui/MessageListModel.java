@@ -0,0 +1,278 @@
+package gui;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * List model holding the most recent messages in a ring buffer.
+ *
+ * <p>
+ * The model keeps at most a fixed number of messages; adding a message to a full model drops the oldest one. Messages
+ * are added in batches with {@link #addAll(List)}, which fires a single event per batch. A minimum severity can be set
+ * to hide less severe messages. Filtering does not copy the messages: for each severity the model keeps a ring of the
+ * positions of the messages with at least that severity, which is kept up to date as messages are added.
+ * </p>
+ *
+ * <p>
+ * Like all Swing models, this class must only be used on the Event Dispatch Thread.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class MessageListModel extends AbstractListModel<String> {
+
+    /**
+     * Severity of a message.
+     */
+    public enum Severity {
+        /** Informational message. */
+        INFO,
+        /** Something did not work as expected, but the application can go on. */
+        WARNING,
+        /** An operation failed. */
+        ERROR
+    }
+
+    /**
+     * A message with its severity.
+     */
+    public static class Message {
+        /** The text of the message. */
+        public final String text;
+
+        /** The severity of the message. */
+        public final Severity severity;
+
+        /**
+         * Constructs a Message.
+         *
+         * @param text
+         *            the text of the message
+         * @param severity
+         *            the severity of the message
+         */
+        public Message(String text, Severity severity) {
+            this.text = text;
+            this.severity = severity;
+        }
+    }
+
+    /** The severities, cached to avoid copying the array of {@link Severity#values()}. */
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    /** Maximum number of messages kept. */
+    private final int capacity;
+
+    /** The messages, the message with sequence number n is stored at n % capacity. */
+    private final Message[] messages;
+
+    /**
+     * Sequence numbers of the kept messages with at least a severity, one ring per severity. The ring for the lowest
+     * severity is not used, since it would contain all messages.
+     */
+    private final long[][] positions;
+
+    /** Index of the oldest entry in each ring of {@link #positions}. */
+    private final int[] positionStarts;
+
+    /** Number of entries in each ring of {@link #positions}. */
+    private final int[] positionCounts;
+
+    /** Number of messages ever added, which is the sequence number of the next message. */
+    private long added;
+
+    /** Minimum severity of the shown messages. */
+    private Severity filter = Severity.INFO;
+
+    /**
+     * Constructs a new MessageListModel.
+     *
+     * @param capacity
+     *            the maximum number of messages kept
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive
+     */
+    public MessageListModel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.messages = new Message[capacity];
+        this.positions = new long[SEVERITIES.length][];
+        for (int level = 1; level < SEVERITIES.length; level++) {
+            positions[level] = new long[capacity];
+        }
+        this.positionStarts = new int[SEVERITIES.length];
+        this.positionCounts = new int[SEVERITIES.length];
+    }
+
+    /**
+     * Returns the maximum number of messages kept.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the minimum severity of the shown messages.
+     *
+     * @return the minimum severity
+     */
+    public Severity getFilter() {
+        return filter;
+    }
+
+    /**
+     * Shows only the messages with at least the given severity.
+     *
+     * @param filter
+     *            the minimum severity
+     */
+    public void setFilter(Severity filter) {
+        if (filter == this.filter) {
+            return;
+        }
+        int oldSize = getSize();
+        this.filter = filter;
+        int newSize = getSize();
+
+        // Report the new contents as one change, with the difference in size as insertion or removal
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        if (Math.min(oldSize, newSize) > 0) {
+            fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+        }
+    }
+
+    /**
+     * Adds a batch of messages, dropping the oldest messages if the model is full.
+     *
+     * @param batch
+     *            the messages in the order they were posted
+     */
+    public void addAll(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int oldSize = getSize();
+        long oldFirst = firstShown();
+
+        // Only the last messages of a batch larger than the capacity are kept
+        for (int i = Math.max(0, batch.size() - capacity); i < batch.size(); i++) {
+            add(batch.get(i));
+        }
+
+        int newSize = getSize();
+        if (firstShown() == oldFirst) {
+            // Nothing shown was dropped, so the new messages were appended
+            if (newSize > oldSize) {
+                fireIntervalAdded(this, oldSize, newSize - 1);
+            }
+        } else {
+            // Old messages were dropped at the start and new ones appended, which shifts every row
+            fireContentsChanged(this, 0, newSize - 1);
+        }
+    }
+
+    /**
+     * Removes all messages.
+     */
+    public void clear() {
+        int oldSize = getSize();
+        Arrays.fill(messages, null);
+        Arrays.fill(positionStarts, 0);
+        Arrays.fill(positionCounts, 0);
+        added = 0;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+    }
+
+    /**
+     * Adds a message without firing an event.
+     *
+     * @param message
+     *            the message to add
+     */
+    private void add(Message message) {
+        long sequence = added++;
+        messages[(int) (sequence % capacity)] = message;
+
+        long oldest = added - capacity;
+        for (int level = 1; level < SEVERITIES.length; level++) {
+            long[] ring = positions[level];
+            // Drop the position of the overwritten message
+            if (positionCounts[level] > 0 && ring[positionStarts[level]] < oldest) {
+                positionStarts[level] = (positionStarts[level] + 1) % capacity;
+                positionCounts[level]--;
+            }
+            if (message.severity.ordinal() >= level) {
+                ring[(positionStarts[level] + positionCounts[level]) % capacity] = sequence;
+                positionCounts[level]++;
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the first shown message.
+     *
+     * @return the sequence number, or {@link #added} if no message is shown
+     */
+    private long firstShown() {
+        int level = filter.ordinal();
+        if (level == 0) {
+            return Math.max(0, added - capacity);
+        }
+        return positionCounts[level] > 0 ? positions[level][positionStarts[level]] : added;
+    }
+
+    /**
+     * Returns the sequence number of a shown message.
+     *
+     * @param index
+     *            the index of the message in the shown messages
+     * @return the sequence number
+     */
+    private long sequence(int index) {
+        int level = filter.ordinal();
+        if (level == 0) {
+            return Math.max(0, added - capacity) + index;
+        }
+        return positions[level][(positionStarts[level] + index) % capacity];
+    }
+
+    /**
+     * Returns a shown message.
+     *
+     * @param index
+     *            the index of the message in the shown messages
+     * @return the message
+     */
+    public Message getMessage(int index) {
+        if (index < 0 || index >= getSize()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + getSize());
+        }
+        return messages[(int) (sequence(index) % capacity)];
+    }
+
+    @Override
+    public int getSize() {
+        int level = filter.ordinal();
+        return level == 0 ? (int) Math.min(added, capacity) : positionCounts[level];
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return getMessage(index).text;
+    }
+}
@@ -1,15 +1,40 @@
 package gui;
 
-import javax.swing.DefaultListModel;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.ListModel;
+import javax.swing.Timer;
+
+import gui.MessageListModel.Message;
+import gui.MessageListModel.Severity;
 
 /**
  * Messages area for displaying status messages and notifications.
  *
  * <p>
  * This class extends Swing JScrollPane and provides a panel for displaying application status messages, notifications,
- * and other informational text to the user. It contains a JList with a DefaultListModel for managing messages.
+ * and other informational text to the user. It contains a JList with a {@link MessageListModel} for managing messages.
+ * </p>
+ *
+ * <p>
+ * Messages can be added from any thread. They are put into a lock-free queue and moved to the list model on the Event
+ * Dispatch Thread every {@value #DRAIN_INTERVAL_MILLIS} ms, so a batch run posting a message per parcel causes a few
+ * list updates per second instead of one per message. Only the newest messages are kept, as many as set by the system
+ * property {@value #CAPACITY_PROPERTY}, and the list only renders the visible rows.
  * </p>
  *
  * @author I. Bogicevic
@@ -19,43 +44,161 @@ import javax.swing.JScrollPane;
  */
 public class MessagesArea extends JScrollPane {
 
+    /** System property setting the maximum number of messages kept. */
+    public static final String CAPACITY_PROPERTY = "packagecalculator.messageCapacity";
+
+    /** Default maximum number of messages kept. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    /** Interval in which posted messages are moved to the list, in milliseconds. */
+    public static final int DRAIN_INTERVAL_MILLIS = 100;
+
     /** The list model for managing message items. */
-    private DefaultListModel<String> listModel;
+    private MessageListModel listModel;
 
     /** The list component for displaying messages. */
     private JList<String> messageList;
 
+    /** Selection of the minimum severity shown. */
+    private JComboBox<Severity> filterComboBox;
+
+    /** Messages posted but not yet added to the list model. */
+    private final Queue<Message> posted = new ConcurrentLinkedQueue<>();
+
+    /** Number of messages in {@link #posted}, which is kept below the capacity if the list is not updated. */
+    private final AtomicInteger postedCount = new AtomicInteger();
+
+    /** Buffer for the messages moved to the list model in one step, only used on the Event Dispatch Thread. */
+    private final List<Message> batch = new ArrayList<>();
+
+    /**
+     * Renderer showing warnings and errors in color.
+     */
+    private class MessageRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (!isSelected) {
+                Severity severity = listModel.getMessage(index).severity;
+                if (severity == Severity.ERROR) {
+                    setForeground(Color.RED);
+                } else if (severity == Severity.WARNING) {
+                    setForeground(new Color(0xB0, 0x60, 0x00));
+                }
+            }
+            return this;
+        }
+    }
+
     /**
      * Constructs a new MessagesArea.
      *
      * <p>
-     * This constructor creates a scrollable list view for displaying messages. Messages can be added using the
-     * addMessage() method or by accessing the list model directly via getListModel().
+     * This constructor creates a scrollable list view for displaying messages, with a selection of the minimum severity
+     * shown above the list. The capacity is taken from the system property {@value #CAPACITY_PROPERTY}. Messages can
+     * be added using the addMessage() methods.
      * </p>
      */
     public MessagesArea() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Constructs a new MessagesArea.
+     *
+     * @param capacity
+     *            the maximum number of messages kept
+     */
+    public MessagesArea(int capacity) {
         super();
-        listModel = new DefaultListModel<>();
+        listModel = new MessageListModel(capacity);
         messageList = new JList<>(listModel);
+        // A prototype value gives all rows the same height, so the list does not measure every message
+        messageList.setPrototypeCellValue("Message");
+        messageList.setCellRenderer(new MessageRenderer());
         setViewportView(messageList);
+
+        // Add severity filter
+        filterComboBox = new JComboBox<>(Severity.values());
+        filterComboBox.addActionListener(e -> listModel.setFilter((Severity) filterComboBox.getSelectedItem()));
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        filterPanel.add(new JLabel("Show from:"));
+        filterPanel.add(filterComboBox);
+        JPanel headerPanel = new JPanel(new BorderLayout());
+        headerPanel.add(filterPanel, BorderLayout.WEST);
+        setColumnHeaderView(headerPanel);
+
+        // Move posted messages to the list periodically
+        Timer drainTimer = new Timer(DRAIN_INTERVAL_MILLIS, e -> drain());
+        drainTimer.start();
+    }
+
+    /**
+     * Moves all posted messages to the list model as one batch.
+     */
+    private void drain() {
+        Message message;
+        while ((message = posted.poll()) != null) {
+            postedCount.decrementAndGet();
+            batch.add(message);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Keep the newest message visible if the list was scrolled to the end
+        int lastRow = listModel.getSize() - 1;
+        boolean atEnd = lastRow < 0 || messageList.getLastVisibleIndex() >= lastRow;
+        listModel.addAll(batch);
+        batch.clear();
+        if (atEnd && listModel.getSize() > 0) {
+            messageList.ensureIndexIsVisible(listModel.getSize() - 1);
+        }
     }
 
     /**
      * Returns the list model for managing messages.
      *
-     * @return the DefaultListModel containing messages
+     * @return the list model containing the shown messages
      */
-    public DefaultListModel<String> getListModel() {
+    public ListModel<String> getListModel() {
         return listModel;
     }
 
     /**
-     * Adds a message to the messages area.
+     * Shows only the messages with at least the given severity.
+     *
+     * @param severity
+     *            the minimum severity
+     */
+    public void setFilter(Severity severity) {
+        filterComboBox.setSelectedItem(severity);
+    }
+
+    /**
+     * Adds an informational message to the messages area. This method can be called from any thread.
      *
      * @param message
      *            the message to add
      */
     public void addMessage(String message) {
-        listModel.addElement(message);
+        addMessage(Severity.INFO, message);
+    }
+
+    /**
+     * Adds a message to the messages area. This method can be called from any thread.
+     *
+     * @param severity
+     *            the severity of the message
+     * @param message
+     *            the message to add
+     */
+    public void addMessage(Severity severity, String message) {
+        posted.add(new Message(message, severity));
+        // Drop the oldest posted message if more were posted than the list can keep
+        if (postedCount.incrementAndGet() > listModel.getCapacity() && posted.poll() != null) {
+            postedCount.decrementAndGet();
+        }
     }
 }
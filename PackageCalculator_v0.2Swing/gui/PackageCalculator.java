@@ -4,8 +4,15 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
 
+import javax.swing.JComponent;
 import javax.swing.JFrame;
+import javax.swing.JPanel;
 import javax.swing.JSplitPane;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
@@ -31,6 +38,13 @@ import javax.swing.UIManager;
  * <li>Bottom: Status bar</li>
  * </ul>
  *
+ * <p>
+ * To show the window as early as possible, only the frame and the calculator area are built before the window is
+ * shown. The other areas are built one after another once the window is open, or earlier when they are first
+ * requested through their getters. A {@link StartupReport} with the time to the window and the time until all areas
+ * are built is added to the messages area.
+ * </p>
+ *
  * @author I. Bogicevic
  * @author Max Hiller
  * @version 0.3
@@ -53,32 +67,135 @@ public class PackageCalculator extends JFrame {
         return instance;
     }
 
+    /** Classes of the deferred areas, loaded in the background while the window is built. */
+    private static final String[] PRELOADED_CLASSES = { "gui.ToolbarArea", "gui.StatusArea", "gui.MessagesArea",
+            "gui.MessageListModel", "gui.ExplorerArea", "gui.SearchPanel", "gui.InspectorArea", "javax.swing.JTree",
+            "javax.swing.JTabbedPane", "javax.swing.JList", "javax.swing.JToolBar", "javax.swing.JToggleButton",
+            "control.DirectoryWatcher", "control.ManifestIndex", "control.ProjectHandling" };
+
+    /**
+     * An area of the window that is built on first use.
+     *
+     * <p>
+     * Until the area is built, the layout holds an empty slot for it. Building the area puts it into the slot. Areas
+     * must only be built on the Event Dispatch Thread.
+     * </p>
+     *
+     * @param <T>
+     *            the type of the area
+     */
+    private static class LazyArea<T extends JComponent> {
+
+        /** The panel holding the area once it is built. */
+        private final JPanel slot = new JPanel(new BorderLayout());
+
+        /** Builds the area. */
+        private final Supplier<T> factory;
+
+        /** The area, or {@code null} if it was not built yet. */
+        private T area;
+
+        /**
+         * Constructs a LazyArea.
+         *
+         * @param factory
+         *            builds the area
+         */
+        LazyArea(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * Returns the area, building it and putting it into its slot on first use.
+         *
+         * @return the area
+         */
+        T get() {
+            if (area == null) {
+                area = factory.get();
+                slot.add(area, BorderLayout.CENTER);
+                slot.revalidate();
+                slot.repaint();
+            }
+            return area;
+        }
+    }
+
     /** Toolbar area containing application buttons. */
-    public ToolbarArea toolbarArea = new ToolbarArea();
+    private final LazyArea<ToolbarArea> toolbarArea = new LazyArea<>(ToolbarArea::new);
 
     /** Explorer area showing the file system tree. */
-    public ExplorerArea explorerArea = new ExplorerArea();
+    private final LazyArea<ExplorerArea> explorerArea = new LazyArea<>(ExplorerArea::new);
 
     /** Calculator area for package dimension input and cost calculation. */
-    public CalculatorArea editorArea = new CalculatorArea();;
+    public final CalculatorArea editorArea;
 
     /** Inspector area for displaying detail information. */
-    public InspectorArea inspectorArea = new InspectorArea();
+    private final LazyArea<InspectorArea> inspectorArea = new LazyArea<>(InspectorArea::new);
 
     /** Messages area for displaying status messages. */
-    public MessagesArea messagesArea = new MessagesArea();
+    private final LazyArea<MessagesArea> messagesArea = new LazyArea<>(MessagesArea::new);
 
     /** Status bar at the bottom of the window. */
-    public StatusArea statusArea = new StatusArea();
+    private final LazyArea<StatusArea> statusArea = new LazyArea<>(StatusArea::new);
 
     /** Root path to the currently open project directory. */
     public String rootPath;
 
+    /** Timing of the startup. */
+    private final StartupReport startupReport;
+
+    /**
+     * Returns the toolbar area, building it on first use. Must be called on the Event Dispatch Thread.
+     *
+     * @return the toolbar area
+     */
+    public ToolbarArea getToolbarArea() {
+        return toolbarArea.get();
+    }
+
+    /**
+     * Returns the explorer area, building it on first use. Must be called on the Event Dispatch Thread.
+     *
+     * @return the explorer area
+     */
+    public ExplorerArea getExplorerArea() {
+        return explorerArea.get();
+    }
+
+    /**
+     * Returns the inspector area, building it on first use. Must be called on the Event Dispatch Thread.
+     *
+     * @return the inspector area
+     */
+    public InspectorArea getInspectorArea() {
+        return inspectorArea.get();
+    }
+
+    /**
+     * Returns the messages area, building it on first use. Must be called on the Event Dispatch Thread.
+     *
+     * @return the messages area
+     */
+    public MessagesArea getMessagesArea() {
+        return messagesArea.get();
+    }
+
+    /**
+     * Returns the status bar, building it on first use. Must be called on the Event Dispatch Thread.
+     *
+     * @return the status bar
+     */
+    public StatusArea getStatusArea() {
+        return statusArea.get();
+    }
+
     /**
      * Initializes the GUI components and layout.
      *
      * <p>
-     * This method creates the nested layout structure with JSplitPanes and sets up the main window.
+     * This method creates the nested layout structure with JSplitPanes and sets up the main window. Only the
+     * calculator area is built here; the other areas are represented by empty slots until they are built.
      * </p>
      */
     private void initializeGUI() {
@@ -87,36 +204,65 @@ public class PackageCalculator extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Create horizontal split pane for editor and inspector (right side)
-        JSplitPane lr2SplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, editorArea, inspectorArea);
+        JSplitPane lr2SplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, editorArea, inspectorArea.slot);
         lr2SplitPane.setResizeWeight(0.8);
         lr2SplitPane.setDividerLocation(0.8);
 
         // Create vertical split pane for main content and messages (top-down)
-        JSplitPane tdSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, lr2SplitPane, messagesArea);
+        JSplitPane tdSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, lr2SplitPane, messagesArea.slot);
         tdSplitPane.setResizeWeight(0.9);
         tdSplitPane.setDividerLocation(0.9);
 
         // Create horizontal split pane for explorer and content (left-right)
-        JSplitPane lrSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, explorerArea, tdSplitPane);
+        JSplitPane lrSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, explorerArea.slot, tdSplitPane);
         lrSplitPane.setResizeWeight(0.2);
         lrSplitPane.setDividerLocation(0.2);
 
         // Set up main frame layout
         setLayout(new BorderLayout());
-        add(toolbarArea, BorderLayout.NORTH);
+        add(toolbarArea.slot, BorderLayout.NORTH);
         add(lrSplitPane, BorderLayout.CENTER);
-        add(statusArea, BorderLayout.SOUTH);
+        add(statusArea.slot, BorderLayout.SOUTH);
 
         // Set window size to screen size
         Rectangle screenBounds = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
         setSize(new Dimension((int) screenBounds.getWidth(), (int) screenBounds.getHeight()));
         setLocationRelativeTo(null);
 
+        // Build the other areas once the window is shown
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                startupReport.mark(StartupReport.WINDOW);
+                List<LazyArea<?>> deferred = List.of(toolbarArea, statusArea, messagesArea, explorerArea,
+                        inspectorArea);
+                buildDeferredAreas(deferred.iterator());
+            }
+        });
+
         // Load default workspace if needed
         // TODO: Configure default workspace path
         // ProjectHandling.openProject("/Users/...");
     }
 
+    /**
+     * Builds the deferred areas one per event, so the window stays responsive while they are built.
+     *
+     * @param areas
+     *            the areas still to build
+     */
+    private void buildDeferredAreas(Iterator<LazyArea<?>> areas) {
+        if (!areas.hasNext()) {
+            startupReport.mark(StartupReport.INTERACTIVE);
+            startupReport.publish(getMessagesArea());
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            areas.next().get();
+            buildDeferredAreas(areas);
+        });
+    }
+
     /**
      * Constructs a new PackageCalculator instance.
      *
@@ -125,11 +271,24 @@ public class PackageCalculator extends JFrame {
      * </p>
      */
     public PackageCalculator() {
+        this(new StartupReport());
+    }
+
+    /**
+     * Constructs a new PackageCalculator instance, recording the startup in a report.
+     *
+     * @param startupReport
+     *            the timing of the startup so far
+     */
+    private PackageCalculator(StartupReport startupReport) {
         // Initialize singleton instance
         PackageCalculator.instance = this;
+        this.startupReport = startupReport;
 
         // Initialize the GUI
+        editorArea = new CalculatorArea();
         initializeGUI();
+        startupReport.mark("frame");
     }
 
     /**
@@ -137,23 +296,39 @@ public class PackageCalculator extends JFrame {
      *
      * <p>
      * This method sets the Look and Feel to the system default and creates the main window on the Event Dispatch
-     * Thread.
+     * Thread. Meanwhile the classes of the areas built after the window is shown are loaded in the background.
      * </p>
      *
      * @param args
      *            command line arguments
      */
     public static void main(String[] args) {
+        StartupReport startupReport = new StartupReport();
+
+        // Load the classes needed later while the window is built
+        Thread preloader = new Thread(() -> {
+            for (String name : PRELOADED_CLASSES) {
+                try {
+                    Class.forName(name, false, PackageCalculator.class.getClassLoader());
+                } catch (ClassNotFoundException | LinkageError e) {
+                    // Only a missed optimization, the class is loaded again when it is used
+                }
+            }
+        }, "Class preloader");
+        preloader.setDaemon(true);
+        preloader.start();
+
         // Set system Look and Feel
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+        startupReport.mark("look and feel");
 
         // Create and show the GUI on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
-            PackageCalculator app = new PackageCalculator();
+            PackageCalculator app = new PackageCalculator(startupReport);
             app.setVisible(true);
         });
     }
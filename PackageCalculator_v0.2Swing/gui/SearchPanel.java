@@ -0,0 +1,249 @@
+package gui;
+
+import java.awt.BorderLayout;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+
+import control.ManifestIndex;
+import gui.MessageListModel.Severity;
+
+/**
+ * Search panel for finding manifests that contain parcel IDs, customer references or other terms.
+ *
+ * <p>
+ * This class extends Swing JPanel and provides a query field and a list of matching lines, backed by a
+ * {@link ManifestIndex} of the open project. The index is opened and brought up to date in the background when a
+ * project is opened, and searches also run in the background, so the user interface never waits for the disk.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class SearchPanel extends JPanel {
+
+    /** Maximum number of hits shown. */
+    private static final int MAX_HITS = 1000;
+
+    /** Text field for entering the query. */
+    private final JTextField queryTextField = new JTextField();
+
+    /** Button to start the search. */
+    private final JButton searchButton = new JButton("Search");
+
+    /** The list model for the matching lines. */
+    private final DefaultListModel<String> resultModel = new DefaultListModel<>();
+
+    /** Label showing the state of the index and the number of hits. */
+    private final JLabel statusLabel = new JLabel("No project open");
+
+    /** The index of the open project, or {@code null} while it is not ready. */
+    private ManifestIndex index;
+
+    /** The index of the most recently opened project, which may still be opening. */
+    private ManifestIndex openedIndex;
+
+    /** Number of the latest search, so results of older searches are dropped. */
+    private int searchNumber;
+
+    /**
+     * Opens the index of a project, building or updating it in the background.
+     *
+     * @param projectPath
+     *            the root path of the project
+     */
+    public void openProject(Path projectPath) {
+        index = null;
+        searchNumber++;
+        resultModel.clear();
+        searchButton.setEnabled(false);
+        statusLabel.setText("Indexing...");
+
+        ManifestIndex newIndex = new ManifestIndex(projectPath);
+        openedIndex = newIndex;
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                newIndex.open((bytesRead, bytesTotal) -> publish(
+                        bytesTotal <= 0 ? 100 : (int) (100 * bytesRead / bytesTotal)));
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> chunks) {
+                statusLabel.setText("Indexing... " + chunks.get(chunks.size() - 1) + "%");
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (newIndex == openedIndex) {
+                        index = newIndex;
+                        searchButton.setEnabled(true);
+                        statusLabel.setText(index.getDocumentCount() + " manifests indexed");
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    if (newIndex != openedIndex) {
+                        return;
+                    }
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Indexing failed");
+                    PackageCalculator.getInstance().getMessagesArea()
+                            .addMessage(Severity.ERROR, "Cannot index " + projectPath + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Updates the index for files that were created, changed or deleted and for directories whose changes are unknown.
+     *
+     * @param files
+     *            the files; files that are not manifests are ignored
+     * @param directories
+     *            the directories to read again, for example after file system events were lost
+     */
+    public void update(Collection<Path> files, Collection<Path> directories) {
+        ManifestIndex current = index;
+        if (current == null || files.isEmpty() && directories.isEmpty()) {
+            return;
+        }
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                current.update(files);
+                for (Path directory : directories) {
+                    current.refresh(directory, null);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (current == index) {
+                        statusLabel.setText(current.getDocumentCount() + " manifests indexed");
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    PackageCalculator.getInstance().getMessagesArea()
+                            .addMessage(Severity.ERROR, "Cannot update the search index: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Searches the index for the entered query and shows the matching lines.
+     */
+    private void search() {
+        ManifestIndex current = index;
+        String query = queryTextField.getText();
+        if (current == null || query.trim().isEmpty()) {
+            return;
+        }
+        int number = ++searchNumber;
+
+        new SwingWorker<List<String>, Void>() {
+            /** Time the search took in milliseconds. */
+            private double millis;
+
+            /** Whether there are more hits than shown. */
+            private boolean truncated;
+
+            @Override
+            protected List<String> doInBackground() {
+                long start = System.nanoTime();
+                // One more hit than shown tells whether there are more
+                List<ManifestIndex.Hit> hits = current.search(query, MAX_HITS + 1);
+                millis = (System.nanoTime() - start) / 1e6;
+                truncated = hits.size() > MAX_HITS;
+                if (truncated) {
+                    hits = hits.subList(0, MAX_HITS);
+                }
+
+                // Read the matching lines file by file
+                List<String> lines = new ArrayList<>(hits.size());
+                int first = 0;
+                while (first < hits.size()) {
+                    Path file = hits.get(first).file;
+                    int end = first;
+                    while (end < hits.size() && hits.get(end).file.equals(file)) {
+                        end++;
+                    }
+                    int[] numbers = new int[end - first];
+                    for (int i = 0; i < numbers.length; i++) {
+                        numbers[i] = hits.get(first + i).line;
+                    }
+                    String[] text = ManifestIndex.readLines(file, numbers);
+                    String name = current.getRoot().relativize(file).toString();
+                    for (int i = 0; i < numbers.length; i++) {
+                        lines.add(name + ":" + numbers[i] + ": " + text[i]);
+                    }
+                    first = end;
+                }
+                return lines;
+            }
+
+            @Override
+            protected void done() {
+                if (number != searchNumber) {
+                    return;
+                }
+                try {
+                    List<String> lines = get();
+                    resultModel.clear();
+                    resultModel.addAll(lines);
+                    statusLabel.setText((truncated ? "More than " + MAX_HITS : lines.size())
+                            + " hits in " + String.format("%.1f", millis) + " ms");
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("Search failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Constructs a new SearchPanel.
+     *
+     * <p>
+     * This constructor creates the query field with the search button at the top, the list of matching lines in the
+     * middle and the status label at the bottom. Searching is enabled once a project is opened.
+     * </p>
+     */
+    public SearchPanel() {
+        super(new BorderLayout(5, 5));
+
+        // Add query field and search button
+        JPanel queryPanel = new JPanel(new BorderLayout(5, 5));
+        queryPanel.add(queryTextField, BorderLayout.CENTER);
+        queryPanel.add(searchButton, BorderLayout.EAST);
+        add(queryPanel, BorderLayout.NORTH);
+
+        // Add result list and status label
+        add(new JScrollPane(new JList<>(resultModel)), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+
+        // Configure search on button click and on enter
+        searchButton.setEnabled(false);
+        searchButton.addActionListener(e -> search());
+        queryTextField.addActionListener(e -> search());
+        queryTextField.setToolTipText("Terms to search for; end a term with * to search for its prefix");
+    }
+}
@@ -0,0 +1,109 @@
+package gui;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timing of the application startup.
+ *
+ * <p>
+ * The startup is divided into phases, each ended by a call to {@link #mark(String)}. The report shows how long each
+ * phase took, the time until the window was shown and the time until all areas were built and the application was
+ * fully interactive, both measured from the start of the Java virtual machine.
+ * </p>
+ *
+ * <p>
+ * The report is added to the messages area. If the system property {@value #PRINT_PROPERTY} is {@code true}, it is
+ * also printed to the standard output, so startup times can be collected by scripts.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+final class StartupReport {
+
+    /** System property switching printing the report to the standard output on. */
+    static final String PRINT_PROPERTY = "packagecalculator.startupReport";
+
+    /** Name of the phase ending when the window is shown. */
+    static final String WINDOW = "window";
+
+    /** Name of the phase ending when all areas are built. */
+    static final String INTERACTIVE = "interactive";
+
+    /** Time {@code main} started, from {@link System#nanoTime()}. */
+    private final long startNanos = System.nanoTime();
+
+    /** Wall-clock time {@code main} started, to relate it to the start of the virtual machine. */
+    private final long startMillis = System.currentTimeMillis();
+
+    /** Names of the ended phases, in order. */
+    private final List<String> phases = new ArrayList<>();
+
+    /** End times of the phases, from {@link System#nanoTime()}. */
+    private final List<Long> ends = new ArrayList<>();
+
+    /**
+     * Ends a phase of the startup. Must only be called on one thread at a time.
+     *
+     * @param phase
+     *            the name of the phase
+     */
+    void mark(String phase) {
+        phases.add(phase);
+        ends.add(System.nanoTime());
+    }
+
+    /**
+     * Returns the time from the start of the virtual machine until the start of {@code main}.
+     *
+     * @return the time in milliseconds
+     */
+    private long getLaunchMillis() {
+        // Only asked for when the report is shown, so loading the management classes does not delay the startup
+        return Math.max(0, startMillis - ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Returns the time from the start of {@code main} until the end of a phase.
+     *
+     * @param phase
+     *            the name of the phase
+     * @return the time in milliseconds, or -1 if the phase has not ended
+     */
+    private double getMillis(String phase) {
+        int index = phases.indexOf(phase);
+        return index < 0 ? -1 : (ends.get(index) - startNanos) / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        long launch = getLaunchMillis();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Startup: window after %.0f ms, interactive after %.0f ms (launch %d ms",
+                launch + getMillis(WINDOW), launch + getMillis(INTERACTIVE), launch));
+        long previous = startNanos;
+        for (int i = 0; i < phases.size(); i++) {
+            text.append(String.format(", %s %.0f ms", phases.get(i), (ends.get(i) - previous) / 1e6));
+            previous = ends.get(i);
+        }
+        return text.append(')').toString();
+    }
+
+    /**
+     * Shows the report in the messages area and, if requested by {@value #PRINT_PROPERTY}, on the standard output.
+     *
+     * @param messagesArea
+     *            the messages area
+     */
+    void publish(MessagesArea messagesArea) {
+        String report = toString();
+        messagesArea.addMessage(report);
+        if (Boolean.getBoolean(PRINT_PROPERTY)) {
+            System.out.println(report);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package gui;
 
 import javax.swing.JLabel;
+import javax.swing.Timer;
+
+import control.PricingMetrics;
 
 /**
  * Status area displayed at the bottom of the application window.
  *
  * <p>
- * This class extends Swing JLabel and provides a status bar for displaying brief status information, progress
- * indicators, or other application state messages to the user.
+ * This class extends Swing JLabel and provides a status bar for displaying brief status information, followed by the
+ * live pricing metrics of the application: the number of packages priced per second, the median and 99th percentile of
+ * the pricing latency per package, and the heap usage. The metrics are taken from {@link PricingMetrics#getGlobal()}
+ * every {@value #REFRESH_INTERVAL_MILLIS} ms, and both rates and percentiles cover the time since the previous refresh.
  * </p>
  *
  * @author I. Bogicevic
@@ -16,14 +21,54 @@ import javax.swing.JLabel;
  * @since 0.2
  */
 public class StatusArea extends JLabel {
+
+    /** Interval in which the metrics are refreshed, in milliseconds. */
+    public static final int REFRESH_INTERVAL_MILLIS = 250;
+
+    /** The status message shown before the metrics. */
+    private String message = "";
+
+    /** The text showing the metrics. */
+    private String metricsText = "";
+
+    /** The snapshot shown last, used to compute the rates. */
+    private PricingMetrics.Snapshot previous = PricingMetrics.getGlobal().snapshot();
+
     /**
      * Constructs a new StatusArea.
      *
      * <p>
-     * This constructor creates an empty status bar label. Status text can be updated using the setText() method.
+     * This constructor creates the status bar label and starts refreshing the metrics periodically. The status message
+     * can be updated using the setMessage() method.
      * </p>
      */
     public StatusArea() {
         super();
+        refresh();
+        Timer refreshTimer = new Timer(REFRESH_INTERVAL_MILLIS, e -> refresh());
+        refreshTimer.start();
+    }
+
+    /**
+     * Sets the status message shown before the metrics.
+     *
+     * @param message
+     *            the message, or an empty string
+     */
+    public void setMessage(String message) {
+        this.message = message;
+        setText(message.isEmpty() ? metricsText : " " + message + " |" + metricsText);
+    }
+
+    /**
+     * Shows the current metrics.
+     */
+    private void refresh() {
+        PricingMetrics.Snapshot current = PricingMetrics.getGlobal().snapshot();
+        metricsText = String.format(" %,.0f packets/s | p50 %.2f µs | p99 %.2f µs | Heap %d / %d MB",
+                current.getPacketsPerSecond(previous), current.p50 / 1e3, current.p99 / 1e3, current.usedHeap >> 20,
+                current.maxHeap >> 20);
+        previous = current;
+        setMessage(message);
     }
 }
@@ -1,12 +1,26 @@
 package gui;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
+import javax.swing.SwingWorker;
 
 import control.ProjectHandling;
+import gui.MessageListModel.Severity;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 
 /**
  * Toolbar area containing application control buttons.
@@ -16,6 +30,12 @@ import control.ProjectHandling;
  * files, and accessing application information.
  * </p>
  *
+ * <p>
+ * The "Record" button starts a Java Flight Recorder recording with the "profile" settings, which includes the events of
+ * the application together with garbage collection and thread events. Releasing the button stops the recording and
+ * saves it to {@code ~/.packagecalculator/recordings}.
+ * </p>
+ *
  * @author I. Bogicevic
  * @author Max Hiller
  * @version 0.3
@@ -23,6 +43,67 @@ import control.ProjectHandling;
  */
 public class ToolbarArea extends JToolBar {
 
+    /** The running flight recording, or {@code null}. */
+    private Recording recording;
+
+    /**
+     * Starts or stops a flight recording.
+     *
+     * @param recordButton
+     *            the toggle button, which is released again if the recording cannot be started
+     */
+    private void toggleRecording(JToggleButton recordButton) {
+        MessagesArea messagesArea = PackageCalculator.getInstance().getMessagesArea();
+        if (recordButton.isSelected()) {
+            try {
+                recording = new Recording(Configuration.getConfiguration("profile"));
+                recording.setName("Package Calculator");
+                recording.start();
+                messagesArea.addMessage("Flight recording started");
+            } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+                recording = null;
+                recordButton.setSelected(false);
+                messagesArea.addMessage(Severity.ERROR, "Cannot start flight recording: " + e.getMessage());
+            }
+            return;
+        }
+
+        Recording stopped = recording;
+        recording = null;
+        if (stopped == null) {
+            return;
+        }
+        Path file = Paths.get(System.getProperty("user.home"), ".packagecalculator", "recordings",
+                "packagecalculator-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                        + ".jfr");
+
+        // Stopping and writing the recording may take a while, so do it in the background
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                try {
+                    stopped.stop();
+                    Files.createDirectories(file.getParent());
+                    stopped.dump(file);
+                } finally {
+                    stopped.close();
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    messagesArea.addMessage("Flight recording saved to " + file);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    messagesArea.addMessage(Severity.ERROR, "Cannot save flight recording: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Shows an information dialog with application details.
      *
@@ -46,7 +127,8 @@ public class ToolbarArea extends JToolBar {
      *
      * <p>
      * This constructor creates and configures all toolbar buttons including Open Project, New File, Save File, Save
-     * File As, Settings, About, and Info. It also sets up the corresponding action listeners for interactive buttons.
+     * File As, Settings, About, Info, and Record. It also sets up the corresponding action listeners for interactive
+     * buttons.
      * </p>
      */
     public ToolbarArea() {
@@ -58,11 +140,16 @@ public class ToolbarArea extends JToolBar {
         JButton settingsButton = new JButton("Settings");
         JButton aboutButton = new JButton("About");
         JButton infoButton = new JButton("Info");
+        JToggleButton recordButton = new JToggleButton("Record");
+        recordButton.setToolTipText("Start or stop a flight recording");
 
         // Configure action listeners for interactive buttons
         openProjectButton.addActionListener(e -> ProjectHandling.openProject());
         newFileButton.addActionListener(e -> ProjectHandling.newFile());
+        saveFileButton.addActionListener(e -> ProjectHandling.saveFile());
+        saveFileAsButton.addActionListener(e -> ProjectHandling.saveFileAs());
         infoButton.addActionListener(e -> showInfoDialog());
+        recordButton.addActionListener(e -> toggleRecording(recordButton));
 
         // Add all buttons to the toolbar
         add(openProjectButton);
@@ -73,5 +160,7 @@ public class ToolbarArea extends JToolBar {
         add(settingsButton);
         add(aboutButton);
         add(infoButton);
+        addSeparator();
+        add(recordButton);
     }
 }
@@ -0,0 +1,347 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import control.Calculator;
+import control.LatencyHistogram;
+import control.ManifestReader;
+import control.ManifestSummary;
+import control.PricingMetrics;
+import control.Tariff;
+import data.Money;
+import data.Packet;
+
+/**
+ * Embedded HTTP server exposing the shipping cost calculation.
+ *
+ * <p>
+ * The server offers the following routes, all answering with JSON:
+ * </p>
+ * <ul>
+ * <li>{@code GET /quote?length=..&width=..&height=..&weight=..}: price of a single package</li>
+ * <li>{@code POST /batch}: summary of all packages of a manifest sent as the request body</li>
+ * <li>{@code GET /metrics}: request count and latency percentiles in microseconds, and the pricing metrics of
+ * {@link PricingMetrics}, whose package latency percentiles cover the time since the previous request</li>
+ * </ul>
+ *
+ * <p>
+ * Requests are handled on virtual threads when the running Java version supports them (Java 21 and later), so
+ * thousands of concurrent connections do not need thousands of platform threads. On older versions a fixed pool of
+ * platform threads is used instead.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+public class PricingServer {
+
+    /** Default port of the server. */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** The calculator used to price the packages. */
+    private final Calculator calculator;
+
+    /** The underlying HTTP server. */
+    private final HttpServer server;
+
+    /** The executor running the request handlers. */
+    private final ExecutorService executor;
+
+    /** Latencies of all handled requests in nanoseconds. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Constructs a new PricingServer bound to the given address. The server is not started yet.
+     *
+     * @param calculator
+     *            the calculator used to price the packages
+     * @param address
+     *            the address to bind to; port 0 selects a free port
+     * @throws IOException
+     *             if the server cannot be bound
+     */
+    public PricingServer(Calculator calculator, InetSocketAddress address) throws IOException {
+        this.calculator = calculator;
+        this.server = HttpServer.create(address, 0);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/quote", timed(this::handleQuote));
+        server.createContext("/batch", timed(this::handleBatch));
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Creates the executor for the request handlers.
+     *
+     * @return an executor starting a virtual thread per task if available, otherwise a fixed thread pool
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            // Looked up reflectively so the server also runs on Java versions without virtual threads
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 4 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting up to the given time for running requests to complete.
+     *
+     * @param delaySeconds
+     *            the maximum time to wait in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the latencies of the handled pricing requests.
+     *
+     * @return the latency histogram in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Wraps a handler so that its latency is recorded.
+     *
+     * @param handler
+     *            the handler to wrap
+     * @return the wrapped handler
+     */
+    private HttpHandler timed(HttpHandler handler) {
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } finally {
+                latencies.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Handles {@code GET /quote}.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handleQuote(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Use GET");
+            return;
+        }
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        int[] values = new int[4];
+        String[] names = { "length", "width", "height", "weight" };
+        for (int i = 0; i < names.length; i++) {
+            String value = parameters.get(names[i]);
+            if (value == null) {
+                sendError(exchange, 400, "Missing parameter " + names[i]);
+                return;
+            }
+            try {
+                values[i] = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "Invalid " + names[i] + ": " + value);
+                return;
+            }
+        }
+
+        // Classified through the calculator, so that quotes are counted in the pricing metrics
+        Tariff tariff = calculator.getTariff();
+        int tier = calculator.classify(new Packet(values[0], values[1], values[2], values[3]));
+        sendJson(exchange, 200, "{\"tariff\":" + quote(tariff.getName()) + ",\"tier\":" + quote(tariff.getTierName(tier))
+                + ",\"price\":" + Money.format(tariff.getPriceCents(tier)) + ",\"cents\":" + tariff.getPriceCents(tier)
+                + "}");
+    }
+
+    /**
+     * Handles {@code POST /batch}.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @throws IOException
+     *             if the request cannot be read or the response cannot be sent
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Use POST");
+            return;
+        }
+        ManifestSummary summary;
+        try (InputStream body = exchange.getRequestBody()) {
+            summary = new ManifestReader(calculator).price(body, null);
+        }
+
+        Tariff tariff = summary.getTariff();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"tariff\":").append(quote(tariff.getName()));
+        json.append(",\"packets\":").append(summary.getPacketCount());
+        json.append(",\"malformedLines\":").append(summary.getMalformedLines());
+        Money.append(summary.getTotalCents(), json.append(",\"total\":"));
+        json.append(",\"totalCents\":").append(summary.getTotalCents());
+        json.append(",\"tiers\":{");
+        for (int t = 0; t < tariff.getTierCount(); t++) {
+            if (t > 0) {
+                json.append(',');
+            }
+            json.append(quote(tariff.getTierName(t))).append(':').append(summary.getTierCount(t));
+        }
+        json.append("}}");
+        sendJson(exchange, 200, json.toString());
+    }
+
+    /**
+     * Handles {@code GET /metrics}.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        PricingMetrics.Snapshot pricing = PricingMetrics.getGlobal().snapshot();
+        sendJson(exchange, 200, String.format(Locale.ROOT,
+                "{\"requests\":%d,\"meanMicros\":%.1f,\"p50Micros\":%.1f,\"p90Micros\":%.1f,\"p99Micros\":%.1f,"
+                        + "\"p999Micros\":%.1f,\"maxMicros\":%.1f,\"packets\":%d,\"packetP50Nanos\":%d,"
+                        + "\"packetP99Nanos\":%d,\"usedHeapBytes\":%d}",
+                latencies.getCount(), latencies.getMean() / 1e3, latencies.getValueAtPercentile(50) / 1e3,
+                latencies.getValueAtPercentile(90) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3, pricing.packets, pricing.p50,
+                pricing.p99, pricing.usedHeap));
+    }
+
+    /**
+     * Parses the parameters of a query string.
+     *
+     * @param query
+     *            the raw query string, or {@code null}
+     * @return the decoded parameters
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Quotes a string for JSON.
+     *
+     * @param text
+     *            the string to quote
+     * @return the quoted string
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Sends an error response.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @param status
+     *            the HTTP status code
+     * @param message
+     *            the error message
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange.
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @param status
+     *            the HTTP status code
+     * @param json
+     *            the response body
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Starts a pricing server on localhost.
+     *
+     * @param args
+     *            optionally the port to listen on, {@value #DEFAULT_PORT} by default
+     * @throws IOException
+     *             if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        PricingServer server = new PricingServer(new Calculator(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.start();
+        System.out.println("Pricing server listening on http://localhost:" + server.getPort());
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Network services for the Package Calculator application.
+ *
+ * <p>
+ * This package contains an embedded HTTP server that makes the pricing logic available to other tools without the
+ * graphical user interface.
+ * </p>
+ *
+ * @since 0.3
+ * @version 0.3
+ */
+package service;
@@ -0,0 +1,188 @@
+package control;
+
+import data.PacketBatch;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Classifier comparing a whole vector of packages against the tier limits at once.
+ *
+ * <p>
+ * This class lives in its own source root, {@code vector}, because it only compiles with the incubating Vector API
+ * added, for example with
+ * {@code javac --add-modules jdk.incubator.vector -cp classes -d classes vector/control/VectorBatchClassifier.java}
+ * after the application was compiled into {@code classes}. Without it, {@link BatchClassifier#forTariff(Tariff)} falls
+ * back to the scalar classifier.
+ * </p>
+ *
+ * <p>
+ * The packages are loaded {@link #SPECIES lane count} at a time from the columns of a batch, 8 with AVX2 and 16 with
+ * AVX-512. Their dimensions are sorted with vector minimum and maximum, the same way
+ * {@link Tariff#classify(int, int, int, int)} sorts them. The tiers are then checked from the last to the first: the
+ * lanes of the packages fitting a tier take over its index and price, so after the first tier every lane holds the
+ * first tier its package fits into. All four limits are compared for every tier, even {@link Tariff#UNLIMITED} ones,
+ * which every value passes: skipping them would merge masks from different branches, which keeps the JIT compiler from
+ * keeping them in registers. Packages left over at the end of a batch are classified with the scalar lookup tables of
+ * the tariff.
+ * </p>
+ *
+ * <p>
+ * The comparisons grow with the number of tiers while the lookup tables do not, so only tariffs with at most
+ * {@value BatchClassifier#MAX_VECTOR_TIERS} tiers are classified with vectors. This class must only be loaded through
+ * {@link BatchClassifier#forTariff(Tariff)}, which checks that the module is present, that the tariff has few enough
+ * tiers and that the vectors are wide enough.
+ * </p>
+ *
+ * @author I. Bogicevic
+ * @author Max Hiller
+ * @version 0.3
+ * @since 0.3
+ */
+final class VectorBatchClassifier extends BatchClassifier {
+
+    /** The widest integer vectors supported by the CPU. */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /** Index of the last tier, which every package fits into. */
+    private final int lastTier;
+
+    /** Limits of the tiers: largest, middle and smallest dimension, then weight. */
+    private final int[][] limits;
+
+    /** Indices of the tiers, selected when classifying. */
+    private final int[] tierIndexes;
+
+    /** Prices of the tiers in cents, selected when pricing. */
+    private final int[] prices;
+
+    /** Number of vectors whose prices can be added in the lanes of a vector without overflowing. */
+    private final int sumInterval;
+
+    /**
+     * Constructs a new vector classifier.
+     *
+     * @param tariff
+     *            the tariff packages are classified with, with at most {@value BatchClassifier#MAX_VECTOR_TIERS} tiers
+     */
+    VectorBatchClassifier(Tariff tariff) {
+        super(tariff);
+        int tierCount = tariff.getTierCount();
+        lastTier = tierCount - 1;
+        limits = new int[tierCount][];
+        tierIndexes = new int[tierCount];
+        prices = new int[tierCount];
+        int maxPrice = 1;
+        for (int t = 0; t < tierCount; t++) {
+            limits[t] = tariff.getLimits(t);
+            tierIndexes[t] = t;
+            prices[t] = tariff.getPriceCents(t);
+            maxPrice = Math.max(maxPrice, prices[t]);
+        }
+        sumInterval = Math.max(1, Integer.MAX_VALUE / maxPrice);
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.vectorBitSize() + " bit";
+    }
+
+    @Override
+    public void classify(PacketBatch batch, int[] tiers) {
+        int n = batch.size();
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            select(batch, i, tierIndexes).intoArray(tiers, i);
+        }
+        for (; i < n; i++) {
+            tiers[i] = tariff.classify(batch.length[i], batch.width[i], batch.height[i], batch.weight[i]);
+        }
+    }
+
+    @Override
+    public void priceCents(PacketBatch batch, int[] cents) {
+        int n = batch.size();
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            select(batch, i, prices).intoArray(cents, i);
+        }
+        for (; i < n; i++) {
+            cents[i] = prices[tariff.classify(batch.length[i], batch.width[i], batch.height[i], batch.weight[i])];
+        }
+    }
+
+    @Override
+    public long sumCents(PacketBatch batch) {
+        int n = batch.size();
+        int bound = SPECIES.loopBound(n);
+        long total = 0;
+        int i = 0;
+        while (i < bound) {
+            // Add up in the lanes and only reduce them before they could overflow
+            IntVector sum = IntVector.zero(SPECIES);
+            for (int k = 0; k < sumInterval && i < bound; k++, i += SPECIES.length()) {
+                sum = sum.add(select(batch, i, prices));
+            }
+            total += sum.reduceLanesToLong(VectorOperators.ADD);
+        }
+        for (; i < n; i++) {
+            total += prices[tariff.classify(batch.length[i], batch.width[i], batch.height[i], batch.weight[i])];
+        }
+        return total;
+    }
+
+    /**
+     * Classifies one vector of packages and returns a value of the tier of each package.
+     *
+     * @param batch
+     *            the packages to classify
+     * @param i
+     *            the index of the first package, at most {@code batch.size() - SPECIES.length()}
+     * @param values
+     *            one value per tier, for example its index or price
+     * @return the values of the tiers of the packages
+     */
+    private IntVector select(PacketBatch batch, int i, int[] values) {
+        IntVector length = IntVector.fromArray(SPECIES, batch.length, i);
+        IntVector width = IntVector.fromArray(SPECIES, batch.width, i);
+        IntVector height = IntVector.fromArray(SPECIES, batch.height, i);
+        IntVector weight = IntVector.fromArray(SPECIES, batch.weight, i);
+        // Sort dimensions descending; the sum trick stays correct even if it overflows
+        IntVector largest = length.max(width).max(height);
+        IntVector smallest = length.min(width).min(height);
+        IntVector middle = length.add(width).add(height).sub(largest).sub(smallest);
+
+        IntVector selected = IntVector.broadcast(SPECIES, values[lastTier]);
+        for (int t = lastTier - 1; t >= 0; t--) {
+            selected = selected.blend(values[t], fits(t, largest, middle, smallest, weight));
+        }
+        return selected;
+    }
+
+    /**
+     * Determines which packages of a vector fit into a tier.
+     *
+     * @param t
+     *            the index of the tier
+     * @param largest
+     *            the largest dimensions of the packages
+     * @param middle
+     *            the middle dimensions of the packages
+     * @param smallest
+     *            the smallest dimensions of the packages
+     * @param weight
+     *            the weights of the packages
+     * @return the lanes of the packages fitting the tier
+     */
+    private VectorMask<Integer> fits(int t, IntVector largest, IntVector middle, IntVector smallest,
+            IntVector weight) {
+        int[] tierLimits = limits[t];
+        return largest.compare(VectorOperators.LE, tierLimits[0])
+                .and(middle.compare(VectorOperators.LE, tierLimits[1]))
+                .and(smallest.compare(VectorOperators.LE, tierLimits[2]))
+                .and(weight.compare(VectorOperators.LE, tierLimits[3]));
+    }
+}